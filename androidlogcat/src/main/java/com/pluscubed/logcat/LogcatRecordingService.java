@@ -27,6 +27,7 @@ import com.pluscubed.logcat.util.LogLineAdapterUtil;
 import com.pluscubed.logcat.util.UtilLogger;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -180,24 +181,26 @@ public class LogcatRecordingService extends IntentService {
 
         try {
 
-            String line;
+            List<String> lines;
             int lineCount = 0;
             int logLinePeriod = PreferenceHelper.getLogLinePeriodPreference(getApplicationContext());
-            while ((line = mReader.readLine()) != null && !mKilled) {
-
-                // filter
-                if (!searchCriteriaWillAlwaysMatch || !logLevelAcceptsEverything) {
-                    if (!checkLogLine(line, searchCriteria, logLevelLimit)) {
-                        continue;
+            while ((lines = mReader.readLines()) != null && !mKilled) {
+                for (String line : lines) {
+
+                    // filter
+                    if (!searchCriteriaWillAlwaysMatch || !logLevelAcceptsEverything) {
+                        if (!checkLogLine(line, searchCriteria, logLevelLimit)) {
+                            continue;
+                        }
                     }
-                }
 
-                stringBuilder.append(line).append("\n");
+                    stringBuilder.append(line).append("\n");
 
-                if (++lineCount % logLinePeriod == 0) {
-                    // avoid OutOfMemoryErrors; flush now
-                    SaveLogHelper.saveLog(stringBuilder, filename);
-                    stringBuilder.delete(0, stringBuilder.length()); // clear
+                    if (++lineCount % logLinePeriod == 0) {
+                        // avoid OutOfMemoryErrors; flush now
+                        SaveLogHelper.saveLog(stringBuilder, filename);
+                        stringBuilder.delete(0, stringBuilder.length()); // clear
+                    }
                 }
             }
         } catch (IOException e) {
@@ -0,0 +1,84 @@
+package com.pluscubed.logcat.data;
+
+/**
+ * Growable list of increasing line ids of a {@link LogStore}, the ids of dropped lines are removed
+ * from the front.
+ */
+class IdList {
+    private long[] ids = new long[16];
+    private int start;
+    private int end;
+
+    int size() {
+        return end - start;
+    }
+
+    boolean isEmpty() {
+        return start == end;
+    }
+
+    long get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        }
+        return ids[start + index];
+    }
+
+    /**
+     * @param id must be greater than the ids of the list
+     */
+    void add(long id) {
+        if (end == ids.length) {
+            int size = size();
+            long[] target = size * 2 > ids.length ? new long[ids.length * 2] : ids;
+            System.arraycopy(ids, start, target, 0, size);
+            ids = target;
+            start = 0;
+            end = size;
+        }
+        ids[end++] = id;
+    }
+
+    /**
+     * @return number of removed ids
+     */
+    int removeBefore(long id) {
+        int index = indexOf(id);
+        int removed = index - start;
+        start = index;
+        return removed;
+    }
+
+    void clear() {
+        start = 0;
+        end = 0;
+    }
+
+    /**
+     * @return the ids from fromId through toId
+     */
+    long[] toArray(long fromId, long toId) {
+        int from = indexOf(fromId);
+        int to = toId == Long.MAX_VALUE ? end : indexOf(toId + 1);
+        long[] result = new long[Math.max(0, to - from)];
+        System.arraycopy(ids, from, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * @return index in {@link #ids} of the first id not less than the given id
+     */
+    private int indexOf(long id) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ids[middle] < id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,273 @@
+package com.pluscubed.logcat.data;
+
+import com.pluscubed.logcat.util.LogLineAdapterUtil;
+import com.pluscubed.logcat.util.StringUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists of the lines of a {@link LogStore} per level, pid and tag, updated as lines are added, so a
+ * search only reads the lines with a matching level, pid or tag. The text of a search is only
+ * matched against these candidates.
+ * <p>
+ * The store and the index are modified while holding the lock given to the index. Searches take the
+ * lock for a chunk of lines at a time, so lines can be added while a large store is searched.
+ */
+class LogIndex {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private final LogStore store;
+    private final Object lock;
+
+    private final Map<Integer, IdList> levels = new HashMap<>();
+    private final Map<Integer, IdList> processIds = new HashMap<>();
+    private final Map<String, IdList> tags = new HashMap<>();
+    private int addedSinceCompact;
+
+    LogIndex(LogStore store, Object lock) {
+        this.store = store;
+        this.lock = lock;
+    }
+
+    /**
+     * Indexes a line added to the store
+     */
+    void add(long id) {
+        post(levels, store.getLogLevel(id), id);
+        post(processIds, store.getProcessId(id), id);
+        String tag = store.getTag(id);
+        if (tag != null) {
+            post(tags, tag, id);
+        }
+
+        // lists of lines dropped by the store are removed once per capacity of added lines
+        if (++addedSinceCompact >= store.getCapacity()) {
+            compact();
+        }
+    }
+
+    private static <K> void post(Map<K, IdList> lists, K key, long id) {
+        IdList list = lists.get(key);
+        if (list == null) {
+            list = new IdList();
+            lists.put(key, list);
+        }
+        list.add(id);
+    }
+
+    void clear() {
+        levels.clear();
+        processIds.clear();
+        tags.clear();
+        addedSinceCompact = 0;
+    }
+
+    /**
+     * Removes the ids of the lines dropped by the store
+     */
+    void compact() {
+        compact(levels);
+        compact(processIds);
+        compact(tags);
+        addedSinceCompact = 0;
+    }
+
+    private void compact(Map<?, IdList> lists) {
+        for (Iterator<IdList> iterator = lists.values().iterator(); iterator.hasNext(); ) {
+            IdList list = iterator.next();
+            list.removeBefore(store.getFirstId());
+            if (list.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Must be called with the lock held
+     */
+    boolean matches(long id, SearchCriteria searchCriteria, int logLevelLimit) {
+        return LogLineAdapterUtil.logLevelIsAcceptableGivenLogLevelLimit(store.getLogLevel(id), logLevelLimit)
+                && (searchCriteria.isEmpty() || searchCriteria.matches(store, id));
+    }
+
+    /**
+     * @return ids of the matching lines from fromId through toId
+     */
+    IdList find(SearchCriteria searchCriteria, int logLevelLimit, long fromId, long toId) {
+        IdList result = new IdList();
+        long[] candidates;
+        synchronized (lock) {
+            candidates = getCandidates(searchCriteria, logLevelLimit, fromId, toId);
+        }
+        if (candidates != null) {
+            filter(candidates, searchCriteria, logLevelLimit, result);
+            return result;
+        }
+
+        long id = fromId;
+        while (id <= toId) {
+            synchronized (lock) {
+                id = Math.max(id, store.getFirstId());
+                long end = Math.min(toId, id + CHUNK_SIZE - 1);
+                for (; id <= end && store.contains(id); id++) {
+                    if (matches(id, searchCriteria, logLevelLimit)) {
+                        result.add(id);
+                    }
+                }
+                if (id <= end) {
+                    // the store was cleared
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Narrows the result of a previous search when the criteria can only match lines matched by the
+     * previous criteria, e.g. when the search text is extended
+     *
+     * @param previous       ids matching the previous criteria
+     * @param previousLastId the last line searched by the previous search
+     * @return ids of the matching lines up to toId
+     */
+    IdList narrow(IdList previous, long previousLastId, SearchCriteria searchCriteria, int logLevelLimit, long toId) {
+        IdList result = new IdList();
+        long[] candidates;
+        synchronized (lock) {
+            candidates = previous.toArray(store.getFirstId(), Math.min(previousLastId, toId));
+        }
+        filter(candidates, searchCriteria, logLevelLimit, result);
+
+        // lines added since the previous search
+        IdList added = find(searchCriteria, logLevelLimit, previousLastId + 1, toId);
+        for (int i = 0; i < added.size(); i++) {
+            result.add(added.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the result of a search with the previous criteria and level limit contains
+     * every line matching the new ones, so it can be narrowed instead of searching all lines
+     */
+    static boolean canNarrow(SearchCriteria searchCriteria, int logLevelLimit,
+                             SearchCriteria previousCriteria, int previousLogLevelLimit) {
+        return previousCriteria != null && logLevelLimit >= previousLogLevelLimit
+                && searchCriteria.isNarrowerThan(previousCriteria);
+    }
+
+    /**
+     * Updates the result of a search which matched the lines up to lastId with the lines added or
+     * dropped since. Must be called with the lock held
+     */
+    void catchUp(IdList ids, SearchCriteria searchCriteria, int logLevelLimit, long lastId) {
+        ids.removeBefore(store.getFirstId());
+        IdList added = find(searchCriteria, logLevelLimit, lastId + 1, store.getLastId());
+        for (int i = 0; i < added.size(); i++) {
+            ids.add(added.get(i));
+        }
+    }
+
+    private void filter(long[] candidates, SearchCriteria searchCriteria, int logLevelLimit, IdList result) {
+        int i = 0;
+        while (i < candidates.length) {
+            synchronized (lock) {
+                int end = Math.min(candidates.length, i + CHUNK_SIZE);
+                for (; i < end; i++) {
+                    long id = candidates[i];
+                    if (store.contains(id) && matches(id, searchCriteria, logLevelLimit)) {
+                        result.add(id);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the smallest list of lines matching the pid, tag or level of the
+     * criteria, or null if all lines have to be searched
+     */
+    private long[] getCandidates(SearchCriteria searchCriteria, int logLevelLimit, long fromId, long toId) {
+        List<IdList> best = null;
+        int bestSize = Integer.MAX_VALUE;
+
+        if (searchCriteria.getPid() != -1) {
+            List<IdList> lists = new ArrayList<>();
+            IdList list = processIds.get(searchCriteria.getPid());
+            if (list != null) {
+                lists.add(list);
+            }
+            best = lists;
+            bestSize = size(lists);
+        }
+
+        String tag = searchCriteria.getTag();
+        if (!StringUtil.isEmpty(tag)) {
+            List<IdList> lists = new ArrayList<>();
+            for (Map.Entry<String, IdList> entry : tags.entrySet()) {
+                if (StringUtil.containsIgnoreCase(entry.getKey(), tag)) {
+                    lists.add(entry.getValue());
+                }
+            }
+            int size = size(lists);
+            if (size < bestSize) {
+                best = lists;
+                bestSize = size;
+            }
+        }
+
+        if (logLevelLimit > 0) {
+            List<IdList> lists = new ArrayList<>();
+            for (Map.Entry<Integer, IdList> entry : levels.entrySet()) {
+                if (LogLineAdapterUtil.logLevelIsAcceptableGivenLogLevelLimit(entry.getKey(), logLevelLimit)) {
+                    lists.add(entry.getValue());
+                }
+            }
+            int size = size(lists);
+            if (size < bestSize) {
+                best = lists;
+                bestSize = size;
+            }
+        }
+
+        if (best == null || bestSize >= store.size()) {
+            return null;
+        }
+
+        if (best.size() == 1) {
+            return best.get(0).toArray(Math.max(fromId, store.getFirstId()), toId);
+        }
+        long[][] ids = new long[best.size()][];
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = best.get(i).toArray(Math.max(fromId, store.getFirstId()), toId);
+            count += ids[i].length;
+        }
+        long[] candidates = new long[count];
+        count = 0;
+        for (long[] list : ids) {
+            System.arraycopy(list, 0, candidates, count, list.length);
+            count += list.length;
+        }
+        if (ids.length > 1) {
+            // a line is in only one list per level or tag
+            Arrays.sort(candidates);
+        }
+        return candidates;
+    }
+
+    private static int size(List<IdList> lists) {
+        int size = 0;
+        for (IdList list : lists) {
+            size += list.size();
+        }
+        return size;
+    }
+}
@@ -38,6 +38,10 @@ public class LogLine {
     private boolean expanded = false;
     private boolean highlighted = false;
 
+    // the store keeping this line, its expanded and highlighted state are written to the store
+    LogStore store;
+    long storeId = -1;
+
     public static boolean isScrubberEnabled = false;
 
     public static LogLine newLogLine(String originalLine, boolean expanded) {
@@ -57,6 +61,11 @@ public class LogLine {
             startIdx = TIMESTAMP_LENGTH; // cut off timestamp
         }
 
+        if (parseAt(logLine, originalLine, startIdx)) {
+            return logLine;
+        }
+
+        // not at the start, search the rest of the line
         Matcher matcher = logPattern.matcher(originalLine);
 
         if (matcher.find(startIdx)) {
@@ -78,6 +87,71 @@ public class LogLine {
 
     }
 
+    /**
+     * Parses a line starting with the level, tag and pid at the given index like
+     * {@link #logPattern} without a regex, as most lines do after the timestamp
+     *
+     * @return false if the line doesn't match at the index
+     */
+    private static boolean parseAt(LogLine logLine, String line, int start) {
+        int length = line.length();
+        // log level
+        if (start + 2 >= length || !isWordCharacter(line.charAt(start)) || line.charAt(start + 1) != '/') {
+            return false;
+        }
+        // tag up to the first '('
+        int tagEnd = line.indexOf('(', start + 2);
+        if (tagEnd <= start + 2) {
+            return false;
+        }
+        int i = tagEnd + 1;
+        while (i < length && isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        // pid
+        int pidStart = i;
+        while (i < length && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+            i++;
+        }
+        int pidEnd = i;
+        if (pidEnd == pidStart) {
+            return false;
+        }
+        // optional weird number that only occurs on ZTE blade
+        if (i < length && line.charAt(i) == '*') {
+            i++;
+            while (i < length && isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            int numberStart = i;
+            while (i < length && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+                i++;
+            }
+            if (i == numberStart) {
+                return false;
+            }
+        }
+        if (!line.startsWith("): ", i)) {
+            return false;
+        }
+
+        logLine.setLogLevel(convertCharToLogLevel(line.charAt(start)));
+        logLine.setTag(line.substring(start + 2, tagEnd));
+        logLine.setProcessId(Integer.parseInt(line.substring(pidStart, pidEnd)));
+        logLine.setLogOutput(line.substring(i + 3));
+        return true;
+    }
+
+    // \w of java.util.regex
+    private static boolean isWordCharacter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    // \s of java.util.regex
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
     private static int convertCharToLogLevel(char logLevelChar) {
 
         switch (logLevelChar) {
@@ -171,6 +245,10 @@ public class LogLine {
         }
     }
 
+    void setLogOutputUnscrubbed(String logOutput) {
+        this.logOutput = logOutput;
+    }
+
     public int getProcessId() {
         return processId;
     }
@@ -193,6 +271,9 @@ public class LogLine {
 
     public void setExpanded(boolean expanded) {
         this.expanded = expanded;
+        if (store != null) {
+            store.setExpanded(storeId, expanded);
+        }
     }
 
     public boolean isHighlighted() {
@@ -201,5 +282,28 @@ public class LogLine {
 
     public void setHighlighted(boolean highlighted) {
         this.highlighted = highlighted;
+        if (store != null) {
+            store.setHighlighted(storeId, highlighted);
+        }
+    }
+
+    /**
+     * Lines of a {@link LogStore} are equal if they are the same line of the store
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LogLine) || store == null) {
+            return false;
+        }
+        LogLine other = (LogLine) o;
+        return store == other.store && storeId == other.storeId;
+    }
+
+    @Override
+    public int hashCode() {
+        return store == null ? super.hashCode() : (int) (storeId ^ (storeId >>> 32));
     }
 }
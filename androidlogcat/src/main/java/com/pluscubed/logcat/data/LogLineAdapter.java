@@ -19,6 +19,7 @@
 package com.pluscubed.logcat.data;
 
 import android.content.Context;
+import android.text.TextUtils;
 import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 import android.util.TypedValue;
@@ -31,34 +32,39 @@ import android.widget.Filterable;
 import com.pluscubed.logcat.databinding.ListItemLogcatBinding;
 import com.pluscubed.logcat.helper.PreferenceHelper;
 import com.pluscubed.logcat.util.LogLineAdapterUtil;
-import com.pluscubed.logcat.util.StopWatch;
 import com.pluscubed.logcat.util.UtilLogger;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 public class LogLineAdapter extends RecyclerView.Adapter<LogLineViewHolder> implements Filterable {
 
     private static UtilLogger log = new UtilLogger(LogLineAdapter.class);
     /**
-     * Lock used to modify the content of {@link #mObjects}. Any write operation
-     * performed on the array should be synchronized on this lock. This lock is also
-     * used by the filter (see {@link #getFilter()} to make a synchronized copy of
-     * the original array of data.
+     * Lock used to modify {@link #mStore}, {@link #mIndex} and {@link #mFilteredIds}. Any write operation
+     * performed on them should be synchronized on this lock. This lock is also
+     * used by the filter (see {@link #getFilter()} while it reads the store.
      */
     private final Object mLock = new Object();
-    private Comparator<? super LogLine> mComparator;
     /**
-     * Contains the list of objects that represent the data of this ArrayAdapter.
-     * The content of this list is referred to as "the array" in the documentation.
+     * Contains the lines that represent the data of this adapter, the oldest lines are dropped
+     * when it is full.
      */
-    private List<LogLine> mObjects;
+    private final LogStore mStore;
 
     private LogLineViewHolder.OnClickListener mClickListener;
 
-    private ArrayList<LogLine> mOriginalValues;
+    private final LogIndex mIndex;
+
+    /**
+     * Ids of the lines of the store shown once a filter is applied, null if all lines are shown
+     */
+    private IdList mFilteredIds;
+    /**
+     * Criteria and level limit of the last filtering, which matched the lines of
+     * {@link #mFilteredIds} up to {@link #mFilteredLastId}
+     */
+    private SearchCriteria mFilteredCriteria;
+    private int mFilteredLogLevelLimit;
+    private long mFilteredLastId;
     private ArrayFilter mFilter;
 
     private int logLevelLimit = 0;
@@ -66,9 +72,12 @@ public class LogLineAdapter extends RecyclerView.Adapter<LogLineViewHolder> impl
 
     /**
      * Constructor
+     *
+     * @param capacity maximum number of lines kept
      */
-    public LogLineAdapter() {
-        mObjects = new ArrayList<>();
+    public LogLineAdapter(int capacity) {
+        mStore = new LogStore(capacity);
+        mIndex = new LogIndex(mStore, mLock);
 
         setHasStableIds(true);
     }
@@ -80,135 +89,95 @@ public class LogLineAdapter extends RecyclerView.Adapter<LogLineViewHolder> impl
      * @param object The object to add at the end of the array.
      */
     public void add(LogLine object) {
-        if (mOriginalValues != null) {
-            synchronized (mLock) {
-                mOriginalValues.add(object);
-                mObjects.add(object);
-
-            }
-        } else {
-            mObjects.add(object);
-        }
-        notifyItemInserted(mObjects.size());
+        addWithFilter(object, null);
     }
 
 
-    public void addWithFilter(LogLine object, CharSequence text) {
-
-        if (mOriginalValues != null) {
-
-            List<LogLine> inputList = Collections.singletonList(object);
-
-            if (mFilter == null) {
-                mFilter = new ArrayFilter();
-            }
-
-            List<LogLine> filteredObjects = mFilter.performFilteringOnList(inputList, text);
-
-            synchronized (mLock) {
-                mOriginalValues.add(object);
-
-                mObjects.addAll(filteredObjects);
-
-                notifyItemRangeInserted(mObjects.size() - filteredObjects.size(), filteredObjects.size());
-            }
-        } else {
-            synchronized (mLock) {
-                mObjects.add(object);
-            }
-            notifyItemInserted(mObjects.size());
-        }
-
-
-    }
-
     /**
-     * Inserts the specified object at the specified index in the array.
+     * Adds a line, which is only shown if it matches the filter text once a filter is applied
      *
-     * @param object The object to insert into the array.
-     * @param index  The index at which the object must be inserted.
+     * @param text filter text, or null to show the line regardless of the filter
      */
-    public void insert(LogLine object, int index) {
-        if (mOriginalValues != null) {
-            synchronized (mLock) {
-                mOriginalValues.add(index, object);
-                notifyDataSetChanged();
+    public void addWithFilter(LogLine object, CharSequence text) {
+        synchronized (mLock) {
+            if (mFilteredIds == null) {
+                // a long message may drop several old lines from the store
+                long firstId = mStore.getFirstId();
+                mIndex.add(mStore.add(object));
+                int removed = (int) (mStore.getFirstId() - firstId);
+                if (removed > 0) {
+                    notifyItemRangeRemoved(0, removed);
+                }
+                notifyItemInserted(mStore.size() - 1);
+            } else {
+                long id = mStore.add(object);
+                mIndex.add(id);
+                int removed = mFilteredIds.removeBefore(mStore.getFirstId());
+                if (removed > 0) {
+                    notifyItemRangeRemoved(0, removed);
+                }
+                if (text == null || ((ArrayFilter) getFilter()).matches(id, text)) {
+                    mFilteredIds.add(id);
+                    notifyItemInserted(mFilteredIds.size() - 1);
+                }
             }
-        } else {
-            mObjects.add(index, object);
-            notifyDataSetChanged();
         }
     }
 
     /**
-     * Removes the specified object from the array.
-     *
-     * @param object The object to remove.
+     * Remove all elements from the list.
      */
-    public void remove(LogLine object) {
-        if (mOriginalValues != null) {
-            synchronized (mLock) {
-                mOriginalValues.remove(object);
-            }
-        } else {
-            mObjects.remove(object);
-        }
-        notifyDataSetChanged();
-    }
-
-    public void removeFirst(int n) {
-        StopWatch stopWatch = new StopWatch("removeFirst()");
-        if (mOriginalValues != null) {
-            synchronized (mLock) {
-                List<LogLine> subList = mOriginalValues.subList(n, mOriginalValues.size());
-                for (int i = 0; i < n; i++) {
-                    // value to delete - delete it from the mObjects as well
-                    mObjects.remove(mOriginalValues.get(i));
-                }
-                mOriginalValues = new ArrayList<>(subList);
-            }
-        } else {
-            synchronized (mLock) {
-                mObjects = new ArrayList<>(mObjects.subList(n, mObjects.size()));
+    public void clear() {
+        synchronized (mLock) {
+            mStore.clear();
+            mIndex.clear();
+            if (mFilteredIds != null) {
+                mFilteredIds.clear();
             }
         }
         notifyDataSetChanged();
-        stopWatch.log(log);
     }
 
     /**
-     * Remove all elements from the list.
+     * Changes the maximum number of lines kept, dropping the oldest lines if there are more
      */
-    public void clear() {
-        if (mOriginalValues != null) {
-            synchronized (mLock) {
-                mOriginalValues.clear();
-                mObjects.clear();
+    public void setCapacity(int capacity) {
+        synchronized (mLock) {
+            if (capacity == mStore.getCapacity()) {
+                return;
+            }
+            mStore.setCapacity(capacity);
+            mIndex.compact();
+            if (mFilteredIds != null) {
+                mFilteredIds.removeBefore(mStore.getFirstId());
             }
-        } else {
-            mObjects.clear();
         }
         notifyDataSetChanged();
     }
 
     /**
-     * Sorts the content of this adapter using the specified comparator.
-     *
-     * @param comparator The comparator used to sort the objects contained
-     *                   in this adapter.
+     * Expands or collapses all lines, including the ones hidden by the filter
      */
-    public void sort(Comparator<? super LogLine> comparator) {
-        this.mComparator = comparator;
-        Collections.sort(mObjects, comparator);
-        notifyDataSetChanged();
+    public void setExpandedAll(boolean expanded) {
+        synchronized (mLock) {
+            mStore.setExpandedAll(expanded);
+        }
     }
 
     public LogLine getItem(int position) {
-        return mObjects.get(position);
+        synchronized (mLock) {
+            return mStore.getLine(getId(position));
+        }
     }
 
-    public List<LogLine> getTrueValues() {
-        return mOriginalValues != null ? mOriginalValues : mObjects;
+    private long getId(int position) {
+        if (mFilteredIds == null) {
+            if (position < 0 || position >= mStore.size()) {
+                throw new IndexOutOfBoundsException("Position " + position + ", size " + mStore.size());
+            }
+            return mStore.getFirstId() + position;
+        }
+        return mFilteredIds.get(position);
     }
 
     @Override
@@ -294,14 +263,14 @@ public class LogLineAdapter extends RecyclerView.Adapter<LogLineViewHolder> impl
     @Override
     public long getItemId(int position) {
         synchronized (mLock) {
-            return mObjects.get(position).getOriginalLine().hashCode();
+            return getId(position);
         }
     }
 
     @Override
     public int getItemCount() {
         synchronized (mLock) {
-            return mObjects.size();
+            return mFilteredIds != null ? mFilteredIds.size() : mStore.size();
         }
     }
 
@@ -325,10 +294,6 @@ public class LogLineAdapter extends RecyclerView.Adapter<LogLineViewHolder> impl
         return mFilter;
     }
 
-    public List<LogLine> getObjects() {
-        return mObjects;
-    }
-
     public void setClickListener(LogLineViewHolder.OnClickListener clickListener) {
         mClickListener = clickListener;
     }
@@ -337,88 +302,84 @@ public class LogLineAdapter extends RecyclerView.Adapter<LogLineViewHolder> impl
      * <p>An array filter constrains the content of the array adapter with
      * a prefix. Each item that does not start with the supplied prefix
      * is removed from the list.</p>
+     * <p>
+     * Lines are searched with {@link LogIndex}. When the query is extended, only the lines
+     * shown for the previous query are searched again.
      */
     private class ArrayFilter extends Filter {
+
+        private CharSequence mQuery;
+        private SearchCriteria mSearchCriteria;
+
         @Override
         protected FilterResults performFiltering(CharSequence prefix) {
             FilterResults results = new FilterResults();
 
-            if (mOriginalValues == null) {
-                synchronized (mLock) {
-                    mOriginalValues = new ArrayList<>(mObjects);
+            SearchCriteria searchCriteria = new SearchCriteria(prefix);
+            int levelLimit;
+            long lastId;
+            IdList previous = null;
+            long previousLastId = 0;
+            synchronized (mLock) {
+                levelLimit = logLevelLimit;
+                lastId = mStore.getLastId();
+                if (mFilteredIds != null && LogIndex.canNarrow(searchCriteria, levelLimit,
+                        mFilteredCriteria, mFilteredLogLevelLimit)) {
+                    previous = mFilteredIds;
+                    previousLastId = mFilteredLastId;
                 }
             }
 
-            ArrayList<LogLine> allValues = performFilteringOnList(mOriginalValues, prefix);
+            IdList ids = previous != null
+                    ? mIndex.narrow(previous, previousLastId, searchCriteria, levelLimit, lastId)
+                    : mIndex.find(searchCriteria, levelLimit, Long.MIN_VALUE, lastId);
 
-            results.values = allValues;
-            results.count = allValues.size();
+            results.values = new FilteredIds(ids, lastId, searchCriteria, levelLimit);
+            results.count = ids.size();
 
             return results;
         }
 
-        public ArrayList<LogLine> performFilteringOnList(List<LogLine> inputList, CharSequence query) {
-
-            SearchCriteria searchCriteria = new SearchCriteria(query);
-
-            // search by log level
-            ArrayList<LogLine> allValues = new ArrayList<LogLine>();
-
-            ArrayList<LogLine> logLines;
-            synchronized (mLock) {
-                logLines = new ArrayList<LogLine>(inputList);
-            }
-
-            for (LogLine logLine : logLines) {
-                if (logLine != null &&
-                        LogLineAdapterUtil.logLevelIsAcceptableGivenLogLevelLimit(logLine.getLogLevel(), logLevelLimit)) {
-                    allValues.add(logLine);
-                }
-            }
-            ArrayList<LogLine> finalValues = allValues;
-
-            // search by criteria
-            if (!searchCriteria.isEmpty()) {
-
-                final ArrayList<LogLine> values = allValues;
-                final int count = values.size();
-
-                final ArrayList<LogLine> newValues = new ArrayList<LogLine>(count);
-
-                for (int i = 0; i < count; i++) {
-                    final LogLine value = values.get(i);
-                    // search the logline based on the criteria
-                    if (searchCriteria.matches(value)) {
-                        newValues.add(value);
-                    }
-                }
-
-                finalValues = newValues;
+        /**
+         * Must be called with {@link #mLock} held
+         */
+        public boolean matches(long id, CharSequence query) {
+            if (mSearchCriteria == null || !TextUtils.equals(query, mQuery)) {
+                mQuery = query;
+                mSearchCriteria = new SearchCriteria(query);
             }
-
-            // sort here to ensure that filtering the list doesn't mess up the sorting
-            if (mComparator != null) {
-                Collections.sort(finalValues, mComparator);
-            }
-
-            return finalValues;
+            return mIndex.matches(id, mSearchCriteria, logLevelLimit);
         }
 
-        @SuppressWarnings("unchecked")
         @Override
         protected void publishResults(CharSequence constraint, FilterResults results) {
-            //noinspection unchecked
-
             //log.d("filtering: %s", constraint);
 
-
-            mObjects = (List<LogLine>) results.values;
-            if (results.count > 0) {
-                notifyDataSetChanged();
-            } else {
-                notifyDataSetChanged();
+            FilteredIds filtered = (FilteredIds) results.values;
+            synchronized (mLock) {
+                // lines added or dropped since the filtering started
+                mIndex.catchUp(filtered.ids, filtered.searchCriteria, filtered.logLevelLimit, filtered.lastId);
+                mFilteredIds = filtered.ids;
+                mFilteredCriteria = filtered.searchCriteria;
+                mFilteredLogLevelLimit = filtered.logLevelLimit;
+                mFilteredLastId = mStore.getLastId();
             }
+            notifyDataSetChanged();
+        }
+    }
+
+    private static class FilteredIds {
+        private final IdList ids;
+        private final long lastId;
+        private final SearchCriteria searchCriteria;
+        private final int logLevelLimit;
+
+        FilteredIds(IdList ids, long lastId, SearchCriteria searchCriteria, int logLevelLimit) {
+            this.ids = ids;
+            this.lastId = lastId;
+            this.searchCriteria = searchCriteria;
+            this.logLevelLimit = logLevelLimit;
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,413 @@
+package com.pluscubed.logcat.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded store of log lines, kept in columns instead of one {@link LogLine} per line.
+ * <p>
+ * Levels, pids, packed timestamps and flags are kept in primitive arrays, tags are interned and the
+ * messages are kept as UTF-8 in a ring of bytes. When the store is full, the oldest lines are
+ * dropped. Lines are addressed by ids which increase with each added line, so the id of a line does
+ * not change when older lines are dropped.
+ * <p>
+ * Not thread-safe.
+ */
+public class LogStore {
+
+    /**
+     * Bytes of the message ring per line at first, the ring grows up to {@link #MAX_BYTES_PER_LINE}
+     * when the messages are longer
+     */
+    private static final int INITIAL_BYTES_PER_LINE = 64;
+    private static final int MAX_BYTES_PER_LINE = 512;
+
+    private static final int TIMESTAMP_LENGTH = 18; // MM-dd HH:mm:ss.SSS
+    private static final long NO_TIMESTAMP = -1;
+
+    private static final byte FLAG_EXPANDED = 1;
+    private static final byte FLAG_HIGHLIGHTED = 2;
+    // the timestamp can't be packed, it is stored in front of the message and ends with 0
+    private static final byte FLAG_TIMESTAMP_TEXT = 4;
+
+    private int capacity;
+    private byte[] levels;
+    private int[] processIds;
+    private long[] timestamps;
+    private int[] tags;
+    private byte[] flags;
+    private long[] messageOffsets;
+    private int[] messageLengths;
+
+    private byte[] messages;
+    private long messageEnd;
+
+    private final List<String> tagNames = new ArrayList<>();
+    private final Map<String, Integer> tagIds = new HashMap<>();
+
+    private int head; // slot of the oldest line
+    private int size;
+    private long firstId;
+
+    public LogStore(int capacity) {
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        levels = new byte[this.capacity];
+        processIds = new int[this.capacity];
+        timestamps = new long[this.capacity];
+        tags = new int[this.capacity];
+        flags = new byte[this.capacity];
+        messageOffsets = new long[this.capacity];
+        messageLengths = new int[this.capacity];
+        messages = new byte[(int) Math.min(Integer.MAX_VALUE - 8, (long) this.capacity * INITIAL_BYTES_PER_LINE)];
+        messageEnd = 0;
+        head = 0;
+        size = 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Changes the maximum number of lines, keeping the newest lines
+     */
+    public void setCapacity(int capacity) {
+        capacity = Math.max(1, capacity);
+        if (capacity == this.capacity) {
+            return;
+        }
+        long lastId = getLastId();
+        int count = Math.min(size, capacity);
+        LogStore copy = new LogStore(capacity);
+        for (long id = lastId - count + 1; id <= lastId; id++) {
+            copy.add(getLine(id));
+        }
+        long newFirstId = lastId - count + 1;
+
+        this.capacity = copy.capacity;
+        levels = copy.levels;
+        processIds = copy.processIds;
+        timestamps = copy.timestamps;
+        tags = copy.tags;
+        flags = copy.flags;
+        messageOffsets = copy.messageOffsets;
+        messageLengths = copy.messageLengths;
+        messages = copy.messages;
+        messageEnd = copy.messageEnd;
+        head = copy.head;
+        size = copy.size;
+        firstId = newFirstId;
+        // the copy interned only the tags of the kept lines
+        tagNames.clear();
+        tagNames.addAll(copy.tagNames);
+        tagIds.clear();
+        tagIds.putAll(copy.tagIds);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return id of the oldest line, or the id the next line will get if the store is empty
+     */
+    public long getFirstId() {
+        return firstId;
+    }
+
+    /**
+     * @return id of the newest line, or {@link #getFirstId()} - 1 if the store is empty
+     */
+    public long getLastId() {
+        return firstId + size - 1;
+    }
+
+    public boolean contains(long id) {
+        return id >= firstId && id < firstId + size;
+    }
+
+    /**
+     * Adds a line, dropping the oldest lines if the store is full
+     *
+     * @return id of the line
+     */
+    public long add(LogLine logLine) {
+        if (size == capacity) {
+            removeOldest();
+        }
+
+        String timestamp = logLine.getTimestamp();
+        long packedTimestamp = timestamp == null ? NO_TIMESTAMP : packTimestamp(timestamp);
+        byte lineFlags = 0;
+        if (logLine.isExpanded()) {
+            lineFlags |= FLAG_EXPANDED;
+        }
+        if (logLine.isHighlighted()) {
+            lineFlags |= FLAG_HIGHLIGHTED;
+        }
+
+        byte[] bytes = logLine.getLogOutput() == null
+                ? new byte[0] : logLine.getLogOutput().getBytes(StandardCharsets.UTF_8);
+        if (packedTimestamp == NO_TIMESTAMP && timestamp != null) {
+            byte[] timestampBytes = timestamp.getBytes(StandardCharsets.UTF_8);
+            byte[] withTimestamp = new byte[timestampBytes.length + 1 + bytes.length];
+            System.arraycopy(timestampBytes, 0, withTimestamp, 0, timestampBytes.length);
+            System.arraycopy(bytes, 0, withTimestamp, timestampBytes.length + 1, bytes.length);
+            bytes = withTimestamp;
+            lineFlags |= FLAG_TIMESTAMP_TEXT;
+        }
+        long offset = writeMessage(bytes);
+
+        int slot = (head + size) % capacity;
+        levels[slot] = (byte) logLine.getLogLevel();
+        processIds[slot] = logLine.getProcessId();
+        timestamps[slot] = packedTimestamp;
+        tags[slot] = internTag(logLine.getTag());
+        flags[slot] = lineFlags;
+        messageOffsets[slot] = offset;
+        messageLengths[slot] = Math.min(bytes.length, messages.length);
+        size++;
+
+        if (logLine.store == null) {
+            logLine.store = this;
+            logLine.storeId = getLastId();
+        }
+        return getLastId();
+    }
+
+    public void clear() {
+        firstId += size;
+        head = 0;
+        size = 0;
+        messageEnd = 0;
+        tagNames.clear();
+        tagIds.clear();
+    }
+
+    /**
+     * @return a line backed by the store: changes of its expanded and highlighted state are written
+     * to the store
+     */
+    public LogLine getLine(long id) {
+        int slot = slot(id);
+        LogLine logLine = new LogLine();
+        logLine.setLogLevel(levels[slot]);
+        logLine.setProcessId(processIds[slot]);
+        logLine.setTag(getTag(id));
+        logLine.setTimestamp(getTimestamp(id));
+        logLine.setLogOutputUnscrubbed(getLogOutput(id));
+        logLine.setExpanded((flags[slot] & FLAG_EXPANDED) != 0);
+        logLine.setHighlighted((flags[slot] & FLAG_HIGHLIGHTED) != 0);
+        logLine.store = this;
+        logLine.storeId = id;
+        return logLine;
+    }
+
+    public int getLogLevel(long id) {
+        return levels[slot(id)];
+    }
+
+    public int getProcessId(long id) {
+        return processIds[slot(id)];
+    }
+
+    public String getTag(long id) {
+        int tag = tags[slot(id)];
+        return tag == -1 ? null : tagNames.get(tag);
+    }
+
+    public String getTimestamp(long id) {
+        int slot = slot(id);
+        if ((flags[slot] & FLAG_TIMESTAMP_TEXT) != 0) {
+            byte[] bytes = readMessage(slot);
+            int end = 0;
+            while (end < bytes.length && bytes[end] != 0) {
+                end++;
+            }
+            return new String(bytes, 0, end, StandardCharsets.UTF_8);
+        }
+        return timestamps[slot] == NO_TIMESTAMP ? null : unpackTimestamp(timestamps[slot]);
+    }
+
+    public String getLogOutput(long id) {
+        int slot = slot(id);
+        byte[] bytes = readMessage(slot);
+        int start = 0;
+        if ((flags[slot] & FLAG_TIMESTAMP_TEXT) != 0) {
+            while (start < bytes.length && bytes[start] != 0) {
+                start++;
+            }
+            start = Math.min(start + 1, bytes.length);
+        }
+        return new String(bytes, start, bytes.length - start, StandardCharsets.UTF_8);
+    }
+
+    public boolean isExpanded(long id) {
+        return (flags[slot(id)] & FLAG_EXPANDED) != 0;
+    }
+
+    public void setExpanded(long id, boolean expanded) {
+        setFlag(id, FLAG_EXPANDED, expanded);
+    }
+
+    /**
+     * Expands or collapses all lines of the store
+     */
+    public void setExpandedAll(boolean expanded) {
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % capacity;
+            flags[slot] = (byte) (expanded ? flags[slot] | FLAG_EXPANDED : flags[slot] & ~FLAG_EXPANDED);
+        }
+    }
+
+    public boolean isHighlighted(long id) {
+        return (flags[slot(id)] & FLAG_HIGHLIGHTED) != 0;
+    }
+
+    public void setHighlighted(long id, boolean highlighted) {
+        setFlag(id, FLAG_HIGHLIGHTED, highlighted);
+    }
+
+    private void setFlag(long id, byte flag, boolean value) {
+        if (!contains(id)) {
+            // the line was dropped
+            return;
+        }
+        int slot = slot(id);
+        flags[slot] = (byte) (value ? flags[slot] | flag : flags[slot] & ~flag);
+    }
+
+    private int slot(long id) {
+        if (!contains(id)) {
+            throw new IndexOutOfBoundsException("Line " + id + " not in " + firstId + ".." + getLastId());
+        }
+        return (int) ((head + (id - firstId)) % capacity);
+    }
+
+    private void removeOldest() {
+        head = (head + 1) % capacity;
+        size--;
+        firstId++;
+    }
+
+    private int internTag(String tag) {
+        if (tag == null) {
+            return -1;
+        }
+        Integer id = tagIds.get(tag);
+        if (id == null) {
+            id = tagNames.size();
+            tagNames.add(tag);
+            tagIds.put(tag, id);
+        }
+        return id;
+    }
+
+    /**
+     * Writes the bytes of a message to the ring, growing the ring or dropping the oldest lines to
+     * make room
+     *
+     * @return offset of the message
+     */
+    private long writeMessage(byte[] bytes) {
+        int length = bytes.length;
+        while ((size > 0 ? messageEnd - messageOffsets[head] : 0) + length > messages.length) {
+            if ((long) messages.length * 2 <= (long) capacity * MAX_BYTES_PER_LINE) {
+                growMessages();
+            } else if (size > 0) {
+                removeOldest();
+            } else {
+                break;
+            }
+        }
+        // a message longer than the ring is cut
+        length = Math.min(length, messages.length);
+
+        long offset = messageEnd;
+        int position = (int) (offset % messages.length);
+        int first = Math.min(length, messages.length - position);
+        System.arraycopy(bytes, 0, messages, position, first);
+        System.arraycopy(bytes, first, messages, 0, length - first);
+        messageEnd += length;
+        return offset;
+    }
+
+    private void growMessages() {
+        byte[] grown = new byte[messages.length * 2];
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % capacity;
+            long offset = messageOffsets[slot];
+            for (int j = 0; j < messageLengths[slot]; j++) {
+                grown[(int) ((offset + j) % grown.length)] = messages[(int) ((offset + j) % messages.length)];
+            }
+        }
+        messages = grown;
+    }
+
+    private byte[] readMessage(int slot) {
+        int length = messageLengths[slot];
+        byte[] bytes = new byte[length];
+        int position = (int) (messageOffsets[slot] % messages.length);
+        int first = Math.min(length, messages.length - position);
+        System.arraycopy(messages, position, bytes, 0, first);
+        System.arraycopy(messages, 0, bytes, first, length - first);
+        return bytes;
+    }
+
+    /**
+     * Packs the digits of a timestamp like 01-23 12:34:56.789 into a long
+     *
+     * @return the packed timestamp, or {@link #NO_TIMESTAMP} if the timestamp has another format
+     */
+    static long packTimestamp(String timestamp) {
+        if (timestamp.length() != TIMESTAMP_LENGTH
+                || timestamp.charAt(2) != '-' || timestamp.charAt(5) != ' ' || timestamp.charAt(8) != ':'
+                || timestamp.charAt(11) != ':' || timestamp.charAt(14) != '.') {
+            return NO_TIMESTAMP;
+        }
+        long packed = 0;
+        for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+            if (i == 2 || i == 5 || i == 8 || i == 11 || i == 14) {
+                continue;
+            }
+            char c = timestamp.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_TIMESTAMP;
+            }
+            packed = packed * 10 + (c - '0');
+        }
+        return packed;
+    }
+
+    static String unpackTimestamp(long packed) {
+        char[] chars = new char[TIMESTAMP_LENGTH];
+        for (int i = TIMESTAMP_LENGTH - 1; i >= 0; i--) {
+            switch (i) {
+                case 2:
+                    chars[i] = '-';
+                    break;
+                case 5:
+                    chars[i] = ' ';
+                    break;
+                case 8:
+                case 11:
+                    chars[i] = ':';
+                    break;
+                case 14:
+                    chars[i] = '.';
+                    break;
+                default:
+                    chars[i] = (char) ('0' + packed % 10);
+                    packed /= 10;
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -1,7 +1,5 @@
 package com.pluscubed.logcat.data;
 
-import android.text.TextUtils;
-
 import com.pluscubed.logcat.util.StringUtil;
 
 import java.util.regex.Matcher;
@@ -62,35 +60,72 @@ public class SearchCriteria {
     }
 
     public boolean isEmpty() {
-        return pid == -1 && TextUtils.isEmpty(tag) && TextUtils.isEmpty(searchText);
+        return pid == -1 && StringUtil.isEmpty(tag) && StringUtil.isEmpty(searchText);
     }
 
-    public boolean matches(LogLine logLine) {
+    public int getPid() {
+        return pid;
+    }
 
-        // consider the criteria to be ANDed
-        if (!checkFoundPid(logLine)) {
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return true if every line matching these criteria matches the other criteria, e.g. when the
+     * query was extended, so only the lines matching the other criteria need to be searched
+     */
+    public boolean isNarrowerThan(SearchCriteria other) {
+        if (other.pid != -1 && other.pid != pid) {
             return false;
         }
-        if (!checkFoundTag(logLine)) {
+        if (!StringUtil.isEmpty(other.tag) && !StringUtil.containsIgnoreCase(tag, other.tag)) {
             return false;
         }
-        return checkFoundText(logLine);
+        // a number also matches the pid, which the other text does not match
+        return StringUtil.isEmpty(other.searchText)
+                || (StringUtil.containsIgnoreCase(searchText, other.searchText)
+                && (searchTextAsInt == -1 || searchTextAsInt == other.searchTextAsInt));
     }
 
-    private boolean checkFoundText(LogLine logLine) {
-        return TextUtils.isEmpty(searchText)
-                || (searchTextAsInt != -1 && searchTextAsInt == logLine.getProcessId())
-                || (logLine.getTag() != null && StringUtil.containsIgnoreCase(logLine.getTag(), searchText))
-                || (logLine.getLogOutput() != null && StringUtil.containsIgnoreCase(logLine.getLogOutput(), searchText));
+    public boolean matches(LogLine logLine) {
+        return matches(logLine.getProcessId(), logLine.getTag(), logLine.getLogOutput(), null, 0);
+    }
+
+    /**
+     * Matches a line of a store, the message is only decoded if the pid and tag match
+     */
+    public boolean matches(LogStore store, long id) {
+        return matches(store.getProcessId(id), store.getTag(id), null, store, id);
+    }
+
+    private boolean matches(int processId, String lineTag, String logOutput, LogStore store, long id) {
+
+        // consider the criteria to be ANDed
+        if (!checkFoundPid(processId)) {
+            return false;
+        }
+        if (!checkFoundTag(lineTag)) {
+            return false;
+        }
+        if (StringUtil.isEmpty(searchText)
+                || (searchTextAsInt != -1 && searchTextAsInt == processId)
+                || (lineTag != null && StringUtil.containsIgnoreCase(lineTag, searchText))) {
+            return true;
+        }
+        if (logOutput == null && store != null) {
+            logOutput = store.getLogOutput(id);
+        }
+        return logOutput != null && StringUtil.containsIgnoreCase(logOutput, searchText);
     }
 
-    private boolean checkFoundTag(LogLine logLine) {
-        return TextUtils.isEmpty(tag)
-                || (logLine.getTag() != null && StringUtil.containsIgnoreCase(logLine.getTag(), tag));
+    private boolean checkFoundTag(String lineTag) {
+        return StringUtil.isEmpty(tag)
+                || (lineTag != null && StringUtil.containsIgnoreCase(lineTag, tag));
     }
 
-    private boolean checkFoundPid(LogLine logLine) {
-        return pid == -1 || logLine.getProcessId() == pid;
+    private boolean checkFoundPid(int processId) {
+        return pid == -1 || processId == pid;
     }
 
 }
@@ -1,8 +1,12 @@
 package com.pluscubed.logcat.reader;
 
+import android.text.TextUtils;
 
 public abstract class AbsLogcatReader implements LogcatReader {
 
+    // lines returned by readLines() at most
+    protected static final int MAX_LINES_PER_READ = 500;
+
     protected boolean recordingMode;
 
     public AbsLogcatReader(boolean recordingMode) {
@@ -12,4 +16,9 @@ public abstract class AbsLogcatReader implements LogcatReader {
     public boolean isRecordingMode() {
         return recordingMode;
     }
+
+    protected static boolean isDatedLogLine(String line) {
+        // 18 is the size of the logcat timestamp
+        return (!TextUtils.isEmpty(line) && line.length() >= 18 && Character.isDigit(line.charAt(0)));
+    }
 }
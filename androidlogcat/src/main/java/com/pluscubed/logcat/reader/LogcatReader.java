@@ -13,6 +13,16 @@ public interface LogcatReader {
      */
     String readLine() throws IOException;
 
+    /**
+     * Read the log lines which are available, waiting for at least one, so they can be handled
+     * in batches instead of one at a time. A batch ends with the line after which the reader is
+     * {@link #readyToRecord() ready to record}.
+     *
+     * @return the lines, or null at the end of the log
+     * @throws IOException
+     */
+    List<String> readLines() throws IOException;
+
     /**
      * Kill the reader and close all resources without throwing any exceptions.
      */
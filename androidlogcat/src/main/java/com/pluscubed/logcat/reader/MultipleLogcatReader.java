@@ -6,6 +6,8 @@ import com.pluscubed.logcat.util.UtilLogger;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -15,53 +17,211 @@ import java.util.concurrent.BlockingQueue;
 
 /**
  * Combines multipe buffered readers into a single reader that merges all input synchronously.
+ * <p>
+ * Each buffer is read on its own thread in batches of lines. A read takes the batches of all
+ * buffers which are available and merges them by timestamp.
  *
  * @author nolan
  */
 public class MultipleLogcatReader extends AbsLogcatReader {
 
-    private static final String DUMMY_NULL = "";
+    // batches read ahead of the reader, per buffer
+    private static final int MAX_QUEUED_BATCHES = 16;
+    private static final Batch KILLED = new Batch(null, null, false);
     private static UtilLogger log = new UtilLogger(MultipleLogcatReader.class);
     private List<ReaderThread> readerThreads = new LinkedList<ReaderThread>();
-    private BlockingQueue<String> queue = new ArrayBlockingQueue<String>(1);
+    private BlockingQueue<Batch> queue;
+    private int runningThreads;
+    private boolean killed;
+
+    // lines of the last read, for readLine()
+    private List<String> lines = Collections.emptyList();
+    private int position;
+    // position in the lines from which all readers are ready to record
+    private int readyPosition;
 
     public MultipleLogcatReader(boolean recordingMode,
                                 Map<String, String> lastLines) throws IOException {
+        this(recordingMode, createReaders(recordingMode, lastLines));
+    }
+
+    MultipleLogcatReader(boolean recordingMode, List<? extends LogcatReader> readers) {
         super(recordingMode);
+        queue = new ArrayBlockingQueue<Batch>(MAX_QUEUED_BATCHES * readers.size() + 1);
+        for (LogcatReader reader : readers) {
+            readerThreads.add(new ReaderThread(reader));
+        }
+        runningThreads = readerThreads.size();
+        readyPosition = allReadyToRecord() ? 0 : Integer.MAX_VALUE;
+        for (ReaderThread readerThread : readerThreads) {
+            readerThread.start();
+        }
+    }
+
+    private static List<LogcatReader> createReaders(boolean recordingMode,
+                                                    Map<String, String> lastLines) throws IOException {
         // read from all three buffers at once
+        List<LogcatReader> readers = new ArrayList<LogcatReader>();
         for (Entry<String, String> entry : lastLines.entrySet()) {
             String logBuffer = entry.getKey();
             String lastLine = entry.getValue();
-            ReaderThread readerThread = new ReaderThread(logBuffer, lastLine);
-            readerThread.start();
-            readerThreads.add(readerThread);
+            readers.add(new SingleLogcatReader(recordingMode, logBuffer, lastLine));
         }
+        return readers;
     }
 
     public String readLine() throws IOException {
+        if (position == lines.size() && !read()) {
+            return null;
+        }
+        return lines.get(position++);
+    }
 
+    @Override
+    public List<String> readLines() throws IOException {
+        if (position == lines.size() && !read()) {
+            return null;
+        }
+        List<String> result = position == 0 ? lines : new ArrayList<String>(lines.subList(position, lines.size()));
+        position = lines.size();
+        return result;
+    }
+
+    /**
+     * Waits for a batch, and merges it with the other batches which are available into
+     * {@link #lines}
+     *
+     * @return false at the end of the log
+     */
+    private boolean read() {
+        List<Batch> batches = new ArrayList<Batch>();
         try {
-            String value = queue.take();
-            if (!value.equals(DUMMY_NULL)) {
-                return value;
+            while (batches.isEmpty()) {
+                if (killed || runningThreads == 0) {
+                    return false;
+                }
+                batches.add(queue.take());
+                queue.drainTo(batches);
+
+                for (int i = batches.size() - 1; i >= 0; i--) {
+                    Batch batch = batches.get(i);
+                    if (batch == KILLED) {
+                        killed = true;
+                        return false;
+                    } else if (batch.lines == null) {
+                        runningThreads--;
+                        batches.remove(i);
+                    }
+                }
             }
         } catch (InterruptedException e) {
             log.d(e, "");
+            return false;
         }
-        return null;
+        lines = merge(batches);
+        position = 0;
+        return true;
     }
 
+    /**
+     * Merges batches by the timestamps of the lines, the lines of each buffer keep their order.
+     * Also sets the {@link #readyPosition} of the merged lines.
+     */
+    private List<String> merge(List<Batch> batches) {
+        Map<ReaderThread, List<String>> linesByThread = new LinkedHashMap<ReaderThread, List<String>>();
+        boolean wasReady = allReadyToRecord();
+        int total = 0;
+        for (Batch batch : batches) {
+            List<String> threadLines = linesByThread.get(batch.thread);
+            if (threadLines == null) {
+                threadLines = new ArrayList<String>();
+                linesByThread.put(batch.thread, threadLines);
+            }
+            threadLines.addAll(batch.lines);
+            total += batch.lines.size();
+            if (!batch.thread.readyToRecord && batch.readyToRecord) {
+                // ready after the last line of this batch
+                batch.thread.readyToRecord = true;
+                batch.thread.readyAfter = threadLines.size();
+            }
+        }
+
+        int count = linesByThread.size();
+        @SuppressWarnings("unchecked")
+        List<String>[] sources = linesByThread.values().toArray(new List[count]);
+        ReaderThread[] threads = linesByThread.keySet().toArray(new ReaderThread[count]);
+        int[] positions = new int[count];
+        int waitingThreads = 0;
+        for (ReaderThread thread : readerThreads) {
+            if (thread.readyAfter > 0) {
+                waitingThreads++;
+            }
+        }
 
-    @Override
-    public boolean readyToRecord() {
+        List<String> result = new ArrayList<String>(total);
+        readyPosition = wasReady ? 0 : Integer.MAX_VALUE;
+        while (result.size() < total) {
+            int next = -1;
+            String nextTimestamp = null;
+            for (int i = 0; i < count; i++) {
+                if (positions[i] == sources[i].size()) {
+                    continue;
+                }
+                String line = sources[i].get(positions[i]);
+                String timestamp = isDatedLogLine(line) ? line : threads[i].lastDatedLine;
+                if (next == -1 || compareTimestamps(timestamp, nextTimestamp) < 0) {
+                    next = i;
+                    nextTimestamp = timestamp;
+                }
+            }
+            String line = sources[next].get(positions[next]++);
+            if (isDatedLogLine(line)) {
+                threads[next].lastDatedLine = line;
+            }
+            result.add(line);
+
+            if (positions[next] == threads[next].readyAfter) {
+                threads[next].readyAfter = 0;
+                if (--waitingThreads == 0 && allReadyToRecord()) {
+                    readyPosition = result.size();
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int compareTimestamps(String line, String otherLine) {
+        if (line == null || otherLine == null) {
+            // lines before the first dated line come first
+            return line == null ? (otherLine == null ? 0 : -1) : 1;
+        }
+        // the timestamps have the same format, so comparing them as strings orders them by time
+        for (int i = 0; i < 18; i++) {
+            int difference = line.charAt(i) - otherLine.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return true if all readers are ready to record after the lines read so far
+     */
+    private boolean allReadyToRecord() {
         for (ReaderThread thread : readerThreads) {
-            if (!thread.reader.readyToRecord()) {
+            if (!thread.readyToRecord) {
                 return false;
             }
         }
         return true;
     }
 
+    @Override
+    public boolean readyToRecord() {
+        return position >= readyPosition;
+    }
+
     @Override
     public void killQuietly() {
         for (ReaderThread thread : readerThreads) {
@@ -76,7 +236,8 @@ public class MultipleLogcatReader extends AbsLogcatReader {
                 for (ReaderThread thread : readerThreads) {
                     thread.reader.killQuietly();
                 }
-                queue.offer(DUMMY_NULL);
+                queue.clear();
+                queue.offer(KILLED);
                 return null;
             }
         }.execute((Void) null);
@@ -92,27 +253,56 @@ public class MultipleLogcatReader extends AbsLogcatReader {
         return result;
     }
 
+    private static class Batch {
+        final ReaderThread thread;
+        // null when the thread ended
+        final List<String> lines;
+        final boolean readyToRecord;
+
+        Batch(ReaderThread thread, List<String> lines, boolean readyToRecord) {
+            this.thread = thread;
+            this.lines = lines;
+            this.readyToRecord = readyToRecord;
+        }
+    }
+
     private class ReaderThread extends Thread {
 
-        SingleLogcatReader reader;
+        LogcatReader reader;
 
-        private boolean killed;
+        private volatile boolean killed;
 
-        public ReaderThread(String logBuffer, String lastLine) throws IOException {
-            this.reader = new SingleLogcatReader(recordingMode, logBuffer, lastLine);
+        // whether the reader is ready to record after the lines merged so far, and the number of
+        // lines of the current merge after which it became ready; used by the thread reading
+        // from the MultipleLogcatReader only
+        private boolean readyToRecord;
+        private int readyAfter;
+        // orders the undated lines following it
+        private String lastDatedLine;
+
+        public ReaderThread(LogcatReader reader) {
+            this.reader = reader;
+            this.readyToRecord = reader.readyToRecord();
         }
 
         @Override
         public void run() {
-            String line;
+            List<String> lines;
 
             try {
-                while (!killed && (line = reader.readLine()) != null && !killed) {
-                    queue.put(line);
+                while (!killed && (lines = reader.readLines()) != null && !killed) {
+                    queue.put(new Batch(this, lines, reader.readyToRecord()));
                 }
             } catch (IOException | InterruptedException e) {
                 log.d(e, "exception");
             }
+            try {
+                if (!killed) {
+                    queue.put(new Batch(this, null, false));
+                }
+            } catch (InterruptedException e) {
+                log.d(e, "exception");
+            }
             log.d("thread died");
         }
     }
@@ -31,22 +31,140 @@ public class ScrubberUtils {
     private static final String IGNORE_DATA_DALVIK_CACHE = "/data/dalvik-cache";
     private static final String IGNORE_CACHE_DALVIK_CACHE = "/cache/dalvik-cache";
 
+    // what a single scan of a line found, each pattern can only match if its part is found
+    private static final int HAS_CACHE = 1; // "-cache", for the ignored paths
+    private static final int ONLY_IP_CHARACTERS = 1 << 1; // digits and dots, for the ip address
+    private static final int HAS_AT = 1 << 2; // '@' or "%40", for the email
+    private static final int HAS_PHONE_ENDS = 1 << 3; // starts with a digit, '+' or '(', and ends with a digit
+    private static final int HAS_SCHEME = 1 << 4; // "://", for the web url
+    private static final int HAS_EQUALS = 1 << 5; // '=' or ": ", for the phone and account info
+    private static final int HAS_BRACE = 1 << 6; // '{', for the user and account info
+    static final int ALL = (1 << 7) - 1;
+
     public static String scrubLine(String line) {
-        if (line.contains(IGNORE_DATA_RESOURCE_CACHE)
+        return scrubLine(line, scan(line));
+    }
+
+    /**
+     * Scrubs a line with all patterns, whether or not the line has the parts they need
+     */
+    static String scrubLineWithAllPatterns(String line) {
+        return scrubLine(line, ALL);
+    }
+
+    private static String scrubLine(String line, int found) {
+        if ((found & HAS_CACHE) != 0
+                && (line.contains(IGNORE_DATA_RESOURCE_CACHE)
                 || line.contains(IGNORE_DATA_DALVIK_CACHE)
-                || line.contains(IGNORE_CACHE_DALVIK_CACHE)) {
+                || line.contains(IGNORE_CACHE_DALVIK_CACHE))) {
             // ugly work around :/
             return line;
         }
-        line = IP_ADDRESS_PATTERN.matcher(line).replaceAll("<IP address omitted>");
-        line = EMAIL_PATTERN.matcher(line).replaceAll("<email omitted>");
-        line = PHONE_NUMBER_PATTERN.matcher(line).replaceAll("<phone number omitted>");
-        line = WEB_URL_PATTERN.matcher(line).replaceAll("<web url omitted>");
-        line = PHONE_INFO_PATTERN.matcher(line).replaceAll("<omitted>");
-        line = USER_INFO_PATTERN.matcher(line).replaceAll("<omitted>");
-        line = ACCOUNT_INFO_PATTERN.matcher(line).replaceAll("<omitted>");
+        // the replacements contain none of the parts scanned for, so a pattern that could not
+        // match the line can not match after the replacements of the patterns before it
+        if ((found & ONLY_IP_CHARACTERS) != 0) {
+            line = IP_ADDRESS_PATTERN.matcher(line).replaceAll("<IP address omitted>");
+        }
+        if ((found & HAS_AT) != 0) {
+            line = EMAIL_PATTERN.matcher(line).replaceAll("<email omitted>");
+        }
+        if ((found & HAS_PHONE_ENDS) != 0 && hasPhoneNumberEnds(line)) {
+            line = PHONE_NUMBER_PATTERN.matcher(line).replaceAll("<phone number omitted>");
+        }
+        if ((found & HAS_SCHEME) != 0) {
+            line = WEB_URL_PATTERN.matcher(line).replaceAll("<web url omitted>");
+        }
+        if ((found & HAS_EQUALS) != 0) {
+            line = PHONE_INFO_PATTERN.matcher(line).replaceAll("<omitted>");
+        }
+        if ((found & HAS_BRACE) != 0) {
+            line = USER_INFO_PATTERN.matcher(line).replaceAll("<omitted>");
+            if ((found & HAS_EQUALS) != 0) {
+                line = ACCOUNT_INFO_PATTERN.matcher(line).replaceAll("<omitted>");
+            }
+        }
 
         return line;
     }
 
-}
\ No newline at end of file
+    /**
+     * Finds the parts of a line the patterns need in one pass
+     */
+    private static int scan(String line) {
+        int length = line.length();
+        int end = getContentEnd(line);
+        // an ip address of the whole line, like 1.2.3.4 up to 255.255.255.255
+        int found = end >= 7 && end <= 15 ? ONLY_IP_CHARACTERS : 0;
+        if (hasPhoneNumberEnds(line)) {
+            found |= HAS_PHONE_ENDS;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if ((c < '0' || c > '9') && c != '.' && i < end) {
+                found &= ~ONLY_IP_CHARACTERS;
+            }
+            switch (c) {
+                case '@':
+                    found |= HAS_AT;
+                    break;
+                case '%':
+                    if (line.startsWith("40", i + 1)) {
+                        found |= HAS_AT;
+                    }
+                    break;
+                case ':':
+                    if (line.startsWith("//", i + 1)) {
+                        found |= HAS_SCHEME;
+                    } else if (i + 1 < length && line.charAt(i + 1) == ' ') {
+                        found |= HAS_EQUALS;
+                    }
+                    break;
+                case '=':
+                    found |= HAS_EQUALS;
+                    break;
+                case '{':
+                    found |= HAS_BRACE;
+                    break;
+                case '-':
+                    if (line.startsWith("cache", i + 1)) {
+                        found |= HAS_CACHE;
+                    }
+                    break;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return false if the line can't be a phone number, which starts with a digit, '+' or '('
+     * and ends with a digit
+     */
+    private static boolean hasPhoneNumberEnds(String line) {
+        int end = getContentEnd(line);
+        if (end == 0) {
+            return false;
+        }
+        char first = line.charAt(0);
+        char last = line.charAt(end - 1);
+        return (Character.isDigit(first) || first == '+' || first == '(') && Character.isDigit(last);
+    }
+
+    /**
+     * @return the length of the line without a final line terminator, which '$' of the anchored
+     * patterns matches before
+     */
+    private static int getContentEnd(String line) {
+        int end = line.length();
+        if (line.endsWith("\r\n")) {
+            return end - 2;
+        }
+        if (end > 0) {
+            char last = line.charAt(end - 1);
+            if (last == '\n' || last == '\r' || last == '\u0085' || last == '\u2028' || last == '\u2029') {
+                return end - 1;
+            }
+        }
+        return end;
+    }
+
+}
@@ -1,7 +1,5 @@
 package com.pluscubed.logcat.reader;
 
-import android.text.TextUtils;
-
 import com.pluscubed.logcat.helper.LogcatHelper;
 import com.pluscubed.logcat.helper.RuntimeHelper;
 import com.pluscubed.logcat.helper.VersionHelper;
@@ -10,6 +8,7 @@ import com.pluscubed.logcat.util.UtilLogger;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -76,6 +75,24 @@ public class SingleLogcatReader extends AbsLogcatReader {
 
     }
 
+    @Override
+    public List<String> readLines() throws IOException {
+        boolean ready = readyToRecord();
+        String line = readLine();
+        if (line == null) {
+            return null;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(line);
+
+        // take the lines logcat already wrote without waiting for more
+        while (lines.size() < MAX_LINES_PER_READ && ready == readyToRecord() && bufferedReader.ready()
+                && (line = readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
     private boolean isAfterLastTime(String line) {
         // doing a string comparison is sufficient to determine whether this line is chronologically
         // after the last line, because the format they use is exactly the same and
@@ -84,11 +101,6 @@ public class SingleLogcatReader extends AbsLogcatReader {
 
     }
 
-    private boolean isDatedLogLine(String line) {
-        // 18 is the size of the logcat timestamp
-        return (!TextUtils.isEmpty(line) && line.length() >= 18 && Character.isDigit(line.charAt(0)));
-    }
-
 
     @Override
     public boolean readyToRecord() {
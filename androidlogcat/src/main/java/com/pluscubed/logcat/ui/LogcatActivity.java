@@ -101,9 +101,6 @@ public class LogcatActivity extends AppCompatActivity implements FilterListener,
 
     private static final int REQUEST_CODE_SETTINGS = 1;
 
-    // how often to check to see if we've gone over the max size
-    private static final int UPDATE_CHECK_INTERVAL = 200;
-
     // how many suggestions to keep in the autosuggestions text
     private static final int MAX_NUM_SUGGESTIONS = 1000;
 
@@ -399,6 +396,7 @@ public class LogcatActivity extends AppCompatActivity implements FilterListener,
         PreferenceHelper.clearCache();
 
         mCollapsedMode = !PreferenceHelper.getExpandedByDefaultPreference(getApplicationContext());
+        mLogListAdapter.setCapacity(PreferenceHelper.getDisplayLimitPreference(this));
 
 
         if (requestCode == REQUEST_CODE_SETTINGS && resultCode == RESULT_OK) {
@@ -975,11 +973,7 @@ public class LogcatActivity extends AppCompatActivity implements FilterListener,
 
         int oldFirstVisibleItem = ((LinearLayoutManager) binding.list.getLayoutManager()).findFirstVisibleItemPosition();
 
-        for (LogLine logLine : mLogListAdapter.getTrueValues()) {
-            if (logLine != null) {
-                logLine.setExpanded(!mCollapsedMode);
-            }
-        }
+        mLogListAdapter.setExpandedAll(!mCollapsedMode);
 
         mLogListAdapter.notifyDataSetChanged();
 
@@ -1320,13 +1314,13 @@ public class LogcatActivity extends AppCompatActivity implements FilterListener,
         boolean foundLast = false;
         for (int i = 0; i < mLogListAdapter.getItemCount(); i++) {
             LogLine logLine = mLogListAdapter.getItem(i);
-            if (logLine == first) {
+            if (logLine.equals(first)) {
                 started = true;
             }
             if (started) {
                 logLines.add(logLine.getOriginalLine());
             }
-            if (logLine == last) {
+            if (logLine.equals(last)) {
                 foundLast = true;
                 break;
             }
@@ -1578,7 +1572,8 @@ public class LogcatActivity extends AppCompatActivity implements FilterListener,
 
     private void setUpAdapter() {
 
-        mLogListAdapter = new LogLineAdapter();
+        // how many logs to keep in memory?  the adapter drops the oldest lines to avoid OutOfMemoryErrors
+        mLogListAdapter = new LogLineAdapter(PreferenceHelper.getDisplayLimitPreference(this));
         mLogListAdapter.setClickListener(this);
 
         binding.list.setAdapter(mLogListAdapter);
@@ -1780,7 +1775,6 @@ public class LogcatActivity extends AppCompatActivity implements FilterListener,
     private class LogReaderAsyncTask extends AsyncTask<Void, LogLine, Void> {
 
         private final Object mLock = new Object();
-        private int counter = 0;
         private volatile boolean mPaused;
         private boolean mFirstLineReceived;
         private boolean mKilled;
@@ -1809,9 +1803,10 @@ public class LogcatActivity extends AppCompatActivity implements FilterListener,
 
                 int maxLines = PreferenceHelper.getDisplayLimitPreference(LogcatActivity.this);
 
-                String line;
+                // the lines are read and published in batches, rather than one at a time
+                List<String> lines;
                 LinkedList<LogLine> initialLines = new LinkedList<>();
-                while ((line = mReader.readLine()) != null) {
+                while ((lines = mReader.readLines()) != null) {
                     if (mPaused) {
                         synchronized (mLock) {
                             if (mPaused) {
@@ -1819,21 +1814,24 @@ public class LogcatActivity extends AppCompatActivity implements FilterListener,
                             }
                         }
                     }
-                    LogLine logLine = LogLine.newLogLine(line, !mCollapsedMode);
+                    LogLine[] logLines = new LogLine[lines.size()];
+                    for (int i = 0; i < logLines.length; i++) {
+                        logLines[i] = LogLine.newLogLine(lines.get(i), !mCollapsedMode);
+                    }
                     if (!mReader.readyToRecord()) {
                         // "ready to record" in this case means all the initial lines have been flushed from the reader
-                        initialLines.add(logLine);
-                        if (initialLines.size() > maxLines) {
+                        Collections.addAll(initialLines, logLines);
+                        while (initialLines.size() > maxLines) {
                             initialLines.removeFirst();
                         }
                     } else if (!initialLines.isEmpty()) {
                         // flush all the initial lines we've loaded
-                        initialLines.add(logLine);
+                        Collections.addAll(initialLines, logLines);
                         publishProgress(ArrayUtil.toArray(initialLines, LogLine.class));
                         initialLines.clear();
                     } else {
                         // just proceed as normal
-                        publishProgress(logLine);
+                        publishProgress(logLines);
                     }
                 }
             } catch (InterruptedException e) {
@@ -1881,17 +1879,6 @@ public class LogcatActivity extends AppCompatActivity implements FilterListener,
                 addToAutocompleteSuggestions(logLine);
             }
 
-            // how many logs to keep in memory?  this avoids OutOfMemoryErrors
-            int maxNumLogLines = PreferenceHelper.getDisplayLimitPreference(LogcatActivity.this);
-
-            // check to see if the list needs to be truncated to avoid out of memory errors
-            if (++counter % UPDATE_CHECK_INTERVAL == 0
-                    && mLogListAdapter.getTrueValues().size() > maxNumLogLines) {
-                int numItemsToRemove = mLogListAdapter.getTrueValues().size() - maxNumLogLines;
-                mLogListAdapter.removeFirst(numItemsToRemove);
-                log.d("truncating %d lines from log list to avoid out of memory errors", numItemsToRemove);
-            }
-
             if (mAutoscrollToBottom) {
                 scrollToBottom();
             }
@@ -189,6 +189,14 @@ public class StringUtil {
         return str == null ? "" : str.toString();
     }
 
+    /**
+     * same as TextUtils.isEmpty, but also usable in local unit tests, where the framework
+     * methods are stubs
+     */
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+
     public static boolean isEmptyOrWhitespaceOnly(String str) {
         if (TextUtils.isEmpty(str)) {
             return true;
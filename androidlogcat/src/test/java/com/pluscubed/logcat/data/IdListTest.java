@@ -0,0 +1,103 @@
+package com.pluscubed.logcat.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IdListTest {
+
+    private static IdList newIdList(long from, long to, long step) {
+        IdList list = new IdList();
+        for (long id = from; id < to; id += step) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() {
+        IdList list = newIdList(0, 10000, 1);
+        assertEquals(10000, list.size());
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(i, list.get(i));
+        }
+    }
+
+    @Test
+    public void removeBeforeDropsIdsFromTheFront() {
+        IdList list = newIdList(0, 100, 2);
+        assertEquals(0, list.removeBefore(-5));
+        assertEquals(10, list.removeBefore(19));
+        assertEquals(40, list.size());
+        assertEquals(20, list.get(0));
+        assertEquals(0, list.removeBefore(20));
+        assertEquals(40, list.removeBefore(1000));
+        assertTrue(list.isEmpty());
+    }
+
+    @Test
+    public void growsAfterIdsWereRemoved() {
+        // the ids are moved to the front instead of growing while at most half of the array is used
+        IdList list = newIdList(0, 16, 1);
+        list.removeBefore(12);
+        for (long id = 16; id < 20; id++) {
+            list.add(id);
+        }
+        assertEquals(8, list.size());
+        for (long id = 20; id < 5000; id++) {
+            list.add(id);
+            if (id % 100 == 0) {
+                list.removeBefore(id - 50);
+            }
+        }
+        // the last removal was at id 4900
+        long expected = 4850;
+        assertEquals(5000 - expected, list.size());
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(expected + i, list.get(i));
+        }
+    }
+
+    @Test
+    public void toArrayIncludesBothEnds() {
+        IdList list = newIdList(10, 30, 2);
+        assertArrayEquals(new long[]{14, 16, 18}, list.toArray(14, 18));
+        assertArrayEquals(new long[]{14, 16, 18}, list.toArray(13, 19));
+        assertArrayEquals(new long[]{10, 12}, list.toArray(Long.MIN_VALUE, 12));
+        assertArrayEquals(new long[]{26, 28}, list.toArray(25, Long.MAX_VALUE));
+        assertArrayEquals(new long[0], list.toArray(15, 15));
+        assertArrayEquals(new long[0], list.toArray(20, 10));
+
+        list.removeBefore(20);
+        assertArrayEquals(new long[]{20, 22}, list.toArray(0, 23));
+    }
+
+    @Test
+    public void clearKeepsTheListUsable() {
+        IdList list = newIdList(0, 100, 1);
+        list.clear();
+        assertTrue(list.isEmpty());
+        list.add(200);
+        assertEquals(1, list.size());
+        assertEquals(200, list.get(0));
+    }
+
+    @Test
+    public void getChecksTheIndex() {
+        IdList list = newIdList(0, 10, 1);
+        list.removeBefore(5);
+        try {
+            list.get(5);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            list.get(-1);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+}
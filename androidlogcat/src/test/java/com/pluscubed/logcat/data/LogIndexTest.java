@@ -0,0 +1,190 @@
+package com.pluscubed.logcat.data;
+
+import android.util.Log;
+
+import com.pluscubed.logcat.util.LogLineAdapterUtil;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the results of {@link LogIndex} with filtering every line of the store
+ */
+public class LogIndexTest {
+
+    private static final int[] LEVELS = {Log.VERBOSE, Log.DEBUG, Log.INFO, Log.WARN, Log.ERROR, -1};
+    private static final String[] TAGS = {"ActivityManager", "dalvikvm", "MyApp", "MyAppService", "x"};
+
+    private final Object lock = new Object();
+    private final Random random = new Random(18);
+    private final List<LogLine> lines = new ArrayList<>();
+    private LogStore store;
+    private LogIndex index;
+
+    private void newStore(int capacity) {
+        store = new LogStore(capacity);
+        index = new LogIndex(store, lock);
+        lines.clear();
+    }
+
+    private void addLines(int count) {
+        for (int i = 0; i < count; i++) {
+            LogLine logLine = new LogLine();
+            logLine.setLogLevel(LEVELS[random.nextInt(LEVELS.length)]);
+            logLine.setProcessId(random.nextInt(4) == 0 ? 12 : 100 + random.nextInt(50));
+            logLine.setTag(TAGS[random.nextInt(TAGS.length)]);
+            StringBuilder output = new StringBuilder();
+            for (int j = random.nextInt(30); j > 0; j--) {
+                output.append("abc12 x".charAt(random.nextInt(7)));
+            }
+            logLine.setLogOutput(output.toString());
+            lines.add(logLine);
+            synchronized (lock) {
+                index.add(store.add(logLine));
+            }
+        }
+    }
+
+    /**
+     * @return ids of the lines of the store matching the query, found without the index
+     */
+    private long[] filterAll(String query, int logLevelLimit) {
+        SearchCriteria searchCriteria = new SearchCriteria(query);
+        IdList result = new IdList();
+        for (long id = store.getFirstId(); id <= store.getLastId(); id++) {
+            LogLine logLine = lines.get((int) id);
+            if (LogLineAdapterUtil.logLevelIsAcceptableGivenLogLevelLimit(logLine.getLogLevel(), logLevelLimit)
+                    && (searchCriteria.isEmpty() || searchCriteria.matches(logLine))) {
+                result.add(id);
+            }
+        }
+        return result.toArray(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private long[] find(String query, int logLevelLimit) {
+        return index.find(new SearchCriteria(query), logLevelLimit, Long.MIN_VALUE, store.getLastId())
+                .toArray(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void findMatchesFilteringAllLines() {
+        newStore(5000);
+        addLines(3000);
+        String[] queries = {"", "a", "abc1", "12", "pid:12", "pid:99", "tag:myapp", "tag:MyAppService",
+                "tag:x c", "tag:nothing", "pid:12 tag:dalvik 2"};
+        for (String query : queries) {
+            for (int logLevelLimit = 0; logLevelLimit <= 5; logLevelLimit++) {
+                assertArrayEquals(query + " " + logLevelLimit, filterAll(query, logLevelLimit),
+                        find(query, logLevelLimit));
+            }
+        }
+    }
+
+    @Test
+    public void findSkipsDroppedLines() {
+        // more lines than the capacity, the lists of the index are compacted while lines are added
+        newStore(500);
+        addLines(2345);
+        assertTrue(store.getFirstId() > 0);
+        for (String query : new String[]{"", "pid:12", "tag:dalvikvm", "b"}) {
+            assertArrayEquals(query, filterAll(query, 2), find(query, 2));
+        }
+        synchronized (lock) {
+            index.compact();
+        }
+        assertArrayEquals(filterAll("tag:MyApp", 0), find("tag:MyApp", 0));
+    }
+
+    @Test
+    public void narrowMatchesFilteringAllLines() {
+        newStore(2000);
+        addLines(1000);
+        String[][] steps = {{"a", "ab"}, {"", "pid:12"}, {"tag:My", "tag:MyAppS"}, {"pid:12", "pid:12 tag:x c"},
+                {"1", "12"}, {"c", "c x"}};
+        for (String[] step : steps) {
+            SearchCriteria previousCriteria = new SearchCriteria(step[0]);
+            long lastId = store.getLastId();
+            IdList previous = index.find(previousCriteria, 1, Long.MIN_VALUE, lastId);
+
+            // lines added after the previous search, some of them drop lines of its result
+            addLines(700);
+
+            SearchCriteria searchCriteria = new SearchCriteria(step[1]);
+            for (int logLevelLimit = 1; logLevelLimit <= 3; logLevelLimit++) {
+                if (step[0].equals("1")) {
+                    // "12" also matches the lines of pid 12
+                    assertFalse(LogIndex.canNarrow(searchCriteria, logLevelLimit, previousCriteria, 1));
+                    continue;
+                }
+                assertTrue(step[1], LogIndex.canNarrow(searchCriteria, logLevelLimit, previousCriteria, 1));
+                IdList narrowed = index.narrow(previous, lastId, searchCriteria, logLevelLimit, store.getLastId());
+                assertArrayEquals(step[1], filterAll(step[1], logLevelLimit),
+                        narrowed.toArray(Long.MIN_VALUE, Long.MAX_VALUE));
+            }
+        }
+    }
+
+    @Test
+    public void widenedCriteriaCannotBeNarrowed() {
+        SearchCriteria narrow = new SearchCriteria("tag:MyApp abc");
+        SearchCriteria wide = new SearchCriteria("tag:MyApp ab");
+        assertTrue(LogIndex.canNarrow(narrow, 2, wide, 2));
+        assertFalse(LogIndex.canNarrow(wide, 2, narrow, 2));
+        // a lower level limit shows more lines
+        assertFalse(LogIndex.canNarrow(narrow, 1, wide, 2));
+        assertTrue(LogIndex.canNarrow(narrow, 3, wide, 2));
+        assertFalse(LogIndex.canNarrow(narrow, 2, null, 0));
+    }
+
+    /**
+     * Types, extends and deletes a query the way {@link LogLineAdapter}'s filter searches and
+     * publishes, while lines are added between the searches and between searching and publishing
+     */
+    @Test
+    public void filteringWhileTypingMatchesFilteringAllLines() {
+        newStore(1500);
+        addLines(500);
+        String[] queries = {"t", "ta", "tag:", "tag:M", "tag:My", "tag:MyA", "tag:MyA a", "tag:MyA ab",
+                "tag:MyA a", "tag:MyA", "tag:My", "", "pid:1", "pid:12", "pid:12 c", "pid:12 c1", "pid:12 c"};
+        int[] logLevelLimits = {0, 0, 0, 2, 2, 2, 3, 3, 1, 1, 1, 0, 0, 0, 0, 4, 4};
+        IdList filteredIds = null;
+        SearchCriteria filteredCriteria = null;
+        int filteredLogLevelLimit = 0;
+        long filteredLastId = 0;
+        int narrowed = 0;
+        for (int i = 0; i < queries.length; i++) {
+            SearchCriteria searchCriteria = new SearchCriteria(queries[i]);
+            int logLevelLimit = logLevelLimits[i];
+            long lastId = store.getLastId();
+            IdList ids;
+            if (filteredIds != null && LogIndex.canNarrow(searchCriteria, logLevelLimit,
+                    filteredCriteria, filteredLogLevelLimit)) {
+                ids = index.narrow(filteredIds, filteredLastId, searchCriteria, logLevelLimit, lastId);
+                narrowed++;
+            } else {
+                ids = index.find(searchCriteria, logLevelLimit, Long.MIN_VALUE, lastId);
+            }
+
+            addLines(random.nextInt(300));
+            synchronized (lock) {
+                index.catchUp(ids, searchCriteria, logLevelLimit, lastId);
+            }
+            filteredIds = ids;
+            filteredCriteria = searchCriteria;
+            filteredLogLevelLimit = logLevelLimit;
+            filteredLastId = store.getLastId();
+            assertArrayEquals(queries[i], filterAll(queries[i], logLevelLimit),
+                    ids.toArray(Long.MIN_VALUE, Long.MAX_VALUE));
+
+            addLines(random.nextInt(300));
+        }
+        assertTrue(narrowed > 5);
+    }
+}
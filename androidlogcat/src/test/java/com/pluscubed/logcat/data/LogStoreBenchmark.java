@@ -0,0 +1,78 @@
+package com.pluscubed.logcat.data;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the heap used by a million lines kept in a {@link LogStore} with the heap used by one
+ * {@link LogLine} per line. Runs on the JVM with the classes of the app on the classpath.
+ */
+public class LogStoreBenchmark {
+
+    private static final int LINES = 1000000;
+    private static final int TAGS = 200;
+    private static final int[] LEVELS = {Log.VERBOSE, Log.DEBUG, Log.INFO, Log.WARN, Log.ERROR};
+
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : LINES;
+
+        long before = usedMemory();
+        List<LogLine> logLines = new ArrayList<>(lines);
+        Random random = new Random(0);
+        for (int i = 0; i < lines; i++) {
+            logLines.add(newLogLine(random, i));
+        }
+        long objects = usedMemory() - before;
+        logLines = null;
+
+        before = usedMemory();
+        LogStore store = new LogStore(lines);
+        random = new Random(0);
+        for (int i = 0; i < lines; i++) {
+            store.add(newLogLine(random, i));
+        }
+        long columns = usedMemory() - before;
+
+        System.out.println(String.format(Locale.US, "%d lines: %.1f MB as objects, %.1f MB in a store (%.1fx)",
+                store.size(), toMegabytesPerMillion(objects, lines), toMegabytesPerMillion(columns, lines),
+                (double) objects / columns));
+    }
+
+    /**
+     * A line like the ones parsed by {@link LogLine#newLogLine(String, boolean)}, with strings of
+     * its own for the tag and timestamp
+     */
+    private static LogLine newLogLine(Random random, int index) {
+        LogLine logLine = new LogLine();
+        logLine.setLogLevel(LEVELS[random.nextInt(LEVELS.length)]);
+        logLine.setTag(new String("Tag" + random.nextInt(TAGS) + "     "));
+        logLine.setProcessId(1000 + random.nextInt(3000));
+        logLine.setTimestamp(String.format(Locale.US, "01-23 %02d:%02d:%02d.%03d",
+                index / 3600000 % 24, index / 60000 % 60, index / 1000 % 60, index % 1000));
+
+        StringBuilder output = new StringBuilder();
+        int length = 20 + random.nextInt(120);
+        while (output.length() < length) {
+            output.append("word").append(random.nextInt(1000)).append(' ');
+        }
+        logLine.setLogOutput(output.toString());
+        return logLine;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double toMegabytesPerMillion(long bytes, int lines) {
+        return bytes * (1000000.0 / lines) / (1024 * 1024);
+    }
+}
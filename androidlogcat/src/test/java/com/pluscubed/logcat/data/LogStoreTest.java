@@ -0,0 +1,132 @@
+package com.pluscubed.logcat.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogStoreTest {
+
+    private static LogLine newLogLine(String tag, String timestamp, String output) {
+        LogLine logLine = new LogLine();
+        logLine.setLogLevel(3);
+        logLine.setTag(tag);
+        logLine.setProcessId(1234);
+        logLine.setTimestamp(timestamp);
+        logLine.setLogOutput(output);
+        return logLine;
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void dropsOldestLinesWhenFull() {
+        LogStore store = new LogStore(3);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, store.add(newLogLine("tag", "01-23 12:34:56.789", "line " + i)));
+        }
+        assertEquals(3, store.size());
+        assertEquals(2, store.getFirstId());
+        assertEquals(4, store.getLastId());
+        assertFalse(store.contains(1));
+        for (long id = 2; id <= 4; id++) {
+            assertEquals("line " + id, store.getLogOutput(id));
+            assertEquals("01-23 12:34:56.789", store.getTimestamp(id));
+        }
+    }
+
+    @Test
+    public void longMessageDropsSeveralLines() {
+        // the message ring grows up to 512 bytes per line, 2048 bytes here
+        LogStore store = new LogStore(4);
+        for (int i = 0; i < 4; i++) {
+            store.add(newLogLine("tag", null, repeat((char) ('a' + i), 100)));
+        }
+        assertEquals(0, store.getFirstId());
+
+        long id = store.add(newLogLine("tag", null, repeat('x', 1900)));
+        assertEquals(4, id);
+        // the store is full so the first line is dropped, then two more lines are dropped
+        // until the ring has room for the message
+        assertEquals(3, store.getFirstId());
+        assertEquals(2, store.size());
+        assertEquals(repeat('d', 100), store.getLogOutput(3));
+        assertEquals(repeat('x', 1900), store.getLogOutput(id));
+    }
+
+    @Test
+    public void messageLongerThanRingIsCut() {
+        LogStore store = new LogStore(2);
+        store.add(newLogLine("tag", null, "first"));
+        long id = store.add(newLogLine("tag", null, repeat('y', 5000)));
+        assertEquals(1, store.size());
+        assertEquals(repeat('y', 1024), store.getLogOutput(id));
+    }
+
+    @Test
+    public void messagesWrapAroundTheRing() {
+        int capacity = 8;
+        LogStore store = new LogStore(capacity);
+        List<String> expected = new ArrayList<>();
+        Random random = new Random(1);
+        long previousFirstId = 0;
+        for (int i = 0; i < 500; i++) {
+            String output = repeat((char) ('a' + i % 26), random.nextInt(700)) + i;
+            // timestamps of another format are stored as text in front of the message
+            String timestamp = i % 3 == 0 ? "2018-01-23 12:34:56" : "01-23 12:34:56.789";
+            expected.add(output);
+            assertEquals(i, store.add(newLogLine("tag" + i % 5, timestamp, output)));
+
+            assertEquals(i, store.getLastId());
+            assertTrue(store.size() >= 1 && store.size() <= capacity);
+            assertTrue(store.getFirstId() >= previousFirstId);
+            previousFirstId = store.getFirstId();
+            for (long id = store.getFirstId(); id <= store.getLastId(); id++) {
+                assertEquals(expected.get((int) id), store.getLogOutput(id));
+                assertEquals("tag" + id % 5, store.getTag(id));
+                assertEquals(id % 3 == 0 ? "2018-01-23 12:34:56" : "01-23 12:34:56.789",
+                        store.getTimestamp(id));
+            }
+        }
+    }
+
+    @Test
+    public void setCapacityKeepsNewestLines() {
+        LogStore store = new LogStore(10);
+        for (int i = 0; i < 15; i++) {
+            store.add(newLogLine("tag", null, "line " + i));
+        }
+        store.setCapacity(4);
+        assertEquals(11, store.getFirstId());
+        assertEquals(14, store.getLastId());
+        assertEquals("line 11", store.getLogOutput(11));
+        assertEquals(15, store.add(newLogLine("tag", null, "line 15")));
+        assertEquals(12, store.getFirstId());
+    }
+
+    @Test
+    public void flagsFollowTheLine() {
+        LogStore store = new LogStore(2);
+        store.add(newLogLine("tag", null, "a"));
+        LogLine line = store.getLine(store.add(newLogLine("tag", null, "b")));
+        line.setHighlighted(true);
+        store.add(newLogLine("tag", null, "c"));
+        assertTrue(store.isHighlighted(1));
+        assertFalse(store.isHighlighted(2));
+        store.add(newLogLine("tag", null, "d"));
+        // the line was dropped, changing it has no effect
+        line.setExpanded(true);
+        assertFalse(store.isExpanded(3));
+    }
+}
@@ -0,0 +1,118 @@
+package com.pluscubed.logcat.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchCriteriaTest {
+
+    private static final String[] QUERIES = {
+            "", "a", "ab", "abc", "b", "bc", "12", "123", "1", "23", "tag:x", "tag:xy", "tag:y",
+            "pid:12", "pid:123", "pid:12 a", "tag:x ab", "tag:\"x y\"", "tag:xy 1", "pid:12 tag:x b"
+    };
+
+    private static LogLine newLogLine(int processId, String tag, String output) {
+        LogLine logLine = new LogLine();
+        logLine.setLogLevel(3);
+        logLine.setProcessId(processId);
+        logLine.setTag(tag);
+        logLine.setLogOutput(output);
+        return logLine;
+    }
+
+    private static String randomText(Random random, String alphabet, int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(maxLength + 1); i > 0; i--) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void parsesPidAndTag() {
+        SearchCriteria criteria = new SearchCriteria("pid:42 tag:\"my tag\" some text");
+        assertEquals(42, criteria.getPid());
+        assertEquals("my tag", criteria.getTag());
+        assertFalse(criteria.isEmpty());
+
+        criteria = new SearchCriteria("Tag:Foo");
+        assertEquals(-1, criteria.getPid());
+        assertEquals("Foo", criteria.getTag());
+
+        criteria = new SearchCriteria(null);
+        assertNull(criteria.getTag());
+        assertTrue(criteria.isEmpty());
+    }
+
+    @Test
+    public void extendedQueriesAreNarrower() {
+        assertTrue(narrower("abc", "ab"));
+        assertTrue(narrower("ab", ""));
+        assertTrue(narrower("tag:xy", "tag:x"));
+        assertTrue(narrower("tag:x ab", "a"));
+        assertTrue(narrower("pid:12 a", "pid:12"));
+        assertTrue(narrower("pid:12", ""));
+        assertTrue(narrower("ABC", "b"));
+    }
+
+    @Test
+    public void widenedQueriesAreNotNarrower() {
+        assertFalse(narrower("ab", "abc"));
+        assertFalse(narrower("", "a"));
+        assertFalse(narrower("tag:x", "tag:xy"));
+        assertFalse(narrower("a", "tag:x a"));
+        assertFalse(narrower("pid:123", "pid:12"));
+        assertFalse(narrower("a", "pid:12"));
+    }
+
+    @Test
+    public void numberIsNotNarrowerThanItsDigits() {
+        // "12" matches the lines of pid 12, "1" only matches lines containing the text
+        assertFalse(narrower("12", "1"));
+        assertTrue(narrower("12", "12"));
+        assertTrue(narrower("a12", "12"));
+    }
+
+    /**
+     * Whenever a query is narrower than another, every line it matches must match the other
+     */
+    @Test
+    public void narrowerQueriesOnlyMatchLinesOfTheOtherQuery() {
+        Random random = new Random(18);
+        List<LogLine> lines = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            int processId = random.nextInt(3) == 0 ? 12 : random.nextInt(200);
+            lines.add(newLogLine(processId, randomText(random, "xy XY", 4), randomText(random, "abc123 ", 12)));
+        }
+
+        int narrowerPairs = 0;
+        for (String query : QUERIES) {
+            SearchCriteria criteria = new SearchCriteria(query);
+            for (String otherQuery : QUERIES) {
+                SearchCriteria other = new SearchCriteria(otherQuery);
+                if (!criteria.isNarrowerThan(other)) {
+                    continue;
+                }
+                narrowerPairs++;
+                for (LogLine line : lines) {
+                    if (criteria.matches(line)) {
+                        assertTrue("\"" + query + "\" matches a line not matched by \"" + otherQuery + "\"",
+                                other.matches(line));
+                    }
+                }
+            }
+        }
+        assertTrue(narrowerPairs > QUERIES.length);
+    }
+
+    private static boolean narrower(String query, String otherQuery) {
+        return new SearchCriteria(query).isNarrowerThan(new SearchCriteria(otherQuery));
+    }
+}
@@ -0,0 +1,156 @@
+package com.pluscubed.logcat.reader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Compares the lines per second read from several synthetic buffers by {@link MultipleLogcatReader}
+ * with the previous handoff of one line at a time through a queue of one line.
+ */
+public class LogcatReaderBenchmark {
+
+    private static final int BUFFERS = 3;
+    private static final int LINES_PER_BUFFER = 1000000;
+    private static final int RUNS = 3;
+    private static final String END = "";
+
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public static void main(String[] args) throws Exception {
+        System.out.println(run(args.length > 0 ? Integer.parseInt(args[0]) : LINES_PER_BUFFER));
+    }
+
+    public static String run(int linesPerBuffer) throws IOException, InterruptedException {
+        List<String> lines = createLines(linesPerBuffer);
+
+        long oneAtATime = Long.MAX_VALUE;
+        long batched = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            oneAtATime = Math.min(oneAtATime, readOneAtATime(lines));
+            batched = Math.min(batched, readBatched(lines));
+        }
+
+        int total = BUFFERS * linesPerBuffer;
+        return String.format(Locale.US, "%d buffers: %.0f lines/s one at a time, %.0f lines/s batched (%.1fx)",
+                BUFFERS, total * 1e9 / oneAtATime, total * 1e9 / batched, (double) oneAtATime / batched);
+    }
+
+    private static List<String> createLines(int count) {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(String.format(Locale.US, "01-23 %02d:%02d:%02d.%03d D/Benchmark( %d): line %d",
+                    i / 3600000 % 24, i / 60000 % 60, i / 1000 % 60, i % 1000, 1000 + i % 50, i));
+        }
+        return lines;
+    }
+
+    /**
+     * @return nanoseconds taken
+     */
+    private static long readBatched(List<String> lines) throws IOException {
+        List<LogcatReader> readers = new ArrayList<>();
+        for (int i = 0; i < BUFFERS; i++) {
+            readers.add(new SyntheticReader(lines));
+        }
+
+        long start = System.nanoTime();
+        MultipleLogcatReader reader = new MultipleLogcatReader(false, readers);
+        int count = 0;
+        List<String> batch;
+        while ((batch = reader.readLines()) != null) {
+            count += batch.size();
+        }
+        long time = System.nanoTime() - start;
+        check(count, lines);
+        return time;
+    }
+
+    /**
+     * @return nanoseconds taken
+     */
+    private static long readOneAtATime(final List<String> lines) throws InterruptedException {
+        final BlockingQueue<String> queue = new ArrayBlockingQueue<>(1);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BUFFERS; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (String line : lines) {
+                            queue.put(line);
+                        }
+                        queue.put(END);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }.start();
+        }
+        int count = 0;
+        int ended = 0;
+        while (ended < BUFFERS) {
+            if (queue.take() == END) {
+                ended++;
+            } else {
+                count++;
+            }
+        }
+        long time = System.nanoTime() - start;
+        check(count, lines);
+        return time;
+    }
+
+    private static void check(int count, List<String> lines) {
+        if (count != BUFFERS * lines.size()) {
+            throw new IllegalStateException("Read " + count + " lines instead of " + BUFFERS * lines.size());
+        }
+    }
+
+    /**
+     * Returns the given lines as fast as a reader can take them
+     */
+    private static class SyntheticReader extends AbsLogcatReader {
+        private final List<String> lines;
+        private int position;
+
+        SyntheticReader(List<String> lines) {
+            super(false);
+            this.lines = lines;
+        }
+
+        @Override
+        public String readLine() {
+            return position < lines.size() ? lines.get(position++) : null;
+        }
+
+        @Override
+        public List<String> readLines() {
+            if (position == lines.size()) {
+                return null;
+            }
+            int end = Math.min(lines.size(), position + MAX_LINES_PER_READ);
+            List<String> result = new ArrayList<>(lines.subList(position, end));
+            position = end;
+            return result;
+        }
+
+        @Override
+        public void killQuietly() {
+        }
+
+        @Override
+        public boolean readyToRecord() {
+            return false;
+        }
+
+        @Override
+        public List<Process> getProcesses() {
+            return Collections.emptyList();
+        }
+    }
+}
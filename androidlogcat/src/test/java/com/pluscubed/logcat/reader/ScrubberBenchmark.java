@@ -0,0 +1,93 @@
+package com.pluscubed.logcat.reader;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the lines per second scrubbed by {@link ScrubberUtils#scrubLine(String)}, and by all
+ * patterns one after the other as before, over a saved log. Runs warmup iterations first, like JMH,
+ * and checks both give the same lines.
+ */
+public class ScrubberBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 10;
+
+    // keeps the scrubbed lines from being optimized away
+    private static volatile int sink;
+
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java " + ScrubberBenchmark.class.getName() + " <saved log>");
+            return;
+        }
+        List<String> lines = readMessages(args[0]);
+
+        for (String line : lines) {
+            String expected = ScrubberUtils.scrubLineWithAllPatterns(line);
+            if (!expected.equals(ScrubberUtils.scrubLine(line))) {
+                throw new IllegalStateException("Scrubbed differently: " + line);
+            }
+        }
+
+        double[] allPatterns = measure(lines, true);
+        double[] scanned = measure(lines, false);
+        System.out.println(String.format(Locale.US, "%d lines: %.0f +- %.0f lines/s before, %.0f +- %.0f lines/s after (%.1fx)",
+                lines.size(), allPatterns[0], allPatterns[1], scanned[0], scanned[1], scanned[0] / allPatterns[0]));
+    }
+
+    /**
+     * @return the messages of the lines of a log, which are what is scrubbed
+     */
+    private static List<String> readMessages(String path) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int index = line.indexOf("): ");
+                lines.add(index == -1 ? line : line.substring(index + 3));
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    /**
+     * @return mean and standard deviation of lines per second
+     */
+    private static double[] measure(List<String> lines, boolean allPatterns) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += scrub(lines, allPatterns);
+        }
+        double[] results = new double[ITERATIONS];
+        double sum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            sink += scrub(lines, allPatterns);
+            results[i] = lines.size() * 1e9 / Math.max(1, System.nanoTime() - start);
+            sum += results[i];
+        }
+        double mean = sum / ITERATIONS;
+        double variance = 0;
+        for (double result : results) {
+            variance += (result - mean) * (result - mean);
+        }
+        return new double[]{mean, Math.sqrt(variance / ITERATIONS)};
+    }
+
+    private static int scrub(List<String> lines, boolean allPatterns) {
+        int length = 0;
+        for (String line : lines) {
+            length += (allPatterns ? ScrubberUtils.scrubLineWithAllPatterns(line) : ScrubberUtils.scrubLine(line)).length();
+        }
+        return length;
+    }
+}
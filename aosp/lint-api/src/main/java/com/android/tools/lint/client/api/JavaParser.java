@@ -69,6 +69,19 @@ public abstract class JavaParser {
      */
     public abstract void prepareJavaParse(@NonNull List<JavaContext> contexts);
 
+    /**
+     * Returns whether {@link #parseJava(JavaContext)} can be called for different
+     * contexts from several threads at the same time, after
+     * {@link #prepareJavaParse(List)}. Lint then parses files ahead on worker
+     * threads; all other methods, such as {@link #resolve(JavaContext, Node)},
+     * are still called from the thread running the detectors.
+     *
+     * @return true if files can be parsed in parallel
+     */
+    public boolean supportsParallelParse() {
+        return false;
+    }
+
     /**
      * Parse the file pointed to by the given context.
      *
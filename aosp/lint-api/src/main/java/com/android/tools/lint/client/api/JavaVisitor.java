@@ -20,6 +20,7 @@ import static com.android.SdkConstants.ANDROID_PKG;
 import static com.android.SdkConstants.R_CLASS;
 
 import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
 import com.android.tools.lint.client.api.JavaParser.ResolvedClass;
 import com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
 import com.android.tools.lint.client.api.JavaParser.ResolvedNode;
@@ -35,6 +36,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import lombok.ast.AlternateConstructorInvocation;
 import lombok.ast.Annotation;
@@ -240,9 +243,21 @@ public class JavaVisitor {
     }
 
     void visitFile(@NonNull JavaContext context) {
+        visitFile(context, null);
+    }
+
+    /**
+     * Visits the given file with all detectors
+     *
+     * @param context the file to visit
+     * @param parsed the result of {@link JavaParser#parseJava(JavaContext)} for the
+     *            context when it was parsed ahead on another thread, or null to parse
+     *            it on this thread
+     */
+    void visitFile(@NonNull JavaContext context, @Nullable Future<Node> parsed) {
         Node compilationUnit = null;
         try {
-            compilationUnit = mParser.parseJava(context);
+            compilationUnit = parsed != null ? getParsed(parsed) : mParser.parseJava(context);
             if (compilationUnit == null) {
                 // No need to log this; the parser should be reporting
                 // a full warning (such as IssueRegistry#PARSER_ERROR)
@@ -322,6 +337,25 @@ public class JavaVisitor {
         }
     }
 
+    @Nullable
+    private static Node getParsed(@NonNull Future<Node> parsed) {
+        try {
+            return parsed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            // Rethrow on this thread such that failures are reported like sequential parses
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
     public void prepare(@NonNull List<JavaContext> contexts) {
         mParser.prepareJavaParse(contexts);
     }
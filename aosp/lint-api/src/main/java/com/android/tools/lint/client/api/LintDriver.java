@@ -96,6 +96,12 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -147,6 +153,9 @@ public class LintDriver {
     private boolean mAbbreviating = true;
     private boolean mParserErrors;
     private Map<Object,Object> mProperties;
+    private int mJavaThreadCount = 1;
+    private boolean mResultCacheEnabled;
+    private LintResultCache mResultCache;
 
     /**
      * Creates a new {@link LintDriver}
@@ -306,6 +315,55 @@ public class LintDriver {
         return mAbbreviating;
     }
 
+    /**
+     * Sets the number of threads used to parse Java files. Files are parsed
+     * ahead on worker threads while the detectors visit them one at a time,
+     * in the same order as a sequential run, so detectors do not need to be
+     * thread safe and issues are reported in the same order. This only has an
+     * effect if the {@link JavaParser} supports it, see
+     * {@link JavaParser#supportsParallelParse()}.
+     *
+     * @param count the number of threads, 1 (the default) parses each file
+     *            on the calling thread right before it is visited
+     */
+    public void setJavaThreadCount(int count) {
+        mJavaThreadCount = Math.max(1, count);
+    }
+
+    /**
+     * Returns the number of threads used to parse Java files.
+     *
+     * @return the number of threads
+     * @see #setJavaThreadCount(int)
+     */
+    public int getJavaThreadCount() {
+        return mJavaThreadCount;
+    }
+
+    /**
+     * Sets whether the issues reported by single file detectors are stored in
+     * the cache directory of the client (see {@link LintClient#getCacheDir(boolean)}).
+     * When enabled, Java and resource files which did not change since the
+     * last run are not checked again by detectors whose issues only have the
+     * {@link Scope#JAVA_FILE} or {@link Scope#RESOURCE_FILE} scope; their
+     * issues are reported from the cache instead.
+     *
+     * @param enabled true to cache results between runs
+     */
+    public void setResultCacheEnabled(boolean enabled) {
+        mResultCacheEnabled = enabled;
+    }
+
+    /**
+     * Returns whether results of single file detectors are cached between runs.
+     *
+     * @return true if results are cached
+     * @see #setResultCacheEnabled(boolean)
+     */
+    public boolean isResultCacheEnabled() {
+        return mResultCacheEnabled;
+    }
+
     /**
      * Returns whether lint has encountered any files with fatal parser errors
      * (e.g. broken source code, or even broken parsers)
@@ -901,7 +959,21 @@ public class LintDriver {
         }
 
         assert mCurrentProject == project;
-        runFileDetectors(project, main);
+        // Only the first phase checks all files; later phases re-run a few detectors
+        if (mResultCacheEnabled && mPhase == 1) {
+            mResultCache = LintResultCache.load(mClient, mRegistry, this, project,
+                    mApplicableDetectors);
+            mUncachedVisitorFor = null;
+        }
+        try {
+            runFileDetectors(project, main);
+            // Cacheable detectors report all their issues while visiting files
+            if (mResultCache != null && !mCanceled) {
+                mResultCache.write();
+            }
+        } finally {
+            mResultCache = null;
+        }
 
         if (!Scope.checkSingleFile(mScope)) {
             List<Project> libraries = project.getAllLibraries();
@@ -1520,12 +1592,8 @@ public class LintDriver {
             }
 
             visitor.prepare(contexts);
-            for (JavaContext context : contexts) {
-                fireEvent(EventType.SCANNING_FILE, context);
-                visitor.visitFile(context);
-                if (mCanceled) {
-                    return;
-                }
+            if (!visitJavaFiles(visitor, checks, javaParser, contexts)) {
+                return;
             }
             visitor.dispose();
         }
@@ -1562,17 +1630,124 @@ public class LintDriver {
             return;
         }
 
-        for (JavaContext context : contexts) {
-            fireEvent(EventType.SCANNING_FILE, context);
-            visitor.visitFile(context);
-            if (mCanceled) {
-                return;
-            }
+        if (!visitJavaFiles(visitor, checks, javaParser, contexts)) {
+            return;
         }
 
         visitor.dispose();
     }
 
+    /**
+     * Visits the given files in order with the visitor. If enabled by
+     * {@link #setJavaThreadCount(int)}, a bounded number of files is parsed
+     * ahead on worker threads while the visitor runs on this thread. Files
+     * whose results are cached are only visited by the detectors which can
+     * not be cached, see {@link #setResultCacheEnabled(boolean)}.
+     *
+     * @return false if lint was canceled before all files were visited
+     */
+    private boolean visitJavaFiles(
+            @NonNull JavaVisitor visitor,
+            @NonNull List<Detector> checks,
+            @NonNull final JavaParser javaParser,
+            @NonNull List<JavaContext> contexts) {
+        int count = contexts.size();
+        LintResultCache cache = mResultCache;
+        JavaVisitor uncachedVisitor = null;
+        boolean[] upToDate = new boolean[count];
+        if (cache != null) {
+            List<Detector> uncached = cache.getUncachedDetectors(checks);
+            if (!uncached.isEmpty()) {
+                uncachedVisitor = new JavaVisitor(javaParser, uncached);
+            }
+            upToDate = cache.checkJavaFiles(contexts);
+        }
+
+        int threadCount = Math.min(mJavaThreadCount, count);
+        if (threadCount <= 1 || !javaParser.supportsParallelParse()) {
+            for (int i = 0; i < count; i++) {
+                visitJavaFile(visitor, uncachedVisitor, contexts.get(i), upToDate[i], null);
+                if (mCanceled) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount,
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "lint-java-parser-" + mCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // Parsed trees are large; only keep a few files ahead of the visitor
+        int window = 2 * threadCount;
+        List<Future<Node>> parsed = new ArrayList<Future<Node>>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                while (parsed.size() < count && parsed.size() < i + window) {
+                    int next = parsed.size();
+                    if (upToDate[next] && uncachedVisitor == null) {
+                        // Not visited at all
+                        parsed.add(null);
+                        continue;
+                    }
+                    final JavaContext context = contexts.get(next);
+                    parsed.add(executor.submit(new Callable<Node>() {
+                        @Override
+                        public Node call() throws Exception {
+                            if (mCanceled) {
+                                return null;
+                            }
+                            return javaParser.parseJava(context);
+                        }
+                    }));
+                }
+
+                visitJavaFile(visitor, uncachedVisitor, contexts.get(i), upToDate[i],
+                        parsed.get(i));
+                parsed.set(i, null);
+                if (mCanceled) {
+                    return false;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return true;
+    }
+
+    private void visitJavaFile(
+            @NonNull JavaVisitor visitor,
+            @Nullable JavaVisitor uncachedVisitor,
+            @NonNull JavaContext context,
+            boolean upToDate,
+            @Nullable Future<Node> parsed) {
+        fireEvent(EventType.SCANNING_FILE, context);
+        LintResultCache cache = mResultCache;
+        if (cache == null) {
+            visitor.visitFile(context, parsed);
+        } else if (upToDate) {
+            cache.replay(context);
+            if (uncachedVisitor != null) {
+                uncachedVisitor.visitFile(context, parsed);
+            }
+        } else {
+            cache.beginFile(context);
+            try {
+                visitor.visitFile(context, parsed);
+            } finally {
+                cache.endFile();
+            }
+        }
+    }
+
     private static void gatherJavaFiles(@NonNull File dir, @NonNull List<File> result) {
         File[] files = dir.listFiles();
         if (files != null) {
@@ -1715,8 +1890,7 @@ public class LintDriver {
                 if (LintUtils.isXmlFile(file)) {
                     XmlContext context = new XmlContext(this, project, main, file, type,
                             visitor.getParser());
-                    fireEvent(EventType.SCANNING_FILE, context);
-                    visitor.visitFile(context, file);
+                    visitXmlFile(visitor, context, file);
                 } else if (binaryChecks != null && LintUtils.isBitmapFile(file)) {
                     ResourceContext context = new ResourceContext(this, project, main, file, type);
                     fireEvent(EventType.SCANNING_FILE, context);
@@ -1729,6 +1903,44 @@ public class LintDriver {
         }
     }
 
+    private ResourceVisitor mUncachedVisitorFor;
+    private ResourceVisitor mUncachedVisitor;
+
+    /**
+     * Visits an XML resource file with the given visitor, or only with the
+     * detectors which can not be cached if its results are cached. The visitor
+     * must be the current visitor returned by {@link #getVisitor}.
+     */
+    private void visitXmlFile(
+            @NonNull ResourceVisitor visitor,
+            @NonNull XmlContext context,
+            @NonNull File file) {
+        fireEvent(EventType.SCANNING_FILE, context);
+        LintResultCache cache = mResultCache;
+        if (cache == null) {
+            visitor.visitFile(context, file);
+        } else if (cache.isUpToDate(context)) {
+            cache.replay(context);
+            if (mUncachedVisitorFor != visitor) {
+                mUncachedVisitorFor = visitor;
+                List<ResourceXmlDetector> uncached =
+                        cache.getUncachedDetectors(mCurrentXmlDetectors);
+                mUncachedVisitor = uncached.isEmpty() ? null
+                        : new ResourceVisitor(visitor.getParser(), uncached, null);
+            }
+            if (mUncachedVisitor != null) {
+                mUncachedVisitor.visitFile(context, file);
+            }
+        } else {
+            cache.beginFile(context);
+            try {
+                visitor.visitFile(context, file);
+            } finally {
+                cache.endFile();
+            }
+        }
+    }
+
     /** Checks individual resources */
     private void checkIndividualResources(
             @NonNull Project project,
@@ -1761,8 +1973,7 @@ public class LintDriver {
                     if (visitor != null) {
                         XmlContext context = new XmlContext(this, project, main, file, type,
                                 visitor.getParser());
-                        fireEvent(EventType.SCANNING_FILE, context);
-                        visitor.visitFile(context, file);
+                        visitXmlFile(visitor, context, file);
                     }
                 }
             } else if (binaryChecks != null && file.isFile() && LintUtils.isBitmapFile(file)) {
@@ -1863,6 +2074,10 @@ public class LintDriver {
                 return;
             }
 
+            if (mResultCache != null) {
+                mResultCache.record(context, issue, severity, location, message, format);
+            }
+
             mDelegate.report(context, issue, severity, location, message, format);
         }
 
@@ -0,0 +1,655 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.DefaultPosition;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Location;
+import com.android.tools.lint.detector.api.Position;
+import com.android.tools.lint.detector.api.Project;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+import com.android.tools.lint.detector.api.TextFormat;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Issues reported by single file detectors, stored per file between lint runs
+ * in the cache directory of the {@link LintClient}.
+ * <p>
+ * A detector is cacheable if all its issues have the {@link Scope#JAVA_FILE}
+ * or {@link Scope#RESOURCE_FILE} scope only, and it does not report issues
+ * once the whole project is checked. Such detectors skip files whose content
+ * did not change; the issues they reported on the last run are replayed
+ * instead. The cache is discarded when the set of enabled issues or the
+ * project configuration changes.
+ * <p>
+ * Java detectors may resolve types declared in other files or libraries, so
+ * the results of a Java file are also keyed by the hashes of all Java files
+ * checked together with it and by the libraries of the project. Editing any
+ * Java file checks all Java files again; only resource files keep their
+ * results across such edits.
+ * <p>
+ * <b>NOTE: This is not a public or final API; if you rely on this be prepared
+ * to adjust your code for the next tools release.</b>
+ */
+class LintResultCache {
+    private static final int VERSION = 2;
+    private static final String FOLDER = "lint-results"; //$NON-NLS-1$
+
+    private final LintClient mClient;
+    private final IssueRegistry mRegistry;
+    private final File mFile;
+    private final String mKey;
+    /** Fingerprint of the class folders and libraries the Java files resolve against */
+    private final String mClasspathKey;
+    private final Set<Detector> mCacheable;
+    private final Set<Issue> mIssues;
+    private final Map<String, Entry> mEntries = Maps.newHashMap();
+    /** Hashes of files checked in this run, keyed by path */
+    private final Map<String, String> mHashes = Maps.newHashMap();
+    /** Hash of all Java files being checked and the classpath, see {@link #checkJavaFiles} */
+    private String mJavaKey = "";
+    /** The file being checked by all detectors, reports for it are recorded */
+    private Entry mRecording;
+
+    private LintResultCache(
+            @NonNull LintClient client,
+            @NonNull IssueRegistry registry,
+            @NonNull File file,
+            @NonNull String key,
+            @NonNull String classpathKey,
+            @NonNull Set<Detector> cacheable,
+            @NonNull Set<Issue> issues) {
+        mClient = client;
+        mRegistry = registry;
+        mFile = file;
+        mKey = key;
+        mClasspathKey = classpathKey;
+        mCacheable = cacheable;
+        mIssues = issues;
+    }
+
+    /**
+     * Loads the cache of the given project
+     *
+     * @param client the client, its cache directory stores the results
+     * @param registry the registry used to look up issues of replayed reports
+     * @param driver the driver checking the project
+     * @param project the project being checked
+     * @param detectors the detectors applicable to the project
+     * @return the cache, or null if the client has no cache directory
+     */
+    @Nullable
+    static LintResultCache load(
+            @NonNull LintClient client,
+            @NonNull IssueRegistry registry,
+            @NonNull LintDriver driver,
+            @NonNull Project project,
+            @NonNull List<? extends Detector> detectors) {
+        File cacheDir = client.getCacheDir(true);
+        if (cacheDir == null) {
+            return null;
+        }
+
+        Configuration configuration = project.getConfiguration(driver);
+        Map<Class<? extends Detector>, List<Issue>> detectorIssues = Maps.newHashMap();
+        for (Issue issue : registry.getIssues()) {
+            Class<? extends Detector> detectorClass = issue.getImplementation().getDetectorClass();
+            List<Issue> issues = detectorIssues.get(detectorClass);
+            if (issues == null) {
+                issues = Lists.newArrayList();
+                detectorIssues.put(detectorClass, issues);
+            }
+            issues.add(issue);
+        }
+
+        Set<Detector> cacheable = Collections.newSetFromMap(
+                new IdentityHashMap<Detector, Boolean>());
+        Set<Issue> cacheableIssues = Sets.newHashSet();
+        List<String> enabled = Lists.newArrayList();
+        for (Detector detector : detectors) {
+            List<Issue> issues = detectorIssues.get(detector.getClass());
+            if (issues == null || !isCacheable(detector, issues)) {
+                continue;
+            }
+            cacheable.add(detector);
+            cacheableIssues.addAll(issues);
+            for (Issue issue : issues) {
+                if (configuration.isEnabled(issue)) {
+                    enabled.add(issue.getId());
+                }
+            }
+        }
+        Collections.sort(enabled);
+
+        StringBuilder key = new StringBuilder();
+        key.append(enabled).append('\n');
+        key.append(project.getPackage()).append('\n');
+        key.append(project.getMinSdkVersion()).append('\n');
+        key.append(project.getTargetSdkVersion()).append('\n');
+        key.append(project.getBuildSdk()).append('\n');
+        key.append(project.isLibrary()).append('\n');
+        // Detectors may read options from lint.xml and attributes from the manifest
+        List<File> configFiles = Lists.newArrayList(project.getManifestFiles());
+        configFiles.add(new File(project.getDir(), "lint.xml")); //$NON-NLS-1$
+        for (File file : configFiles) {
+            key.append(file.getPath()).append(':');
+            if (file.isFile()) {
+                key.append(hash(client.readFile(file)));
+            }
+            key.append('\n');
+        }
+
+        StringBuilder classpath = new StringBuilder();
+        for (File folder : project.getJavaClassFolders()) {
+            appendFingerprint(classpath, folder);
+        }
+        for (File library : project.getJavaLibraries()) {
+            appendFingerprint(classpath, library);
+        }
+
+        String name = hash(project.getDir().getAbsolutePath());
+        LintResultCache cache = new LintResultCache(client, registry,
+                new File(new File(cacheDir, FOLDER), name), hash(key.toString()),
+                hash(classpath.toString()), cacheable, cacheableIssues);
+        cache.read();
+        return cache;
+    }
+
+    /**
+     * Appends the path, size and time stamp of a file, or of all files in a
+     * folder. Reading jars and class files would cost more than checking again.
+     */
+    private static void appendFingerprint(@NonNull StringBuilder sb, @NonNull File file) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    appendFingerprint(sb, child);
+                }
+            }
+        } else {
+            sb.append(file.getPath()).append(':').append(file.length()).append(':')
+                    .append(file.lastModified()).append('\n');
+        }
+    }
+
+    private static boolean isCacheable(@NonNull Detector detector, @NonNull List<Issue> issues) {
+        for (Issue issue : issues) {
+            Set<Scope> scope = issue.getImplementation().getScope();
+            if (!scope.equals(Scope.JAVA_FILE_SCOPE) && !scope.equals(Scope.RESOURCE_FILE_SCOPE)) {
+                return false;
+            }
+        }
+
+        // Detectors reporting at the end of the project depend on other files
+        try {
+            Class<? extends Detector> detectorClass = detector.getClass();
+            return detectorClass.getMethod("afterCheckProject", Context.class)
+                            .getDeclaringClass() == Detector.class
+                    && detectorClass.getMethod("afterCheckLibraryProject", Context.class)
+                            .getDeclaringClass() == Detector.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the detectors which can not skip unchanged files
+     *
+     * @param detectors the detectors checking a file
+     * @return the detectors from the list which are not cacheable
+     */
+    @NonNull
+    <T extends Detector> List<T> getUncachedDetectors(@NonNull List<T> detectors) {
+        List<T> result = new ArrayList<T>(detectors.size());
+        for (T detector : detectors) {
+            if (!mCacheable.contains(detector)) {
+                result.add(detector);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the results of the given resource file are cached. If
+     * not, the reports for the file should be recorded with
+     * {@link #beginFile(Context)}.
+     *
+     * @param context the context of the file
+     * @return true if the file did not change since the results were stored
+     */
+    boolean isUpToDate(@NonNull Context context) {
+        String hash = hashContents(context);
+        if (hash == null) {
+            return false;
+        }
+        Entry entry = mEntries.get(context.file.getAbsolutePath());
+        return entry != null && entry.hash.equals(hash) && entry.dependencies.isEmpty();
+    }
+
+    /**
+     * Returns which of the Java files checked together have cached results.
+     * Results are only used if none of the files and none of the libraries
+     * changed, since detectors may resolve types declared in other files.
+     *
+     * @param contexts the contexts of all Java files being checked
+     * @return whether the results of each file are cached
+     */
+    @NonNull
+    boolean[] checkJavaFiles(@NonNull List<? extends Context> contexts) {
+        String[] hashes = new String[contexts.size()];
+        List<String> keys = Lists.newArrayListWithExpectedSize(contexts.size());
+        for (int i = 0; i < hashes.length; i++) {
+            Context context = contexts.get(i);
+            hashes[i] = hashContents(context);
+            keys.add(context.file.getAbsolutePath() + ':' + hashes[i]);
+        }
+        Collections.sort(keys);
+        StringBuilder key = new StringBuilder(mClasspathKey).append('\n');
+        for (String fileKey : keys) {
+            key.append(fileKey).append('\n');
+        }
+        mJavaKey = hash(key.toString());
+
+        boolean[] upToDate = new boolean[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            Entry entry = mEntries.get(contexts.get(i).file.getAbsolutePath());
+            upToDate[i] = hashes[i] != null && entry != null && entry.hash.equals(hashes[i])
+                    && entry.dependencies.equals(mJavaKey);
+        }
+        return upToDate;
+    }
+
+    @Nullable
+    private String hashContents(@NonNull Context context) {
+        String contents = context.getContents();
+        if (contents == null) {
+            return null;
+        }
+        String hash = hash(contents);
+        mHashes.put(context.file.getAbsolutePath(), hash);
+        return hash;
+    }
+
+    /**
+     * Reports the cached issues of an up-to-date file again
+     *
+     * @param context the context of the file
+     */
+    void replay(@NonNull Context context) {
+        Entry entry = mEntries.get(context.file.getAbsolutePath());
+        if (entry == null) {
+            return;
+        }
+        for (Report report : entry.reports) {
+            Issue issue = mRegistry.getIssue(report.issue);
+            if (issue != null) {
+                mClient.report(context, issue, report.severity,
+                        report.createLocation(context.file), report.message, report.format);
+            }
+        }
+    }
+
+    /**
+     * Starts recording the reports for a file which is checked by all detectors
+     *
+     * @param context the context of the file
+     */
+    void beginFile(@NonNull Context context) {
+        String path = context.file.getAbsolutePath();
+        String hash = mHashes.get(path);
+        mEntries.remove(path);
+        String dependencies = context instanceof JavaContext ? mJavaKey : "";
+        mRecording = hash != null ? new Entry(path, hash, dependencies) : null;
+    }
+
+    /** Stops recording the reports of the current file */
+    void endFile() {
+        if (mRecording != null && !mRecording.failed) {
+            mEntries.put(mRecording.path, mRecording);
+        }
+        mRecording = null;
+    }
+
+    /**
+     * Records a report if it belongs to the file being checked and was
+     * reported by a cacheable detector
+     */
+    void record(
+            @NonNull Context context,
+            @NonNull Issue issue,
+            @NonNull Severity severity,
+            @Nullable Location location,
+            @NonNull String message,
+            @NonNull TextFormat format) {
+        Entry entry = mRecording;
+        if (entry == null || !entry.path.equals(context.file.getAbsolutePath())) {
+            return;
+        }
+        if (issue == IssueRegistry.PARSER_ERROR) {
+            // The parser does not run for cached files, so check the file again next time
+            entry.failed = true;
+        } else if (mIssues.contains(issue)) {
+            entry.reports.add(new Report(issue.getId(), severity, location, message, format));
+        }
+    }
+
+    private void read() {
+        if (!mFile.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != VERSION || !in.readUTF().equals(mKey)) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readUTF(), in.readUTF());
+                int reportCount = in.readInt();
+                for (int j = 0; j < reportCount; j++) {
+                    entry.reports.add(Report.read(in));
+                }
+                mEntries.put(entry.path, entry);
+            }
+        } catch (IOException e) {
+            mClient.log(e, "Can't read lint results from %1$s", mFile);
+            mEntries.clear();
+        } catch (IllegalArgumentException e) {
+            // Unknown severity or format: written by another version
+            mEntries.clear();
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /** Writes the results of the files which still exist */
+    void write() {
+        File dir = mFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        List<Entry> entries = Lists.newArrayListWithExpectedSize(mEntries.size());
+        for (Entry entry : mEntries.values()) {
+            if (new File(entry.path).exists()) {
+                entries.add(entry);
+            }
+        }
+
+        File tmpFile = new File(mFile.getPath() + ".tmp"); //$NON-NLS-1$
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(VERSION);
+            out.writeUTF(mKey);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.path);
+                out.writeUTF(entry.hash);
+                out.writeUTF(entry.dependencies);
+                out.writeInt(entry.reports.size());
+                for (Report report : entry.reports) {
+                    report.write(out);
+                }
+            }
+            out.close();
+            out = null;
+            if (mFile.exists() && !mFile.delete() || !tmpFile.renameTo(mFile)) {
+                mClient.log(null, "Can't write lint results to %1$s", mFile);
+            }
+        } catch (IOException e) {
+            mClient.log(e, "Can't write lint results to %1$s", mFile);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    @NonNull
+    private static String hash(@Nullable String text) {
+        if (text == null) {
+            return "";
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+            byte[] bytes = digest.digest(text.getBytes(Charsets.UTF_8));
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        final String path;
+        final String hash;
+        /** Key of the other files the results depend on, empty for resource files */
+        final String dependencies;
+        final List<Report> reports = Lists.newArrayList();
+        /** Whether the file can't be cached, e.g. because it could not be parsed */
+        boolean failed;
+
+        Entry(@NonNull String path, @NonNull String hash, @NonNull String dependencies) {
+            this.path = path;
+            this.hash = hash;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /** A reported issue, with its location chain */
+    private static class Report {
+        final String issue;
+        final Severity severity;
+        final String message;
+        final TextFormat format;
+        final List<StoredLocation> locations;
+
+        Report(@NonNull String issue, @NonNull Severity severity, @Nullable Location location,
+                @NonNull String message, @NonNull TextFormat format) {
+            this.issue = issue;
+            this.severity = severity;
+            this.message = message;
+            this.format = format;
+            locations = Lists.newArrayList();
+            while (location != null) {
+                locations.add(new StoredLocation(location));
+                location = location.getSecondary();
+            }
+        }
+
+        private Report(@NonNull String issue, @NonNull Severity severity,
+                @NonNull String message, @NonNull TextFormat format,
+                @NonNull List<StoredLocation> locations) {
+            this.issue = issue;
+            this.severity = severity;
+            this.message = message;
+            this.format = format;
+            this.locations = locations;
+        }
+
+        @Nullable
+        Location createLocation(@NonNull File contextFile) {
+            Location first = null;
+            Location last = null;
+            for (StoredLocation stored : locations) {
+                Location location = stored.create(contextFile);
+                if (first == null) {
+                    first = location;
+                } else {
+                    last.setSecondary(location);
+                }
+                last = location;
+            }
+            return first;
+        }
+
+        void write(@NonNull DataOutputStream out) throws IOException {
+            out.writeUTF(issue);
+            out.writeUTF(severity.name());
+            out.writeUTF(message);
+            out.writeUTF(format.name());
+            out.writeInt(locations.size());
+            for (StoredLocation location : locations) {
+                location.write(out);
+            }
+        }
+
+        @NonNull
+        static Report read(@NonNull DataInputStream in) throws IOException {
+            String issue = in.readUTF();
+            Severity severity = Severity.valueOf(in.readUTF());
+            String message = in.readUTF();
+            TextFormat format = TextFormat.valueOf(in.readUTF());
+            int count = in.readInt();
+            List<StoredLocation> locations = Lists.newArrayListWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                locations.add(StoredLocation.read(in));
+            }
+            return new Report(issue, severity, message, format, locations);
+        }
+    }
+
+    private static class StoredLocation {
+        final String path;
+        /** Line, column and offset of the start and end, or null if unknown */
+        final int[] start;
+        final int[] end;
+        final String message;
+
+        StoredLocation(@NonNull Location location) {
+            path = location.getFile().getAbsolutePath();
+            start = toArray(location.getStart());
+            end = toArray(location.getEnd());
+            message = location.getMessage();
+        }
+
+        private StoredLocation(@NonNull String path, @Nullable int[] start, @Nullable int[] end,
+                @Nullable String message) {
+            this.path = path;
+            this.start = start;
+            this.end = end;
+            this.message = message;
+        }
+
+        @NonNull
+        Location create(@NonNull File contextFile) {
+            // Reporters compare the file of the location with the file of the context
+            File file = contextFile.getAbsolutePath().equals(path) ? contextFile : new File(path);
+            Position startPosition = toPosition(start);
+            Location location = startPosition != null
+                    ? Location.create(file, startPosition, toPosition(end))
+                    : Location.create(file);
+            if (message != null) {
+                location.setMessage(message);
+            }
+            return location;
+        }
+
+        void write(@NonNull DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            writeArray(out, start);
+            writeArray(out, end);
+            out.writeBoolean(message != null);
+            if (message != null) {
+                out.writeUTF(message);
+            }
+        }
+
+        @NonNull
+        static StoredLocation read(@NonNull DataInputStream in) throws IOException {
+            String path = in.readUTF();
+            int[] start = readArray(in);
+            int[] end = readArray(in);
+            String message = in.readBoolean() ? in.readUTF() : null;
+            return new StoredLocation(path, start, end, message);
+        }
+
+        @Nullable
+        private static int[] toArray(@Nullable Position position) {
+            if (position == null) {
+                return null;
+            }
+            return new int[] { position.getLine(), position.getColumn(), position.getOffset() };
+        }
+
+        @Nullable
+        private static Position toPosition(@Nullable int[] position) {
+            if (position == null) {
+                return null;
+            }
+            return new DefaultPosition(position[0], position[1], position[2]);
+        }
+
+        private static void writeArray(@NonNull DataOutputStream out, @Nullable int[] position)
+                throws IOException {
+            out.writeBoolean(position != null);
+            if (position != null) {
+                for (int value : position) {
+                    out.writeInt(value);
+                }
+            }
+        }
+
+        @Nullable
+        private static int[] readArray(@NonNull DataInputStream in) throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            return new int[] { in.readInt(), in.readInt(), in.readInt() };
+        }
+    }
+}
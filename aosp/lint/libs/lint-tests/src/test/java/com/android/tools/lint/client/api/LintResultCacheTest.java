@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api;
+
+import com.android.tools.lint.checks.AbstractCheckTest;
+import com.android.tools.lint.checks.BuiltinIssueRegistry;
+import com.android.tools.lint.checks.JavaPerformanceDetector;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Scope;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that replaying the cached results of unchanged files reports the
+ * same issues as checking all files again.
+ */
+@SuppressWarnings("javadoc")
+public class LintResultCacheTest extends AbstractCheckTest {
+    private static final String[] FILES = new String[] {
+            "apicheck/minsdk1.xml=>AndroidManifest.xml",
+            "src/test/pkg/JavaPerformanceTest.java.txt=>src/test/pkg/JavaPerformanceTest.java",
+            "src/test/pkg/SharedPrefsTest.java.txt=>src/test/pkg/SharedPrefsTest.java",
+            "src/test/pkg/ToastTest.java.txt=>src/test/pkg/ToastTest.java",
+            "res/layout/accessibility.xml=>res/layout/main.xml",
+            "res/layout/buttonbar.xml=>res/layout/buttonbar.xml",
+            "res/values/arrays.xml=>res/values/arrays.xml"
+    };
+
+    private boolean mCacheResults;
+    private File mCacheDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCacheDir = new File(getTempDir(), "lint-result-cache");
+        addCleanupDir(mCacheDir);
+    }
+
+    public void testUnchangedFiles() throws Exception {
+        mCacheResults = false;
+        String expected = lintProject(FILES);
+
+        mCacheResults = true;
+        // First run stores the results, second run replays them
+        assertEquals(expected, lintProject(FILES));
+        assertTrue(new File(mCacheDir, "lint-results").isDirectory());
+        assertEquals(expected, lintProject(FILES));
+    }
+
+    public void testChangedFile() throws Exception {
+        mCacheResults = true;
+        lintProject(FILES);
+
+        String[] changed = FILES.clone();
+        changed[4] = "res/layout/accessibility2.xml=>res/layout/main.xml";
+        mCacheResults = false;
+        String expected = lintProject(changed);
+        mCacheResults = true;
+        assertEquals(expected, lintProject(changed));
+    }
+
+    public void testChangedJavaFile() throws Exception {
+        mCacheResults = true;
+        lintProject(FILES);
+
+        // Detectors of the unchanged Java files may resolve types of the changed one
+        String[] changed = FILES.clone();
+        changed[2] = "src/test/pkg/SharedPrefsTest2.java.txt=>src/test/pkg/SharedPrefsTest.java";
+        mCacheResults = false;
+        String expected = lintProject(changed);
+        mCacheResults = true;
+        assertEquals(expected, lintProject(changed));
+        assertEquals(expected, lintProject(changed));
+    }
+
+    @Override
+    protected TestLintClient createClient() {
+        return new TestLintClient() {
+            @Override
+            public File getCacheDir(boolean create) {
+                if (create && !mCacheDir.exists() && !mCacheDir.mkdirs()) {
+                    return null;
+                }
+                return mCacheDir;
+            }
+        };
+    }
+
+    @Override
+    protected void configureDriver(LintDriver driver) {
+        driver.setResultCacheEnabled(mCacheResults);
+    }
+
+    @Override
+    protected List<Issue> getIssues() {
+        List<Issue> issues = new ArrayList<Issue>();
+        for (Issue issue : new BuiltinIssueRegistry().getIssues()) {
+            if (isEnabled(issue)) {
+                issues.add(issue);
+            }
+        }
+        return issues;
+    }
+
+    @Override
+    protected boolean isEnabled(Issue issue) {
+        return issue.getImplementation().getScope().equals(Scope.JAVA_FILE_SCOPE)
+                || issue.getImplementation().getScope().equals(Scope.RESOURCE_FILE_SCOPE);
+    }
+
+    @Override
+    protected Detector getDetector() {
+        return new JavaPerformanceDetector();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api;
+
+import junit.framework.TestResult;
+import junit.textui.TestRunner;
+
+/**
+ * Measures the wall clock speedup of parsing Java files on worker threads.
+ * Runs {@link ParallelJavaAnalysisTest#benchmarkParallelParse()}, which lints
+ * the Java test fixtures with one thread and with parser threads, checks that
+ * both report the same issues, and prints the best time of each.
+ */
+public class ParallelJavaAnalysisBenchmark {
+    public static void main(String[] args) {
+        ParallelJavaAnalysisTest test = new ParallelJavaAnalysisTest();
+        test.setName("benchmarkParallelParse");
+        TestResult result = TestRunner.run(test);
+        if (!result.wasSuccessful()) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api;
+
+import com.android.tools.lint.checks.AbstractCheckTest;
+import com.android.tools.lint.checks.BuiltinIssueRegistry;
+import com.android.tools.lint.checks.JavaPerformanceDetector;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Scope;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs all Java detectors over the Java test fixtures with and without parsing
+ * ahead on worker threads, and checks that both report the same issues in the
+ * same order. Only the conversion of the ECJ trees runs on the workers, the
+ * detectors always run on the calling thread.
+ */
+@SuppressWarnings("javadoc")
+public class ParallelJavaAnalysisTest extends AbstractCheckTest {
+    /** Fixtures in src/test/pkg, except those declaring the same class as another one */
+    private static final String[] FIXTURES = new String[] {
+            "ActionBarTest", "ActionTest1", "ActionTest2", "AlarmTest", "Assert", "BadImport",
+            "CallSuperTest", "CheckPermissions", "CheckResult", "CipherGetInstanceAES",
+            "CipherGetInstanceAESCBC", "CipherGetInstanceAESECB", "CipherGetInstanceDES",
+            "CipherGetInstanceTest", "ColorUsage", "ContentProviderClientTest", "CursorTest",
+            "CustomView1", "CustomViewTest", "DetachedFromWindow", "Foo",
+            "GetSignaturesBitwiseAndTest", "GetSignaturesBitwiseOrTest",
+            "GetSignaturesBitwiseXorTest", "GetSignaturesLocalVariableTest",
+            "GetSignaturesNoFlagTest", "GetSignaturesNotPackageManagerTest",
+            "GetSignaturesSingleFlagTest", "GetSignaturesStaticFieldTest", "Hidden",
+            "ImportFrameActivity", "InflaterTest", "IntDefTest", "Java7API",
+            "JavaPerformanceTest", "LayoutInflationTest", "Log", "LogTest", "LongSparseArray",
+            "MyTracksProvider", "NonInternationalizedSmsDetectorTest", "NotificationTest",
+            "OverrideConcreteTest", "PasteError", "PreferenceActivitySubclass", "RangeTest",
+            "SQLiteDatabase", "SQLiteTest", "SdCardTest", "SetJavaScriptEnabled",
+            "SharedPrefsTest", "SharedPrefsTest2", "SharedPrefsTest3", "SharedPrefsTest4",
+            "SharedPrefsTest5", "SharedPrefsTest6", "SharedPrefsTest7", "SharedPrefsTest8",
+            "SparseLongArray", "StringFormat10", "StringFormat11", "StringFormat2",
+            "StringFormat3", "StringFormat4", "StringFormat5", "StringFormat8", "StringFormat9",
+            "StringFormatActivity", "StringFormatActivity2", "StringFormatActivity3",
+            "SuppressTest5", "SurfaceTextureTest", "SystemServiceTest", "ToastTest",
+            "TransactionTest", "TryCatchHang", "TryWithResources", "UnusedReference",
+            "ViewHolderTest", "WatchFaceTest", "WorldWriteableFile", "WrongAnnotation",
+            "WrongCastActivity", "WrongCastActivity2", "WrongCastActivity3", "WrongColor"
+    };
+    private static final int THREAD_COUNT = 4;
+    private static final int RUNS = 3;
+    private static final int BENCHMARK_RUNS = 5;
+
+    private int mThreadCount = 1;
+
+    public void testParallelParse() throws Exception {
+        String[] files = getFiles();
+        mThreadCount = 1;
+        String expected = lintProject(files);
+
+        // Worker threads finish in a different order in every run
+        mThreadCount = THREAD_COUNT;
+        for (int i = 0; i < RUNS; i++) {
+            assertEquals(expected, lintProject(files));
+        }
+    }
+
+    /**
+     * Prints the best wall clock time of linting the fixtures with and without
+     * parser threads. Not run as a test, see {@link ParallelJavaAnalysisBenchmark}.
+     */
+    public void benchmarkParallelParse() throws Exception {
+        String[] files = getFiles();
+
+        // Warm up, the first runs also load all detector and parser classes
+        mThreadCount = 1;
+        String expected = lintProject(files);
+        mThreadCount = THREAD_COUNT;
+        assertEquals(expected, lintProject(files));
+
+        long sequential = Long.MAX_VALUE;
+        long parallel = Long.MAX_VALUE;
+        for (int i = 0; i < BENCHMARK_RUNS; i++) {
+            mThreadCount = 1;
+            long start = System.nanoTime();
+            lintProject(files);
+            sequential = Math.min(sequential, System.nanoTime() - start);
+
+            mThreadCount = THREAD_COUNT;
+            start = System.nanoTime();
+            assertEquals(expected, lintProject(files));
+            parallel = Math.min(parallel, System.nanoTime() - start);
+        }
+
+        System.out.println(String.format("Lint of %1$d Java files, best of %2$d runs: "
+                        + "%3$d ms sequential, %4$d ms with %5$d parser threads (%6$.2fx)",
+                FIXTURES.length, BENCHMARK_RUNS, sequential / 1000000, parallel / 1000000,
+                THREAD_COUNT, (double) sequential / parallel));
+    }
+
+    private static String[] getFiles() {
+        String[] files = new String[FIXTURES.length + 1];
+        files[0] = "apicheck/minsdk1.xml=>AndroidManifest.xml";
+        for (int i = 0; i < FIXTURES.length; i++) {
+            String path = "src/test/pkg/" + FIXTURES[i];
+            files[i + 1] = path + ".java.txt=>" + path + ".java";
+        }
+        return files;
+    }
+
+    @Override
+    protected void configureDriver(LintDriver driver) {
+        driver.setJavaThreadCount(mThreadCount);
+    }
+
+    @Override
+    protected List<Issue> getIssues() {
+        List<Issue> issues = new ArrayList<Issue>();
+        for (Issue issue : new BuiltinIssueRegistry().getIssues()) {
+            if (issue.getImplementation().getScope().contains(Scope.JAVA_FILE)) {
+                issues.add(issue);
+            }
+        }
+        return issues;
+    }
+
+    @Override
+    protected boolean isEnabled(Issue issue) {
+        return issue.getImplementation().getScope().contains(Scope.JAVA_FILE);
+    }
+
+    @Override
+    protected Detector getDetector() {
+        return new JavaPerformanceDetector();
+    }
+}
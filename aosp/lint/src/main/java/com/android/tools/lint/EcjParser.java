@@ -213,7 +213,8 @@ public class EcjParser extends JavaParser {
         }
 
         List<ICompilationUnit> sources = Lists.newArrayListWithExpectedSize(contexts.size());
-        mSourceUnits = Maps.newHashMapWithExpectedSize(sources.size());
+        // Concurrent: files may be parsed on worker threads while others are disposed
+        mSourceUnits = Maps.newConcurrentMap();
         for (JavaContext context : contexts) {
             String contents = context.getContents();
             if (contents == null) {
@@ -226,7 +227,7 @@ public class EcjParser extends JavaParser {
             mSourceUnits.put(file, unit);
         }
         List<String> classPath = computeClassPath(contexts);
-        mCompiled = Maps.newHashMapWithExpectedSize(mSourceUnits.size());
+        mCompiled = Maps.newConcurrentMap();
         try {
             mEnvironment = parse(createCompilerOptions(), sources, classPath, mCompiled, mClient);
         } catch (Throwable t) {
@@ -402,6 +403,15 @@ public class EcjParser extends JavaParser {
         return name;
     }
 
+    /**
+     * Units are parsed and attributed in {@link #prepareJavaParse(List)}, parsing a
+     * file then only converts its parse tree, which does not touch shared state
+     */
+    @Override
+    public boolean supportsParallelParse() {
+        return true;
+    }
+
     @Override
     public Node parseJava(@NonNull JavaContext context) {
         String code = context.getContents();
@@ -453,7 +463,10 @@ public class EcjParser extends JavaParser {
         }
         try {
             CompilationResult compilationResult = new CompilationResult(sourceUnit, 0, 0, 0);
-            return getParser().parse(sourceUnit, compilationResult);
+            // The parser is shared and keeps state while parsing
+            synchronized (this) {
+                return getParser().parse(sourceUnit, compilationResult);
+            }
         } catch (AbortCompilation e) {
             // No need to report Java parsing errors while running in Eclipse.
             // Eclipse itself will already provide problem markers for these files,
@@ -862,7 +875,9 @@ public class EcjParser extends JavaParser {
         protected synchronized void addCompilationUnit(ICompilationUnit sourceUnit,
                 CompilationUnitDeclaration parsedUnit) {
             super.addCompilationUnit(sourceUnit, parsedUnit);
-            mUnits.put(sourceUnit, parsedUnit);
+            if (parsedUnit != null) {
+                mUnits.put(sourceUnit, parsedUnit);
+            }
         }
 
         @Override
@@ -112,6 +112,8 @@ public class LintCliClient extends LintClient {
         mDriver = new LintDriver(registry, this);
 
         mDriver.setAbbreviating(!mFlags.isShowEverything());
+        mDriver.setJavaThreadCount(mFlags.getJavaThreadCount());
+        mDriver.setResultCacheEnabled(mFlags.isCacheResults());
         addProgressPrinter();
         mDriver.addLintListener(new LintListener() {
             @Override
@@ -60,6 +60,8 @@ public class LintCliFlags {
 
     private File mDefaultConfiguration;
     private boolean mShowAll;
+    private int mJavaThreadCount = 1;
+    private boolean mCacheResults;
 
     public static final int ERRNO_SUCCESS = 0;
     public static final int ERRNO_ERRORS = 1;
@@ -226,6 +228,41 @@ public class LintCliFlags {
         mShowAll = showAll;
     }
 
+    /**
+     * Returns the number of threads used to parse Java files
+     *
+     * @see com.android.tools.lint.client.api.LintDriver#setJavaThreadCount(int)
+     */
+    public int getJavaThreadCount() {
+        return mJavaThreadCount;
+    }
+
+    /**
+     * Sets the number of threads used to parse Java files, 1 (the default)
+     * parses them one by one
+     */
+    public void setJavaThreadCount(int javaThreadCount) {
+        mJavaThreadCount = javaThreadCount;
+    }
+
+    /**
+     * Returns whether issues of unchanged files are reported from the results
+     * of the previous run
+     *
+     * @see com.android.tools.lint.client.api.LintDriver#setResultCacheEnabled(boolean)
+     */
+    public boolean isCacheResults() {
+        return mCacheResults;
+    }
+
+    /**
+     * Sets whether issues of unchanged files are reported from the results
+     * of the previous run
+     */
+    public void setCacheResults(boolean cacheResults) {
+        mCacheResults = cacheResults;
+    }
+
     /**
      * Returns the default configuration file to use as a fallback
      */
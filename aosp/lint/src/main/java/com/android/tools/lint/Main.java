@@ -92,6 +92,8 @@ public class Main {
     private static final String ARG_SOURCES    = "--sources";      //$NON-NLS-1$
     private static final String ARG_RESOURCES  = "--resources";    //$NON-NLS-1$
     private static final String ARG_LIBRARIES  = "--libraries";    //$NON-NLS-1$
+    private static final String ARG_THREADS    = "--threads";      //$NON-NLS-1$
+    private static final String ARG_CACHE      = "--cache";        //$NON-NLS-1$
 
     private static final String ARG_NO_WARN_2  = "--nowarn";       //$NON-NLS-1$
     // GCC style flag names for options
@@ -282,6 +284,20 @@ public class Main {
                 mFlags.setShowSourceLines(false);
             } else if (arg.equals(ARG_EXIT_CODE)) {
                 mFlags.setSetExitCode(true);
+            } else if (arg.equals(ARG_THREADS)) {
+                if (index == args.length - 1) {
+                    System.err.println("Missing thread count");
+                    System.exit(ERRNO_INVALID_ARGS);
+                }
+                String count = args[++index];
+                try {
+                    mFlags.setJavaThreadCount(Integer.parseInt(count));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid thread count " + count);
+                    System.exit(ERRNO_INVALID_ARGS);
+                }
+            } else if (arg.equals(ARG_CACHE)) {
+                mFlags.setCacheResults(true);
             } else if (arg.equals(ARG_VERSION)) {
                 printVersion(client);
                 System.exit(ERRNO_SUCCESS);
@@ -962,6 +978,10 @@ public class Main {
             ARG_LIST_IDS, "List the available issue id's and exit.",
             ARG_VERSION, "Output version information and exit.",
             ARG_EXIT_CODE, "Set the exit code to " + ERRNO_ERRORS + " if errors are found.",
+            ARG_THREADS + " <count>", "Parse Java files ahead on the given number of " +
+                "threads. Detectors still run one file at a time.",
+            ARG_CACHE, "Reuse the results of single file checks for files which did not " +
+                "change since the last run with this flag.",
             ARG_SHOW, "List available issues along with full explanations.",
             ARG_SHOW + " <ids>", "Show full explanations for the given list of issue id's.",
 
@@ -98,6 +98,14 @@ public class JavaIdeActivity extends ProjectManagerActivity implements DialogRun
         mInAppPurchaseHelper = new InAppPurchaseHelper(this);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mAutoCompleteProvider instanceof JavaAutoCompleteProvider) {
+            ((JavaAutoCompleteProvider) mAutoCompleteProvider).destroy();
+        }
+    }
+
     @Override
     protected void populateDiagnostic(@NonNull DiagnosticContract.Presenter diagnosticPresenter) {
         PatternAwareOutputParser[] parsers = new PatternAwareOutputParser[]{
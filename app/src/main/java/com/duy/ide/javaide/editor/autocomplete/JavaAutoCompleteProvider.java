@@ -56,10 +56,16 @@ public class JavaAutoCompleteProvider implements SuggestionProvider {
     private PackageImporter mPackageImporter;
     private JavaParser mJavaParser;
     private JavaClassManager mClassManager;
+    /**
+     * Text and AST of the last request, only accessed by the suggestion worker thread
+     */
+    private String mLastText;
+    private JCTree.JCCompilationUnit mLastAst;
 
     public JavaAutoCompleteProvider(Context context) {
         File outDir = context.getDir("dex", Context.MODE_PRIVATE);
-        mClassLoader = new JavaDexClassLoader(Environment.getClasspathFile(context), outDir);
+        File cacheDir = new File(context.getCacheDir(), "autocomplete");
+        mClassLoader = new JavaDexClassLoader(Environment.getClasspathFile(context), outDir, cacheDir);
         mPackageManager = new PackageManager();
         mJavaParser = new JavaParser();
 
@@ -71,6 +77,13 @@ public class JavaAutoCompleteProvider implements SuggestionProvider {
         mPackageManager.init(projectFile, mClassLoader.getClassReader());
     }
 
+    /**
+     * Stop watching source files of the project
+     */
+    public void destroy() {
+        mPackageManager.destroy();
+    }
+
     private void addAutoComplete() {
         mJavaAutoCompletes.add(new CompleteExpression(mClassLoader));
         mJavaAutoCompletes.add(new CompleteNewKeyword(mClassLoader));
@@ -86,11 +99,10 @@ public class JavaAutoCompleteProvider implements SuggestionProvider {
         long time = System.currentTimeMillis();
         ArrayList<SuggestItem> result = new ArrayList<>();
         try {
-            JCTree.JCCompilationUnit ast = mJavaParser.parse(editor.getText());
-            List<IClass> classes = mJavaParser.parseClasses(ast);
-
-            //should be update java class in Java class manager
-            mClassLoader.updateClass(classes);
+            JCTree.JCCompilationUnit ast = parse(editor);
+            if (ast == null || editor.isCancelled()) {
+                return result;
+            }
 
             ExpressionResolver resolver = new ExpressionResolver(ast, editor);
             Expression expression = resolver.getExpressionAtCursor();
@@ -101,6 +113,10 @@ public class JavaAutoCompleteProvider implements SuggestionProvider {
             String statement = editor.getText().substring(startPosition, editor.getCursor());
 
             for (IJavaCompleteMatcher autoComplete : mJavaAutoCompletes) {
+                if (editor.isCancelled()) {
+                    //a newer request is waiting, its result will replace this one
+                    return result;
+                }
                 try {
                     boolean handled = autoComplete.process(ast, editor, expression, statement, result);
                     if (handled) {
@@ -117,4 +133,90 @@ public class JavaAutoCompleteProvider implements SuggestionProvider {
             DLog.d(TAG, "getSuggestions: time = " + (System.currentTimeMillis() - time));
         return result;
     }
+
+    /**
+     * Parse the text of the editor. The last AST is reused if the text did not change (only the
+     * cursor moved), classes declared in the file are not updated if the text only changed
+     * inside a method body.
+     */
+    private JCTree.JCCompilationUnit parse(Editor editor) {
+        String text = editor.getText();
+        if (mLastAst != null && text.equals(mLastText)) {
+            return mLastAst;
+        }
+
+        JCTree.JCCompilationUnit ast = mJavaParser.parse(text);
+        if (ast == null) {
+            return null;
+        }
+        if (mLastAst == null || !isChangedInsideMethodBody(mLastText, mLastAst, text)) {
+            List<IClass> classes = mJavaParser.parseClasses(ast);
+            //should be update java class in Java class manager
+            mClassLoader.updateClass(classes);
+        }
+        mLastText = text;
+        mLastAst = ast;
+        return ast;
+    }
+
+    /**
+     * @return true if the only change between two texts is inside a method body and can not
+     * change the structure of the file, so declarations of the file are still the same
+     */
+    private static boolean isChangedInsideMethodBody(String oldText,
+                                                     JCTree.JCCompilationUnit oldAst,
+                                                     String newText) {
+        int maxLength = Math.min(oldText.length(), newText.length());
+        int prefix = 0;
+        while (prefix < maxLength && oldText.charAt(prefix) == newText.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < maxLength - prefix && oldText.charAt(oldText.length() - 1 - suffix)
+                == newText.charAt(newText.length() - 1 - suffix)) {
+            suffix++;
+        }
+        int oldEnd = oldText.length() - suffix;
+        int newEnd = newText.length() - suffix;
+        if (!isSimpleEdit(oldText, prefix, oldEnd) || !isSimpleEdit(newText, prefix, newEnd)) {
+            return false;
+        }
+        for (JCTree typeDecl : oldAst.getTypeDecls()) {
+            if (typeDecl instanceof JCTree.JCClassDecl
+                    && findMethodBody((JCTree.JCClassDecl) typeDecl, prefix, oldEnd)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean findMethodBody(JCTree.JCClassDecl classDecl, int start, int end) {
+        for (JCTree member : classDecl.getMembers()) {
+            if (member instanceof JCTree.JCMethodDecl) {
+                JCTree.JCBlock body = ((JCTree.JCMethodDecl) member).getBody();
+                if (body != null && body.pos < start && end <= body.endpos) {
+                    return true;
+                }
+            } else if (member instanceof JCTree.JCClassDecl) {
+                if (findMethodBody((JCTree.JCClassDecl) member, start, end)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the text in the range can not open or close a block, comment or literal
+     */
+    private static boolean isSimpleEdit(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (!Character.isJavaIdentifierPart(c) && !Character.isWhitespace(c)
+                    && ".,;()[]+-=<>!&|?:%^~".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
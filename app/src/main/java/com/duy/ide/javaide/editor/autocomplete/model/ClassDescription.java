@@ -161,6 +161,10 @@ public class ClassDescription extends JavaSuggestItemImpl implements IClass {
         mMethods.add(methodDescription);
     }
 
+    public void addInterface(IClass anInterface) {
+        mImplements.add(anInterface);
+    }
+
     public List<IMethod> getMethods() {
         return mMethods;
     }
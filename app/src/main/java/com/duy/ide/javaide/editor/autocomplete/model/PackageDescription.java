@@ -124,7 +124,17 @@ public class PackageDescription extends JavaSuggestItemImpl {
 
     public PackageDescription remove(String child) {
         if (child.contains(".")) {
-            return this.mChild.remove(child.substring(0, child.indexOf(".")));
+            String first = child.substring(0, child.indexOf("."));
+            PackageDescription pkg = mChild.get(first);
+            if (pkg == null) {
+                return null;
+            }
+            PackageDescription removed = pkg.remove(child.substring(child.indexOf(".") + 1));
+            //an empty package would be suggested as a class
+            if (removed != null && pkg.isLeaf()) {
+                mChild.remove(first);
+            }
+            return removed;
         } else {
             return this.mChild.remove(child);
         }
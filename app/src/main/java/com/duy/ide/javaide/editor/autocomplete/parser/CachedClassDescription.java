@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.javaide.editor.autocomplete.parser;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.duy.ide.code.api.SuggestItem;
+import com.duy.ide.javaide.editor.autocomplete.model.ClassDescription;
+import com.duy.ide.javaide.editor.autocomplete.model.ConstructorDescription;
+import com.duy.ide.javaide.editor.autocomplete.model.FieldDescription;
+import com.duy.ide.javaide.editor.autocomplete.model.MethodDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class loaded from {@link ClassSignatureCache}. Only name and modifiers are known after
+ * loading, super class and members are decoded from the database on first access.
+ */
+class CachedClassDescription extends ClassDescription {
+    @NonNull
+    private final ClassSignatureCache mCache;
+    private final int mMembersOffset;
+    /**
+     * Set after all members are added, read without the lock
+     */
+    private volatile boolean mMembersLoaded = false;
+    /**
+     * Set before members are read, members may refer back to this class
+     */
+    private boolean mMembersLoading = false;
+
+    CachedClassDescription(@NonNull ClassSignatureCache cache, String className, int modifiers,
+                           boolean isPrimitive, boolean isAnnotation, boolean isEnum,
+                           int membersOffset) {
+        super(className, modifiers, isPrimitive, isAnnotation, isEnum);
+        mCache = cache;
+        mMembersOffset = membersOffset;
+    }
+
+    /**
+     * Member types are resolved through the class manager, which adds classes that are not
+     * loaded yet, so members are read under the lock of the class manager
+     */
+    private void ensureMembers() {
+        if (mMembersLoaded) {
+            return;
+        }
+        JavaClassManager classManager = JavaClassManager.getInstance();
+        synchronized (classManager.getLock()) {
+            if (!mMembersLoading) {
+                mMembersLoading = true;
+                mCache.readMembers(this, mMembersOffset, classManager);
+                mMembersLoaded = true;
+            }
+        }
+    }
+
+    void addConstructor(String name, List<IClass> paramTypes) {
+        addConstructor(new ConstructorDescription(name, paramTypes));
+    }
+
+    void addField(int modifiers, IClass type, String name, @Nullable String value) {
+        addField(new FieldDescription(modifiers, type, name, value));
+    }
+
+    void addMethod(String name, IClass returnType, int modifiers, ArrayList<String> paramTypes) {
+        addMethod(new MethodDescription(name, returnType, modifiers, paramTypes));
+    }
+
+    @Nullable
+    @Override
+    public IClass getSuperclass() {
+        ensureMembers();
+        return super.getSuperclass();
+    }
+
+    @Override
+    public ArrayList<ConstructorDescription> getConstructors() {
+        ensureMembers();
+        return super.getConstructors();
+    }
+
+    @Override
+    public ArrayList<IField> getFields() {
+        ensureMembers();
+        return super.getFields();
+    }
+
+    @Override
+    public List<IMethod> getMethods() {
+        ensureMembers();
+        return super.getMethods();
+    }
+
+    @Override
+    public ArrayList<SuggestItem> getMember(String prefix) {
+        ensureMembers();
+        return super.getMember(prefix);
+    }
+
+    @Override
+    public void getMethods(ArrayList<SuggestItem> result, String prefix) {
+        ensureMembers();
+        super.getMethods(result, prefix);
+    }
+
+    @Override
+    public IMethod getMethod(String methodName, IClass[] argsType) {
+        ensureMembers();
+        return super.getMethod(methodName, argsType);
+    }
+
+    @Override
+    public IField getField(String name) {
+        ensureMembers();
+        return super.getField(name);
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.javaide.editor.autocomplete.parser;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.duy.common.interfaces.Filter;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorted string table of class names used by {@link JavaClassManager}.
+ * <p>
+ * Classes are kept in two parallel sorted tables, one keyed by simple name and one keyed by
+ * full name. A single {@link #put(IClass)} costs a binary search plus one array shift, and a
+ * large number of classes can be added between {@link #beginBulkUpdate()} and
+ * {@link #endBulkUpdate()}, which appends without ordering and sorts once at the end.
+ * Lookups during a bulk update see the classes which were indexed before it started.
+ * <p>
+ * Supported lookups:
+ * <ul>
+ * <li>prefix of simple name, "Str" -> String, StringBuilder</li>
+ * <li>camel humps of simple name, "HM" -> HashMap, "SBu" -> StringBuilder</li>
+ * <li>prefix of full name, "java.util.Ha" -> java.util.HashMap</li>
+ * </ul>
+ * This class is not thread safe.
+ */
+public class ClassNameIndex {
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private static final Comparator<Entry> SIMPLE_NAME_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            int result = o1.simpleName.compareTo(o2.simpleName);
+            if (result == 0) {
+                result = o1.fullName.compareTo(o2.fullName);
+            }
+            return result;
+        }
+    };
+    private static final Comparator<Entry> FULL_NAME_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            return o1.fullName.compareTo(o2.fullName);
+        }
+    };
+
+    private Entry[] mBySimpleName = new Entry[DEFAULT_CAPACITY];
+    private Entry[] mByFullName = new Entry[DEFAULT_CAPACITY];
+    private int mSize = 0;
+    /**
+     * Number of sorted entries at the start of both tables, entries after them are appended
+     * by a bulk update and are not visible to lookups yet
+     */
+    private int mSortedSize = 0;
+    private int mBulkDepth = 0;
+
+    /**
+     * Start a bulk update, all classes added until {@link #endBulkUpdate()} are appended
+     * without ordering. Until the bulk update ends, lookups only see the previous classes.
+     */
+    public void beginBulkUpdate() {
+        mBulkDepth++;
+    }
+
+    /**
+     * Finish a bulk update and sort both tables once
+     */
+    public void endBulkUpdate() {
+        if (mBulkDepth == 0) {
+            throw new IllegalStateException("endBulkUpdate() without beginBulkUpdate()");
+        }
+        mBulkDepth--;
+        if (mBulkDepth == 0) {
+            Arrays.sort(mBySimpleName, 0, mSize, SIMPLE_NAME_ORDER);
+            Arrays.sort(mByFullName, 0, mSize, FULL_NAME_ORDER);
+            removeDuplicates();
+            mSortedSize = mSize;
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Add the class to index, replace old value if class with same full name already exist
+     */
+    public void put(@NonNull IClass value) {
+        Entry entry = new Entry(value);
+        if (mBulkDepth > 0) {
+            ensureCapacity(mSize + 1);
+            mBySimpleName[mSize] = entry;
+            mByFullName[mSize] = entry;
+            mSize++;
+            return;
+        }
+
+        int fullIndex = Arrays.binarySearch(mByFullName, 0, mSize, entry, FULL_NAME_ORDER);
+        if (fullIndex >= 0) {
+            Entry old = mByFullName[fullIndex];
+            mByFullName[fullIndex] = entry;
+            if (old.simpleName.equals(entry.simpleName)) {
+                int simpleIndex = Arrays.binarySearch(mBySimpleName, 0, mSize, old, SIMPLE_NAME_ORDER);
+                mBySimpleName[simpleIndex] = entry;
+            } else {
+                removeAt(mBySimpleName, Arrays.binarySearch(mBySimpleName, 0, mSize, old, SIMPLE_NAME_ORDER));
+                insertAt(mBySimpleName, -(Arrays.binarySearch(mBySimpleName, 0, mSize - 1, entry, SIMPLE_NAME_ORDER) + 1), mSize - 1, entry);
+            }
+            return;
+        }
+
+        ensureCapacity(mSize + 1);
+        insertAt(mByFullName, -(fullIndex + 1), mSize, entry);
+        int simpleIndex = Arrays.binarySearch(mBySimpleName, 0, mSize, entry, SIMPLE_NAME_ORDER);
+        insertAt(mBySimpleName, -(simpleIndex + 1), mSize, entry);
+        mSize++;
+        mSortedSize = mSize;
+    }
+
+    /**
+     * @return removed class or null if index does not contain class with given name
+     */
+    @Nullable
+    public IClass remove(@NonNull String fullClassName) {
+        IClass appended = removeAppended(fullClassName);
+        int fullIndex = indexOfFullName(fullClassName);
+        if (fullIndex < 0) {
+            return appended;
+        }
+        Entry entry = mByFullName[fullIndex];
+        removeAt(mByFullName, fullIndex);
+        removeAt(mBySimpleName, Arrays.binarySearch(mBySimpleName, 0, mSortedSize, entry, SIMPLE_NAME_ORDER));
+        mSize--;
+        mSortedSize--;
+        mByFullName[mSize] = null;
+        mBySimpleName[mSize] = null;
+        return appended != null ? appended : entry.value;
+    }
+
+    @Nullable
+    public IClass get(@NonNull String fullClassName) {
+        int index = indexOfFullName(fullClassName);
+        return index >= 0 ? mByFullName[index].value : null;
+    }
+
+    /**
+     * @return read only view of all classes sorted by full name
+     */
+    @NonNull
+    public List<IClass> getAllClasses() {
+        return new AbstractList<IClass>() {
+            @Override
+            public IClass get(int index) {
+                if (index < 0 || index >= mSortedSize) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSortedSize);
+                }
+                return mByFullName[index].value;
+            }
+
+            @Override
+            public int size() {
+                return mSortedSize;
+            }
+        };
+    }
+
+    /**
+     * Find all classes matches given prefix.
+     * <p>
+     * If the prefix contains '.', it will be treated as package qualified name. Otherwise
+     * return all classes which simple name starts with the prefix, followed by classes
+     * which camel humps match the prefix
+     */
+    @NonNull
+    public List<IClass> find(@NonNull String prefix, @Nullable Filter<IClass> filter) {
+        ArrayList<IClass> result = new ArrayList<>();
+        if (prefix.indexOf('.') >= 0) {
+            findByFullName(prefix, filter, result);
+            return result;
+        }
+        int start = lowerBound(mBySimpleName, prefix, true);
+        int end = upperBound(mBySimpleName, start, prefix, true);
+        for (int i = start; i < end; i++) {
+            accept(mBySimpleName[i].value, filter, result);
+        }
+        if (isCamelHumpPattern(prefix)) {
+            //all candidates have same first character with the prefix
+            String first = prefix.substring(0, 1);
+            int from = lowerBound(mBySimpleName, first, true);
+            int to = upperBound(mBySimpleName, from, first, true);
+            for (int i = from; i < to; i++) {
+                if (i >= start && i < end) {
+                    continue; //already matched with prefix
+                }
+                Entry entry = mBySimpleName[i];
+                if (matchCamelHumps(prefix, entry.simpleName)) {
+                    accept(entry.value, filter, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find all classes which full name starts with the prefix, for example "java.util.Ha"
+     */
+    public void findByFullName(@NonNull String prefix, @Nullable Filter<IClass> filter,
+                               @NonNull List<IClass> result) {
+        int start = lowerBound(mByFullName, prefix, false);
+        int end = upperBound(mByFullName, start, prefix, false);
+        for (int i = start; i < end; i++) {
+            accept(mByFullName[i].value, filter, result);
+        }
+    }
+
+    /**
+     * @param pattern - camel hump pattern, for example "HM", "HaMa"
+     * @param name    - simple class name, for example "HashMap"
+     */
+    static boolean matchCamelHumps(@NonNull String pattern, @NonNull String name) {
+        if (pattern.isEmpty() || name.isEmpty() || pattern.charAt(0) != name.charAt(0)) {
+            return false;
+        }
+        int p = 0, n = 0;
+        while (p < pattern.length()) {
+            char pc = pattern.charAt(p);
+            if (n < name.length() && name.charAt(n) == pc) {
+                p++;
+                n++;
+                continue;
+            }
+            if (!Character.isUpperCase(pc)) {
+                return false;
+            }
+            //skip to next hump of the name which starts with pc
+            n++;
+            while (n < name.length()
+                    && !(Character.isUpperCase(name.charAt(n)) && name.charAt(n) == pc)) {
+                n++;
+            }
+            if (n >= name.length()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCamelHumpPattern(String prefix) {
+        for (int i = 1; i < prefix.length(); i++) {
+            if (Character.isUpperCase(prefix.charAt(i))) {
+                return Character.isUpperCase(prefix.charAt(0));
+            }
+        }
+        return false;
+    }
+
+    private static void accept(IClass value, @Nullable Filter<IClass> filter, List<IClass> result) {
+        if (filter == null || filter.accept(value)) {
+            result.add(value);
+        }
+    }
+
+    private int indexOfFullName(String fullName) {
+        int low = 0, high = mSortedSize - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = mByFullName[mid].fullName.compareTo(fullName);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return first index which key is greater than or equal to prefix
+     */
+    private int lowerBound(Entry[] table, String prefix, boolean simple) {
+        int low = 0, high = mSortedSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key(table[mid], simple).compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return first index after start which key does not start with prefix
+     */
+    private int upperBound(Entry[] table, int start, String prefix, boolean simple) {
+        int low = start, high = mSortedSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key(table[mid], simple).startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String key(Entry entry, boolean simple) {
+        return simple ? entry.simpleName : entry.fullName;
+    }
+
+    private void insertAt(Entry[] table, int index, int size, Entry entry) {
+        System.arraycopy(table, index, table, index + 1, size - index);
+        table[index] = entry;
+    }
+
+    private void removeAt(Entry[] table, int index) {
+        System.arraycopy(table, index + 1, table, index, mSize - index - 1);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mByFullName.length) {
+            int newCapacity = Math.max(capacity, mByFullName.length * 2);
+            mByFullName = Arrays.copyOf(mByFullName, newCapacity);
+            mBySimpleName = Arrays.copyOf(mBySimpleName, newCapacity);
+        }
+    }
+
+    /**
+     * Bulk update may add the same class many times, keep the last one
+     */
+    private void removeDuplicates() {
+        int size = mSize;
+        int write = 0;
+        for (int read = 0; read < size; read++) {
+            if (write > 0 && mByFullName[write - 1].fullName.equals(mByFullName[read].fullName)) {
+                mByFullName[write - 1] = mByFullName[read];
+            } else {
+                mByFullName[write++] = mByFullName[read];
+            }
+        }
+        if (write == size) {
+            return;
+        }
+        Arrays.fill(mByFullName, write, size, null);
+        System.arraycopy(mByFullName, 0, mBySimpleName, 0, write);
+        Arrays.fill(mBySimpleName, write, size, null);
+        Arrays.sort(mBySimpleName, 0, write, SIMPLE_NAME_ORDER);
+        mSize = write;
+    }
+
+    /**
+     * Remove the entries of a class which were appended by the running bulk update
+     *
+     * @return the last removed class
+     */
+    @Nullable
+    private IClass removeAppended(String fullName) {
+        IClass removed = null;
+        int write = mSortedSize;
+        for (int read = mSortedSize; read < mSize; read++) {
+            //appended entries have the same position in both tables
+            Entry entry = mByFullName[read];
+            if (entry.fullName.equals(fullName)) {
+                removed = entry.value;
+            } else {
+                mByFullName[write] = entry;
+                mBySimpleName[write] = entry;
+                write++;
+            }
+        }
+        Arrays.fill(mByFullName, write, mSize, null);
+        Arrays.fill(mBySimpleName, write, mSize, null);
+        mSize = write;
+        return removed;
+    }
+
+    private static class Entry {
+        final String simpleName;
+        final String fullName;
+        final IClass value;
+
+        Entry(IClass value) {
+            this.value = value;
+            this.fullName = value.getFullClassName() != null ? value.getFullClassName() : "";
+            this.simpleName = value.getSimpleName() != null ? value.getSimpleName() : "";
+        }
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.javaide.editor.autocomplete.parser;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.duy.ide.javaide.utils.DLog;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Binary database of class signatures (modifiers, super types, constructors, fields, methods)
+ * of a jar file, built once with reflection and read back through a memory mapped file.
+ * <p>
+ * File layout, all integers are big endian:
+ * <pre>
+ * header       magic, version, jar length (long), jar last modified (long),
+ *              string count, class count, string data offset, member data offset
+ * strings      offset of each string, relative to string data
+ * classes      name, modifiers, flags, offset of members relative to member data
+ * string data  u2 length + utf-8 bytes for each string
+ * member data  super class, interfaces, constructors, fields, methods of each class
+ * </pre>
+ * Only the class table is read on startup, members of a class are decoded when
+ * {@link CachedClassDescription} is queried for the first time.
+ */
+class ClassSignatureCache {
+    private static final String TAG = "ClassSignatureCache";
+
+    private static final int MAGIC = 0x4a534947; //JSIG
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4;
+    private static final int CLASS_ENTRY_SIZE = 4 * 4;
+    private static final int NO_INDEX = -1;
+
+    private static final int FLAG_PRIMITIVE = 1;
+    private static final int FLAG_ANNOTATION = 1 << 1;
+    private static final int FLAG_ENUM = 1 << 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @NonNull
+    private final File mJarFile;
+    @NonNull
+    private final File mCacheFile;
+
+    private ByteBuffer mBuffer;
+    private String[] mStrings;
+    private int mStringTableOffset;
+    private int mStringDataOffset;
+    private int mMemberDataOffset;
+    private int mClassCount;
+
+    /**
+     * @param cacheDir - directory to store the database
+     * @param jarFile  - the jar file, usually the boot classpath
+     */
+    ClassSignatureCache(@NonNull File cacheDir, @NonNull File jarFile) {
+        mJarFile = jarFile;
+        mCacheFile = new File(cacheDir, "signatures-" + fingerprint(jarFile) + ".bin");
+    }
+
+    /**
+     * Key of the database, computed from path, size and modification time of the jar so that
+     * a changed jar never reuses old signatures and startup does not need to hash the jar content.
+     */
+    private static String fingerprint(File jarFile) {
+        long hash = 1125899906842597L;
+        String key = jarFile.getAbsolutePath() + '|' + jarFile.length() + '|' + jarFile.lastModified();
+        for (int i = 0; i < key.length(); i++) {
+            hash = 31 * hash + key.charAt(i);
+        }
+        return Long.toHexString(hash);
+    }
+
+    @NonNull
+    File getCacheFile() {
+        return mCacheFile;
+    }
+
+    /**
+     * Map the database into memory
+     *
+     * @return false if the database does not exist or is out of date
+     */
+    boolean open() {
+        if (!mCacheFile.isFile()) {
+            return false;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(mCacheFile, "r");
+             FileChannel channel = file.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE
+                    || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION
+                    || buffer.getLong(8) != mJarFile.length()
+                    || buffer.getLong(16) != mJarFile.lastModified()) {
+                return false;
+            }
+            int stringCount = buffer.getInt(24);
+            mClassCount = buffer.getInt(28);
+            mStringDataOffset = buffer.getInt(32);
+            mMemberDataOffset = buffer.getInt(36);
+            mStringTableOffset = HEADER_SIZE;
+            mStrings = new String[stringCount];
+            mBuffer = buffer;
+            return true;
+        } catch (IOException e) {
+            if (DLog.DEBUG) DLog.e(TAG, "open: can not map " + mCacheFile, e);
+            return false;
+        }
+    }
+
+    /**
+     * Create a lazy class for each class in the database and add it to the class manager
+     *
+     * @param includeAndroid - false to skip android.* classes, used for java projects
+     */
+    void loadInto(@NonNull JavaClassManager classManager, boolean includeAndroid) {
+        int classTableOffset = mStringTableOffset + mStrings.length * 4;
+        for (int i = 0; i < mClassCount; i++) {
+            int entry = classTableOffset + i * CLASS_ENTRY_SIZE;
+            String className = getString(mBuffer.getInt(entry));
+            if (!includeAndroid && className.startsWith("android")) {
+                continue;
+            }
+            int modifiers = mBuffer.getInt(entry + 4);
+            int flags = mBuffer.getInt(entry + 8);
+            int membersOffset = mMemberDataOffset + mBuffer.getInt(entry + 12);
+            classManager.update(new CachedClassDescription(this, className, modifiers,
+                    (flags & FLAG_PRIMITIVE) != 0,
+                    (flags & FLAG_ANNOTATION) != 0,
+                    (flags & FLAG_ENUM) != 0,
+                    membersOffset));
+        }
+    }
+
+    /**
+     * Decode super class, constructors, fields and methods of the class stored at given offset
+     */
+    synchronized void readMembers(@NonNull CachedClassDescription target, int offset,
+                                  @NonNull JavaClassManager classManager) {
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(offset);
+
+        int superClass = buffer.getInt();
+        if (superClass != NO_INDEX) {
+            target.setSuperclass(classManager.getClassByName(getString(superClass)));
+        } else if (!Object.class.getName().equals(target.getFullClassName())) {
+            target.setSuperclass(classManager.getParsedClass(Object.class.getName()));
+        }
+
+        int interfaceCount = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < interfaceCount; i++) {
+            target.addInterface(classManager.getClassByName(getString(buffer.getInt())));
+        }
+
+        int constructorCount = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < constructorCount; i++) {
+            int paramCount = buffer.getShort() & 0xFFFF;
+            List<IClass> params = new ArrayList<>(paramCount);
+            for (int j = 0; j < paramCount; j++) {
+                params.add(classManager.getClassByName(getString(buffer.getInt())));
+            }
+            target.addConstructor(target.getFullClassName(), params);
+        }
+
+        int fieldCount = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < fieldCount; i++) {
+            String name = getString(buffer.getInt());
+            IClass type = classManager.getClassByName(getString(buffer.getInt()));
+            int modifiers = buffer.getInt();
+            int value = buffer.getInt();
+            target.addField(modifiers, type, name, value == NO_INDEX ? null : getString(value));
+        }
+
+        int methodCount = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < methodCount; i++) {
+            String name = getString(buffer.getInt());
+            int modifiers = buffer.getInt();
+            IClass returnType = classManager.getClassByName(getString(buffer.getInt()));
+            int paramCount = buffer.getShort() & 0xFFFF;
+            ArrayList<String> params = new ArrayList<>(paramCount);
+            for (int j = 0; j < paramCount; j++) {
+                params.add(getString(buffer.getInt()));
+            }
+            target.addMethod(name, returnType, modifiers, params);
+        }
+    }
+
+    @NonNull
+    private synchronized String getString(int index) {
+        String value = mStrings[index];
+        if (value == null) {
+            int offset = mStringDataOffset + mBuffer.getInt(mStringTableOffset + index * 4);
+            int length = mBuffer.getShort(offset) & 0xFFFF;
+            byte[] bytes = new byte[length];
+            ByteBuffer buffer = mBuffer.duplicate();
+            buffer.position(offset + 2);
+            buffer.get(bytes);
+            value = new String(bytes, UTF_8);
+            mStrings[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Reflect over all classes and write the database. The file is written to a temporary file
+     * first, so an interrupted write never leaves a corrupted database.
+     */
+    void write(@NonNull List<Class> classes) throws IOException {
+        long time = System.currentTimeMillis();
+        Writer writer = new Writer();
+        for (Class clazz : classes) {
+            writer.addClass(clazz);
+        }
+
+        File parent = mCacheFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Can not create directory " + parent);
+        }
+        File tmp = new File(mCacheFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            writer.writeTo(out, mJarFile);
+        }
+        deleteOldDatabases(parent);
+        if (!tmp.renameTo(mCacheFile)) {
+            tmp.delete();
+            throw new IOException("Can not rename " + tmp + " to " + mCacheFile);
+        }
+        if (DLog.DEBUG) {
+            DLog.d(TAG, "write: " + classes.size() + " classes, "
+                    + mCacheFile.length() + " bytes, time = " + (System.currentTimeMillis() - time));
+        }
+    }
+
+    private void deleteOldDatabases(@Nullable File dir) {
+        File[] files = dir != null ? dir.listFiles() : null;
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith("signatures-") && file.getName().endsWith(".bin")
+                    && !file.equals(mCacheFile)) {
+                file.delete();
+            }
+        }
+    }
+
+    private static class Writer {
+        private final HashMap<String, Integer> mStringIndex = new HashMap<>();
+        private final ByteArrayOutputStream mStringData = new ByteArrayOutputStream();
+        private final DataOutputStream mStringOut = new DataOutputStream(mStringData);
+        private final ArrayList<Integer> mStringOffsets = new ArrayList<>();
+
+        private final ByteArrayOutputStream mMemberData = new ByteArrayOutputStream();
+        private final DataOutputStream mMemberOut = new DataOutputStream(mMemberData);
+        private final ByteArrayOutputStream mClassData = new ByteArrayOutputStream();
+        private final DataOutputStream mClassOut = new DataOutputStream(mClassData);
+        private int mClassCount = 0;
+
+        void addClass(Class clazz) throws IOException {
+            int flags = 0;
+            if (clazz.isPrimitive()) flags |= FLAG_PRIMITIVE;
+            if (clazz.isAnnotation()) flags |= FLAG_ANNOTATION;
+            if (clazz.isEnum()) flags |= FLAG_ENUM;
+
+            //reflection can fail if a dependency of the class is missing,
+            //keep the class without members as ClassDescription does
+            byte[] members;
+            try {
+                members = members(clazz);
+            } catch (Throwable e) {
+                members = members(null);
+            }
+
+            mClassOut.writeInt(string(clazz.getName()));
+            mClassOut.writeInt(clazz.getModifiers());
+            mClassOut.writeInt(flags);
+            mClassOut.writeInt(mMemberData.size());
+            mMemberOut.write(members);
+            mClassCount++;
+        }
+
+        /**
+         * Same members as {@link com.duy.ide.javaide.editor.autocomplete.model.ClassDescription#initMembers(Class)}
+         */
+        private byte[] members(@Nullable Class c) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            if (c == null) {
+                out.writeInt(NO_INDEX);
+                out.writeShort(0);
+                out.writeShort(0);
+                out.writeShort(0);
+                out.writeShort(0);
+                return bytes.toByteArray();
+            }
+
+            Class superclass = c.getSuperclass();
+            out.writeInt(superclass != null ? string(superclass.getName()) : NO_INDEX);
+
+            Class[] interfaces = c.getInterfaces();
+            out.writeShort(interfaces.length);
+            for (Class anInterface : interfaces) {
+                out.writeInt(string(anInterface.getName()));
+            }
+
+            ArrayList<Constructor> constructors = new ArrayList<>();
+            for (Constructor constructor : c.getConstructors()) {
+                if (Modifier.isPublic(constructor.getModifiers())) {
+                    constructors.add(constructor);
+                }
+            }
+            out.writeShort(constructors.size());
+            for (Constructor constructor : constructors) {
+                writeTypes(out, constructor.getParameterTypes());
+            }
+
+            ArrayList<Field> fields = new ArrayList<>();
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isPublic(field.getModifiers())
+                        && !field.getName().equals(field.getDeclaringClass().getName())) {
+                    fields.add(field);
+                }
+            }
+            out.writeShort(fields.size());
+            for (Field field : fields) {
+                out.writeInt(string(field.getName()));
+                out.writeInt(string(field.getType().getName()));
+                out.writeInt(field.getModifiers());
+                String value = staticValue(field);
+                out.writeInt(value != null ? string(value) : NO_INDEX);
+            }
+
+            ArrayList<Method> methods = new ArrayList<>();
+            for (Method method : c.getMethods()) {
+                if (Modifier.isPublic(method.getModifiers())) {
+                    methods.add(method);
+                }
+            }
+            out.writeShort(methods.size());
+            for (Method method : methods) {
+                out.writeInt(string(method.getName()));
+                out.writeInt(method.getModifiers());
+                out.writeInt(string(method.getReturnType().getName()));
+                writeTypes(out, method.getParameterTypes());
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Same value as {@link com.duy.ide.javaide.editor.autocomplete.model.FieldDescription}
+         */
+        @Nullable
+        private static String staticValue(Field field) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                return null;
+            }
+            try {
+                Object o = field.get(null);
+                if (field.getType().isPrimitive()) {
+                    return o.toString();
+                } else {
+                    return o.getClass().getSimpleName();
+                }
+            } catch (Throwable ignored) {
+                return null;
+            }
+        }
+
+        private void writeTypes(DataOutputStream out, Class[] types) throws IOException {
+            out.writeShort(types.length);
+            for (Class type : types) {
+                out.writeInt(string(type.getName()));
+            }
+        }
+
+        private int string(String value) throws IOException {
+            Integer index = mStringIndex.get(value);
+            if (index == null) {
+                byte[] bytes = value.getBytes(UTF_8);
+                if (bytes.length > 0xFFFF) {
+                    bytes = value.substring(0, 0xFFFF / 3).getBytes(UTF_8);
+                }
+                index = mStringOffsets.size();
+                mStringOffsets.add(mStringData.size());
+                mStringOut.writeShort(bytes.length);
+                mStringOut.write(bytes);
+                mStringIndex.put(value, index);
+            }
+            return index;
+        }
+
+        void writeTo(DataOutputStream out, File jarFile) throws IOException {
+            int stringDataOffset = HEADER_SIZE + mStringOffsets.size() * 4 + mClassData.size();
+            int memberDataOffset = stringDataOffset + mStringData.size();
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(jarFile.length());
+            out.writeLong(jarFile.lastModified());
+            out.writeInt(mStringOffsets.size());
+            out.writeInt(mClassCount);
+            out.writeInt(stringDataOffset);
+            out.writeInt(memberDataOffset);
+            for (Integer offset : mStringOffsets) {
+                out.writeInt(offset);
+            }
+            mClassData.writeTo(out);
+            mStringData.writeTo(out);
+            mMemberData.writeTo(out);
+        }
+    }
+}
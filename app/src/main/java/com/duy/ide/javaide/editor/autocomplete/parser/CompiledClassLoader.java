@@ -20,11 +20,11 @@ package com.duy.ide.javaide.editor.autocomplete.parser;
 import android.util.Log;
 
 import com.android.annotations.NonNull;
+import com.duy.android.compiler.builder.internal.dex.LibraryDexCache;
 import com.duy.android.compiler.project.AndroidAppProject;
 import com.duy.android.compiler.project.JavaProject;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
@@ -38,7 +38,6 @@ import dalvik.system.DexClassLoader;
  */
 class CompiledClassLoader {
     private static final String TAG = "CompiledClassLoader";
-    private static final String DOT_DEX = ".dex";
     private File mBootClasspath;
     private File mTempDir;
 
@@ -47,25 +46,30 @@ class CompiledClassLoader {
         mTempDir = tempDir;
     }
 
+    /**
+     * Load all classes from bootclasspath
+     *
+     * @param android - false to skip android.* classes
+     */
     @NonNull
-    public ArrayList<Class> getCompiledClassesFromProject(@NonNull JavaProject project) {
+    public ArrayList<Class> getBootClasspathClasses(boolean android) {
+        if (mBootClasspath == null) {
+            return new ArrayList<>();
+        }
+        return getAllClassesFromJar(android, mBootClasspath);
+    }
+
+    /**
+     * Load all classes from dexed libraries of the project
+     */
+    @NonNull
+    public ArrayList<Class> getLibraryClasses(@NonNull JavaProject project) {
         ArrayList<Class> classes = new ArrayList<>();
         boolean android = project instanceof AndroidAppProject;
 
-        //load all class from bootclasspath
-        if (mBootClasspath != null) {
-            classes.addAll(getAllClassesFromJar(android, mBootClasspath));
-        }
-
-        if (project.getDirBuildDexedLibs().listFiles() != null
-                && project.getDirBuildDexedLibs().listFiles().length > 0) {
-            File[] files = project.getDirBuildDexedLibs().listFiles(new FileFilter() {
-                @Override
-                public boolean accept(File pathname) {
-                    return pathname.isFile() && pathname.getName().endsWith(DOT_DEX);
-                }
-            });
-            for (File lib : files) {
+        for (File lib : LibraryDexCache.getDexedLibraries(project.getDexedLibsIndexFile())) {
+            //deleted from the shared cache, it is dexed again by the next build
+            if (lib.isFile()) {
                 classes.addAll(getAllClassesFromDex(android, lib.getPath()));
             }
         }
@@ -20,21 +20,17 @@ package com.duy.ide.javaide.editor.autocomplete.parser;
 import androidx.annotation.Nullable;
 
 import com.android.annotations.NonNull;
+import com.duy.android.compiler.project.AndroidAppProject;
 import com.duy.android.compiler.project.JavaProject;
-import com.duy.common.data.Pair;
 import com.duy.common.interfaces.Filter;
-import com.duy.common.io.IOUtils;
 import com.duy.ide.javaide.editor.autocomplete.model.ClassDescription;
 import com.duy.ide.javaide.utils.DLog;
-import com.sun.tools.javac.tree.JCTree;
-
-import org.apache.commons.io.FileUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -46,16 +42,19 @@ public class JavaClassManager implements IClassManager {
 
     private static final String TAG = "JavaClassReader";
     private static final String JAVA_DOT_LANG_DOT = "java.lang.";
+    private static final List<String> PRIMITIVE_TYPES = Arrays.asList(
+            "boolean", "byte", "char", "short", "int", "long", "float", "double", "void");
     private static JavaClassManager INSTANCE;
 
     /**
-     * All classes sorted by simple class name, fastest find list of classes start with prefix
+     * Guards the index and the loaded classes, they are read by the suggestion thread while
+     * a project is loaded or source files are changed
      */
-    private final ArrayList<Pair<String, IClass>> mSimpleNames = new ArrayList<>();
+    private final Object mLock = new Object();
     /**
-     * All classes sorted by full class name, use for faster find class name by using binary search
+     * All classes sorted by simple name and full name, use for fast prefix search
      */
-    private final ArrayList<IClass> mFullNames = new ArrayList<>();
+    private final ClassNameIndex mIndex = new ClassNameIndex();
     /**
      * Map contains parsed class, parsed class is java class in jar file or from user
      */
@@ -63,15 +62,25 @@ public class JavaClassManager implements IClassManager {
 
     private File mBootClasspath;
     private File mTempDir;
+    /**
+     * Directory to store signature database of bootclasspath
+     */
+    private File mCacheDir;
+    /**
+     * Symbols of source files of the loaded project
+     */
+    @Nullable
+    private ProjectSourceIndex mSourceIndex;
 
-    private JavaClassManager(File bootClassPath, File tempDir) {
+    private JavaClassManager(File bootClassPath, File tempDir, File cacheDir) {
         mBootClasspath = bootClassPath;
         mTempDir = tempDir;
+        mCacheDir = cacheDir;
     }
 
-    public static JavaClassManager getInstance(File classpath, File tempDir) {
+    public static JavaClassManager getInstance(File classpath, File tempDir, File cacheDir) {
         if (INSTANCE == null) {
-            INSTANCE = new JavaClassManager(classpath, tempDir);
+            INSTANCE = new JavaClassManager(classpath, tempDir, cacheDir);
         }
         return INSTANCE;
     }
@@ -83,215 +92,183 @@ public class JavaClassManager implements IClassManager {
         return INSTANCE;
     }
 
+    /**
+     * Lock which must be held to read or change classes as a whole, such as adding a class
+     * and resolving its members
+     */
     @NonNull
-    public ArrayList<IClass> getAllClasses() {
-        return mFullNames;
+    Object getLock() {
+        return mLock;
     }
 
+    /**
+     * @return copy of all classes, sorted by full class name
+     */
+    @NonNull
+    public List<IClass> getAllClasses() {
+        synchronized (mLock) {
+            return new ArrayList<>(mIndex.getAllClasses());
+        }
+    }
+
+    /**
+     * Load all classes of the project. Lookups from other threads are not blocked while
+     * loading, they see the classes which were loaded before.
+     */
     public void loadFromProject(JavaProject project) {
         long time = System.currentTimeMillis();
+        synchronized (mLock) {
+            mIndex.beginBulkUpdate();
+        }
         try {
 
             CompiledClassLoader classLoader = new CompiledClassLoader(mBootClasspath, mTempDir);
-            ArrayList<Class> classes = classLoader.getCompiledClassesFromProject(project);
+            loadBootClasspath(classLoader, project instanceof AndroidAppProject);
+            ArrayList<Class> classes = classLoader.getLibraryClasses(project);
             for (Class clazz : classes) {
                 getClassWrapper(clazz);
             }
 
-            JavaParser parser = new JavaParser();
-            ArrayList<File> javaSrcDirs = project.getJavaSrcDirs();
-            for (File javaSrcDir : javaSrcDirs) {
-                Collection<File> javaFiles = FileUtils.listFiles(
-                        javaSrcDir,
-                        new String[]{"java"},
-                        true);
-                for (File javaFile : javaFiles) {
-                    if (DLog.DEBUG) DLog.d(TAG, "loadFromProject: parsing class " + javaFile);
-                    String content = IOUtils.toString(javaFile);
-                    JCTree.JCCompilationUnit ast = parser.parse(content);
-                    List<IClass> parseClasses = parser.parseClasses(ast);
-                    for (IClass aClass : parseClasses) {
-                        update(aClass);
-                    }
-                }
+            if (mSourceIndex != null) {
+                mSourceIndex.stopWatching();
             }
+            mSourceIndex = new ProjectSourceIndex(this, project.getJavaSrcDirs(),
+                    project.getSourceIndexFile());
+            mSourceIndex.load();
         } catch (Throwable e) {
             e.printStackTrace();
+        } finally {
+            synchronized (mLock) {
+                mIndex.endBulkUpdate();
+            }
         }
 
         System.out.println("Loaded classes " + (System.currentTimeMillis() - time));
     }
 
     /**
-     * @param fullName - full class name
+     * Watch source files of the loaded project, classes are updated when a file is changed
+     *
+     * @param listener - called on the watcher thread after classes are updated
      */
-    @Nullable
-    public IClass getParsedClass(String fullName) {
-        IClass cache = mLoaded.get(fullName);
-        if (cache != null) {
-            return cache;
+    void startWatchingSources(@Nullable ProjectSourceIndex.Listener listener) {
+        if (mSourceIndex != null) {
+            mSourceIndex.startWatching(listener);
         }
-        return mLoaded.get(JAVA_DOT_LANG_DOT + fullName);
     }
 
-    @NonNull
-    public IClass getClassWrapper(@NonNull Class clazz) {
-        IClass cache = mLoaded.get(clazz.getName());
-        if (cache != null) {
-            return cache;
+    void stopWatchingSources() {
+        if (mSourceIndex != null) {
+            mSourceIndex.stopWatching();
         }
-        ClassDescription wrapper = new ClassDescription(clazz);
-        update(wrapper);
-        wrapper.initMembers(clazz);
-        return wrapper;
     }
 
-    @Override
-    public void update(IClass value) {
-        if (DLog.DEBUG) DLog.d(TAG, "update() called with: value = [" + value + "]");
-        String fullClassName = value.getFullClassName();
-        if (mLoaded.containsKey(fullClassName)) {
-            mLoaded.put(fullClassName, value);
+    /**
+     * Load bootclasspath from the signature database, build the database with reflection
+     * if it does not exist. Members of classes are read from the database on demand.
+     */
+    private void loadBootClasspath(CompiledClassLoader classLoader, boolean android) {
+        if (mBootClasspath == null) {
             return;
         }
-        mLoaded.put(fullClassName, value);
-
-        if (mFullNames.size() == 0) {
-            mFullNames.add(value);
-        } else {
-            boolean found = false;
-            for (int i = 0; i < mFullNames.size(); i++) {
-                IClass iClass = mFullNames.get(i);
-                if (fullClassName.compareTo(iClass.getFullClassName()) <= 0) {
-                    mFullNames.add(i, value);
-                    found = true;
-                    break;
+        if (mCacheDir != null) {
+            ClassSignatureCache cache = new ClassSignatureCache(mCacheDir, mBootClasspath);
+            if (!cache.open()) {
+                try {
+                    cache.write(classLoader.getBootClasspathClasses(true));
+                } catch (IOException e) {
+                    if (DLog.DEBUG) DLog.e(TAG, "loadBootClasspath: can not write signatures", e);
                 }
             }
-            if (!found) {
-                mFullNames.add(value);
+            if (cache.open()) {
+                cache.loadInto(this, android);
+                return;
             }
         }
-        String simpleName = value.getSimpleName();
-        Pair<String, IClass> simplePair = new Pair<>(simpleName, value);
-        if (mSimpleNames.size() == 0) {
-            mSimpleNames.add(simplePair);
-        } else {
-            boolean found = false;
-            for (int i = 0; i < mSimpleNames.size(); i++) {
-                Pair<String, IClass> pair = mSimpleNames.get(i);
-                if (simpleName.compareTo(pair.first) <= 0) {
-                    mSimpleNames.add(i, simplePair);
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                mSimpleNames.add(simplePair);
-            }
+        for (Class clazz : classLoader.getBootClasspathClasses(android)) {
+            getClassWrapper(clazz);
         }
     }
 
-    @Override
-    public void remove(String fullClassName) {
-        IClass remove = mLoaded.remove(fullClassName);
-        int index = Collections.binarySearch(mFullNames, remove,
-                new Comparator<IClass>() {
-                    @Override
-                    public int compare(IClass o1, IClass o2) {
-                        return o1.getFullClassName().compareTo(o2.getFullClassName());
-                    }
-                });
-        if (index >= 0) {
-            mFullNames.remove(index);
-        }
-        Pair<String, IClass> key = new Pair<>(remove.getSimpleName(), remove);
-        index = Collections.binarySearch(mSimpleNames, key,
-                new Comparator<Pair<String, IClass>>() {
-                    @Override
-                    public int compare(Pair<String, IClass> o1,
-                                       Pair<String, IClass> o2) {
-                        return o1.first.compareTo(o2.first);
-                    }
-                });
-        if (index >= 0) {
-            mSimpleNames.remove(index);
+    /**
+     * @param fullName - full class name
+     */
+    @Nullable
+    public IClass getParsedClass(String fullName) {
+        synchronized (mLock) {
+            IClass cache = mLoaded.get(fullName);
+            if (cache != null) {
+                return cache;
+            }
+            return mLoaded.get(JAVA_DOT_LANG_DOT + fullName);
         }
     }
 
     /**
-     * search class with binary search
+     * Find loaded class by name, create a class without members if it does not exist,
+     * such as primitive types, arrays or classes are not in the classpath
      *
-     * @param classes - sorted classes by name
-     * @param prefix  - prefix if class name
+     * @param name - name of class, returned by {@link Class#getName()}
      */
-    @Nullable
-    private List<Pair<String, IClass>> binarySearch(
-            @NonNull List<Pair<String, IClass>> classes,
-            @NonNull String prefix) {
-        //find left index
-        int start = -1, end = -1;
-        int left = 0;
-        int right = classes.size() - 1;
-        //search left most
-        while (left <= right) {
-            int mid = (left + right) / 2;
-            String name = classes.get(mid).first;
-            String midValue = name.substring(0, Math.min(name.length(), prefix.length()));
-            if (midValue.compareTo(prefix) < 0) { //mid < key
-                left = mid + 1;
-            } else if (midValue.compareTo(prefix) > 0) {
-                right = mid - 1;
-            } else {
-                //now mid = key, find upper and lower bound with linear search
-                start = mid;
-                end = mid;
-                //exit here
-                while (start >= 0 &&
-                        classes.get(start)
-                                .first
-                                .substring(0, Math.min(classes.get(start).first.length(), prefix.length()))
-                                .equals(prefix)) {
-                    start--;
-                }
-                //exit here
-                while (end < classes.size() &&
-                        classes.get(end)
-                                .first
-                                .substring(0, Math.min(classes.get(end).first.length(), prefix.length()))
-                                .equals(prefix)) {
-                    end++;
-                }
-                start++;
-                end--;
-                break;
+    @NonNull
+    IClass getClassByName(@NonNull String name) {
+        synchronized (mLock) {
+            IClass cache = mLoaded.get(name);
+            if (cache != null) {
+                return cache;
+            }
+            boolean primitive = PRIMITIVE_TYPES.contains(name);
+            int modifiers = primitive || name.startsWith("[")
+                    ? Modifier.PUBLIC | Modifier.FINAL | Modifier.ABSTRACT
+                    : Modifier.PUBLIC;
+            ClassDescription stub = new ClassDescription(name, modifiers, primitive, false, false);
+            update(stub);
+            return stub;
+        }
+    }
+
+    @NonNull
+    public IClass getClassWrapper(@NonNull Class clazz) {
+        synchronized (mLock) {
+            IClass cache = mLoaded.get(clazz.getName());
+            if (cache != null) {
+                return cache;
             }
+            ClassDescription wrapper = new ClassDescription(clazz);
+            update(wrapper);
+            wrapper.initMembers(clazz);
+            return wrapper;
         }
-        if (end >= 0 && start >= 0 && end - start + 1 /*length*/ >= 1) {
-            return classes.subList(start, end + 1);
+    }
+
+    @Override
+    public void update(IClass value) {
+        if (DLog.DEBUG) DLog.d(TAG, "update() called with: value = [" + value + "]");
+        synchronized (mLock) {
+            mLoaded.put(value.getFullClassName(), value);
+            mIndex.put(value);
         }
-        return null;
     }
 
+    @Override
+    public void remove(String fullClassName) {
+        synchronized (mLock) {
+            mLoaded.remove(fullClassName);
+            mIndex.remove(fullClassName);
+        }
+    }
+
+    /**
+     * Find classes by prefix of simple name ("Str"), camel humps ("HM" -> HashMap)
+     * or package qualified name ("java.util.Ha")
+     */
     @Override
     @NonNull
     public List<IClass> find(@NonNull String simpleNamePrefix,
                              @Nullable Filter<IClass> filter) {
-        ArrayList<IClass> result = new ArrayList<>();
-
-        //find with simple name
-        List<Pair<String, IClass>> simple = binarySearch(mSimpleNames, simpleNamePrefix);
-        if (simple != null) {
-            for (Pair<String, IClass> c : simple) {
-                if (filter != null) {
-                    if (!filter.accept(c.second)) {
-                        continue;
-                    }
-                }
-                result.add(c.second);
-            }
+        synchronized (mLock) {
+            return mIndex.find(simpleNamePrefix, filter);
         }
-        return result;
     }
 
 }
@@ -58,8 +58,8 @@ public class JavaDexClassLoader {
 
     private JavaClassManager mClassReader;
 
-    public JavaDexClassLoader(File classpath, File outDir) {
-        mClassReader = JavaClassManager.getInstance(classpath, outDir);
+    public JavaDexClassLoader(File classpath, File outDir, File cacheDir) {
+        mClassReader = JavaClassManager.getInstance(classpath, outDir, cacheDir);
     }
 
     public JavaClassManager getClassReader() {
@@ -148,19 +148,29 @@ public class JavaUtil {
 
     @Nullable
     public static IClass jcTypeToClass(JCTree.JCCompilationUnit unit, JCTree type) {
+        String className = jcTypeToClassName(unit, type);
+        if (className == null) {
+            return null;
+        }
+        return JavaClassManager.getInstance().getParsedClass(className);
+    }
+
+    /**
+     * Same as {@link #jcTypeToClass(JCTree.JCCompilationUnit, JCTree)} but does not look up the
+     * class, safe to call from any thread
+     */
+    @Nullable
+    public static String jcTypeToClassName(JCTree.JCCompilationUnit unit, JCTree type) {
         if (type == null) {
             return null;
         }
-        String className;
         if (type instanceof JCTree.JCTypeApply) {   //generic
-            return jcTypeToClass(unit, ((JCTree.JCTypeApply) type).getType());
-        } else {
-            className = type.toString();
+            return jcTypeToClassName(unit, ((JCTree.JCTypeApply) type).getType());
         }
         //try to find full class name
-        className = findImportedClassName(unit, className);
-        return JavaClassManager.getInstance().getParsedClass(className);
+        return findImportedClassName(unit, type.toString());
     }
+
     public static ArrayList<String> listClassName(File src) {
         if (!src.exists()) return new ArrayList<>();
 
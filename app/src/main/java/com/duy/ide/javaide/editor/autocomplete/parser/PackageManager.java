@@ -17,15 +17,15 @@
 
 package com.duy.ide.javaide.editor.autocomplete.parser;
 
-import android.os.FileObserver;
 import android.util.Log;
 
+import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
 import com.duy.android.compiler.project.JavaProject;
+import com.duy.ide.editor.internal.suggestion.SuggestionWorker;
 import com.duy.ide.javaide.editor.autocomplete.model.PackageDescription;
 
-import java.io.File;
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by Duy on 20-Jul-17.
@@ -34,7 +34,8 @@ import java.util.ArrayList;
 public class PackageManager {
     private static final String TAG = "AutoCompletePackage";
     private PackageDescription root;
-    private FileObserver fileObserver;
+    @Nullable
+    private JavaClassManager classReader;
 
     public PackageManager() {
         root = PackageDescription.root();
@@ -43,42 +44,37 @@ public class PackageManager {
     public void init(JavaProject projectFile, JavaClassManager classReader) {
         Log.d(TAG, "init() called with: classReader = [" + classReader + "]");
 
-        ArrayList<IClass> classes = classReader.getAllClasses();
+        List<IClass> classes = classReader.getAllClasses();
         for (IClass clazz : classes) {
             root.put(clazz.getFullClassName());
         }
-        // TODO: 16-Aug-17 file watcher
-//        final String parentPath = projectFile.getDirSrcJava().getPath();
-//        fileObserver = new FileObserver(parentPath) {
-//            @Override
-//            public void onEvent(int event, String path) {
-//                remove(path, parentPath);
-//                add(path, parentPath);
-//            }
-//        };
-//        fileObserver.startWatching();
-    }
-
-    private void add(String child, String parent) {
-        if (child.startsWith(parent)) {
-            child = child.substring(parent.length() + 1);
-            child = child.replace(File.separator, ".");
-            root.put(child);
-        }
-    }
 
-    @Nullable
-    private PackageDescription remove(String child, String parent) {
-        if (child.startsWith(parent)) {
-            child = child.substring(parent.length() + 1);
-            child = child.replace(File.separator, ".");
-            return root.remove(child);
-        }
-        return null;
+        this.classReader = classReader;
+        classReader.startWatchingSources(new ProjectSourceIndex.Listener() {
+            @Override
+            public void onClassesChanged(@NonNull final List<String> removed,
+                                         @NonNull final List<IClass> added) {
+                //the package tree is read by the suggestion worker, only change it there
+                SuggestionWorker.getInstance().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (String className : removed) {
+                            root.remove(className);
+                        }
+                        for (IClass clazz : added) {
+                            root.put(clazz.getFullClassName());
+                        }
+                    }
+                });
+            }
+        });
     }
 
     public void destroy() {
-        if (fileObserver != null) fileObserver.stopWatching();
+        if (classReader != null) {
+            classReader.stopWatchingSources();
+            classReader = null;
+        }
     }
 
     @Nullable
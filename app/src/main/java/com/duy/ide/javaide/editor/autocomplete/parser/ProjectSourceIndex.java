@@ -0,0 +1,814 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.javaide.editor.autocomplete.parser;
+
+import android.os.FileObserver;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.duy.ide.javaide.editor.autocomplete.model.ClassDescription;
+import com.duy.ide.javaide.editor.autocomplete.model.ConstructorDescription;
+import com.duy.ide.javaide.editor.autocomplete.model.FieldDescription;
+import com.duy.ide.javaide.editor.autocomplete.model.MethodDescription;
+import com.duy.ide.javaide.utils.DLog;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.JCTree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Symbols of all java files in the source directories of a project.
+ * <p>
+ * Symbols of each file are stored in the index file, keyed by size, modification time and
+ * hash of the file, so only changed files are parsed when the project is opened again.
+ * Changed files are parsed in parallel. After loading, the source directories can be watched
+ * and classes of a file are updated as soon as the file is saved, moved or deleted.
+ * <p>
+ * Files are parsed without locking, the classes of a file are replaced in the class manager
+ * while holding {@link JavaClassManager#getLock()}, so readers never see a half updated file.
+ */
+class ProjectSourceIndex {
+    private static final String TAG = "ProjectSourceIndex";
+    private static final int VERSION = 1;
+    private static final String DOT_JAVA = ".java";
+    private static final String CONSTRUCTOR_NAME = "<init>";
+    /**
+     * Field initializers longer than this are not stored, they are only used as description
+     */
+    private static final int MAX_VALUE_LENGTH = 1024;
+    private static final int WATCH_MASK = FileObserver.CLOSE_WRITE | FileObserver.CREATE
+            | FileObserver.MOVED_TO | FileObserver.MOVED_FROM | FileObserver.DELETE
+            | FileObserver.DELETE_SELF;
+
+    @NonNull
+    private final JavaClassManager mClassManager;
+    @NonNull
+    private final List<File> mSourceDirs;
+    @NonNull
+    private final File mIndexFile;
+    /**
+     * Indexed files keyed by absolute path, modified by the loading thread, then only by the
+     * watcher thread
+     */
+    private final HashMap<String, SourceFile> mFiles = new HashMap<>();
+    private final HashMap<String, SourceObserver> mObservers = new HashMap<>();
+    @Nullable
+    private ExecutorService mWatcherExecutor;
+    @Nullable
+    private Listener mListener;
+    /**
+     * Parser of the watcher thread
+     */
+    @Nullable
+    private JavaParser mParser;
+
+    private int mParsedCount;
+    private int mCachedCount;
+
+    ProjectSourceIndex(@NonNull JavaClassManager classManager, @NonNull List<File> sourceDirs,
+                       @NonNull File indexFile) {
+        mClassManager = classManager;
+        mSourceDirs = sourceDirs;
+        mIndexFile = indexFile;
+    }
+
+    /**
+     * Load classes of all source files into the class manager, only files changed since the
+     * last load are parsed
+     */
+    void load() {
+        mParsedCount = 0;
+        mCachedCount = 0;
+        HashMap<String, SourceFile> cached = new HashMap<>();
+        try {
+            readIndex(cached);
+        } catch (IOException e) {
+            //corrupted or old version, all files will be parsed again
+            if (DLog.DEBUG) DLog.w(TAG, "load: can not read index " + e.getMessage());
+            cached.clear();
+        }
+
+        ArrayList<SourceFile> files = new ArrayList<>();
+        ArrayList<File> changed = new ArrayList<>();
+        for (File file : listSourceFiles()) {
+            SourceFile entry = cached.get(file.getAbsolutePath());
+            if (entry != null && entry.isUpToDate(file)) {
+                files.add(entry);
+            } else {
+                changed.add(file);
+            }
+        }
+        mCachedCount = files.size();
+        files.addAll(parseAll(changed, cached));
+
+        mFiles.clear();
+        for (SourceFile file : files) {
+            mFiles.put(file.path, file);
+        }
+        addClasses(files);
+        writeIndex();
+        if (DLog.DEBUG) {
+            DLog.d(TAG, "load: parsed " + mParsedCount + " files, "
+                    + mCachedCount + " files are up to date");
+        }
+    }
+
+    /**
+     * @return number of files parsed by the last call of {@link #load()}
+     */
+    int getParsedCount() {
+        return mParsedCount;
+    }
+
+    /**
+     * @return number of files reused from the index by the last call of {@link #load()}
+     */
+    int getCachedCount() {
+        return mCachedCount;
+    }
+
+    /**
+     * Watch the source directories, changes are applied to the class manager on a background
+     * thread then reported to the listener on the same thread. The listener must not change
+     * state used by other threads without synchronization.
+     */
+    synchronized void startWatching(@Nullable Listener listener) {
+        stopWatching();
+        mListener = listener;
+        mWatcherExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "source-index-watcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (File sourceDir : mSourceDirs) {
+            watchDirectory(sourceDir);
+        }
+    }
+
+    synchronized void stopWatching() {
+        for (SourceObserver observer : mObservers.values()) {
+            observer.stopWatching();
+        }
+        mObservers.clear();
+        if (mWatcherExecutor != null) {
+            mWatcherExecutor.shutdown();
+            mWatcherExecutor = null;
+        }
+        mListener = null;
+    }
+
+    private synchronized void watchDirectory(File dir) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        String path = dir.getAbsolutePath();
+        if (!mObservers.containsKey(path)) {
+            //FileObserver is not recursive, one observer per directory
+            SourceObserver observer = new SourceObserver(dir);
+            mObservers.put(path, observer);
+            observer.startWatching();
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                watchDirectory(child);
+            }
+        }
+    }
+
+    private synchronized void unwatchDirectory(File dir) {
+        String prefix = dir.getAbsolutePath() + File.separator;
+        Iterator<Map.Entry<String, SourceObserver>> iterator = mObservers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, SourceObserver> entry = iterator.next();
+            if (entry.getKey().equals(dir.getAbsolutePath()) || entry.getKey().startsWith(prefix)) {
+                entry.getValue().stopWatching();
+                iterator.remove();
+            }
+        }
+    }
+
+    private synchronized void post(Runnable runnable) {
+        if (mWatcherExecutor != null) {
+            mWatcherExecutor.execute(runnable);
+        }
+    }
+
+    /**
+     * Called on the watcher thread when a file or directory is created or modified
+     */
+    private void onFileChanged(File file) {
+        List<String> removed = new ArrayList<>();
+        List<IClass> added = new ArrayList<>();
+        if (file.isDirectory()) {
+            watchDirectory(file);
+            for (File javaFile : listSourceFiles(file)) {
+                updateFile(javaFile, removed, added);
+            }
+        } else if (file.getName().endsWith(DOT_JAVA)) {
+            updateFile(file, removed, added);
+        }
+        onClassesChanged(removed, added);
+    }
+
+    /**
+     * Called on the watcher thread when a file or directory is deleted or moved out
+     */
+    private void onFileRemoved(File file) {
+        List<String> removed = new ArrayList<>();
+        if (file.getName().endsWith(DOT_JAVA)) {
+            removeFile(file.getAbsolutePath(), removed);
+        } else {
+            //the directory no longer exists, can not check its type
+            unwatchDirectory(file);
+            String prefix = file.getAbsolutePath() + File.separator;
+            for (String path : new ArrayList<>(mFiles.keySet())) {
+                if (path.startsWith(prefix)) {
+                    removeFile(path, removed);
+                }
+            }
+        }
+        onClassesChanged(removed, Collections.<IClass>emptyList());
+    }
+
+    private void onClassesChanged(List<String> removed, List<IClass> added) {
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+        writeIndex();
+        Listener listener;
+        synchronized (this) {
+            listener = mListener;
+        }
+        if (listener != null) {
+            listener.onClassesChanged(removed, added);
+        }
+    }
+
+    private void updateFile(File file, List<String> removed, List<IClass> added) {
+        SourceFile old = mFiles.get(file.getAbsolutePath());
+        if (old != null && old.isUpToDate(file)) {
+            return;
+        }
+        if (mParser == null) {
+            mParser = new JavaParser();
+        }
+        SourceFile current;
+        try {
+            current = read(file, old, mParser);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        mFiles.put(current.path, current);
+        if (old != null && old.classes == current.classes) {
+            //only touched, the content is the same
+            return;
+        }
+        if (DLog.DEBUG) DLog.d(TAG, "updateFile: " + file);
+
+        Set<String> names = new HashSet<>();
+        for (ClassSymbols symbols : current.classes) {
+            names.add(symbols.name);
+        }
+        synchronized (mClassManager.getLock()) {
+            if (old != null) {
+                for (ClassSymbols symbols : old.classes) {
+                    if (!names.contains(symbols.name)) {
+                        mClassManager.remove(symbols.name);
+                        removed.add(symbols.name);
+                    }
+                }
+            }
+            added.addAll(addClasses(Collections.singletonList(current)));
+        }
+    }
+
+    private void removeFile(String path, List<String> removed) {
+        SourceFile old = mFiles.remove(path);
+        if (old == null) {
+            return;
+        }
+        if (DLog.DEBUG) DLog.d(TAG, "removeFile: " + path);
+        synchronized (mClassManager.getLock()) {
+            for (ClassSymbols symbols : old.classes) {
+                mClassManager.remove(symbols.name);
+                removed.add(symbols.name);
+            }
+        }
+    }
+
+    /**
+     * Create classes of files and add them to the class manager. All classes are added before
+     * their members are resolved, so members can refer to other classes of the project.
+     */
+    private List<IClass> addClasses(Collection<SourceFile> files) {
+        List<ClassSymbols> symbolsList = new ArrayList<>();
+        List<ClassDescription> classes = new ArrayList<>();
+        synchronized (mClassManager.getLock()) {
+            for (SourceFile file : files) {
+                for (ClassSymbols symbols : file.classes) {
+                    ClassDescription clazz = symbols.createClass();
+                    mClassManager.update(clazz);
+                    symbolsList.add(symbols);
+                    classes.add(clazz);
+                }
+            }
+            for (int i = 0; i < classes.size(); i++) {
+                symbolsList.get(i).initMembers(classes.get(i), mClassManager);
+            }
+        }
+        return new ArrayList<IClass>(classes);
+    }
+
+    /**
+     * Parse files in parallel, each thread has its own parser
+     */
+    private List<SourceFile> parseAll(List<File> files, final Map<String, SourceFile> cached) {
+        List<SourceFile> result = new ArrayList<>();
+        if (files.isEmpty()) {
+            return result;
+        }
+        int threadCount = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private int mCount = 0;
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "source-index-" + mCount++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final ThreadLocal<JavaParser> parsers = new ThreadLocal<JavaParser>() {
+            @Override
+            protected JavaParser initialValue() {
+                return new JavaParser();
+            }
+        };
+        try {
+            List<Callable<SourceFile>> tasks = new ArrayList<>();
+            for (final File file : files) {
+                tasks.add(new Callable<SourceFile>() {
+                    @Override
+                    public SourceFile call() throws IOException {
+                        return read(file, cached.get(file.getAbsolutePath()), parsers.get());
+                    }
+                });
+            }
+            List<Future<SourceFile>> futures = executor.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    SourceFile file = futures.get(i).get();
+                    SourceFile old = cached.get(file.path);
+                    if (old != null && old.classes == file.classes) {
+                        mCachedCount++;
+                    } else {
+                        mParsedCount++;
+                    }
+                    result.add(file);
+                } catch (ExecutionException e) {
+                    //the file will be parsed again on next load
+                    if (DLog.DEBUG) DLog.e(TAG, "parseAll: can not parse " + files.get(i), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+        return result;
+    }
+
+    /**
+     * Read the file, it is only parsed if its content is different from the old entry
+     */
+    private static SourceFile read(File file, @Nullable SourceFile old, JavaParser parser)
+            throws IOException {
+        long lastModified = file.lastModified();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        String hash = hash(bytes);
+        if (old != null && old.hash.equals(hash)) {
+            return new SourceFile(old.path, bytes.length, lastModified, hash, old.classes);
+        }
+
+        List<ClassSymbols> classes = new ArrayList<>();
+        JCTree.JCCompilationUnit ast = parser.parse(new String(bytes, StandardCharsets.UTF_8));
+        if (ast != null) {
+            for (JCTree typeDecl : ast.getTypeDecls()) {
+                if (typeDecl instanceof JCTree.JCClassDecl) {
+                    classes.add(ClassSymbols.parse(ast, (JCTree.JCClassDecl) typeDecl));
+                }
+            }
+        }
+        return new SourceFile(file.getAbsolutePath(), bytes.length, lastModified, hash, classes);
+    }
+
+    private List<File> listSourceFiles() {
+        List<File> result = new ArrayList<>();
+        for (File sourceDir : mSourceDirs) {
+            result.addAll(listSourceFiles(sourceDir));
+        }
+        return result;
+    }
+
+    private static List<File> listSourceFiles(File dir) {
+        List<File> result = new ArrayList<>();
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return result;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                result.addAll(listSourceFiles(child));
+            } else if (child.getName().endsWith(DOT_JAVA)) {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(bytes);
+            StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                result.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void readIndex(Map<String, SourceFile> index) throws IOException {
+        if (!mIndexFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mIndexFile)))) {
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                SourceFile file = SourceFile.read(in);
+                index.put(file.path, file);
+            }
+        }
+    }
+
+    private void writeIndex() {
+        File parent = mIndexFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        //write to a temporary file, a partially written index must never be read
+        File tmp = new File(mIndexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(VERSION);
+            out.writeInt(mFiles.size());
+            for (SourceFile file : mFiles.values()) {
+                file.write(out);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(mIndexFile)) {
+            tmp.delete();
+        }
+    }
+
+    @Nullable
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableString(DataOutputStream out, @Nullable String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    interface Listener {
+        /**
+         * @param removed - full name of classes no longer exist
+         * @param added   - classes are created or changed
+         */
+        void onClassesChanged(@NonNull List<String> removed, @NonNull List<IClass> added);
+    }
+
+    private static class SourceFile {
+        final String path;
+        final long length;
+        final long lastModified;
+        final String hash;
+        final List<ClassSymbols> classes;
+
+        SourceFile(String path, long length, long lastModified, String hash,
+                   List<ClassSymbols> classes) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.classes = classes;
+        }
+
+        static SourceFile read(DataInputStream in) throws IOException {
+            String path = in.readUTF();
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            String hash = in.readUTF();
+            int classCount = in.readInt();
+            List<ClassSymbols> classes = new ArrayList<>(classCount);
+            for (int i = 0; i < classCount; i++) {
+                classes.add(ClassSymbols.read(in));
+            }
+            return new SourceFile(path, length, lastModified, hash, classes);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeUTF(hash);
+            out.writeInt(classes.size());
+            for (ClassSymbols symbols : classes) {
+                symbols.write(out);
+            }
+        }
+
+        boolean isUpToDate(File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * Declaration of a top level class, types are stored by name and resolved when the class
+     * is added to the class manager
+     */
+    private static class ClassSymbols {
+        String name;
+        int modifiers;
+        boolean annotation;
+        boolean enumType;
+        @Nullable
+        String superclass;
+        final List<MemberSymbols> members = new ArrayList<>();
+
+        static ClassSymbols parse(JCTree.JCCompilationUnit unit, JCTree.JCClassDecl classDecl) {
+            ClassSymbols symbols = new ClassSymbols();
+            symbols.name = unit.getPackageName() + "." + classDecl.getSimpleName();
+            symbols.modifiers = JavaUtil.toJavaModifiers(classDecl.getModifiers().getFlags());
+            symbols.annotation = classDecl.getKind() == Tree.Kind.ANNOTATION_TYPE;
+            symbols.enumType = classDecl.getKind() == Tree.Kind.ENUM;
+            symbols.superclass = JavaUtil.jcTypeToClassName(unit, classDecl.getExtendsClause());
+            for (JCTree member : classDecl.getMembers()) {
+                if (member instanceof JCTree.JCMethodDecl) {
+                    symbols.members.add(MemberSymbols.parse(unit, (JCTree.JCMethodDecl) member));
+                } else if (member instanceof JCTree.JCVariableDecl) {
+                    symbols.members.add(MemberSymbols.parse(unit, (JCTree.JCVariableDecl) member));
+                }
+            }
+            return symbols;
+        }
+
+        static ClassSymbols read(DataInputStream in) throws IOException {
+            ClassSymbols symbols = new ClassSymbols();
+            symbols.name = in.readUTF();
+            symbols.modifiers = in.readInt();
+            symbols.annotation = in.readBoolean();
+            symbols.enumType = in.readBoolean();
+            symbols.superclass = readNullableString(in);
+            int memberCount = in.readInt();
+            for (int i = 0; i < memberCount; i++) {
+                symbols.members.add(MemberSymbols.read(in));
+            }
+            return symbols;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(name);
+            out.writeInt(modifiers);
+            out.writeBoolean(annotation);
+            out.writeBoolean(enumType);
+            writeNullableString(out, superclass);
+            out.writeInt(members.size());
+            for (MemberSymbols member : members) {
+                member.write(out);
+            }
+        }
+
+        ClassDescription createClass() {
+            return new ClassDescription(name, modifiers, false, annotation, enumType);
+        }
+
+        void initMembers(ClassDescription clazz, JavaClassManager classManager) {
+            IClass superclass = resolve(classManager, this.superclass);
+            if (superclass == null) {
+                superclass = classManager.getParsedClass(Object.class.getName());
+            }
+            clazz.setSuperclass(superclass);
+
+            for (MemberSymbols member : members) {
+                List<IClass> parameters = new ArrayList<>();
+                for (String parameter : member.parameters) {
+                    parameters.add(resolve(classManager, parameter));
+                }
+                IClass type = resolve(classManager, member.type);
+                switch (member.kind) {
+                    case MemberSymbols.FIELD:
+                        clazz.addField(new FieldDescription(member.modifiers, type,
+                                member.name, member.value));
+                        break;
+                    case MemberSymbols.CONSTRUCTOR:
+                        clazz.addConstructor(new ConstructorDescription(name, parameters));
+                        break;
+                    default:
+                        clazz.addMethod(new MethodDescription(member.name, member.modifiers,
+                                parameters, type));
+                        break;
+                }
+            }
+        }
+
+        @Nullable
+        private IClass resolve(JavaClassManager classManager, @Nullable String name) {
+            if (name == null) {
+                return null;
+            }
+            IClass clazz = classManager.getParsedClass(name);
+            if (clazz == null && !name.contains(".") && this.name.contains(".")) {
+                //not imported, may be a class of the same package
+                clazz = classManager.getParsedClass(JavaUtil.getPackageName(this.name) + "." + name);
+            }
+            return clazz;
+        }
+    }
+
+    private static class MemberSymbols {
+        static final int FIELD = 0;
+        static final int METHOD = 1;
+        static final int CONSTRUCTOR = 2;
+
+        int kind;
+        String name;
+        int modifiers;
+        /**
+         * Type of field or return type of method
+         */
+        @Nullable
+        String type;
+        /**
+         * Initializer of field
+         */
+        @Nullable
+        String value;
+        final List<String> parameters = new ArrayList<>();
+
+        static MemberSymbols parse(JCTree.JCCompilationUnit unit, JCTree.JCMethodDecl method) {
+            MemberSymbols symbols = new MemberSymbols();
+            symbols.name = method.getName().toString();
+            symbols.kind = symbols.name.equals(CONSTRUCTOR_NAME) ? CONSTRUCTOR : METHOD;
+            symbols.modifiers = JavaUtil.toJavaModifiers(method.getModifiers().getFlags());
+            symbols.type = JavaUtil.jcTypeToClassName(unit, method.getReturnType());
+            for (JCTree.JCVariableDecl parameter : method.getParameters()) {
+                symbols.parameters.add(JavaUtil.jcTypeToClassName(unit, parameter.getType()));
+            }
+            return symbols;
+        }
+
+        static MemberSymbols parse(JCTree.JCCompilationUnit unit, JCTree.JCVariableDecl field) {
+            MemberSymbols symbols = new MemberSymbols();
+            symbols.kind = FIELD;
+            symbols.name = field.getName().toString();
+            symbols.modifiers = JavaUtil.toJavaModifiers(field.getModifiers().getFlags());
+            symbols.type = JavaUtil.jcTypeToClassName(unit, field.getType());
+            JCTree.JCExpression initializer = field.getInitializer();
+            if (initializer != null) {
+                String value = initializer.toString();
+                symbols.value = value.length() <= MAX_VALUE_LENGTH ? value : null;
+            }
+            return symbols;
+        }
+
+        static MemberSymbols read(DataInputStream in) throws IOException {
+            MemberSymbols symbols = new MemberSymbols();
+            symbols.kind = in.readByte();
+            symbols.name = in.readUTF();
+            symbols.modifiers = in.readInt();
+            symbols.type = readNullableString(in);
+            symbols.value = readNullableString(in);
+            int parameterCount = in.readInt();
+            for (int i = 0; i < parameterCount; i++) {
+                symbols.parameters.add(readNullableString(in));
+            }
+            return symbols;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(kind);
+            out.writeUTF(name);
+            out.writeInt(modifiers);
+            writeNullableString(out, type);
+            writeNullableString(out, value);
+            out.writeInt(parameters.size());
+            for (String parameter : parameters) {
+                writeNullableString(out, parameter);
+            }
+        }
+    }
+
+    /**
+     * Watch a single directory, events are handled on the watcher thread
+     */
+    private class SourceObserver extends FileObserver {
+        private final File mDir;
+
+        SourceObserver(File dir) {
+            super(dir.getAbsolutePath(), WATCH_MASK);
+            mDir = dir;
+        }
+
+        @Override
+        public void onEvent(int event, @Nullable String path) {
+            final File file = path == null ? mDir : new File(mDir, path);
+            switch (event & FileObserver.ALL_EVENTS) {
+                case FileObserver.CREATE:
+                    //new files are handled when they are closed
+                    if (!file.isDirectory()) {
+                        break;
+                    }
+                    //fall through, index the new directory
+                case FileObserver.CLOSE_WRITE:
+                case FileObserver.MOVED_TO:
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onFileChanged(file);
+                        }
+                    });
+                    break;
+                case FileObserver.DELETE:
+                case FileObserver.MOVED_FROM:
+                case FileObserver.DELETE_SELF:
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onFileRemoved(file);
+                        }
+                    });
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.javaide.editor.autocomplete.parser;
+
+import com.duy.ide.javaide.editor.autocomplete.model.ClassDescription;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures loading and searching {@link ClassNameIndex} with as many classes as the android
+ * boot classpath, and lookups while a bulk update is running.
+ * <p>
+ * Arguments: number of classes
+ */
+public class ClassNameIndexBenchmark {
+    private static final int RUNS = 5;
+    private static final String[] PREFIXES = {"Str", "HM", "Abs", "java.util.", "View", "SBu"};
+
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 30000;
+        List<IClass> classes = createClasses(count);
+
+        long bulk = Long.MAX_VALUE;
+        long single = Long.MAX_VALUE;
+        long search = Long.MAX_VALUE;
+        long searchDuringBulk = Long.MAX_VALUE;
+        int found = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            ClassNameIndex index = new ClassNameIndex();
+            index.beginBulkUpdate();
+            for (IClass clazz : classes) {
+                index.put(clazz);
+            }
+            index.endBulkUpdate();
+            bulk = Math.min(bulk, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            ClassNameIndex incremental = new ClassNameIndex();
+            for (IClass clazz : classes) {
+                incremental.put(clazz);
+            }
+            single = Math.min(single, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            found = 0;
+            for (String prefix : PREFIXES) {
+                found += index.find(prefix, null).size();
+            }
+            search = Math.min(search, System.nanoTime() - start);
+
+            //reload the same classes, lookups see the previous classes meanwhile
+            index.beginBulkUpdate();
+            start = System.nanoTime();
+            int foundDuringBulk = 0;
+            for (int i = 0; i < classes.size(); i++) {
+                index.put(classes.get(i));
+                if (i % 1000 == 0) {
+                    foundDuringBulk += index.find(PREFIXES[i / 1000 % PREFIXES.length], null).size();
+                }
+            }
+            searchDuringBulk = Math.min(searchDuringBulk, System.nanoTime() - start);
+            index.endBulkUpdate();
+            if (index.size() != incremental.size() || foundDuringBulk == 0) {
+                throw new IllegalStateException("Index has " + index.size() + " classes, expected "
+                        + incremental.size());
+            }
+        }
+        System.out.println(String.format(Locale.US,
+                "%d classes: bulk load %.1f ms, single puts %.1f ms", count, bulk / 1e6, single / 1e6));
+        System.out.println(String.format(Locale.US, "find %d prefixes: %.3f ms, %d results",
+                PREFIXES.length, search / 1e6, found));
+        System.out.println(String.format(Locale.US,
+                "bulk reload with a search every 1000 classes: %.1f ms", searchDuringBulk / 1e6));
+    }
+
+    private static List<IClass> createClasses(int count) {
+        String[] packages = {"java.lang", "java.util", "java.io", "android.view", "android.widget",
+                "android.content", "javax.net", "org.xml.sax"};
+        String[] words = {"String", "Hash", "Map", "Abstract", "View", "Builder", "Buffer",
+                "Input", "Stream", "List", "Group", "Layout", "Manager", "Handler", "Set"};
+        Random random = new Random(42);
+        List<IClass> classes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder(packages[random.nextInt(packages.length)]).append('.');
+            int parts = 1 + random.nextInt(3);
+            for (int j = 0; j < parts; j++) {
+                name.append(words[random.nextInt(words.length)]);
+            }
+            name.append(i);
+            classes.add(new ClassDescription(name.toString(), Modifier.PUBLIC, false, false, false));
+        }
+        return classes;
+    }
+}
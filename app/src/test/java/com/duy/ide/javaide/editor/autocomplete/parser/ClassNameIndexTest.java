@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.javaide.editor.autocomplete.parser;
+
+import com.duy.ide.javaide.editor.autocomplete.model.ClassDescription;
+
+import org.junit.Test;
+
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ClassNameIndexTest {
+
+    private static IClass newClass(String name) {
+        return new ClassDescription(name, Modifier.PUBLIC, false, false, false);
+    }
+
+    @Test
+    public void findBySimpleNameAndCamelHumps() {
+        ClassNameIndex index = new ClassNameIndex();
+        index.put(newClass("java.util.HashMap"));
+        index.put(newClass("java.lang.String"));
+        index.put(newClass("java.lang.StringBuilder"));
+
+        assertEquals(2, index.find("Str", null).size());
+        assertEquals("java.util.HashMap", index.find("HM", null).get(0).getFullClassName());
+        assertEquals(1, index.find("java.util.Ha", null).size());
+    }
+
+    @Test
+    public void lookupsDuringBulkUpdateSeePreviousClasses() {
+        ClassNameIndex index = new ClassNameIndex();
+        IClass string = newClass("java.lang.String");
+        index.put(string);
+
+        index.beginBulkUpdate();
+        IClass newString = newClass("java.lang.String");
+        index.put(newString);
+        index.put(newClass("java.lang.StringBuilder"));
+
+        assertSame(string, index.get("java.lang.String"));
+        assertNull(index.get("java.lang.StringBuilder"));
+        assertEquals(1, index.find("Str", null).size());
+        assertEquals(1, index.getAllClasses().size());
+
+        index.endBulkUpdate();
+        assertSame(newString, index.get("java.lang.String"));
+        List<IClass> all = index.getAllClasses();
+        assertEquals(2, all.size());
+        assertEquals("java.lang.StringBuilder", all.get(1).getFullClassName());
+    }
+
+    @Test
+    public void removeDuringBulkUpdate() {
+        ClassNameIndex index = new ClassNameIndex();
+        index.put(newClass("a.Old"));
+        index.put(newClass("a.Kept"));
+
+        index.beginBulkUpdate();
+        index.put(newClass("a.Added"));
+        index.put(newClass("a.Old"));
+        index.remove("a.Old");
+        index.remove("a.Added");
+        assertNull(index.get("a.Old"));
+        index.endBulkUpdate();
+
+        assertEquals(1, index.size());
+        assertNull(index.get("a.Old"));
+        assertNull(index.get("a.Added"));
+        assertEquals("a.Kept", index.getAllClasses().get(0).getFullClassName());
+    }
+}
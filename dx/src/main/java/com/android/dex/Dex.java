@@ -29,9 +29,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UTFDataFormatException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.AbstractList;
@@ -76,17 +78,35 @@ public final class Dex {
     }
 
     private Dex(ByteBuffer data) throws IOException {
+        this(data, true);
+    }
+
+    private Dex(ByteBuffer data, boolean readTableOfContents) throws IOException {
         this.data = data;
         this.data.order(ByteOrder.LITTLE_ENDIAN);
-        this.tableOfContents.readFrom(this);
+        if (readTableOfContents) {
+            this.tableOfContents.readFrom(this);
+        }
     }
 
     /**
      * Creates a new empty dex of the specified size.
      */
     public Dex(int byteCount) throws IOException {
-        this.data = ByteBuffer.wrap(new byte[byteCount]);
-        this.data.order(ByteOrder.LITTLE_ENDIAN);
+        this(ByteBuffer.wrap(new byte[byteCount]), false);
+    }
+
+    /**
+     * Creates a new empty dex of the specified size, backed by a read-write memory mapping of
+     * {@code file}. The file is truncated to {@code byteCount} bytes, and everything written
+     * to the dex goes to the file without a copy of the dex on the heap.
+     */
+    public static Dex create(File file, int byteCount) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(byteCount);
+            return new Dex(randomAccessFile.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, byteCount), false);
+        }
     }
 
     /**
@@ -109,7 +129,7 @@ public final class Dex {
             ZipEntry entry = zipFile.getEntry(DexFormat.DEX_IN_JAR_NAME);
             if (entry != null) {
                 try (InputStream inputStream = zipFile.getInputStream(entry)) {
-                    loadFrom(inputStream);
+                    loadFrom(inputStream, entry.getSize());
                 }
                 zipFile.close();
             } else {
@@ -117,13 +137,26 @@ public final class Dex {
             }
         } else if (file.getName().endsWith(".dex")) {
             try (InputStream inputStream = new FileInputStream(file)) {
-                loadFrom(inputStream);
+                loadFrom(inputStream, file.length());
             }
         } else {
             throw new DexException("unknown output extension: " + file);
         }
     }
 
+    /**
+     * Creates a new dex backed by a read-only memory mapping of the dex file {@code file}.
+     * Pages are loaded on demand instead of copying the whole file to the heap, which matters
+     * for large dex files on devices with a small heap.
+     *
+     * <p>The file must not be modified or truncated while the returned dex is in use.
+     */
+    public static Dex map(File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            return new Dex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
     /**
      * It is the caller's responsibility to close {@code in}.
      */
@@ -141,6 +174,34 @@ public final class Dex {
         this.tableOfContents.readFrom(this);
     }
 
+    /**
+     * Reads {@code length} bytes of {@code in} directly into the dex buffer, without the
+     * intermediate copy of {@link #loadFrom(InputStream)}. It is the caller's responsibility
+     * to close {@code in}.
+     *
+     * @param length the length of the dex, or -1 if unknown
+     */
+    private void loadFrom(InputStream in, long length) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            loadFrom(in);
+            return;
+        }
+
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        while (offset < bytes.length) {
+            int count = in.read(bytes, offset, bytes.length - offset);
+            if (count == -1) {
+                throw new DexException("Unexpected end of dex after " + offset + " bytes");
+            }
+            offset += count;
+        }
+
+        this.data = ByteBuffer.wrap(bytes);
+        this.data.order(ByteOrder.LITTLE_ENDIAN);
+        this.tableOfContents.readFrom(this);
+    }
+
     private static void checkBounds(int index, int length) {
         if (index < 0 || index >= length) {
             throw new IndexOutOfBoundsException("index:" + index + ", length=" + length);
@@ -148,6 +209,11 @@ public final class Dex {
     }
 
     public void writeTo(OutputStream out) throws IOException {
+        if (data.hasArray()) {
+            // write the backing array directly, no need to copy it
+            out.write(data.array(), data.arrayOffset(), data.capacity());
+            return;
+        }
         byte[] buffer = new byte[8192];
         ByteBuffer data = this.data.duplicate(); // positioned ByteBuffers aren't thread safe
         data.clear();
@@ -159,8 +225,12 @@ public final class Dex {
     }
 
     public void writeTo(File dexOut) throws IOException {
-        try (OutputStream out = new FileOutputStream(dexOut)) {
-            writeTo(out);
+        try (FileChannel channel = new FileOutputStream(dexOut).getChannel()) {
+            ByteBuffer data = this.data.duplicate(); // positioned ByteBuffers aren't thread safe
+            data.clear();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
         }
     }
 
@@ -49,6 +49,9 @@ public final class DexMerger {
 
     private final Dex dexOut;
 
+    /** file the result is written to, or null to merge on the heap */
+    private final File outputFile;
+
     private final Dex.Section headerOut;
 
     /** All IDs and definitions sections */
@@ -84,22 +87,38 @@ public final class DexMerger {
 
     private final InstructionTransformer instructionTransformer;
 
+    /** merging more dexes than this prints a summary instead of one line per dex */
+    private static final int MAX_DEXES_TO_PRINT = 16;
+
     /** minimum number of wasted bytes before it's worthwhile to compact the result */
     private int compactWasteThreshold = 1024 * 1024; // 1MiB
 
     public DexMerger(Dex[] dexes, CollisionPolicy collisionPolicy, DxContext context)
             throws IOException {
-        this(dexes, collisionPolicy, context, new WriterSizes(dexes));
+        this(dexes, collisionPolicy, context, new WriterSizes(dexes), null);
+    }
+
+    /**
+     * Creates a merger which writes the result to {@code outputFile} as it is merged, the
+     * merged dex is not held on the heap. The dex returned by {@link #merge()} is backed by
+     * a memory mapping of the file.
+     */
+    public DexMerger(Dex[] dexes, CollisionPolicy collisionPolicy, DxContext context,
+            File outputFile) throws IOException {
+        this(dexes, collisionPolicy, context, new WriterSizes(dexes), outputFile);
     }
 
     private DexMerger(Dex[] dexes, CollisionPolicy collisionPolicy, DxContext context,
-            WriterSizes writerSizes) throws IOException {
+            WriterSizes writerSizes, File outputFile) throws IOException {
         this.dexes = dexes;
         this.collisionPolicy = collisionPolicy;
         this.context = context;
         this.writerSizes = writerSizes;
+        this.outputFile = outputFile;
 
-        dexOut = new Dex(writerSizes.size());
+        dexOut = outputFile == null
+                ? new Dex(writerSizes.size())
+                : Dex.create(outputFile, writerSizes.size());
 
         indexMaps = new IndexMap[dexes.length];
         for (int i = 0; i < dexes.length; i++) {
@@ -188,6 +207,9 @@ public final class DexMerger {
 
     public Dex merge() throws IOException {
         if (dexes.length == 1) {
+            if (outputFile != null) {
+                dexes[0].writeTo(outputFile);
+            }
             return dexes[0];
         } else if (dexes.length == 0) {
             return null;
@@ -204,9 +226,17 @@ public final class DexMerger {
         WriterSizes compactedSizes = new WriterSizes(this);
         int wastedByteCount = writerSizes.size() - compactedSizes.size();
         if (wastedByteCount >  + compactWasteThreshold) {
-            DexMerger compacter = new DexMerger(
-                    new Dex[] {dexOut, new Dex(0)}, CollisionPolicy.FAIL, context, compactedSizes);
+            // the uncompacted result is read from the output file while it is compacted
+            File compactedFile = outputFile == null
+                    ? null
+                    : new File(outputFile.getPath() + ".tmp");
+            DexMerger compacter = new DexMerger(new Dex[] {dexOut, new Dex(0)},
+                    CollisionPolicy.FAIL, context, compactedSizes, compactedFile);
             result = compacter.mergeDexes();
+            if (compactedFile != null && !compactedFile.renameTo(outputFile)) {
+                compactedFile.delete();
+                throw new IOException("Can not rename " + compactedFile + " to " + outputFile);
+            }
             context.out.printf("Result compacted from %.1fKiB to %.1fKiB to save %.1fKiB%n",
                     dexOut.getLength() / 1024f,
                     result.getLength() / 1024f,
@@ -214,11 +244,15 @@ public final class DexMerger {
         }
 
         long elapsed = System.nanoTime() - start;
-        for (int i = 0; i < dexes.length; i++) {
-            context.out.printf("Merged dex #%d (%d defs/%.1fKiB)%n",
-                i + 1,
-                dexes[i].getTableOfContents().classDefs.size,
-                dexes[i].getLength() / 1024f);
+        if (dexes.length <= MAX_DEXES_TO_PRINT) {
+            for (int i = 0; i < dexes.length; i++) {
+                context.out.printf("Merged dex #%d (%d defs/%.1fKiB)%n",
+                    i + 1,
+                    dexes[i].getTableOfContents().classDefs.size,
+                    dexes[i].getLength() / 1024f);
+            }
+        } else {
+            context.out.printf("Merged %d dex files%n", dexes.length);
         }
         context.out.printf("Result is %d defs/%.1fKiB. Took %.1fs%n",
                 result.getTableOfContents().classDefs.size,
@@ -253,13 +287,16 @@ public final class DexMerger {
             // the smallest value. The list associated with a value has the indexes
             // of the dexes that had that value.
             TreeMap<T, List<Integer>> values = new TreeMap<T, List<Integer>>();
+            // Lists polled out of values, reused so merging many dexes does not
+            // allocate a list for every value.
+            ArrayDeque<List<Integer>> spareLists = new ArrayDeque<List<Integer>>();
 
             for (int i = 0; i < dexes.length; i++) {
                 sections[i] = getSection(dexes[i].getTableOfContents());
                 dexSections[i] = sections[i].exists() ? dexes[i].open(sections[i].off) : null;
                 // Fill in values with the first value of each dex.
-                offsets[i] = readIntoMap(
-                        dexSections[i], sections[i], indexMaps[i], indexes[i], values, i);
+                offsets[i] = readIntoMap(dexSections[i], sections[i], indexMaps[i],
+                        indexes[i], values, spareLists, i);
             }
             if (values.isEmpty()) {
                 getSection(contentsOut).off = 0;
@@ -271,12 +308,16 @@ public final class DexMerger {
             int outCount = 0;
             while (!values.isEmpty()) {
                 Map.Entry<T, List<Integer>> first = values.pollFirstEntry();
-                for (Integer dex : first.getValue()) {
+                List<Integer> polled = first.getValue();
+                for (int i = 0, size = polled.size(); i < size; i++) {
+                    int dex = polled.get(i);
                     updateIndex(offsets[dex], indexMaps[dex], indexes[dex]++, outCount);
                     // Fetch the next value of the dexes we just polled out
                     offsets[dex] = readIntoMap(dexSections[dex], sections[dex],
-                            indexMaps[dex], indexes[dex], values, dex);
+                            indexMaps[dex], indexes[dex], values, spareLists, dex);
                 }
+                polled.clear();
+                spareLists.push(polled);
                 write(first.getKey());
                 outCount++;
             }
@@ -285,13 +326,14 @@ public final class DexMerger {
         }
 
         private int readIntoMap(Dex.Section in, TableOfContents.Section section, IndexMap indexMap,
-                                int index, TreeMap<T, List<Integer>> values, int dex) {
+                                int index, TreeMap<T, List<Integer>> values,
+                                ArrayDeque<List<Integer>> spareLists, int dex) {
             int offset = in != null ? in.getPosition() : -1;
             if (index < section.size) {
                 T v = read(in, indexMap, index);
                 List<Integer> l = values.get(v);
                 if (l == null) {
-                    l = new ArrayList<Integer>();
+                    l = spareLists.isEmpty() ? new ArrayList<Integer>() : spareLists.pop();
                     values.put(v, l);
                 }
                 l.add(dex);
@@ -1188,8 +1230,8 @@ public final class DexMerger {
         for (int i = 1; i < args.length; i++) {
             dexes[i - 1] = new Dex(new File(args[i]));
         }
-        Dex merged = new DexMerger(dexes, CollisionPolicy.KEEP_FIRST, new DxContext()).merge();
-        merged.writeTo(new File(args[0]));
+        new DexMerger(dexes, CollisionPolicy.KEEP_FIRST, new DxContext(), new File(args[0]))
+                .merge();
     }
 
     private static void printUsage() {
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dex;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+
+/**
+ * Opens a dex file and reads the names of its classes, once through an input stream as
+ * {@code Dex(File)} used to, once with {@code Dex(File)} and once with {@link Dex#map}.
+ * Prints the best time of each and the peak heap used above the heap before opening the dex.
+ *
+ * <p>Arguments: a dex file, preferably a large one such as the merged dex of an app.
+ */
+public class DexReadBenchmark {
+    private static final int RUNS = 20;
+
+    private enum Mode {
+        STREAM("before"),
+        READ("new Dex(File)"),
+        MAP("Dex.map");
+
+        private final String label;
+
+        Mode(String label) {
+            this.label = label;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: DexReadBenchmark <in.dex>");
+            return;
+        }
+        File file = new File(args[0]);
+        System.out.println(String.format(Locale.US, "%s, %.1f MiB, best of %d runs",
+                file.getName(), file.length() / 1048576f, RUNS));
+
+        long expected = 0;
+        for (Mode mode : Mode.values()) {
+            long time = Long.MAX_VALUE;
+            long peak = 0;
+            for (int run = 0; run < RUNS; run++) {
+                long used = resetPeakUsage();
+                long start = System.nanoTime();
+                long hash = readClassNames(open(file, mode));
+                time = Math.min(time, System.nanoTime() - start);
+                peak = Math.max(peak, peakUsage() - used);
+                if (expected == 0) {
+                    expected = hash;
+                } else if (hash != expected) {
+                    throw new IllegalStateException(mode.label + " read other class names");
+                }
+            }
+            System.out.println(String.format(Locale.US, "%-14s %6.1f ms, peak %5.1f MiB",
+                    mode.label, time / 1e6, peak / 1048576f));
+        }
+    }
+
+    private static Dex open(File file, Mode mode) throws IOException {
+        switch (mode) {
+            case STREAM:
+                return new Dex(new FileInputStream(file));
+            case READ:
+                return new Dex(file);
+            default:
+                return Dex.map(file);
+        }
+    }
+
+    /**
+     * @return a hash of the names of the classes, so the modes can be compared
+     */
+    private static long readClassNames(Dex dex) {
+        long hash = 1;
+        for (ClassDef classDef : dex.classDefs()) {
+            hash = hash * 31 + dex.typeNames().get(classDef.getTypeIndex()).hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * Collects garbage and starts measuring the peak of the heap
+     *
+     * @return the heap used now
+     */
+    private static long resetPeakUsage() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long peakUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dx.merge;
+
+import com.android.dex.Dex;
+import com.android.dx.command.dexer.DxContext;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Merges dexed libraries the way the build does, once with the result built on the heap and
+ * written afterwards, and once with the result written to a mapped output file while merging.
+ * Checks that both give the same bytes, and prints the best time of each and the peak heap
+ * used above the heap before the merge.
+ *
+ * <p>Arguments: the output file and the dex files of the libraries, 10 to 30 of them are
+ * typical for an app.
+ */
+public class DexMergerBenchmark {
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: DexMergerBenchmark <out.dex> <in.dex>...");
+            return;
+        }
+        File output = new File(args[0]);
+        List<File> inputs = new ArrayList<>();
+        long inputBytes = 0;
+        for (int i = 1; i < args.length; i++) {
+            File input = new File(args[i]);
+            inputs.add(input);
+            inputBytes += input.length();
+        }
+
+        long heapTime = Long.MAX_VALUE;
+        long streamTime = Long.MAX_VALUE;
+        long heapPeak = 0;
+        long streamPeak = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long used = resetPeakUsage();
+            long start = System.nanoTime();
+            Dex merged = new DexMerger(map(inputs), CollisionPolicy.FAIL, quietContext()).merge();
+            merged.writeTo(output);
+            heapTime = Math.min(heapTime, System.nanoTime() - start);
+            heapPeak = Math.max(heapPeak, peakUsage() - used);
+            long heapLength = output.length();
+            long heapChecksum = checksum(output);
+
+            used = resetPeakUsage();
+            start = System.nanoTime();
+            new DexMerger(map(inputs), CollisionPolicy.FAIL, quietContext(), output).merge();
+            streamTime = Math.min(streamTime, System.nanoTime() - start);
+            streamPeak = Math.max(streamPeak, peakUsage() - used);
+            if (output.length() != heapLength || checksum(output) != heapChecksum) {
+                throw new IllegalStateException("The merges on the heap and to the file differ, "
+                        + heapLength + " and " + output.length() + " bytes");
+            }
+        }
+
+        System.out.println(String.format(Locale.US, "%d dex files, %.1f MiB in, %.1f MiB out",
+                inputs.size(), inputBytes / 1048576f, output.length() / 1048576f));
+        System.out.println(String.format(Locale.US, "heap:   %.0f ms, peak %.1f MiB",
+                heapTime / 1e6, heapPeak / 1048576f));
+        System.out.println(String.format(Locale.US, "stream: %.0f ms, peak %.1f MiB",
+                streamTime / 1e6, streamPeak / 1048576f));
+    }
+
+    private static Dex[] map(List<File> inputs) throws IOException {
+        Dex[] dexes = new Dex[inputs.size()];
+        for (int i = 0; i < dexes.length; i++) {
+            dexes[i] = Dex.map(inputs.get(i));
+        }
+        return dexes;
+    }
+
+    /**
+     * @return the CRC32 of the content of {@code file}
+     */
+    private static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, count);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static DxContext quietContext() {
+        PrintStream out = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        });
+        return new DxContext(out, out);
+    }
+
+    /**
+     * Collects garbage and starts measuring the peak of the heap
+     *
+     * @return the heap used now
+     */
+    private static long resetPeakUsage() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long peakUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -6,7 +6,6 @@ import com.android.annotations.NonNull;
 import com.android.ide.common.process.ProcessExecutor;
 import com.duy.android.compiler.builder.internal.process.RuntimeProcessExecutor;
 import com.duy.android.compiler.builder.model.BuildType;
-import com.duy.android.compiler.builder.task.CleanTask;
 import com.duy.android.compiler.builder.task.Task;
 import com.duy.android.compiler.builder.task.android.CompileAidlTask;
 import com.duy.android.compiler.builder.task.android.GenerateBuildConfigTask;
@@ -15,6 +14,7 @@ import com.duy.android.compiler.builder.task.android.PackageApkTask;
 import com.duy.android.compiler.builder.task.android.ProcessAndroidResourceTask;
 import com.duy.android.compiler.builder.task.android.SignApkTask;
 import com.duy.android.compiler.builder.task.java.CompileJavaTask;
+import com.duy.android.compiler.builder.task.java.DexLibrariesTask;
 import com.duy.android.compiler.builder.task.java.DexTask;
 import com.duy.android.compiler.project.AndroidAppProject;
 
@@ -28,6 +28,9 @@ import java.util.ArrayList;
  * {@link CompileAidlTask}
  * {@link CompileJavaTask}
  * {@link PackageApkTask}
+ * <p>
+ * Tasks which are up-to-date are skipped, libraries are dexed while resources are processed,
+ * see {@link com.duy.android.compiler.builder.task.TaskExecutor}
  */
 public class AndroidAppBuilder extends BuilderImpl<AndroidAppProject> {
 
@@ -59,13 +62,13 @@ public class AndroidAppBuilder extends BuilderImpl<AndroidAppProject> {
     private ArrayList<Task> getTasks(BuildType buildType) {
         ArrayList<Task> tasks = new ArrayList<>();
 
-        tasks.add(new CleanTask(this));
-
         tasks.add(new GenerateBuildConfigTask(this));
 
         tasks.add(new ProcessAndroidResourceTask(this));
 //        tasks.add(new ProcessAndroidResourceTask2(this));
 
+        tasks.add(new DexLibrariesTask(this));
+
         tasks.add(new CompileJavaTask(this));
 
         tasks.add(new DexTask(this));
@@ -4,6 +4,7 @@ import android.content.Context;
 
 import com.android.utils.ILogger;
 import com.duy.android.compiler.builder.task.Task;
+import com.duy.android.compiler.builder.task.TaskExecutor;
 import com.duy.android.compiler.env.Environment;
 import com.duy.android.compiler.project.JavaProject;
 
@@ -24,22 +25,14 @@ public abstract class BuilderImpl<T extends JavaProject> implements IBuilder<T>
         mVerbose = true;
     }
 
+    /**
+     * Run tasks which are not up-to-date, independent tasks run in parallel
+     *
+     * @param tasks - tasks in the order they would run one by one
+     */
     protected boolean runTasks(ArrayList<Task> tasks) {
-        for (Task task : tasks) {
-            try {
-                stdout("Run " + task.getTaskName() + " task");
-                boolean result = task.doFullTaskAction();
-                if (!result) {
-                    stdout(task.getTaskName() + " failed");
-                    return false;
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                stdout(task.getTaskName() + " failed");
-                return false;
-            }
-        }
-        return true;
+        TaskExecutor executor = new TaskExecutor(this, getProject().getTaskStateFile());
+        return executor.execute(tasks);
     }
 
     @Override
@@ -5,7 +5,6 @@ import android.content.Context;
 import com.android.annotations.NonNull;
 import com.duy.android.compiler.builder.internal.jar.JarOptions;
 import com.duy.android.compiler.builder.model.BuildType;
-import com.duy.android.compiler.builder.task.CleanTask;
 import com.duy.android.compiler.builder.task.Task;
 import com.duy.android.compiler.builder.task.java.CompileJavaTask;
 import com.duy.android.compiler.builder.task.java.JarTask;
@@ -37,7 +36,6 @@ public class JarBuilder extends BuilderImpl<JavaProject> {
             mStdout.println("Starting build jar archive");
         }
         ArrayList<Task> tasks = new ArrayList<>();
-        tasks.add(new CleanTask(this));
         tasks.add(new CompileJavaTask(this));
         tasks.add(new JarTask(this, mJarOptions));
         return runTasks(tasks);
@@ -3,9 +3,9 @@ package com.duy.android.compiler.builder;
 import android.content.Context;
 
 import com.duy.android.compiler.builder.model.BuildType;
-import com.duy.android.compiler.builder.task.CleanTask;
 import com.duy.android.compiler.builder.task.Task;
 import com.duy.android.compiler.builder.task.java.CompileJavaTask;
+import com.duy.android.compiler.builder.task.java.DexLibrariesTask;
 import com.duy.android.compiler.builder.task.java.DexTask;
 import com.duy.android.compiler.builder.task.java.JarTask;
 import com.duy.android.compiler.project.JavaProject;
@@ -35,12 +35,12 @@ public class JavaBuilder extends BuilderImpl<JavaProject> {
 
         ArrayList<Task> tasks = new ArrayList<>();
 
-        tasks.add(new CleanTask(this));
-
         tasks.add(new CompileJavaTask(this));
 
         tasks.add(new JarTask(this));
 
+        tasks.add(new DexLibrariesTask(this));
+
         tasks.add(new DexTask(this));
 
         return runTasks(tasks);
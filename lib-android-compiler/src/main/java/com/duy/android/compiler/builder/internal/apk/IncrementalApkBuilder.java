@@ -0,0 +1,179 @@
+package com.duy.android.compiler.builder.internal.apk;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.sdklib.build.ApkBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import kellinwood.zipio.ZioEntry;
+import kellinwood.zipio.ZipInput;
+import kellinwood.zipio.ZipOutput;
+
+/**
+ * Package the unsigned apk from the resource package, the dex file and java resources.
+ * <p>
+ * Entries of the resource package are copied with their compressed bytes. A file is only
+ * compressed again if its content differs from the entry with the same name in the previous
+ * apk (compared by crc and size), otherwise the compressed entry of the previous apk is reused.
+ * Usually only classes.dex is compressed on each build.
+ */
+public class IncrementalApkBuilder {
+    private static final int DEFLATED = 8;
+
+    @NonNull
+    private final File mApkFile;
+    @NonNull
+    private final File mResFile;
+    @Nullable
+    private final File mDexFile;
+    private final List<File> mSourceFolders = new ArrayList<>();
+
+    private int mCopiedCount;
+    private int mCompressedCount;
+
+    /**
+     * @param apkFile - output apk, its content is reused if it exists
+     * @param resFile - resource package generated by aapt
+     * @param dexFile - dex file, can be null
+     */
+    public IncrementalApkBuilder(@NonNull File apkFile, @NonNull File resFile, @Nullable File dexFile) {
+        mApkFile = apkFile;
+        mResFile = resFile;
+        mDexFile = dexFile;
+    }
+
+    /**
+     * Add java resources of a source folder, files are filtered like {@link ApkBuilder}
+     */
+    public void addSourceFolder(@NonNull File sourceFolder) {
+        mSourceFolders.add(sourceFolder);
+    }
+
+    public void sealApk() throws IOException {
+        mCopiedCount = 0;
+        mCompressedCount = 0;
+
+        ZipInput previous = null;
+        if (mApkFile.isFile()) {
+            try {
+                previous = ZipInput.read(mApkFile.getAbsolutePath());
+            } catch (IOException e) {
+                //corrupted, build from scratch
+                e.printStackTrace();
+            }
+        }
+        ZipInput resources = ZipInput.read(mResFile.getAbsolutePath());
+        File tmpFile = new File(mApkFile.getPath() + ".tmp");
+        ZipOutput output = new ZipOutput(tmpFile);
+        try {
+            HashSet<String> names = new HashSet<>();
+            for (ZioEntry entry : resources.getEntries().values()) {
+                names.add(entry.getName());
+                output.write(entry);
+            }
+            if (mDexFile != null) {
+                addFile(output, previous, names, mDexFile, "classes.dex");
+            }
+            for (File sourceFolder : mSourceFolders) {
+                File[] files = sourceFolder.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        addJavaResource(output, previous, names, file, null);
+                    }
+                }
+            }
+        } finally {
+            output.close();
+            resources.close();
+            if (previous != null) {
+                previous.close();
+            }
+        }
+
+        if (mApkFile.exists() && !mApkFile.delete() || !tmpFile.renameTo(mApkFile)) {
+            throw new IOException("Can not write " + mApkFile);
+        }
+    }
+
+    /**
+     * @return number of entries copied from the previous apk in the last {@link #sealApk()}
+     */
+    public int getCopiedCount() {
+        return mCopiedCount;
+    }
+
+    /**
+     * @return number of entries compressed in the last {@link #sealApk()}
+     */
+    public int getCompressedCount() {
+        return mCompressedCount;
+    }
+
+    private void addJavaResource(ZipOutput output, @Nullable ZipInput previous,
+                                 HashSet<String> names, File file, @Nullable String path)
+            throws IOException {
+        if (file.isDirectory()) {
+            if (ApkBuilder.checkFolderForPackaging(file.getName())) {
+                path = path == null ? file.getName() : path + "/" + file.getName();
+                File[] files = file.listFiles();
+                if (files != null) {
+                    for (File child : files) {
+                        addJavaResource(output, previous, names, child, path);
+                    }
+                }
+            }
+        } else if (ApkBuilder.checkFileForPackaging(file.getName())) {
+            path = path == null ? file.getName() : path + "/" + file.getName();
+            addFile(output, previous, names, file, path);
+        }
+    }
+
+    private void addFile(ZipOutput output, @Nullable ZipInput previous, HashSet<String> names,
+                         File file, String name) throws IOException {
+        if (!names.add(name)) {
+            throw new IOException("Duplicate file " + name + " in apk, from " + file);
+        }
+
+        ZioEntry old = previous != null ? previous.getEntry(name) : null;
+        if (old != null && old.getSize() == file.length() && old.getCrc32() == crc32(file)) {
+            output.write(old);
+            mCopiedCount++;
+            return;
+        }
+
+        ZioEntry entry = new ZioEntry(name);
+        entry.setCompression(DEFLATED);
+        entry.setTime(file.lastModified());
+        OutputStream out = entry.getOutputStream();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        }
+        output.write(entry);
+        mCompressedCount++;
+    }
+
+    private static int crc32(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, count);
+            }
+        }
+        return (int) crc.getValue();
+    }
+}
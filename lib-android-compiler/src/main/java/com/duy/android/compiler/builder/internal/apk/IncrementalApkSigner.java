@@ -0,0 +1,255 @@
+package com.duy.android.compiler.builder.internal.apk;
+
+import android.util.Base64;
+
+import com.android.annotations.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+
+import kellinwood.security.zipsigner.KeySet;
+import kellinwood.security.zipsigner.ZipSignature;
+import kellinwood.zipio.ZioEntry;
+import kellinwood.zipio.ZipInput;
+import kellinwood.zipio.ZipOutput;
+
+/**
+ * Sign an apk with the v1 (jar) scheme, produces the same signature as
+ * {@link kellinwood.security.zipsigner.ZipSigner}.
+ * <p>
+ * The manifest of the previous signed apk is used as a digest cache: an entry with the same
+ * name, crc and size as in the previous apk keeps its digest, so only changed entries are
+ * decompressed and hashed. Entries are copied with their compressed bytes.
+ */
+public class IncrementalApkSigner {
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    private static final String CERT_SF_NAME = "META-INF/CERT.SF";
+    private static final String CERT_RSA_NAME = "META-INF/CERT.RSA";
+    private static final String DIGEST_NAME = "SHA1-Digest";
+    private static final String CREATED_BY = "1.0 (Android SignApk)";
+    private static final Pattern SIGNATURE_PATTERN = Pattern.compile("^META-INF/(.*)[.](SF|RSA|DSA)$");
+    private static final int DEFLATED = 8;
+
+    @NonNull
+    private final KeySet mKeySet;
+
+    private int mReusedCount;
+    private int mDigestedCount;
+
+    /**
+     * @param keySet - keys with a signature block template, such as the test key of ZipSigner
+     */
+    public IncrementalApkSigner(@NonNull KeySet keySet) {
+        if (keySet.getSigBlockTemplate() == null) {
+            throw new IllegalArgumentException("Key " + keySet.getName() + " has no signature block template");
+        }
+        mKeySet = keySet;
+    }
+
+    /**
+     * @param input  - unsigned apk
+     * @param output - signed apk, its manifest is reused if it exists
+     */
+    public void sign(@NonNull File input, @NonNull File output) throws IOException, GeneralSecurityException {
+        mReusedCount = 0;
+        mDigestedCount = 0;
+
+        Map<String, CachedDigest> cache = readDigests(output);
+        ZipInput zipInput = ZipInput.read(input.getAbsolutePath());
+        File tmpFile = new File(output.getPath() + ".tmp");
+        try {
+            //sorted, the manifest does not depend on the order of entries in the apk
+            TreeMap<String, ZioEntry> entries = new TreeMap<>();
+            for (ZioEntry entry : zipInput.getEntries().values()) {
+                String name = entry.getName();
+                if (!name.equals(MANIFEST_NAME) && !SIGNATURE_PATTERN.matcher(name).matches()) {
+                    entries.put(name, entry);
+                }
+            }
+
+            Manifest manifest = createManifest(zipInput, entries, cache);
+            ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+            manifest.write(manifestBytes);
+            byte[] signatureFile = createSignatureFile(manifest, manifestBytes.toByteArray());
+            ZipSignature signature = new ZipSignature();
+            signature.initSign(mKeySet.getPrivateKey());
+            signature.update(signatureFile);
+            ByteArrayOutputStream signatureBlock = new ByteArrayOutputStream();
+            signatureBlock.write(mKeySet.getSigBlockTemplate());
+            signatureBlock.write(signature.sign());
+
+            ZipOutput zipOutput = new ZipOutput(tmpFile);
+            try {
+                long time = System.currentTimeMillis();
+                writeEntry(zipOutput, MANIFEST_NAME, manifestBytes.toByteArray(), time);
+                writeEntry(zipOutput, CERT_SF_NAME, signatureFile, time);
+                writeEntry(zipOutput, CERT_RSA_NAME, signatureBlock.toByteArray(), time);
+                for (ZioEntry entry : entries.values()) {
+                    zipOutput.write(entry);
+                }
+            } finally {
+                zipOutput.close();
+            }
+        } finally {
+            zipInput.close();
+        }
+
+        if (output.exists() && !output.delete() || !tmpFile.renameTo(output)) {
+            throw new IOException("Can not write " + output);
+        }
+    }
+
+    /**
+     * @return number of digests reused from the previous signed apk in the last sign
+     */
+    public int getReusedCount() {
+        return mReusedCount;
+    }
+
+    /**
+     * @return number of entries hashed in the last sign
+     */
+    public int getDigestedCount() {
+        return mDigestedCount;
+    }
+
+    private Manifest createManifest(ZipInput input, TreeMap<String, ZioEntry> entries,
+                                    Map<String, CachedDigest> cache)
+            throws IOException, GeneralSecurityException {
+        Manifest manifest = new Manifest();
+        Manifest inputManifest = input.getManifest();
+        if (inputManifest != null) {
+            manifest.getMainAttributes().putAll(inputManifest.getMainAttributes());
+        }
+        Attributes main = manifest.getMainAttributes();
+        main.putValue("Manifest-Version", "1.0");
+        main.putValue("Created-By", CREATED_BY);
+
+        MessageDigest md = MessageDigest.getInstance("SHA1");
+        byte[] buffer = new byte[8192];
+        for (ZioEntry entry : entries.values()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = entry.getName();
+            CachedDigest cached = cache.get(name);
+            String digest;
+            if (cached != null && cached.crc32 == entry.getCrc32() && cached.size == entry.getSize()) {
+                digest = cached.digest;
+                mReusedCount++;
+            } else {
+                try (InputStream in = entry.getInputStream()) {
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        md.update(buffer, 0, count);
+                    }
+                }
+                digest = encode(md.digest());
+                mDigestedCount++;
+            }
+            Attributes attributes = new Attributes();
+            attributes.putValue(DIGEST_NAME, digest);
+            manifest.getEntries().put(name, attributes);
+        }
+        return manifest;
+    }
+
+    /**
+     * Digests the whole manifest and each section of it, in the same format as ZipSigner
+     */
+    private static byte[] createSignatureFile(Manifest manifest, byte[] manifestBytes)
+            throws GeneralSecurityException {
+        MessageDigest md = MessageDigest.getInstance("SHA1");
+        StringBuilder out = new StringBuilder();
+        out.append("Signature-Version: 1.0\r\n");
+        out.append("Created-By: ").append(CREATED_BY).append("\r\n");
+        out.append("SHA1-Digest-Manifest: ").append(encode(md.digest(manifestBytes))).append("\r\n\r\n");
+
+        for (Map.Entry<String, Attributes> entry : manifest.getEntries().entrySet()) {
+            StringBuilder section = new StringBuilder();
+            section.append("Name: ").append(entry.getKey()).append("\r\n");
+            for (Map.Entry<Object, Object> attribute : entry.getValue().entrySet()) {
+                section.append(attribute.getKey()).append(": ").append(attribute.getValue()).append("\r\n");
+            }
+            section.append("\r\n");
+            byte[] digest = md.digest(section.toString().getBytes(StandardCharsets.UTF_8));
+
+            out.append("Name: ").append(entry.getKey()).append("\r\n");
+            out.append(DIGEST_NAME).append(": ").append(encode(digest)).append("\r\n\r\n");
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String encode(byte[] digest) {
+        return Base64.encodeToString(digest, Base64.NO_WRAP);
+    }
+
+    private static void writeEntry(ZipOutput output, String name, byte[] data, long time)
+            throws IOException {
+        ZioEntry entry = new ZioEntry(name);
+        entry.setCompression(DEFLATED);
+        entry.setTime(time);
+        OutputStream out = entry.getOutputStream();
+        out.write(data);
+        output.write(entry);
+    }
+
+    /**
+     * Read digests of entries from the manifest of a signed apk
+     */
+    private static Map<String, CachedDigest> readDigests(File signedApk) {
+        HashMap<String, CachedDigest> digests = new HashMap<>();
+        if (!signedApk.isFile()) {
+            return digests;
+        }
+        ZipInput input = null;
+        try {
+            input = ZipInput.read(signedApk.getAbsolutePath());
+            Manifest manifest = input.getManifest();
+            if (manifest == null) {
+                return digests;
+            }
+            for (Map.Entry<String, Attributes> entry : manifest.getEntries().entrySet()) {
+                String digest = entry.getValue().getValue(DIGEST_NAME);
+                ZioEntry zioEntry = input.getEntry(entry.getKey());
+                if (digest != null && zioEntry != null) {
+                    digests.put(entry.getKey(),
+                            new CachedDigest(zioEntry.getCrc32(), zioEntry.getSize(), digest));
+                }
+            }
+        } catch (IOException e) {
+            //all entries will be hashed
+            e.printStackTrace();
+            digests.clear();
+        } finally {
+            if (input != null) {
+                input.close();
+            }
+        }
+        return digests;
+    }
+
+    private static class CachedDigest {
+        final int crc32;
+        final int size;
+        final String digest;
+
+        CachedDigest(int crc32, int size, String digest) {
+            this.crc32 = crc32;
+            this.size = size;
+            this.digest = digest;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.duy.android.compiler.builder.internal.dex;
+
+import com.android.annotations.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of dex fragments, one fragment per class file, keyed by hash of the class file content.
+ * <p>
+ * Only classes without a fragment are translated by {@link DexerSession}, the fragments are
+ * merged together by {@link com.android.dx.merge.DexMerger} to create the final dex file.
+ */
+public class ClassDexCache {
+    private static final String DOT_CLASS = ".class";
+    private static final String DOT_DEX = ".dex";
+
+    @NonNull
+    private final File mCacheDir;
+    @NonNull
+    private final DexerSession mSession;
+
+    private int mTranslatedCount;
+    private int mCachedCount;
+
+    /**
+     * @param cacheDir - directory to store dex fragments
+     */
+    public ClassDexCache(@NonNull File cacheDir, @NonNull DexerSession session) {
+        mCacheDir = cacheDir;
+        mSession = session;
+    }
+
+    /**
+     * Get dex fragments of all classes in the directory, translate classes which are not cached.
+     * Fragments of classes no longer exist are deleted.
+     *
+     * @param classesDir - output directory of java compiler
+     * @return dex fragments, one per class file
+     */
+    @NonNull
+    public List<File> dexClasses(@NonNull File classesDir) throws IOException {
+        mTranslatedCount = 0;
+        mCachedCount = 0;
+        if (!mCacheDir.exists() && !mCacheDir.mkdirs()) {
+            throw new IOException("Can not create directory " + mCacheDir);
+        }
+
+        ArrayList<File> classFiles = new ArrayList<>();
+        listClassFiles(classesDir, classFiles);
+
+        String root = classesDir.getAbsolutePath() + File.separator;
+        ArrayList<File> fragments = new ArrayList<>();
+        Set<String> used = new HashSet<>();
+        //classes without fragment, translated together so dx can use all cores
+        LinkedHashMap<String, byte[]> toTranslate = new LinkedHashMap<>();
+        HashMap<String, File> toTranslateFragments = new HashMap<>();
+        for (File classFile : classFiles) {
+            byte[] bytes = Files.readAllBytes(classFile.toPath());
+            String name = classFile.getAbsolutePath().substring(root.length())
+                    .replace(File.separatorChar, '/');
+            File fragment = new File(mCacheDir, hash(bytes) + DOT_DEX);
+            if (fragment.isFile()) {
+                mCachedCount++;
+            } else if (!used.contains(fragment.getName())) {
+                toTranslate.put(name, bytes);
+                toTranslateFragments.put(name, fragment);
+            }
+            if (used.add(fragment.getName())) {
+                fragments.add(fragment);
+            }
+        }
+
+        for (Map.Entry<String, byte[]> entry : mSession.translateEach(toTranslate).entrySet()) {
+            write(entry.getValue(), toTranslateFragments.get(entry.getKey()));
+            mTranslatedCount++;
+        }
+
+        File[] cached = mCacheDir.listFiles();
+        if (cached != null) {
+            for (File file : cached) {
+                if (!used.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+        return fragments;
+    }
+
+    /**
+     * @return number of classes translated by last call of {@link #dexClasses(File)}
+     */
+    public int getTranslatedCount() {
+        return mTranslatedCount;
+    }
+
+    /**
+     * @return number of classes reused from cache by last call of {@link #dexClasses(File)}
+     */
+    public int getCachedCount() {
+        return mCachedCount;
+    }
+
+    private static void write(byte[] dex, File fragment) throws IOException {
+        //write to a temporary file, a partially written fragment must never be reused
+        File tmp = new File(fragment.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(dex);
+        }
+        if (!tmp.renameTo(fragment)) {
+            tmp.delete();
+            throw new IOException("Can not write " + fragment);
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(bytes);
+            StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                result.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void listClassFiles(File parent, List<File> result) {
+        File[] children = parent.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listClassFiles(child, result);
+            } else if (child.getName().endsWith(DOT_CLASS)) {
+                result.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.duy.android.compiler.builder.internal.dex;
+
+import com.android.annotations.NonNull;
+import com.android.dex.Dex;
+import com.android.dex.DexFormat;
+import com.android.dx.cf.direct.DirectClassFile;
+import com.android.dx.cf.direct.StdAttributeFactory;
+import com.android.dx.cf.iface.ParseException;
+import com.android.dx.command.dexer.DxContext;
+import com.android.dx.command.dexer.Main;
+import com.android.dx.dex.DexOptions;
+import com.android.dx.dex.cf.CfOptions;
+import com.android.dx.dex.cf.CfTranslator;
+import com.android.dx.dex.file.ClassDefItem;
+import com.android.dx.dex.file.DexFile;
+import com.android.dx.merge.CollisionPolicy;
+import com.android.dx.merge.DexMerger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * In-process dexer, translates class files from memory to {@link Dex} in memory.
+ * <p>
+ * Unlike {@link Main#main(String[])}, the options and the translator threads are created once
+ * and reused by all builds, dx intern tables are not cleared between builds.
+ */
+public class DexerSession {
+    private static final String DOT_CLASS = ".class";
+    private static DexerSession sInstance;
+
+    @NonNull
+    private final DxContext mContext;
+    private final CfOptions mCfOptions;
+    private final DexOptions mDexOptions;
+    private final int mThreadCount;
+    private ExecutorService mExecutor;
+
+    public DexerSession(@NonNull DxContext context) {
+        mContext = context;
+        mThreadCount = Runtime.getRuntime().availableProcessors();
+
+        //same options as "dx --no-strict"
+        Main.Arguments arguments = new Main.Arguments(context);
+        arguments.strictNameCheck = false;
+        arguments.makeOptionsObjects();
+        mCfOptions = arguments.cfOptions;
+        mDexOptions = arguments.dexOptions;
+    }
+
+    /**
+     * @return session shared by all builds of the process
+     */
+    public static synchronized DexerSession getInstance() {
+        if (sInstance == null) {
+            sInstance = new DexerSession(new DxContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Translate each class to its own dex file, classes are translated in parallel.
+     *
+     * @param classes - class file content, keyed by internal name such as java/lang/Object.class
+     * @return dex file content of each class, in the same order
+     */
+    @NonNull
+    public Map<String, byte[]> translateEach(@NonNull Map<String, byte[]> classes)
+            throws IOException {
+        List<Callable<byte[]>> tasks = new ArrayList<>();
+        for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            tasks.add(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    DexFile dexFile = new DexFile(mDexOptions);
+                    dexFile.add(translate(entry.getKey(), entry.getValue(), dexFile));
+                    return dexFile.toDex(null, false);
+                }
+            });
+        }
+        List<byte[]> results = invokeAll(tasks);
+
+        LinkedHashMap<String, byte[]> result = new LinkedHashMap<>();
+        int i = 0;
+        for (String name : classes.keySet()) {
+            result.put(name, results.get(i++));
+        }
+        return result;
+    }
+
+    /**
+     * Translate all classes to a single dex file, classes are translated in parallel.
+     *
+     * @param classes - class file content, keyed by internal name such as java/lang/Object.class
+     */
+    @NonNull
+    public Dex dexClasses(@NonNull Map<String, byte[]> classes) throws IOException {
+        final DexFile dexFile = new DexFile(mDexOptions);
+        List<Callable<ClassDefItem>> tasks = new ArrayList<>();
+        for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            tasks.add(new Callable<ClassDefItem>() {
+                @Override
+                public ClassDefItem call() throws IOException {
+                    return translate(entry.getKey(), entry.getValue(), dexFile);
+                }
+            });
+        }
+        //add in input order, so the output does not depend on thread scheduling
+        for (ClassDefItem clazz : invokeAll(tasks)) {
+            dexFile.add(clazz);
+        }
+        try {
+            return new Dex(dexFile.toDex(null, false));
+        } catch (RuntimeException e) {
+            throw new IOException("Can not write dex file", e);
+        }
+    }
+
+    /**
+     * Dex all classes of a jar file. Dex files inside the jar (pre-dexed libraries) are merged
+     * with the translated classes, other resources are ignored.
+     */
+    @NonNull
+    public Dex dexJar(@NonNull File jar) throws IOException {
+        TreeMap<String, byte[]> classes = new TreeMap<>();
+        List<Dex> dexes = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (name.endsWith(DOT_CLASS) && !name.endsWith("module-info.class")) {
+                    classes.put(name, readFully(zipFile.getInputStream(entry)));
+                } else if (name.equals(DexFormat.DEX_IN_JAR_NAME)) {
+                    dexes.add(new Dex(zipFile.getInputStream(entry)));
+                }
+            }
+        }
+
+        Dex dex = dexClasses(classes);
+        if (dexes.isEmpty()) {
+            return dex;
+        }
+        dexes.add(0, dex);
+        return new DexMerger(dexes.toArray(new Dex[dexes.size()]), CollisionPolicy.FAIL,
+                mContext).merge();
+    }
+
+    /**
+     * Stop the translator threads, they are created again when needed
+     */
+    public synchronized void close() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+    }
+
+    private ClassDefItem translate(String name, byte[] bytes, DexFile dexFile) throws IOException {
+        try {
+            DirectClassFile cf = new DirectClassFile(bytes, name, mCfOptions.strictNameCheck);
+            cf.setAttributeFactory(StdAttributeFactory.THE_ONE);
+            cf.getMagic(); // triggers the actual parsing
+            return CfTranslator.translate(mContext, cf, bytes, mCfOptions, mDexOptions, dexFile);
+        } catch (ParseException e) {
+            throw new IOException("Can not dex " + name + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            throw new IOException("Can not dex " + name, e);
+        }
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() <= 1) {
+            try {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            return results;
+        }
+
+        try {
+            for (Future<T> future : getExecutor().invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Dexing was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        return results;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = Executors.newFixedThreadPool(mThreadCount, new ThreadFactory() {
+                private int mCount = 0;
+
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "dexer-" + mCount++);
+                    //do not keep the process alive for idle translator threads
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mExecutor;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.duy.android.compiler.builder.internal.dex;
+
+import com.android.annotations.NonNull;
+import com.duy.android.compiler.builder.util.MD5Hash;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of dexed libraries, keyed by hash of the jar content. The cache directory is shared
+ * by all projects so the same library is only dexed once.
+ * <p>
+ * Each project keeps an index file which maps its jars to their hash, a jar with the same
+ * size and modification time as in the index is not hashed again.
+ */
+public class LibraryDexCache {
+    private static final String DOT_DEX = ".dex";
+    private static final String DOT_TMP_DEX = ".tmp" + DOT_DEX;
+    /**
+     * Temporary files older than this are left by a build which did not finish
+     */
+    private static final long MAX_TMP_AGE = 24 * 60 * 60 * 1000;
+    /**
+     * Least recently used dex files are deleted when the cache is larger than this
+     */
+    private static final long MAX_CACHE_SIZE = 256 * 1024 * 1024;
+
+    @NonNull
+    private final File mCacheDir;
+    @NonNull
+    private final File mIndexFile;
+    @NonNull
+    private final DexerSession mSession;
+    @NonNull
+    private final PrintStream mStdout;
+
+    private int mDexedCount;
+    private int mCachedCount;
+
+    /**
+     * @param cacheDir  - shared directory to store dexed libraries
+     * @param indexFile - index of jars of the project
+     */
+    public LibraryDexCache(@NonNull File cacheDir, @NonNull File indexFile,
+                           @NonNull DexerSession session, @NonNull PrintStream stdout) {
+        mCacheDir = cacheDir;
+        mIndexFile = indexFile;
+        mSession = session;
+        mStdout = stdout;
+    }
+
+    /**
+     * Dex all libraries which are not in the cache, classes of each library are translated
+     * in parallel by the {@link DexerSession}.
+     *
+     * @return dexed libraries, in the same order as given jars
+     */
+    @NonNull
+    public List<File> dexLibraries(@NonNull List<File> jars) throws IOException {
+        mDexedCount = 0;
+        mCachedCount = 0;
+        if (!mCacheDir.exists() && !mCacheDir.mkdirs()) {
+            throw new IOException("Can not create directory " + mCacheDir);
+        }
+
+        HashMap<String, Entry> oldIndex = new HashMap<>();
+        readIndex(mIndexFile, oldIndex);
+        LinkedHashMap<String, Entry> index = new LinkedHashMap<>();
+        List<Entry> toDex = new ArrayList<>();
+        for (File jar : jars) {
+            Entry entry = oldIndex.get(jar.getAbsolutePath());
+            if (entry == null || !entry.isUpToDate(jar)) {
+                try {
+                    entry = new Entry(jar.getAbsolutePath(), jar.length(), jar.lastModified(),
+                            MD5Hash.getMD5Checksum(jar));
+                } catch (Exception e) {
+                    throw new IOException("Can not read " + jar, e);
+                }
+            }
+            index.put(entry.path, entry);
+
+            File dexFile = getDexFile(entry);
+            if (dexFile.isFile()) {
+                //mark as recently used
+                dexFile.setLastModified(System.currentTimeMillis());
+                mCachedCount++;
+            } else if (!toDex.contains(entry)) {
+                toDex.add(entry);
+            }
+        }
+
+        for (Entry entry : toDex) {
+            dex(entry);
+        }
+        mDexedCount = toDex.size();
+        writeIndex(mIndexFile, index.values());
+        trim();
+
+        List<File> result = new ArrayList<>();
+        for (File jar : jars) {
+            File dexFile = getDexFile(index.get(jar.getAbsolutePath()));
+            if (!result.contains(dexFile)) {
+                result.add(dexFile);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A dex file may be missing when the cache was trimmed by the build of another project, it
+     * is dexed again by the next {@link #dexLibraries(List)}.
+     *
+     * @return dexed libraries recorded by the last build of the project
+     */
+    @NonNull
+    public static List<File> getDexedLibraries(@NonNull File indexFile) {
+        List<File> result = new ArrayList<>();
+        LinkedHashMap<String, Entry> index = new LinkedHashMap<>();
+        try {
+            String cacheDir = readIndex(indexFile, index);
+            if (cacheDir == null) {
+                return result;
+            }
+            for (Entry entry : index.values()) {
+                File dexFile = new File(cacheDir, entry.hash + DOT_DEX);
+                if (!result.contains(dexFile)) {
+                    result.add(dexFile);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    /**
+     * @return number of libraries dexed by last call of {@link #dexLibraries(List)}
+     */
+    public int getDexedCount() {
+        return mDexedCount;
+    }
+
+    /**
+     * @return number of libraries reused from cache by last call of {@link #dexLibraries(List)}
+     */
+    public int getCachedCount() {
+        return mCachedCount;
+    }
+
+    private void dex(Entry entry) throws IOException {
+        File dexFile = getDexFile(entry);
+        //write to a temporary file, other builds may read the cache at the same time
+        File tmp = new File(mCacheDir,
+                entry.hash + "-" + Thread.currentThread().getId() + DOT_TMP_DEX);
+        mStdout.println("Dexing lib " + entry.path);
+
+        mSession.dexJar(new File(entry.path)).writeTo(tmp);
+        if (!tmp.renameTo(dexFile)) {
+            tmp.delete();
+            if (!dexFile.isFile()) {
+                throw new IOException("Can not write " + dexFile);
+            }
+        }
+        mStdout.println("Dexed lib " + entry.path);
+    }
+
+    /**
+     * Delete least recently used dex files until the cache fits in {@link #MAX_CACHE_SIZE}.
+     * Temporary files are written by builds running at the same time, they are only deleted
+     * when they are older than {@link #MAX_TMP_AGE}.
+     */
+    private void trim() {
+        File[] children = mCacheDir.listFiles();
+        if (children == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<File> files = new ArrayList<>();
+        long size = 0;
+        for (File file : children) {
+            if (!file.getName().endsWith(DOT_TMP_DEX)) {
+                files.add(file);
+                size += file.length();
+            } else if (now - file.lastModified() > MAX_TMP_AGE) {
+                file.delete();
+            }
+        }
+        if (size <= MAX_CACHE_SIZE) {
+            return;
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        for (int i = 0; i < files.size() && size > MAX_CACHE_SIZE; i++) {
+            long length = files.get(i).length();
+            if (files.get(i).delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File getDexFile(Entry entry) {
+        return new File(mCacheDir, entry.hash + DOT_DEX);
+    }
+
+    /**
+     * @return cache directory the index was written for, null if the index does not exist
+     */
+    private static String readIndex(File indexFile, Map<String, Entry> index) throws IOException {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))) {
+            String cacheDir = reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length != 4) {
+                    continue;
+                }
+                try {
+                    Entry entry = new Entry(parts[0], Long.parseLong(parts[1]),
+                            Long.parseLong(parts[2]), parts[3]);
+                    index.put(entry.path, entry);
+                } catch (NumberFormatException e) {
+                    //corrupted line, the jar will be hashed again
+                }
+            }
+            return cacheDir;
+        }
+    }
+
+    /**
+     * The first line of the index is the cache directory, then one line per jar
+     */
+    private void writeIndex(File indexFile, Iterable<Entry> entries) throws IOException {
+        File parent = indexFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile))) {
+            writer.write(mCacheDir.getAbsolutePath());
+            writer.newLine();
+            for (Entry entry : entries) {
+                writer.write(entry.path + "\t" + entry.length + "\t" + entry.lastModified
+                        + "\t" + entry.hash);
+                writer.newLine();
+            }
+        }
+    }
+
+    private static class Entry {
+        final String path;
+        final long length;
+        final long lastModified;
+        final String hash;
+
+        Entry(String path, long length, long lastModified, String hash) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        boolean isUpToDate(File jar) {
+            return jar.length() == length && jar.lastModified() == lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && ((Entry) o).hash.equals(hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+    }
+}
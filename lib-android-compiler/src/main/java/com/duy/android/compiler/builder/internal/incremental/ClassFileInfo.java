@@ -0,0 +1,262 @@
+package com.duy.android.compiler.builder.internal.incremental;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Minimal class file reader, only reads the constant pool, constant fields and the
+ * SourceFile attribute. Used to find dependencies between compiled classes.
+ */
+public class ClassFileInfo {
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    /**
+     * Internal name of the class, such as java/lang/String
+     */
+    @NonNull
+    private final String mClassName;
+    @Nullable
+    private final String mSourceFile;
+    /**
+     * Internal names of all classes referenced by the constant pool
+     */
+    @NonNull
+    private final Set<String> mReferences;
+    /**
+     * Name and value of all compile time constant fields, they are inlined into
+     * other classes so a change of them can not be found from the constant pool
+     */
+    @NonNull
+    private final String mConstants;
+
+    private ClassFileInfo(@NonNull String className, @Nullable String sourceFile,
+                          @NonNull Set<String> references, @NonNull String constants) {
+        mClassName = className;
+        mSourceFile = sourceFile;
+        mReferences = references;
+        mConstants = constants;
+    }
+
+    @NonNull
+    public static ClassFileInfo read(@NonNull File classFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(classFile)))) {
+            return read(in);
+        }
+    }
+
+    @NonNull
+    public static ClassFileInfo read(@NonNull DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); //minor version
+        in.readUnsignedShort(); //major version
+
+        int count = in.readUnsignedShort();
+        int[] tags = new int[count];
+        Object[] values = new Object[count];
+        int[] classNameIndexes = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            tags[i] = tag;
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    values[i] = in.readUTF();
+                    break;
+                case CONSTANT_INTEGER:
+                    values[i] = in.readInt();
+                    break;
+                case CONSTANT_FLOAT:
+                    values[i] = in.readFloat();
+                    break;
+                case CONSTANT_LONG:
+                    values[i] = in.readLong();
+                    i++;
+                    break;
+                case CONSTANT_DOUBLE:
+                    values[i] = in.readDouble();
+                    i++;
+                    break;
+                case CONSTANT_CLASS:
+                    classNameIndexes[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                    values[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.readUnsignedShort();
+                    break;
+                case CONSTANT_FIELD_REF:
+                case CONSTANT_METHOD_REF:
+                case CONSTANT_INTERFACE_METHOD_REF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.readInt();
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        Set<String> references = new HashSet<>();
+        for (int i = 1; i < count; i++) {
+            if (tags[i] == CONSTANT_CLASS) {
+                addClassName(references, (String) values[classNameIndexes[i]]);
+            } else if (tags[i] == CONSTANT_UTF8) {
+                //descriptors, signatures and annotation types
+                addDescriptorTypes(references, (String) values[i]);
+            }
+        }
+
+        in.readUnsignedShort(); //access flags
+        String className = (String) values[classNameIndexes[in.readUnsignedShort()]];
+        references.remove(className);
+        in.readUnsignedShort(); //super class, already in constant pool
+        int interfaceCount = in.readUnsignedShort();
+        for (int i = 0; i < interfaceCount; i++) {
+            in.readUnsignedShort();
+        }
+
+        TreeMap<String, String> constants = new TreeMap<>();
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            in.readUnsignedShort(); //access flags
+            String name = (String) values[in.readUnsignedShort()];
+            in.readUnsignedShort(); //descriptor
+            int attributeCount = in.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                String attributeName = (String) values[in.readUnsignedShort()];
+                int length = in.readInt();
+                if ("ConstantValue".equals(attributeName)) {
+                    int index = in.readUnsignedShort();
+                    Object value = tags[index] == CONSTANT_STRING
+                            ? values[(Integer) values[index]] : values[index];
+                    constants.put(name, String.valueOf(value));
+                } else {
+                    skipFully(in, length);
+                }
+            }
+        }
+
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            in.readUnsignedShort(); //access flags
+            in.readUnsignedShort(); //name
+            in.readUnsignedShort(); //descriptor
+            int attributeCount = in.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                in.readUnsignedShort();
+                skipFully(in, in.readInt());
+            }
+        }
+
+        String sourceFile = null;
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = (String) values[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("SourceFile".equals(attributeName)) {
+                sourceFile = (String) values[in.readUnsignedShort()];
+            } else {
+                skipFully(in, length);
+            }
+        }
+        return new ClassFileInfo(className, sourceFile, references, constants.toString());
+    }
+
+    private static void addClassName(Set<String> result, String name) {
+        if (name.startsWith("[")) {
+            addDescriptorTypes(result, name);
+        } else {
+            result.add(name);
+        }
+    }
+
+    /**
+     * Find all object types in a descriptor or signature, such as "(Ljava/lang/String;)V"
+     */
+    private static void addDescriptorTypes(Set<String> result, String descriptor) {
+        int start = descriptor.indexOf('L');
+        while (start >= 0) {
+            int end = start + 1;
+            while (end < descriptor.length()) {
+                char c = descriptor.charAt(end);
+                if (c == ';' || c == '<' || c == '.' || c == ' ' || c == '(' || c == ')') {
+                    break;
+                }
+                end++;
+            }
+            if (end < descriptor.length() && end > start + 1
+                    && (descriptor.charAt(end) == ';' || descriptor.charAt(end) == '<')) {
+                result.add(descriptor.substring(start + 1, end));
+            }
+            start = descriptor.indexOf('L', end);
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        int skipped = 0;
+        while (skipped < length) {
+            int n = in.skipBytes(length - skipped);
+            if (n <= 0) {
+                throw new IOException("Unexpected end of class file");
+            }
+            skipped += n;
+        }
+    }
+
+    @NonNull
+    public String getClassName() {
+        return mClassName;
+    }
+
+    @Nullable
+    public String getSourceFile() {
+        return mSourceFile;
+    }
+
+    @NonNull
+    public Set<String> getReferences() {
+        return mReferences;
+    }
+
+    @NonNull
+    public String getConstants() {
+        return mConstants;
+    }
+}
@@ -0,0 +1,426 @@
+package com.duy.android.compiler.builder.internal.incremental;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.duy.android.compiler.builder.util.MD5Hash;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * State of the last successful java compilation, persisted between builds.
+ * <p>
+ * For each source file it keeps the content hash and the classes compiled from it, for each
+ * class it keeps the classes it references. This is enough to find which sources must be
+ * recompiled after some sources changed, and which class files became stale.
+ */
+public class JavaBuildState {
+    private static final int VERSION = 1;
+    private static final String DOT_CLASS = ".class";
+
+    /**
+     * Compiler, language level and classpath of the last build, any change requires a full build
+     */
+    @NonNull
+    private String mOptionsKey;
+    private final HashMap<String, SourceState> mSources = new HashMap<>();
+    private final HashMap<String, ClassState> mClasses = new HashMap<>();
+    /**
+     * Set when a source was touched without changing its content and its new modification time
+     * was recorded, the state should be written even if nothing is compiled
+     */
+    private boolean mTimestampsChanged;
+
+    public JavaBuildState(@NonNull String optionsKey) {
+        mOptionsKey = optionsKey;
+    }
+
+    /**
+     * @return the state or null if the file does not exist or can not be read
+     */
+    @Nullable
+    public static JavaBuildState read(@NonNull File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            JavaBuildState state = new JavaBuildState(in.readUTF());
+            int sourceCount = in.readInt();
+            for (int i = 0; i < sourceCount; i++) {
+                SourceState source = new SourceState(in.readUTF(), in.readLong(), in.readLong(), in.readUTF());
+                int classCount = in.readInt();
+                for (int j = 0; j < classCount; j++) {
+                    source.classes.add(in.readUTF());
+                }
+                state.mSources.put(source.path, source);
+            }
+            int classCount = in.readInt();
+            for (int i = 0; i < classCount; i++) {
+                ClassState clazz = new ClassState(in.readUTF(), in.readUTF(), in.readUTF());
+                int referenceCount = in.readInt();
+                for (int j = 0; j < referenceCount; j++) {
+                    clazz.references.add(in.readUTF());
+                }
+                state.mClasses.put(clazz.name, clazz);
+            }
+            return state;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public void write(@NonNull File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(mOptionsKey);
+            out.writeInt(mSources.size());
+            for (SourceState source : mSources.values()) {
+                out.writeUTF(source.path);
+                out.writeLong(source.length);
+                out.writeLong(source.lastModified);
+                out.writeUTF(source.hash);
+                out.writeInt(source.classes.size());
+                for (String clazz : source.classes) {
+                    out.writeUTF(clazz);
+                }
+            }
+            out.writeInt(mClasses.size());
+            for (ClassState clazz : mClasses.values()) {
+                out.writeUTF(clazz.name);
+                out.writeUTF(clazz.source);
+                out.writeUTF(clazz.constants);
+                out.writeInt(clazz.references.size());
+                for (String reference : clazz.references) {
+                    out.writeUTF(reference);
+                }
+            }
+        }
+        if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+            throw new IOException("Can not write " + file);
+        }
+    }
+
+    @NonNull
+    public String getOptionsKey() {
+        return mOptionsKey;
+    }
+
+    /**
+     * @return true if {@link #getStaleSources(Collection, File, List)} found sources which were
+     * touched but not modified, writing the state again saves hashing them in the next build
+     */
+    public boolean isTimestampsChanged() {
+        return mTimestampsChanged;
+    }
+
+    /**
+     * Find all sources must be compiled: new or modified sources, sources which class files
+     * were deleted and all sources depend on them.
+     *
+     * @param sources    - all current source files
+     * @param classesDir - output directory of the compiler
+     * @param removed    - output, sources which were removed since last build
+     */
+    @NonNull
+    public Set<String> getStaleSources(@NonNull Collection<File> sources, @NonNull File classesDir,
+                                       @NonNull List<String> removed) throws IOException {
+        Set<String> current = new HashSet<>();
+        Set<String> stale = new LinkedHashSet<>();
+        for (File source : sources) {
+            String path = source.getAbsolutePath();
+            current.add(path);
+            SourceState state = mSources.get(path);
+            if (state == null) {
+                stale.add(path);
+                continue;
+            }
+            long lastModified = state.lastModified;
+            if (!state.isUpToDate(source) || !state.hasOutputs(classesDir)) {
+                stale.add(path);
+            } else if (state.lastModified != lastModified) {
+                mTimestampsChanged = true;
+            }
+        }
+        for (String path : mSources.keySet()) {
+            if (!current.contains(path)) {
+                removed.add(path);
+            }
+        }
+
+        //invert the dependency graph, then find all classes depend on changed classes
+        HashMap<String, List<String>> dependents = new HashMap<>();
+        for (ClassState clazz : mClasses.values()) {
+            for (String reference : clazz.references) {
+                List<String> list = dependents.get(reference);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    dependents.put(reference, list);
+                }
+                list.add(clazz.name);
+            }
+        }
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        Set<String> visitedSources = new HashSet<>(stale);
+        visitedSources.addAll(removed);
+        for (String path : visitedSources) {
+            SourceState state = mSources.get(path);
+            if (state != null) {
+                queue.addAll(state.classes);
+            }
+        }
+        while (!queue.isEmpty()) {
+            List<String> list = dependents.get(queue.poll());
+            if (list == null) {
+                continue;
+            }
+            for (String dependent : list) {
+                String path = mClasses.get(dependent).source;
+                if (visitedSources.add(path)) {
+                    stale.add(path);
+                    queue.addAll(mSources.get(path).classes);
+                }
+            }
+        }
+        //removed sources can be reached again through dependents
+        stale.removeAll(removed);
+        return stale;
+    }
+
+    /**
+     * @return true if any class of given sources declares compile time constants, such constants
+     * are inlined so dependents can not be found from the constant pool
+     */
+    public boolean hasConstants(@NonNull Collection<String> sourcePaths) {
+        for (String path : sourcePaths) {
+            SourceState state = mSources.get(path);
+            if (state == null) {
+                continue;
+            }
+            for (String clazz : state.classes) {
+                ClassState classState = mClasses.get(clazz);
+                if (classState != null && !classState.constants.equals("{}")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return constants of all classes compiled from given sources, keyed by class name
+     */
+    @NonNull
+    public Map<String, String> getConstants(@NonNull Collection<String> sourcePaths) {
+        HashMap<String, String> result = new HashMap<>();
+        for (String path : sourcePaths) {
+            SourceState state = mSources.get(path);
+            if (state == null) {
+                continue;
+            }
+            for (String clazz : state.classes) {
+                ClassState classState = mClasses.get(clazz);
+                if (classState != null) {
+                    result.put(clazz, classState.constants);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Delete class files of given sources and remove them from state
+     */
+    public void removeSources(@NonNull Collection<String> sourcePaths, @NonNull File classesDir) {
+        for (String path : sourcePaths) {
+            SourceState state = mSources.remove(path);
+            if (state == null) {
+                continue;
+            }
+            for (String clazz : state.classes) {
+                mClasses.remove(clazz);
+                new File(classesDir, clazz + DOT_CLASS).delete();
+            }
+        }
+    }
+
+    /**
+     * Record compiled sources and their classes. Class files in the output directory which are
+     * not owned by any known source are considered as output of the compiled sources.
+     *
+     * @param compiled   - source files have been compiled
+     * @param sourceDirs - source roots, used to map a class file to its source
+     */
+    public void recordCompiled(@NonNull Collection<File> compiled, @NonNull List<File> sourceDirs,
+                               @NonNull File classesDir) throws Exception {
+        HashMap<String, SourceState> byRelativePath = new HashMap<>();
+        HashMap<String, SourceState> byName = new HashMap<>();
+        for (File source : compiled) {
+            SourceState state = new SourceState(source.getAbsolutePath(), source.length(),
+                    source.lastModified(), MD5Hash.getMD5Checksum(source));
+            mSources.put(state.path, state);
+            byRelativePath.put(relativePath(source, sourceDirs), state);
+            //file name is ambiguous if two packages have the same file name
+            byName.put(source.getName(), byName.containsKey(source.getName()) ? null : state);
+        }
+
+        ArrayList<File> classFiles = new ArrayList<>();
+        listClassFiles(classesDir, classFiles);
+        String root = classesDir.getAbsolutePath() + File.separator;
+        for (File classFile : classFiles) {
+            String path = classFile.getAbsolutePath();
+            String className = path.substring(root.length(), path.length() - DOT_CLASS.length())
+                    .replace(File.separatorChar, '/');
+            if (mClasses.containsKey(className)) {
+                continue;
+            }
+            ClassFileInfo info = ClassFileInfo.read(classFile);
+            SourceState owner = findSource(info, byRelativePath, byName);
+            if (owner == null) {
+                //can not map the class to a source, keep it untracked
+                continue;
+            }
+            owner.classes.add(className);
+            ClassState classState = new ClassState(className, owner.path, info.getConstants());
+            classState.references.addAll(info.getReferences());
+            mClasses.put(className, classState);
+        }
+
+        //drop references to classes are not in the project, they never change
+        for (ClassState clazz : mClasses.values()) {
+            clazz.references.retainAll(mClasses.keySet());
+        }
+    }
+
+    @Nullable
+    private static SourceState findSource(ClassFileInfo info,
+                                          Map<String, SourceState> byRelativePath,
+                                          Map<String, SourceState> byName) {
+        String sourceFile = info.getSourceFile();
+        String className = info.getClassName();
+        if (sourceFile == null) {
+            //no debug information, guess from name of top level class
+            int end = className.indexOf('$');
+            sourceFile = (end > 0 ? className.substring(className.lastIndexOf('/') + 1, end)
+                    : className.substring(className.lastIndexOf('/') + 1)) + ".java";
+        }
+        int slash = className.lastIndexOf('/');
+        String relativePath = slash > 0 ? className.substring(0, slash + 1) + sourceFile : sourceFile;
+        SourceState source = byRelativePath.get(relativePath);
+        if (source == null) {
+            source = byName.get(sourceFile);
+        }
+        return source;
+    }
+
+    private static String relativePath(File source, List<File> sourceDirs) {
+        String path = source.getAbsolutePath();
+        for (File sourceDir : sourceDirs) {
+            String root = sourceDir.getAbsolutePath() + File.separator;
+            if (path.startsWith(root)) {
+                return path.substring(root.length()).replace(File.separatorChar, '/');
+            }
+        }
+        return source.getName();
+    }
+
+    private static void listClassFiles(File parent, List<File> result) {
+        File[] children = parent.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listClassFiles(child, result);
+            } else if (child.getName().endsWith(DOT_CLASS)) {
+                result.add(child);
+            }
+        }
+    }
+
+    private static class SourceState {
+        final String path;
+        final long length;
+        long lastModified;
+        final String hash;
+        final ArrayList<String> classes = new ArrayList<>();
+
+        SourceState(String path, long length, long lastModified, String hash) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        /**
+         * Compare size and modification time first, only hash the content if they changed.
+         * If only the modification time changed, the new time is kept so the file is not hashed
+         * again in the next build.
+         */
+        boolean isUpToDate(File file) throws IOException {
+            if (file.length() != length) {
+                return false;
+            }
+            long modified = file.lastModified();
+            if (modified == lastModified) {
+                return true;
+            }
+            try {
+                if (!MD5Hash.getMD5Checksum(file).equals(hash)) {
+                    return false;
+                }
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            lastModified = modified;
+            return true;
+        }
+
+        boolean hasOutputs(File classesDir) {
+            for (String clazz : classes) {
+                if (!new File(classesDir, clazz + DOT_CLASS).isFile()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class ClassState {
+        final String name;
+        final String source;
+        final String constants;
+        final HashSet<String> references = new HashSet<>();
+
+        ClassState(String name, String source, String constants) {
+            this.name = name;
+            this.source = source;
+            this.constants = constants;
+        }
+    }
+}
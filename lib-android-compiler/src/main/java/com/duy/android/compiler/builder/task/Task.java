@@ -1,11 +1,17 @@
 package com.duy.android.compiler.builder.task;
 
 import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import com.duy.android.compiler.builder.IBuilder;
 import com.duy.android.compiler.project.JavaProject;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
 public abstract class Task<T extends JavaProject> {
     protected final IBuilder mBuilder;
     protected final T mProject;
@@ -22,6 +28,34 @@ public abstract class Task<T extends JavaProject> {
     @WorkerThread
     public abstract boolean doFullTaskAction() throws Exception;
 
+    /**
+     * Files and directories read by the task. The task is skipped if its inputs, outputs and
+     * {@link #getInputKey()} did not change since its last successful run.
+     *
+     * @return null if inputs are unknown, the task always runs, after all previous tasks
+     */
+    @Nullable
+    public List<File> getInputs() {
+        return null;
+    }
+
+    /**
+     * Files and directories written by the task, tasks which read them run after this task.
+     * Outputs are read again after the task runs.
+     */
+    @NonNull
+    public List<File> getOutputs() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Options of the task which are not files, such as build type
+     */
+    @NonNull
+    public String getInputKey() {
+        return "";
+    }
+
     public IBuilder getBuilder() {
         return mBuilder;
     }
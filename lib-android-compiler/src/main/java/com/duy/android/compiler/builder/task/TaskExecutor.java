@@ -0,0 +1,335 @@
+package com.duy.android.compiler.builder.task;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.duy.android.compiler.builder.IBuilder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Run tasks of a build as a graph.
+ * <p>
+ * A task depends on the previous tasks which write its inputs (see {@link Task#getInputs()}),
+ * independent tasks run in parallel. Fingerprints of inputs and outputs of each task are stored
+ * in the state file, a task is skipped if they did not change since its last successful run.
+ */
+public class TaskExecutor {
+    @NonNull
+    private final IBuilder mBuilder;
+    @NonNull
+    private final File mStateFile;
+    private final int mThreadCount;
+
+    /**
+     * @param stateFile - file stores fingerprints of tasks between builds
+     */
+    public TaskExecutor(@NonNull IBuilder builder, @NonNull File stateFile) {
+        mBuilder = builder;
+        mStateFile = stateFile;
+        //aapt runs in its own process, it can overlap with dexing even on a single core
+        mThreadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param tasks - tasks in the order they would run one by one
+     * @return true if all tasks succeed
+     */
+    public boolean execute(@NonNull List<? extends Task> tasks) {
+        long startTime = System.currentTimeMillis();
+        int count = tasks.size();
+        List<Node> nodes = new ArrayList<>(count);
+        for (Task task : tasks) {
+            nodes.add(new Node(task));
+        }
+        for (int i = 0; i < count; i++) {
+            Node node = nodes.get(i);
+            for (int j = 0; j < i; j++) {
+                if (dependsOn(node, nodes.get(j))) {
+                    node.remaining++;
+                    nodes.get(j).dependents.add(node);
+                }
+            }
+        }
+
+        final Map<String, String> state = readState();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(mThreadCount, count)), new ThreadFactory() {
+                    private int mCount = 0;
+
+                    @Override
+                    public Thread newThread(@NonNull Runnable r) {
+                        Thread thread = new Thread(r, "build-task-" + mCount++);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        CompletionService<Node> completionService = new ExecutorCompletionService<>(executor);
+
+        boolean success = true;
+        int running = 0;
+        int upToDate = 0;
+        ArrayList<Node> ready = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node.remaining == 0) {
+                ready.add(node);
+            }
+        }
+        try {
+            while (true) {
+                if (success) {
+                    for (final Node node : ready) {
+                        completionService.submit(new Callable<Node>() {
+                            @Override
+                            public Node call() {
+                                run(node, state);
+                                return node;
+                            }
+                        });
+                        running++;
+                    }
+                }
+                ready.clear();
+                if (running == 0) {
+                    break;
+                }
+
+                Node done = completionService.take().get();
+                running--;
+                if (!done.success) {
+                    //do not start other tasks, wait for running tasks
+                    success = false;
+                    continue;
+                }
+                if (done.upToDate) {
+                    upToDate++;
+                }
+                for (Node dependent : done.dependents) {
+                    if (--dependent.remaining == 0) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            success = false;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            success = false;
+        } finally {
+            executor.shutdown();
+        }
+
+        writeState(state);
+        mBuilder.stdout("Build " + (success ? "finished" : "failed") + " in "
+                + (System.currentTimeMillis() - startTime) + " ms, "
+                + upToDate + " of " + count + " tasks up-to-date");
+        return success;
+    }
+
+    /**
+     * Run the task if it is not up-to-date, called on a worker thread
+     */
+    private void run(Node node, Map<String, String> state) {
+        Task task = node.task;
+        String name = task.getTaskName();
+        long startTime = System.currentTimeMillis();
+        try {
+            String inputs = null;
+            if (node.inputs != null) {
+                inputs = fingerprint(task.getInputKey(), node.inputs);
+                String last;
+                synchronized (state) {
+                    last = state.get(name);
+                }
+                List<File> outputs = task.getOutputs();
+                if (last != null && exists(outputs)
+                        && last.equals(inputs + "\t" + fingerprint("", outputs))) {
+                    mBuilder.stdout(name + " UP-TO-DATE");
+                    node.upToDate = true;
+                    node.success = true;
+                    return;
+                }
+            }
+            synchronized (state) {
+                state.remove(name);
+            }
+
+            mBuilder.stdout("Run " + name + " task");
+            node.success = task.doFullTaskAction();
+            if (node.success && inputs != null) {
+                String outputsFingerprint = fingerprint("", task.getOutputs());
+                synchronized (state) {
+                    state.put(name, inputs + "\t" + outputsFingerprint);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            node.success = false;
+        }
+        if (node.success) {
+            mBuilder.stdout(name + " finished in " + (System.currentTimeMillis() - startTime) + " ms");
+        } else {
+            mBuilder.stdout(name + " failed");
+        }
+    }
+
+    /**
+     * A task depends on a previous task if it reads or writes outputs of the previous task,
+     * tasks with unknown inputs depend on all previous tasks and all next tasks depend on them
+     */
+    private static boolean dependsOn(Node node, Node previous) {
+        if (node.inputs == null || previous.inputs == null) {
+            return true;
+        }
+        return overlaps(node.inputs, previous.outputs) || overlaps(node.outputs, previous.outputs);
+    }
+
+    private static boolean overlaps(List<File> files, List<File> others) {
+        for (File file : files) {
+            String path = file.getAbsolutePath();
+            for (File other : others) {
+                String otherPath = other.getAbsolutePath();
+                if (path.equals(otherPath)
+                        || path.startsWith(otherPath + File.separator)
+                        || otherPath.startsWith(path + File.separator)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean exists(List<File> files) {
+        for (File file : files) {
+            if (!file.exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hash of path, size and modification time of all files, directories are listed recursively
+     */
+    private static String fingerprint(String key, List<File> files) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            for (File file : files) {
+                update(digest, file);
+            }
+            byte[] bytes = digest.digest();
+            StringBuilder result = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                result.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, File file) {
+        String entry;
+        if (file.isFile()) {
+            entry = file.getAbsolutePath() + '\t' + file.length() + '\t' + file.lastModified();
+        } else {
+            entry = file.getAbsolutePath() + (file.isDirectory() ? "\tdir" : "\tmissing");
+        }
+        digest.update(entry.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+
+        File[] children = file.listFiles();
+        if (children != null) {
+            //same order on every build
+            Arrays.sort(children);
+            for (File child : children) {
+                update(digest, child);
+            }
+        }
+    }
+
+    /**
+     * @return fingerprints of last successful run of tasks, keyed by task name
+     */
+    private Map<String, String> readState() {
+        HashMap<String, String> state = new HashMap<>();
+        if (!mStateFile.isFile()) {
+            return state;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(mStateFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int index = line.indexOf('\t');
+                if (index > 0) {
+                    state.put(line.substring(0, index), line.substring(index + 1));
+                }
+            }
+        } catch (IOException e) {
+            //all tasks will run
+            e.printStackTrace();
+            state.clear();
+        }
+        return state;
+    }
+
+    private void writeState(Map<String, String> state) {
+        File parent = mStateFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(mStateFile))) {
+            for (Map.Entry<String, String> entry : state.entrySet()) {
+                writer.write(entry.getKey() + "\t" + entry.getValue());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class Node {
+        final Task task;
+        /**
+         * Inputs and outputs when the build starts, used to find dependencies
+         */
+        @Nullable
+        final List<File> inputs;
+        final List<File> outputs;
+        final List<Node> dependents = new ArrayList<>();
+        /**
+         * Number of dependencies which have not finished, only accessed by the scheduling thread
+         */
+        int remaining;
+        volatile boolean success;
+        volatile boolean upToDate;
+
+        Node(Task task) {
+            this.task = task;
+            List<File> inputs = task.getInputs();
+            this.inputs = inputs != null ? new ArrayList<>(inputs) : null;
+            this.outputs = new ArrayList<File>(task.getOutputs());
+        }
+    }
+}
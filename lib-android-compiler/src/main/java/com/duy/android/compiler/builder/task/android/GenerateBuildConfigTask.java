@@ -1,5 +1,7 @@
 package com.duy.android.compiler.builder.task.android;
 
+import androidx.annotation.NonNull;
+
 import com.android.builder.compiling.BuildConfigGenerator;
 import com.android.builder.model.ClassField;
 import com.duy.android.compiler.builder.IBuilder;
@@ -8,6 +10,7 @@ import com.duy.android.compiler.project.AndroidAppProject;
 import com.google.common.collect.Lists;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.List;
 
 public class GenerateBuildConfigTask extends Task<AndroidAppProject> {
@@ -24,6 +27,25 @@ public class GenerateBuildConfigTask extends Task<AndroidAppProject> {
         return "Generate BuildConfig.java";
     }
 
+    @Override
+    public List<File> getInputs() {
+        return Collections.emptyList();
+    }
+
+    @NonNull
+    @Override
+    public List<File> getOutputs() {
+        BuildConfigGenerator generator = new BuildConfigGenerator(
+                mProject.getDirGeneratedSource(), mProject.getPackageName());
+        return Collections.singletonList(generator.getBuildConfigFile());
+    }
+
+    @NonNull
+    @Override
+    public String getInputKey() {
+        return mProject.getPackageName() + '|' + getDebuggable() + '|' + getVersionCode();
+    }
+
     @Override
     public boolean doFullTaskAction() throws Exception {
         String packageName = mProject.getPackageName();
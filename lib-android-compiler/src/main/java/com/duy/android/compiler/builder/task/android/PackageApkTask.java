@@ -1,11 +1,16 @@
 package com.duy.android.compiler.builder.task.android;
 
-import com.android.sdklib.build.ApkBuilder;
+import androidx.annotation.NonNull;
+
 import com.duy.android.compiler.builder.AndroidAppBuilder;
+import com.duy.android.compiler.builder.internal.apk.IncrementalApkBuilder;
 import com.duy.android.compiler.builder.task.Task;
 import com.duy.android.compiler.project.AndroidAppProject;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class PackageApkTask extends Task<AndroidAppProject> {
 
@@ -18,20 +23,36 @@ public class PackageApkTask extends Task<AndroidAppProject> {
         return "Package application";
     }
 
+    @Override
+    public List<File> getInputs() {
+        List<File> inputs = new ArrayList<>();
+        inputs.add(mProject.getProcessResourcePackageOutputFile());
+        inputs.add(mProject.getDexFile());
+        //java resources are packaged too
+        inputs.addAll(mProject.getJavaSrcDirs());
+        return inputs;
+    }
+
+    @NonNull
+    @Override
+    public List<File> getOutputs() {
+        return Collections.singletonList(mProject.getApkUnsigned());
+    }
+
     @Override
     public boolean doFullTaskAction() throws Exception {
-        ApkBuilder apkBuilder = new ApkBuilder(
+        IncrementalApkBuilder apkBuilder = new IncrementalApkBuilder(
                 mProject.getApkUnsigned(),
                 mProject.getProcessResourcePackageOutputFile(),
-                mProject.getDexFile(),
-                null,
-                null);
+                mProject.getDexFile());
 
         for (File file : mProject.getJavaSrcDirs()) {
             apkBuilder.addSourceFolder(file);
         }
 
         apkBuilder.sealApk();
+        mBuilder.stdout("Packaged " + apkBuilder.getCompressedCount() + " changed files, "
+                + apkBuilder.getCopiedCount() + " files reused from previous apk");
 
         return true;
     }
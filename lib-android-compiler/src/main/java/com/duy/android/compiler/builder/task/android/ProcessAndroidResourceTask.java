@@ -1,6 +1,7 @@
 package com.duy.android.compiler.builder.task.android;
 
 import android.os.Build;
+import androidx.annotation.NonNull;
 
 import com.android.builder.dependency.LibraryDependency;
 import com.duy.android.compiler.builder.AndroidAppBuilder;
@@ -14,6 +15,8 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -120,6 +123,36 @@ public class ProcessAndroidResourceTask extends Task<AndroidAppProject> {
         return "Process android resource";
     }
 
+    @Override
+    public List<File> getInputs() {
+        List<File> inputs = new ArrayList<>();
+        inputs.add(mProject.getManifestFile());
+        inputs.add(mProject.getResDirs());
+        inputs.add(mProject.getAssetsDir());
+        inputs.add(new File(mProject.getBootClassPath(context)));
+        for (LibraryDependency library : mProject.getLibraries()) {
+            inputs.add(library.getManifest());
+            inputs.add(library.getResFolder());
+            inputs.add(library.getAssetsFolder());
+        }
+        return inputs;
+    }
+
+    /**
+     * Resource package and R.java of the application, R.java of libraries are generated
+     * at the same time
+     */
+    @NonNull
+    @Override
+    public List<File> getOutputs() {
+        List<File> outputs = new ArrayList<>();
+        outputs.add(mProject.getProcessResourcePackageOutputFile());
+        outputs.add(new File(mProject.getDirGeneratedSource(),
+                mProject.getPackageForR().replace('.', File.separatorChar)
+                        + File.separator + "R.java"));
+        return outputs;
+    }
+
     public boolean doFullTaskAction() throws Exception {
         File aaptFile = getAaptFile();
         if (mProject.getLibraries().size() > 0) {
@@ -1,6 +1,9 @@
 package com.duy.android.compiler.builder.task.android;
 
+import androidx.annotation.NonNull;
+
 import com.duy.android.compiler.builder.AndroidAppBuilder;
+import com.duy.android.compiler.builder.internal.apk.IncrementalApkSigner;
 import com.duy.android.compiler.builder.model.BuildType;
 import com.duy.android.compiler.builder.task.Task;
 import com.duy.android.compiler.project.AndroidAppProject;
@@ -8,6 +11,8 @@ import com.duy.android.compiler.project.AndroidAppProject;
 import java.io.File;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.List;
 
 import kellinwood.security.zipsigner.ZipSigner;
 
@@ -24,6 +29,23 @@ public class SignApkTask extends Task<AndroidAppProject> {
         return "Sign apk";
     }
 
+    @Override
+    public List<File> getInputs() {
+        return Collections.singletonList(mProject.getApkUnsigned());
+    }
+
+    @NonNull
+    @Override
+    public List<File> getOutputs() {
+        return Collections.singletonList(mProject.getApkSigned());
+    }
+
+    @NonNull
+    @Override
+    public String getInputKey() {
+        return type.name();
+    }
+
     @Override
     public boolean doFullTaskAction() throws Exception {
         if (type == BuildType.DEBUG) {
@@ -48,11 +70,17 @@ public class SignApkTask extends Task<AndroidAppProject> {
         signer.setKeymode(mode);
 
         File apkUnsigned = mProject.getApkUnsigned();
-        String in = apkUnsigned.getAbsolutePath();
         File apkSigned = mProject.getApkSigned();
-        apkSigned.delete();
-        String out = apkSigned.getAbsolutePath();
-        signer.signZip(in, out);
+        if (signer.getKeySet().getSigBlockTemplate() != null) {
+            //the previous signed apk is used to skip hashing unchanged entries
+            IncrementalApkSigner incrementalSigner = new IncrementalApkSigner(signer.getKeySet());
+            incrementalSigner.sign(apkUnsigned, apkSigned);
+            mBuilder.stdout("Hashed " + incrementalSigner.getDigestedCount() + " changed entries, "
+                    + incrementalSigner.getReusedCount() + " digests reused");
+        } else {
+            apkSigned.delete();
+            signer.signZip(apkUnsigned.getAbsolutePath(), apkSigned.getAbsolutePath());
+        }
 
         mBuilder.stdout("Signed debug apk " + mProject.getApkUnsigned().getName() + " => " + mProject.getApkSigned().getName());
 
@@ -2,18 +2,25 @@ package com.duy.android.compiler.builder.task.java;
 
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
+import androidx.annotation.NonNull;
 import com.duy.android.compiler.builder.IBuilder;
 import com.duy.android.compiler.builder.internal.CompileOptions;
 import com.duy.android.compiler.builder.internal.JavaVersion;
+import com.duy.android.compiler.builder.internal.incremental.JavaBuildState;
 import com.duy.android.compiler.builder.task.Task;
 import com.duy.android.compiler.builder.util.Argument;
 import com.duy.android.compiler.project.JavaProject;
 import com.duy.javacompiler.R;
+import com.android.utils.FileUtils;
 import org.eclipse.jdt.internal.compiler.batch.Main;
 import java.io.File;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class CompileJavaTask extends Task<JavaProject> {
 
@@ -34,7 +41,27 @@ public class CompileJavaTask extends Task<JavaProject> {
         return "Compile java source";
     }
 
-    public boolean doFullTaskAction() {
+    @Override
+    public List<File> getInputs() {
+        ArrayList<File> inputs = getSourceDirs(mProject);
+        inputs.addAll(mProject.getJavaLibraries());
+        return inputs;
+    }
+
+    @NonNull
+    @Override
+    public List<File> getOutputs() {
+        return Collections.singletonList(mProject.getDirBuildClasses());
+    }
+
+    @NonNull
+    @Override
+    public String getInputKey() {
+        loadCompilerOptions();
+        return getOptionsKey();
+    }
+
+    public boolean doFullTaskAction() throws Exception {
         loadCompilerOptions();
         //return runEcj();
         return j6();
@@ -71,11 +98,100 @@ public class CompileJavaTask extends Task<JavaProject> {
         mCompileOptions.setEncoding(encoding);
     }
 
-    public boolean j6() {
+    public boolean j6() throws Exception {
+        ArrayList<File> sourceFiles = getAllSourceFiles(mProject);
+        File stateFile = mProject.getJavaBuildStateFile();
+        File classesDir = mProject.getDirBuildClasses();
+        String optionsKey = getOptionsKey();
+
+        JavaBuildState state = JavaBuildState.read(stateFile);
+        if (state == null || !state.getOptionsKey().equals(optionsKey)) {
+            return fullBuild(sourceFiles, optionsKey);
+        }
+
+        ArrayList<String> removed = new ArrayList<>();
+        Set<String> stale = state.getStaleSources(sourceFiles, classesDir, removed);
+        if (stale.isEmpty() && removed.isEmpty()) {
+            mBuilder.stdout(TAG + ": Java classes are up-to-date");
+            if (state.isTimestampsChanged()) {
+                state.write(stateFile);
+            }
+            return true;
+        }
+        if (state.hasConstants(removed)) {
+            mBuilder.stdout(TAG + ": Removed sources declare constants, full build required");
+            return fullBuild(sourceFiles, optionsKey);
+        }
+
+        mBuilder.stdout(TAG + ": Incremental build, compile " + stale.size()
+                + " of " + sourceFiles.size() + " sources, " + removed.size() + " removed");
+        Map<String, String> oldConstants = state.getConstants(stale);
+        state.removeSources(removed, classesDir);
+        state.removeSources(stale, classesDir);
+
+        ArrayList<File> toCompile = new ArrayList<>();
+        for (String path : stale) {
+            toCompile.add(new File(path));
+        }
+        if (!toCompile.isEmpty() && !compile(toArray(toCompile), true)) {
+            return false;
+        }
+        state.recordCompiled(toCompile, getSourceDirs(mProject), classesDir);
+
+        //compile time constants are inlined, dependents can not be found if they changed
+        Map<String, String> newConstants = state.getConstants(stale);
+        for (Map.Entry<String, String> entry : oldConstants.entrySet()) {
+            if (!entry.getValue().equals("{}") && !entry.getValue().equals(newConstants.get(entry.getKey()))) {
+                mBuilder.stdout(TAG + ": Constants of " + entry.getKey() + " changed, full build required");
+                return fullBuild(sourceFiles, optionsKey);
+            }
+        }
+        state.write(stateFile);
+        return true;
+    }
+
+    /**
+     * Delete all compiled classes, compile all sources and record the new build state
+     */
+    private boolean fullBuild(ArrayList<File> sourceFiles, String optionsKey) throws Exception {
+        File stateFile = mProject.getJavaBuildStateFile();
+        File classesDir = mProject.getDirBuildClasses();
+        stateFile.delete();
+        FileUtils.emptyFolder(classesDir);
+
+        if (!compile(toArray(sourceFiles), false)) {
+            return false;
+        }
+        JavaBuildState state = new JavaBuildState(optionsKey);
+        state.recordCompiled(sourceFiles, getSourceDirs(mProject), classesDir);
+        state.write(stateFile);
+        return true;
+    }
+
+    private boolean compile(String[] sourceFiles, boolean incremental) {
         if (a()) {
-            return runJavac();
+            return runJavac(sourceFiles, incremental);
+        }
+        return runEcj(sourceFiles, incremental);
+    }
+
+    /**
+     * Compiler, language level and classpath, the output of the last build can not be reused
+     * if any of them changed
+     */
+    private String getOptionsKey() {
+        StringBuilder key = new StringBuilder();
+        key.append(a() ? "javac" : "ecj")
+                .append('|').append(mCompileOptions.getSourceCompatibility())
+                .append('|').append(mCompileOptions.getTargetCompatibility())
+                .append('|').append(mCompileOptions.getEncoding())
+                .append('|').append(mBuilder.getBootClassPath());
+        for (File library : mProject.getJavaLibraries()) {
+            key.append('|').append(library.getAbsolutePath())
+                    .append(':').append(library.length())
+                    .append(':').append(library.lastModified());
         }
-        return runEcj();
+        return key.toString();
     }
 
     public boolean a() {
@@ -84,17 +200,15 @@ public class CompileJavaTask extends Task<JavaProject> {
     }
 
     //Added JavaAc Compiler
-    private boolean runJavac() {
+    private boolean runJavac(String[] sourceFiles, boolean incremental) {
         mBuilder.stdout(TAG + ": Compile java with javac");
 
         Argument argument = new Argument();
         argument.add(mBuilder.isVerbose() ? "-verbose" : "-warn:");
         argument.add("-bootclasspath", mBuilder.getBootClassPath());
-        argument.add("-classpath", mProject.getClasspath());
-        argument.add("-sourcepath", mProject.getSourcePath());
+        addClasspath(argument, incremental);
         argument.add("-d", mProject.getDirBuildClasses().getAbsolutePath()); // The location of the output folder
 
-        String[] sourceFiles = getAllSourceFiles(mProject);
         argument.add(sourceFiles);
 
         System.out.println(TAG + ": Compiler arguments " + argument);
@@ -103,7 +217,7 @@ public class CompileJavaTask extends Task<JavaProject> {
         return result == 0;
     }
 
-    private boolean runEcj() {
+    private boolean runEcj(String[] sourceFiles, boolean incremental) {
         mBuilder.stdout(TAG + ": Compile java with ecj");
         PrintWriter outWriter = new PrintWriter(mBuilder.getStdout());
         PrintWriter errWriter = new PrintWriter(mBuilder.getStderr());
@@ -113,14 +227,12 @@ public class CompileJavaTask extends Task<JavaProject> {
         Argument argument = new Argument();
         argument.add(mBuilder.isVerbose() ? "-verbose" : "-warn:");
         argument.add("-bootclasspath", mBuilder.getBootClassPath());
-        argument.add("-classpath", mProject.getClasspath());
-        argument.add("-sourcepath", mProject.getSourcePath());
+        addClasspath(argument, incremental);
         argument.add("-" + mCompileOptions.getSourceCompatibility().toString()); //host
         argument.add("-target", mCompileOptions.getTargetCompatibility().toString()); //target
         argument.add("-proc:none"); // Disable annotation processors...
         argument.add("-d", mProject.getDirBuildClasses().getAbsolutePath()); // The location of the output folder
 
-        String[] sourceFiles = getAllSourceFiles(mProject);
         argument.add(sourceFiles);
 
         Main.Logger logger = main.logger;
@@ -132,19 +244,47 @@ public class CompileJavaTask extends Task<JavaProject> {
         return main.compile(argument.toArray());
     }
 
-    private String[] getAllSourceFiles(JavaProject project) {
-        ArrayList<String> javaFiles = new ArrayList<>();
-        String[] sourcePaths = project.getSourcePath().split(File.pathSeparator);
-        for (String sourcePath : sourcePaths) {
-            getAllSourceFiles(javaFiles, new File(sourcePath));
+    /**
+     * In incremental build only changed sources are passed to compiler, other classes are
+     * resolved from the output folder instead of being compiled again from the source path
+     */
+    private void addClasspath(Argument argument, boolean incremental) {
+        if (incremental) {
+            argument.add("-classpath", mProject.getDirBuildClasses().getAbsolutePath()
+                    + File.pathSeparator + mProject.getClasspath());
+        } else {
+            argument.add("-classpath", mProject.getClasspath());
+            argument.add("-sourcepath", mProject.getSourcePath());
+        }
+    }
+
+    private String[] toArray(ArrayList<File> files) {
+        String[] paths = new String[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            paths[i] = files.get(i).getAbsolutePath();
+        }
+        return paths;
+    }
+
+    private ArrayList<File> getSourceDirs(JavaProject project) {
+        ArrayList<File> sourceDirs = new ArrayList<>();
+        for (String sourcePath : project.getSourcePath().split(File.pathSeparator)) {
+            sourceDirs.add(new File(sourcePath));
+        }
+        return sourceDirs;
+    }
+
+    private ArrayList<File> getAllSourceFiles(JavaProject project) {
+        ArrayList<File> javaFiles = new ArrayList<>();
+        for (File sourceDir : getSourceDirs(project)) {
+            getAllSourceFiles(javaFiles, sourceDir);
         }
 
         System.out.println("source size: " + javaFiles.size());
-        String[] sources = new String[javaFiles.size()];
-        return javaFiles.toArray(sources);
+        return javaFiles;
     }
 
-    private void getAllSourceFiles(ArrayList<String> toAdd, File parent) {
+    private void getAllSourceFiles(ArrayList<File> toAdd, File parent) {
         if (!parent.exists()) {
             return;
         }
@@ -153,7 +293,7 @@ public class CompileJavaTask extends Task<JavaProject> {
                 getAllSourceFiles(toAdd, child);
             } else if (child.exists() && child.isFile()) {
                 if (child.getName().endsWith(".java")) {
-                    toAdd.add(child.getAbsolutePath());
+                    toAdd.add(child);
                 }
             }
         }
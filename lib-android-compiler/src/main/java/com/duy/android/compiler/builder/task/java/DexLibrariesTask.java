@@ -0,0 +1,62 @@
+package com.duy.android.compiler.builder.task.java;
+
+import androidx.annotation.NonNull;
+
+import com.duy.android.compiler.builder.IBuilder;
+import com.duy.android.compiler.builder.internal.dex.DexerSession;
+import com.duy.android.compiler.builder.internal.dex.LibraryDexCache;
+import com.duy.android.compiler.builder.task.Task;
+import com.duy.android.compiler.env.Environment;
+import com.duy.android.compiler.project.JavaProject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dex libraries which are not in the shared cache, the dexed libraries are recorded in
+ * {@link JavaProject#getDexedLibsIndexFile()} and merged by {@link DexTask}.
+ * <p>
+ * Libraries do not depend on the sources of the project, so this task can run at the same time
+ * as resource processing and compilation.
+ */
+public class DexLibrariesTask extends Task<JavaProject> {
+
+    public DexLibrariesTask(IBuilder<? extends JavaProject> builder) {
+        super(builder);
+    }
+
+    @Override
+    public String getTaskName() {
+        return "Dex libraries";
+    }
+
+    @Override
+    public boolean doFullTaskAction() throws Exception {
+        LibraryDexCache cache = new LibraryDexCache(
+                Environment.getDexedLibsCacheDir(mBuilder.getContext()),
+                mProject.getDexedLibsIndexFile(), DexerSession.getInstance(), mBuilder.getStdout());
+        cache.dexLibraries(mProject.getJavaLibraries());
+        mBuilder.stdout("Dexed " + cache.getDexedCount() + " libs, "
+                + cache.getCachedCount() + " libs up-to-date");
+        return true;
+    }
+
+    @Override
+    public List<File> getInputs() {
+        return new ArrayList<>(mProject.getJavaLibraries());
+    }
+
+    /**
+     * The index and the dexed libraries it refers to, the task runs again if they are deleted
+     * from the shared cache
+     */
+    @NonNull
+    @Override
+    public List<File> getOutputs() {
+        List<File> outputs = new ArrayList<>();
+        outputs.add(mProject.getDexedLibsIndexFile());
+        outputs.addAll(LibraryDexCache.getDexedLibraries(mProject.getDexedLibsIndexFile()));
+        return outputs;
+    }
+}
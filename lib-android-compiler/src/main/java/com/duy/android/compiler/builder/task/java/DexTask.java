@@ -5,20 +5,28 @@ import android.util.Log;
 
 import com.android.dx.command.dexer.DxContext;
 import com.duy.android.compiler.builder.IBuilder;
+import com.duy.android.compiler.builder.internal.dex.ClassDexCache;
+import com.duy.android.compiler.builder.internal.dex.DexerSession;
+import com.duy.android.compiler.builder.internal.dex.LibraryDexCache;
 import com.duy.android.compiler.builder.task.Task;
-import com.duy.android.compiler.builder.util.MD5Hash;
 import com.duy.android.compiler.project.JavaProject;
 import com.android.dex.Dex;
 import com.android.dx.merge.CollisionPolicy;
 import com.android.dx.merge.DexMerger;
+import com.duy.common.io.IOUtils;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class DexTask extends Task<JavaProject> {
     private static final String TAG = "Dexer";
+    /**
+     * Dex fragments of build classes, created by {@link #dexBuildClasses(JavaProject)}
+     */
+    private List<File> mClassFragments = new ArrayList<>();
 
     public DexTask(IBuilder<? extends JavaProject> builder) {
         super(builder);
@@ -35,9 +43,6 @@ public class DexTask extends Task<JavaProject> {
 
         mBuilder.stdout("Android dx");
 
-        if (!dexLibs(mProject)) {
-            return false;
-        }
         if (!dexBuildClasses(mProject)) {
             return false;
         }
@@ -47,67 +52,84 @@ public class DexTask extends Task<JavaProject> {
         return true;
     }
 
-    private boolean dexLibs(@NonNull JavaProject project) throws Exception {
-        mBuilder.stdout("Dex libs");
-        ArrayList<File> javaLibraries = project.getJavaLibraries();
-        for (File jarLib : javaLibraries) {
-            // compare hash of jar contents to name of dexed version
-            String md5 = MD5Hash.getMD5Checksum(jarLib);
-
-            File dexLib = new File(project.getDirBuildDexedLibs(), jarLib.getName().replace(".jar", "-" + md5 + ".dex"));
-            if (dexLib.exists()) {
-                mBuilder.stdout("Lib " + jarLib.getPath() + " has been dexed with cached file " + dexLib.getName());
-                continue;
-            }
-
-            String[] args = {"--verbose",
-                    "--no-strict",
-                    "--no-files",
-                    "--output=" + dexLib.getAbsolutePath(), //output
-                    jarLib.getAbsolutePath() //input
-            };
-            mBuilder.stdout("Dexing lib " + jarLib.getPath() + " => " + dexLib.getAbsolutePath());
-            com.android.dx.command.dexer.Main.main(args);
-            mBuilder.stdout("Dexed lib " + dexLib.getAbsolutePath());
-        }
-        mBuilder.stdout("Dex libs completed");
-        return true;
+    @Override
+    public List<File> getInputs() {
+        List<File> inputs = new ArrayList<>();
+        inputs.add(mProject.getDirBuildClasses());
+        inputs.add(mProject.getDexedLibsIndexFile());
+        return inputs;
+    }
+
+    @NonNull
+    @Override
+    public List<File> getOutputs() {
+        return Collections.singletonList(mProject.getDexFile());
     }
 
     /**
-     * Merge all classed has been build by {@link CompileJavaTask} to a single file .dex
+     * Dex all classes has been build by {@link CompileJavaTask}, only classes changed since
+     * last build are translated, others are reused from the dex cache
      */
     private boolean dexBuildClasses(@NonNull JavaProject project) throws IOException {
-        mBuilder.stdout("Merge build classes");
-
-        File buildClasseDir = project.getDirBuildClasses();
-        String[] args = new String[]{
-                "--verbose", "--no-strict",
-                "--output=" + project.getDexFile().getAbsolutePath(), //output dex file
-                buildClasseDir.getAbsolutePath() //input files
-        };
-        com.android.dx.command.dexer.Main.main(args);
-        mBuilder.stdout("Merged build classes " + project.getDexFile().getName());
+        mBuilder.stdout("Dex build classes");
+
+        ClassDexCache cache = new ClassDexCache(getClassDexCacheDir(project),
+                DexerSession.getInstance());
+        mClassFragments = cache.dexClasses(project.getDirBuildClasses());
+        mBuilder.stdout("Dexed " + cache.getTranslatedCount() + " classes, "
+                + cache.getCachedCount() + " classes up-to-date");
         return true;
     }
 
+    /**
+     * Merge dex fragments of build classes and all libraries dexed by {@link DexLibrariesTask}
+     * to a single dex file in one pass
+     */
     private boolean dexMerge(@NonNull JavaProject projectFile) throws IOException {
         mBuilder.stdout("Merge dex files");
-        File[] dexedLibs = projectFile.getDirBuildDexedLibs().listFiles(new FileFilter() {
-            @Override
-            public boolean accept(File pathname) {
-                return pathname.isFile() && pathname.getName().endsWith(".dex");
-            }
-        });
-        if (dexedLibs.length >= 1) {
-            for (File dexedLib : dexedLibs) {
-                Dex[] toBeMerge = {new Dex(projectFile.getDexFile()), new Dex(dexedLib)};
-                DexMerger dexMerger = new DexMerger(toBeMerge, CollisionPolicy.FAIL, new DxContext());
-                Dex merged = dexMerger.merge();
-                merged.writeTo(projectFile.getDexFile());
-            }
+        ArrayList<File> inputs = new ArrayList<>(mClassFragments);
+        inputs.addAll(LibraryDexCache.getDexedLibraries(projectFile.getDexedLibsIndexFile()));
+
+        File dexFile = projectFile.getDexFile();
+        if (inputs.isEmpty()) {
+            dexFile.delete();
+            mBuilder.stdout("No classes to dex");
+            return true;
+        }
+
+        //skip merging if inputs are the same as last build
+        StringBuilder inputsKey = new StringBuilder();
+        for (File input : inputs) {
+            inputsKey.append(input.getName()).append(':').append(input.length()).append('\n');
+        }
+        File inputsFile = new File(getClassDexCacheDir(projectFile).getParentFile(), "dex-merge.inputs");
+        if (dexFile.isFile() && inputsFile.isFile()
+                && inputsKey.toString().equals(IOUtils.toString(inputsFile))) {
+            mBuilder.stdout("Dex file is up-to-date");
+            return true;
         }
-        mBuilder.stdout("Merge all dexed files completed");
+        inputsFile.delete();
+
+        Dex[] toBeMerge = new Dex[inputs.size()];
+        for (int i = 0; i < inputs.size(); i++) {
+            //inputs are never modified in place, they are replaced by renaming a new file
+            toBeMerge[i] = Dex.map(inputs.get(i));
+        }
+        //the merged dex is written to the file while merging instead of being built on the heap
+        DexMerger dexMerger = new DexMerger(toBeMerge, CollisionPolicy.FAIL, new DxContext(), dexFile);
+        try {
+            dexMerger.merge();
+        } catch (IOException | RuntimeException e) {
+            dexFile.delete();
+            throw e;
+        }
+        IOUtils.writeAndClose(inputsKey.toString(), inputsFile);
+
+        mBuilder.stdout("Merged " + inputs.size() + " dex files");
         return true;
     }
+
+    private File getClassDexCacheDir(@NonNull JavaProject project) {
+        return new File(project.getDirBuildIntermediates(), "dex-cache");
+    }
 }
\ No newline at end of file
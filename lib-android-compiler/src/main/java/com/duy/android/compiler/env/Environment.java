@@ -80,6 +80,14 @@ public class Environment {
         return mkdirsIfNotExist(dir);
     }
 
+    /**
+     * @return directory stores dexed libraries, shared by all projects
+     */
+    public static File getDexedLibsCacheDir(Context context) {
+        File dir = new File(context.getCacheDir(), "dexedLibs");
+        return mkdirsIfNotExist(dir);
+    }
+
     public static File getSdkAppDir() {
         File dir = new File(android.os.Environment.getExternalStorageDirectory(), APP_NAME);
         return mkdirsIfNotExist(dir);
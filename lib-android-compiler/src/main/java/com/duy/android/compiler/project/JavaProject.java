@@ -153,6 +153,34 @@ public class JavaProject {
         return dirBuildClasses;
     }
 
+    /**
+     * @return file maps libraries of the project to their dexed version in the shared cache
+     */
+    public File getDexedLibsIndexFile() {
+        return new File(dirBuildIntermediates, "incremental" + File.separator + "dexedLibs.index");
+    }
+
+    /**
+     * @return file stores hashes and dependencies of compiled sources, used for incremental build
+     */
+    public File getJavaBuildStateFile() {
+        return new File(dirBuildIntermediates, "incremental" + File.separator + "compileJava.state");
+    }
+
+    /**
+     * @return file stores fingerprints of inputs and outputs of build tasks
+     */
+    public File getTaskStateFile() {
+        return new File(dirBuildIntermediates, "incremental" + File.separator + "tasks.state");
+    }
+
+    /**
+     * @return file stores symbols of parsed sources, used by auto complete
+     */
+    public File getSourceIndexFile() {
+        return new File(dirBuildIntermediates, "incremental" + File.separator + "sources.index");
+    }
+
     @CallSuper
     public void mkdirs() {
         if (!dirRoot.exists()) dirRoot.mkdirs();
@@ -167,6 +195,8 @@ public class JavaProject {
 
     @CallSuper
     public void clean() {
+        getJavaBuildStateFile().delete();
+        getTaskStateFile().delete();
         try {
             com.android.utils.FileUtils.emptyFolder(dirBuildClasses);
         } catch (IOException e) {
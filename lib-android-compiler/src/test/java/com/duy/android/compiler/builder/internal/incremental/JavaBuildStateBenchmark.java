@@ -0,0 +1,158 @@
+package com.duy.android.compiler.builder.internal.incremental;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Compares a full rebuild of a generated project with the incremental rebuild after one
+ * source was edited, the way CompileJavaTask does them, with javac of the running JDK.
+ * Also measures finding the stale sources after all sources were touched without being
+ * modified, once when they must be hashed and once after the new times were recorded.
+ * <p>
+ * Arguments: number of classes, 300 by default
+ */
+public class JavaBuildStateBenchmark {
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int classCount = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            System.out.println("A JDK is required to run this benchmark");
+            return;
+        }
+
+        File root = File.createTempFile("java-build-state", "");
+        root.delete();
+        File sourceDir = new File(root, "src");
+        File classesDir = new File(root, "classes");
+        List<File> sourceDirs = Collections.singletonList(sourceDir);
+        List<File> sources = new ArrayList<>();
+        for (int i = 0; i < classCount; i++) {
+            sources.add(writeClass(sourceDir, i, 0));
+        }
+
+        long full = Long.MAX_VALUE;
+        long incremental = Long.MAX_VALUE;
+        int staleCount = 0;
+        JavaBuildState state = null;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            deleteRecursive(classesDir);
+            classesDir.mkdirs();
+            compile(javac, sources, classesDir, null);
+            state = new JavaBuildState("benchmark");
+            state.recordCompiled(sources, sourceDirs, classesDir);
+            full = Math.min(full, System.nanoTime() - start);
+
+            //edit a class in the middle of the dependency tree, so it has a few dependents
+            File edited = writeClass(sourceDir, 20, run + 1);
+            edited.setLastModified(edited.lastModified() + 2000);
+
+            start = System.nanoTime();
+            List<String> removed = new ArrayList<>();
+            Set<String> stale = state.getStaleSources(sources, classesDir, removed);
+            state.removeSources(stale, classesDir);
+            List<File> toCompile = new ArrayList<>();
+            for (String path : stale) {
+                toCompile.add(new File(path));
+            }
+            compile(javac, toCompile, classesDir, classesDir);
+            state.recordCompiled(toCompile, sourceDirs, classesDir);
+            incremental = Math.min(incremental, System.nanoTime() - start);
+            staleCount = stale.size();
+        }
+
+        //a checkout or a copy touches every source without changing its content
+        for (File source : sources) {
+            source.setLastModified(source.lastModified() + 4000);
+        }
+        long start = System.nanoTime();
+        Set<String> stale = state.getStaleSources(sources, classesDir, new ArrayList<String>());
+        long touched = System.nanoTime() - start;
+        if (!stale.isEmpty() || !state.isTimestampsChanged()) {
+            throw new IllegalStateException("Touched sources must be up-to-date");
+        }
+        File stateFile = new File(root, "state.bin");
+        state.write(stateFile);
+        state = JavaBuildState.read(stateFile);
+        start = System.nanoTime();
+        state.getStaleSources(sources, classesDir, new ArrayList<String>());
+        long recorded = System.nanoTime() - start;
+        deleteRecursive(root);
+
+        System.out.println(String.format(Locale.US, "%d classes, one edit recompiles %d", classCount, staleCount));
+        System.out.println(String.format(Locale.US, "full: %.1f ms, incremental: %.1f ms (%.1fx)",
+                full / 1e6, incremental / 1e6, (double) full / incremental));
+        System.out.println(String.format(Locale.US, "after touching all sources: %.1f ms, next build: %.1f ms",
+                touched / 1e6, recorded / 1e6));
+    }
+
+    /**
+     * Class i uses class (i - 1) / 2, so the classes form a binary tree of dependencies
+     */
+    private static File writeClass(File sourceDir, int i, int version) throws IOException {
+        File file = new File(sourceDir, "bench/C" + i + ".java");
+        file.getParentFile().mkdirs();
+        StringBuilder code = new StringBuilder();
+        code.append("package bench;\n\npublic class C").append(i).append(" {\n");
+        code.append("    public int value(int x) {\n");
+        if (i == 0) {
+            code.append("        return x + ").append(version).append(";\n");
+        } else {
+            code.append("        return new C").append((i - 1) / 2).append("().value(x) * 31 + ")
+                    .append(version).append(";\n");
+        }
+        code.append("    }\n");
+        for (int m = 0; m < 20; m++) {
+            code.append("\n    public String method").append(m).append("(String s) {\n")
+                    .append("        return s.substring(").append(m % 3).append(").trim() + value(")
+                    .append(m).append(");\n    }\n");
+        }
+        code.append("}\n");
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(code.toString());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static void compile(JavaCompiler javac, List<File> sources, File classesDir, File classpath) {
+        List<String> args = new ArrayList<>();
+        args.add("-g");
+        args.add("-d");
+        args.add(classesDir.getPath());
+        if (classpath != null) {
+            args.add("-classpath");
+            args.add(classpath.getPath());
+        }
+        for (File source : sources) {
+            args.add(source.getPath());
+        }
+        if (javac.run(null, null, null, args.toArray(new String[args.size()])) != 0) {
+            throw new IllegalStateException("Compilation failed");
+        }
+    }
+
+    private static void deleteRecursive(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursive(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -28,6 +28,7 @@ import org.jetbrains.java.decompiler.util.TextBuffer;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -40,7 +41,8 @@ public class ClassesProcessor {
     public static final int AVERAGE_CLASS_SIZE = 16 * 1024;
 
     private final StructContext context;
-    private final Map<String, ClassNode> mapRootClasses = new HashMap<>();
+    // lambda classes are added while classes are decompiled, possibly on several threads
+    private final Map<String, ClassNode> mapRootClasses = Collections.synchronizedMap(new HashMap<String, ClassNode>());
 
     public ClassesProcessor(StructContext context) {
         this.context = context;
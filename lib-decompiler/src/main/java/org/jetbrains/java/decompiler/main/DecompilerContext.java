@@ -10,6 +10,7 @@ import org.jetbrains.java.decompiler.modules.decompiler.vars.VarProcessor;
 import org.jetbrains.java.decompiler.modules.renamer.PoolInterceptor;
 import org.jetbrains.java.decompiler.struct.StructContext;
 
+import java.util.HashMap;
 import java.util.Map;
 
 public class DecompilerContext {
@@ -46,6 +47,16 @@ public class DecompilerContext {
         this.counterContainer = new CounterContainer();
     }
 
+    /**
+     * Creates a context to decompile classes on another thread. Loaded classes are shared,
+     * properties are copied because the class being decompiled is stored in them.
+     *
+     * @param logger logger of the thread, the logger of this context is not thread safe
+     */
+    public DecompilerContext copyForThread(IFernflowerLogger logger) {
+        return new DecompilerContext(new HashMap<>(properties), logger, structContext, classProcessor, poolInterceptor);
+    }
+
     public static DecompilerContext getCurrentContext() {
         return currentContext.get();
     }
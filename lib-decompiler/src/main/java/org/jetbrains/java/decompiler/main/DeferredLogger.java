@@ -0,0 +1,136 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.main;
+
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the messages of a class decompiled on another thread, so they are written to the
+ * logger of the decompiler in one piece, by the thread which saves the class. Loggers keep
+ * state like the indentation of {@link #startReadingClass(String)} and are not thread safe.
+ */
+class DeferredLogger extends IFernflowerLogger {
+    private final IFernflowerLogger target;
+    private final List<Runnable> calls = new ArrayList<>();
+
+    DeferredLogger(IFernflowerLogger target) {
+        this.target = target;
+    }
+
+    @Override
+    public boolean accepts(Severity severity) {
+        return target.accepts(severity);
+    }
+
+    @Override
+    public void writeMessage(final String message, final Severity severity) {
+        calls.add(new Runnable() {
+            @Override
+            public void run() {
+                target.writeMessage(message, severity);
+            }
+        });
+    }
+
+    @Override
+    public void writeMessage(final String message, final Severity severity, final Throwable t) {
+        calls.add(new Runnable() {
+            @Override
+            public void run() {
+                target.writeMessage(message, severity, t);
+            }
+        });
+    }
+
+    @Override
+    public void startReadingClass(final String className) {
+        calls.add(new Runnable() {
+            @Override
+            public void run() {
+                target.startReadingClass(className);
+            }
+        });
+    }
+
+    @Override
+    public void endReadingClass() {
+        calls.add(new Runnable() {
+            @Override
+            public void run() {
+                target.endReadingClass();
+            }
+        });
+    }
+
+    @Override
+    public void startClass(final String className) {
+        calls.add(new Runnable() {
+            @Override
+            public void run() {
+                target.startClass(className);
+            }
+        });
+    }
+
+    @Override
+    public void endClass() {
+        calls.add(new Runnable() {
+            @Override
+            public void run() {
+                target.endClass();
+            }
+        });
+    }
+
+    @Override
+    public void startMethod(final String methodName) {
+        calls.add(new Runnable() {
+            @Override
+            public void run() {
+                target.startMethod(methodName);
+            }
+        });
+    }
+
+    @Override
+    public void endMethod() {
+        calls.add(new Runnable() {
+            @Override
+            public void run() {
+                target.endMethod();
+            }
+        });
+    }
+
+    @Override
+    public void startWriteClass(final String className) {
+        calls.add(new Runnable() {
+            @Override
+            public void run() {
+                target.startWriteClass(className);
+            }
+        });
+    }
+
+    @Override
+    public void endWriteClass() {
+        calls.add(new Runnable() {
+            @Override
+            public void run() {
+                target.endWriteClass();
+            }
+        });
+    }
+
+    /**
+     * Writes the recorded messages to the logger, must be called after the class is decompiled
+     */
+    void flush() {
+        for (Runnable call : calls) {
+            call.run();
+        }
+        calls.clear();
+    }
+}
@@ -18,14 +18,34 @@ import org.jetbrains.java.decompiler.util.TextBuffer;
 
 import java.io.File;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Fernflower implements IDecompiledData {
     private final StructContext structContext;
     private final ClassesProcessor classProcessor;
     private final IIdentifierRenamer helper;
     private final IdentifierConverter converter;
+    /**
+     * Top-level classes which are not submitted to the pool yet, see
+     * {@link IFernflowerPreferences#THREAD_COUNT}. Used by the thread saving the classes only.
+     */
+    private final Map<String, StructClass> pendingClasses = new LinkedHashMap<>();
+    /**
+     * Classes submitted to the pool, at most {@link #maxSubmitted}
+     */
+    private final Map<String, DecompileTask> decompiledClasses = new HashMap<>();
+    private ExecutorService executor;
+    private int maxSubmitted;
 
     public Fernflower(IBytecodeProvider provider, IResultSaver saver, Map<String, Object> customProperties, IFernflowerLogger logger) {
         Map<String, Object> properties = new HashMap<>(IFernflowerPreferences.DEFAULTS);
@@ -86,7 +106,81 @@ public class Fernflower implements IDecompiledData {
 
         classProcessor.loadClasses(helper);
 
-        structContext.saveContext();
+        startDecompilation();
+        try {
+            structContext.saveContext();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+            pendingClasses.clear();
+            decompiledClasses.clear();
+        }
+    }
+
+    /**
+     * Starts decompiling top-level classes on a pool of {@link IFernflowerPreferences#THREAD_COUNT}
+     * threads, each class with its own {@link DecompilerContext}. Classes are saved in the order of
+     * {@link StructContext#saveContext()}, which waits for the class it saves. Twice as many classes
+     * as threads are submitted at a time, so the decompiled classes which are not saved yet do not
+     * fill the memory.
+     */
+    private void startDecompilation() {
+        int threadCount = 1;
+        try {
+            threadCount = Integer.parseInt(DecompilerContext.getProperty(IFernflowerPreferences.THREAD_COUNT).toString());
+        } catch (NumberFormatException e) {
+            DecompilerContext.getLogger().writeMessage("Invalid thread count, classes are decompiled one by one", IFernflowerLogger.Severity.WARN);
+        }
+        if (threadCount <= 1) {
+            return;
+        }
+
+        Map<String, ClassNode> rootClasses = classProcessor.getMapRootClasses();
+        synchronized (rootClasses) {
+            for (ClassNode node : rootClasses.values()) {
+                if (node.type == ClassNode.CLASS_ROOT && node.classStruct.isOwn()) {
+                    pendingClasses.put(node.classStruct.qualifiedName, node.classStruct);
+                }
+            }
+        }
+
+        executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Java decompiler " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        maxSubmitted = threadCount * 2;
+        submitClasses();
+    }
+
+    private void submitClasses() {
+        DecompilerContext parent = DecompilerContext.getCurrentContext();
+        Iterator<StructClass> iterator = pendingClasses.values().iterator();
+        while (decompiledClasses.size() < maxSubmitted && iterator.hasNext()) {
+            final StructClass cl = iterator.next();
+            iterator.remove();
+            final DeferredLogger logger = new DeferredLogger(DecompilerContext.getLogger());
+            final DecompilerContext context = parent.copyForThread(logger);
+            Future<String> future = executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    DecompilerContext.setCurrentContext(context);
+                    try {
+                        return decompileClass(cl);
+                    } finally {
+                        DecompilerContext.setCurrentContext(null);
+                    }
+                }
+            });
+            decompiledClasses.put(cl.qualifiedName, new DecompileTask(future, logger));
+        }
     }
 
     public void clearContext() {
@@ -108,6 +202,28 @@ public class Fernflower implements IDecompiledData {
 
     @Override
     public String getClassContent(StructClass cl) {
+        DecompileTask task = decompiledClasses.remove(cl.qualifiedName);
+        if (task == null) {
+            // not submitted yet, it is decompiled here while the pool works on the next classes
+            pendingClasses.remove(cl.qualifiedName);
+            return decompileClass(cl);
+        }
+        submitClasses();
+        try {
+            String content = task.future.get();
+            task.logger.flush();
+            return content;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            task.logger.flush();
+            DecompilerContext.getLogger().writeMessage("Class " + cl.qualifiedName + " couldn't be fully decompiled.", e.getCause());
+            return null;
+        }
+    }
+
+    private String decompileClass(StructClass cl) {
         try {
             TextBuffer buffer = new TextBuffer(ClassesProcessor.AVERAGE_CLASS_SIZE);
             buffer.append(DecompilerContext.getProperty(IFernflowerPreferences.BANNER).toString());
@@ -118,4 +234,14 @@ public class Fernflower implements IDecompiledData {
             return null;
         }
     }
+
+    private static class DecompileTask {
+        final Future<String> future;
+        final DeferredLogger logger;
+
+        DecompileTask(Future<String> future, DeferredLogger logger) {
+            this.future = future;
+            this.logger = logger;
+        }
+    }
 }
\ No newline at end of file
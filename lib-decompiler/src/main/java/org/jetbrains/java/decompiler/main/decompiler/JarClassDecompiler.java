@@ -0,0 +1,434 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.main.decompiler;
+
+import org.jetbrains.java.decompiler.main.Fernflower;
+import org.jetbrains.java.decompiler.main.extern.IBytecodeProvider;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.jetbrains.java.decompiler.main.extern.IResultSaver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Decompiles single classes of a jar on demand, for viewing a class of a library.
+ * <p>
+ * The entries of the jar are indexed once. To decompile a class, only the class, its nested
+ * classes and the classes of the jar it references directly are read, instead of loading the whole
+ * archive like {@link ConsoleDecompiler}. Sources are cached in the cache directory per hash of the
+ * jar, hash of the options and class name.
+ */
+public class JarClassDecompiler {
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final File jar;
+    private final File cacheDir;
+    private final Map<String, Object> options;
+    private final IFernflowerLogger logger;
+
+    /**
+     * Entry names of top-level classes, keyed by internal name (java/lang/Object), with the entries
+     * of their nested classes
+     */
+    private Map<String, List<String>> index;
+    private Set<String> classNames;
+    private String jarHash;
+    private long indexedLength;
+    private long indexedLastModified;
+
+    /**
+     * @param jar      - the jar containing the classes
+     * @param cacheDir - directory for decompiled sources, can be shared by several jars
+     */
+    public JarClassDecompiler(File jar, File cacheDir, Map<String, Object> options, IFernflowerLogger logger) {
+        this.jar = jar;
+        this.cacheDir = cacheDir;
+        this.options = options;
+        this.logger = logger;
+    }
+
+    /**
+     * @return internal names of the top-level classes of the jar, sorted
+     */
+    public synchronized List<String> getClassNames() throws IOException {
+        ensureIndex();
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * @param className - internal name of a top-level class, such as java/lang/Object
+     * @return the source of the class, or null if the class is not in the jar or can not be decompiled
+     */
+    public synchronized String decompile(String className) throws IOException {
+        ensureIndex();
+        List<String> entries = index.get(className);
+        if (entries == null) {
+            return null;
+        }
+
+        File cacheFile = new File(new File(new File(cacheDir, jarHash), optionsHash()), className + ".java");
+        if (cacheFile.isFile()) {
+            return new String(readFully(new FileInputStream(cacheFile)), "UTF-8");
+        }
+
+        String source = decompile(className, entries);
+        if (source != null) {
+            writeCache(cacheFile, source);
+        }
+        return source;
+    }
+
+    private String decompile(String className, List<String> entries) throws IOException {
+        // virtual paths of the classes, their bytes are given to fernflower by the provider
+        File root = new File(jar.getAbsolutePath() + "!");
+        final Map<String, byte[]> bytecode = new HashMap<>();
+        List<File> sources = new ArrayList<>();
+        List<File> libraries = new ArrayList<>();
+
+        ZipFile archive = new ZipFile(jar);
+        try {
+            Set<String> referenced = new LinkedHashSet<>();
+            for (String entryName : entries) {
+                byte[] bytes = readEntry(archive, entryName);
+                File file = new File(root, entryName);
+                bytecode.put(file.getAbsolutePath(), bytes);
+                sources.add(file);
+                collectClassReferences(bytes, referenced);
+            }
+
+            // referenced classes of the jar resolve super classes, interfaces and members
+            for (String name : referenced) {
+                String entryName = name + CLASS_SUFFIX;
+                File file = new File(root, entryName);
+                if (classNames.contains(name) && !bytecode.containsKey(file.getAbsolutePath())) {
+                    bytecode.put(file.getAbsolutePath(), readEntry(archive, entryName));
+                    libraries.add(file);
+                }
+            }
+        } finally {
+            archive.close();
+        }
+
+        ClassSaver saver = new ClassSaver();
+        Fernflower engine = new Fernflower(new IBytecodeProvider() {
+            @Override
+            public byte[] getBytecode(String externalPath, String internalPath) throws IOException {
+                byte[] bytes = bytecode.get(new File(externalPath).getAbsolutePath());
+                if (bytes == null) {
+                    throw new IOException("Class not loaded: " + externalPath);
+                }
+                return bytes;
+            }
+        }, saver, options, logger);
+        try {
+            for (File source : sources) {
+                engine.addSource(source);
+            }
+            for (File library : libraries) {
+                engine.addLibrary(library);
+            }
+            engine.decompileContext();
+        } finally {
+            engine.clearContext();
+        }
+        return saver.sources.get(className);
+    }
+
+    /**
+     * Index the jar, again if it changed since it was indexed
+     */
+    private void ensureIndex() throws IOException {
+        if (index != null && jar.length() == indexedLength && jar.lastModified() == indexedLastModified) {
+            return;
+        }
+        indexedLength = jar.length();
+        indexedLastModified = jar.lastModified();
+
+        Map<String, List<String>> index = new TreeMap<>();
+        Set<String> classNames = new HashSet<>();
+        List<String> nested = new ArrayList<>();
+        ZipFile archive = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = archive.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.endsWith(CLASS_SUFFIX)) {
+                    continue;
+                }
+                String className = name.substring(0, name.length() - CLASS_SUFFIX.length());
+                classNames.add(className);
+                if (isNested(className)) {
+                    nested.add(name);
+                } else {
+                    List<String> list = new ArrayList<>();
+                    list.add(name);
+                    index.put(className, list);
+                }
+            }
+        } finally {
+            archive.close();
+        }
+        // outer classes first, a nested class whose outer class is not in the jar is top-level
+        Collections.sort(nested, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return a.length() != b.length() ? a.length() - b.length() : a.compareTo(b);
+            }
+        });
+        for (String name : nested) {
+            String className = name.substring(0, name.length() - CLASS_SUFFIX.length());
+            List<String> list = null;
+            int dollar = className.indexOf('$', className.lastIndexOf('/') + 1);
+            while (list == null && dollar > 0) {
+                list = index.get(className.substring(0, dollar));
+                dollar = className.indexOf('$', dollar + 1);
+            }
+            if (list == null) {
+                list = new ArrayList<>();
+                index.put(className, list);
+            }
+            list.add(name);
+        }
+
+        this.index = index;
+        this.classNames = classNames;
+        this.jarHash = hash(jar);
+    }
+
+    private static boolean isNested(String className) {
+        int index = className.indexOf('$', className.lastIndexOf('/') + 1);
+        // a class name may start with $
+        return index > 0 && className.charAt(index - 1) != '/';
+    }
+
+    /**
+     * Adds names of classes referenced by the constant pool of a class file
+     */
+    private static void collectClassReferences(byte[] bytes, Set<String> result) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != 0xCAFEBABE) {
+            return;
+        }
+        in.skipBytes(4); // version
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classes = new int[count];
+        int classCount = 0;
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7: // class
+                    classes[classCount++] = in.readUnsignedShort();
+                    break;
+                case 8: // string
+                case 16: // method type
+                case 19: // module
+                case 20: // package
+                    in.skipBytes(2);
+                    break;
+                case 15: // method handle
+                    in.skipBytes(3);
+                    break;
+                case 3: // integer
+                case 4: // float
+                case 9: // field
+                case 10: // method
+                case 11: // interface method
+                case 12: // name and type
+                case 17: // dynamic
+                case 18: // invoke dynamic
+                    in.skipBytes(4);
+                    break;
+                case 5: // long
+                case 6: // double
+                    in.skipBytes(8);
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Invalid constant pool tag " + tag);
+            }
+        }
+        for (int i = 0; i < classCount; i++) {
+            String name = utf8[classes[i]];
+            if (name == null) {
+                continue;
+            }
+            if (name.startsWith("[")) {
+                int start = name.indexOf('L');
+                if (start < 0) {
+                    continue;
+                }
+                name = name.substring(start + 1, name.length() - 1);
+            }
+            result.add(name);
+        }
+    }
+
+    private static byte[] readEntry(ZipFile archive, String entryName) throws IOException {
+        ZipEntry entry = archive.getEntry(entryName);
+        if (entry == null) {
+            throw new IOException("Entry not found: " + entryName);
+        }
+        return readFully(archive.getInputStream(entry));
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes a temporary file which is renamed, a file in the cache is always complete
+     */
+    private void writeCache(File file, String source) {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            return;
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8");
+            try {
+                out.write(source);
+            } finally {
+                out.close();
+            }
+            if (file.exists() && !file.delete() || !tmpFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tmpFile);
+            }
+        } catch (IOException e) {
+            logger.writeMessage("Cannot write " + file, IFernflowerLogger.Severity.WARN, e);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Options change the output, sources decompiled with other options are not used
+     */
+    private String optionsHash() {
+        MessageDigest digest = newDigest();
+        for (Map.Entry<String, Object> option : new TreeMap<>(options).entrySet()) {
+            digest.update(bytes(option.getKey() + "=" + option.getValue() + "\n"));
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder();
+        for (byte b : bytes) {
+            result.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Keeps sources of decompiled classes in memory, keyed by internal name
+     */
+    private static class ClassSaver implements IResultSaver {
+        private final Map<String, String> sources = new HashMap<>();
+
+        @Override
+        public void saveFolder(String path) {
+        }
+
+        @Override
+        public void copyFile(String source, String path, String entryName) {
+        }
+
+        @Override
+        public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
+            if (content != null) {
+                sources.put(qualifiedName, content);
+            }
+        }
+
+        @Override
+        public void createArchive(String path, String archiveName, Manifest manifest) {
+        }
+
+        @Override
+        public void saveDirEntry(String path, String archiveName, String entryName) {
+        }
+
+        @Override
+        public void copyEntry(String source, String path, String archiveName, String entry) {
+        }
+
+        @Override
+        public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content) {
+            saveClassFile(path, qualifiedName, entryName, content, null);
+        }
+
+        @Override
+        public void closeArchive(String path, String archiveName) {
+        }
+    }
+}
@@ -40,11 +40,6 @@ public class ClassWrapper {
         this.classStruct = classStruct;
     }
 
-    @SuppressWarnings("deprecation")
-    private static void killThread(Thread thread) {
-        thread.stop();
-    }
-
     public void init() {
         DecompilerContext.setProperty(DecompilerContext.CURRENT_CLASS, classStruct);
         DecompilerContext.setProperty(DecompilerContext.CURRENT_CLASS_WRAPPER, this);
@@ -72,34 +67,15 @@ public class ClassWrapper {
                     if (maxSec == 0 || testMode) {
                         root = MethodProcessorRunnable.codeToJava(mt, md, varProc);
                     } else {
-                        MethodProcessorRunnable mtProc = new MethodProcessorRunnable(mt, md, varProc, DecompilerContext.getCurrentContext());
-
-                        Thread mtThread = new Thread(mtProc, "Java decompiler");
-                        long stopAt = System.currentTimeMillis() + maxSec * 1000;
-
-                        mtThread.start();
-
-                        while (!mtProc.isFinished()) {
-                            try {
-                                synchronized (mtProc.lock) {
-                                    mtProc.lock.wait(200);
-                                }
-                            } catch (InterruptedException e) {
-                                killThread(mtThread);
-                                throw e;
-                            }
-
-                            if (System.currentTimeMillis() >= stopAt) {
-                                String message = "Processing time limit exceeded for method " + mt.getName() + ", execution interrupted.";
-                                DecompilerContext.getLogger().writeMessage(message, IFernflowerLogger.Severity.ERROR);
-                                killThread(mtThread);
-                                isError = true;
-                                break;
-                            }
-                        }
-
-                        if (!isError) {
-                            root = mtProc.getResult();
+                        MethodWatchdog.Ticket ticket = MethodWatchdog.getInstance().watch(maxSec * 1000L);
+                        try {
+                            root = MethodProcessorRunnable.codeToJava(mt, md, varProc);
+                        } catch (MethodWatchdog.TimeoutException | ThreadDeath e) {
+                            String message = "Processing time limit exceeded for method " + mt.getName() + ", execution interrupted.";
+                            DecompilerContext.getLogger().writeMessage(message, IFernflowerLogger.Severity.ERROR);
+                            isError = true;
+                        } finally {
+                            ticket.close();
                         }
                     }
                 } else {
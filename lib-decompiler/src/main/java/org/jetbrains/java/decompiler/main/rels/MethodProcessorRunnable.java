@@ -96,10 +96,13 @@ public class MethodProcessorRunnable implements Runnable {
             DecompilerContext.getLogger().writeMessage("Heavily obfuscated exception ranges found!", IFernflowerLogger.Severity.WARN);
         }
 
+        MethodWatchdog.checkTimeout();
+
         RootStatement root = DomHelper.parseGraph(graph);
 
         FinallyProcessor fProc = new FinallyProcessor(md, varProc);
         while (fProc.iterateGraph(mt, root, graph)) {
+            MethodWatchdog.checkTimeout();
             root = DomHelper.parseGraph(graph);
         }
 
@@ -113,6 +116,8 @@ public class MethodProcessorRunnable implements Runnable {
 
         ClearStructHelper.clearStatements(root);
 
+        MethodWatchdog.checkTimeout();
+
         ExprProcessor proc = new ExprProcessor(md, varProc);
         proc.processStatement(root, cl);
 
@@ -121,15 +126,18 @@ public class MethodProcessorRunnable implements Runnable {
         StackVarsProcessor stackProc = new StackVarsProcessor();
 
         do {
+            MethodWatchdog.checkTimeout();
             stackProc.simplifyStackVars(root, mt, cl);
             varProc.setVarVersions(root);
         }
         while (new PPandMMHelper().findPPandMM(root));
 
         while (true) {
+            MethodWatchdog.checkTimeout();
             LabelHelper.cleanUpEdges(root);
 
             do {
+                MethodWatchdog.checkTimeout();
                 MergeHelper.enhanceLoops(root);
             }
             while (LoopExtractHelper.extractLoops(root) || IfHelper.mergeAllIfs(root));
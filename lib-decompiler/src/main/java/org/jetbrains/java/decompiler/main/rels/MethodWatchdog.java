@@ -0,0 +1,152 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.main.rels;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Enforces {@link org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences#MAX_PROCESSING_METHOD}
+ * with a single daemon thread shared by all decompiling threads. A method runs on its decompiling
+ * thread.
+ * <p>
+ * When the deadline of a method passes, the watchdog marks it as timed out and interrupts the
+ * thread. {@link #checkTimeout()}, called between the passes of
+ * {@link MethodProcessorRunnable#codeToJava}, then aborts the method with {@link TimeoutException}.
+ * A method which is still running after a second time limit is stuck in one pass; outside of
+ * Android, which does not support {@link Thread#stop()}, its thread is stopped then.
+ */
+class MethodWatchdog {
+    private static final MethodWatchdog INSTANCE = new MethodWatchdog();
+    private static final ThreadLocal<Ticket> currentTicket = new ThreadLocal<>();
+    private static final boolean CAN_STOP = !"Dalvik".equals(System.getProperty("java.vm.name"));
+
+    private final List<Ticket> tickets = new ArrayList<>();
+    private Thread thread;
+
+    private MethodWatchdog() {
+    }
+
+    static MethodWatchdog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Aborts the method processed by the current thread if its time limit is exceeded
+     *
+     * @throws TimeoutException if the time limit is exceeded
+     */
+    static void checkTimeout() {
+        Ticket ticket = currentTicket.get();
+        if (ticket != null && ticket.timedOut) {
+            throw new TimeoutException();
+        }
+    }
+
+    /**
+     * Starts watching the current thread, {@link Ticket#close()} must be called when the method is
+     * processed
+     *
+     * @param timeoutMillis time limit of the method
+     */
+    Ticket watch(long timeoutMillis) {
+        Ticket ticket = new Ticket(Thread.currentThread(), System.currentTimeMillis() + timeoutMillis, timeoutMillis);
+        synchronized (this) {
+            tickets.add(ticket);
+            if (thread == null) {
+                thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        watchLoop();
+                    }
+                }, "Java decompiler watchdog");
+                thread.setDaemon(true);
+                thread.start();
+            } else {
+                notifyAll();
+            }
+        }
+        currentTicket.set(ticket);
+        return ticket;
+    }
+
+    private void unwatch(Ticket ticket) {
+        // the watchdog does not interrupt or stop the thread after the ticket is removed
+        synchronized (this) {
+            tickets.remove(ticket);
+        }
+        currentTicket.remove();
+        if (ticket.timedOut) {
+            Thread.interrupted();
+        }
+    }
+
+    private synchronized void watchLoop() {
+        while (true) {
+            long now = System.currentTimeMillis();
+            long next = Long.MAX_VALUE;
+            for (Ticket ticket : tickets) {
+                if (!ticket.timedOut) {
+                    if (ticket.deadline <= now) {
+                        ticket.timedOut = true;
+                        ticket.thread.interrupt();
+                    } else {
+                        next = Math.min(next, ticket.deadline);
+                        continue;
+                    }
+                }
+                if (CAN_STOP && !ticket.stopped) {
+                    long stopAt = ticket.deadline + ticket.timeoutMillis;
+                    if (stopAt <= now) {
+                        ticket.stopped = true;
+                        stop(ticket.thread);
+                    } else {
+                        next = Math.min(next, stopAt);
+                    }
+                }
+            }
+            try {
+                if (next == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    wait(next - now);
+                }
+            } catch (InterruptedException e) {
+                thread = null;
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void stop(Thread thread) {
+        try {
+            thread.stop();
+        } catch (UnsupportedOperationException e) {
+            // newer desktop runtimes do not support it either, the method keeps running
+        }
+    }
+
+    static class TimeoutException extends RuntimeException {
+        TimeoutException() {
+            super("Processing time limit exceeded");
+        }
+    }
+
+    class Ticket {
+        private final Thread thread;
+        private final long deadline;
+        private final long timeoutMillis;
+        private volatile boolean timedOut;
+        private boolean stopped;
+
+        private Ticket(Thread thread, long deadline, long timeoutMillis) {
+            this.thread = thread;
+            this.deadline = deadline;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        void close() {
+            unwatch(this);
+        }
+    }
+}
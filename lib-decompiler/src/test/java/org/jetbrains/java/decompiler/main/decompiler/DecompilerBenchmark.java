@@ -0,0 +1,97 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.main.decompiler;
+
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Decompiles a jar one class at a time and with {@link IFernflowerPreferences#THREAD_COUNT}
+ * threads, and prints the throughput of both.
+ */
+public class DecompilerBenchmark {
+    private static final int RUNS = 3;
+
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java " + DecompilerBenchmark.class.getName() + " <jar> [<threads>]");
+            return;
+        }
+
+        File jar = new File(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int classes = countClasses(jar);
+
+        // the first run loads the classes of the decompiler
+        decompile(jar, 1);
+
+        long sequential = Long.MAX_VALUE;
+        long parallel = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            sequential = Math.min(sequential, decompile(jar, 1));
+            parallel = Math.min(parallel, decompile(jar, threads));
+        }
+
+        System.out.println(String.format("%d classes: %.1f classes/s with 1 thread, %.1f classes/s with %d threads (%.2fx)",
+                classes, classes * 1000.0 / sequential, classes * 1000.0 / parallel, threads,
+                (double) sequential / parallel));
+    }
+
+    /**
+     * @return time in milliseconds
+     */
+    private static long decompile(File jar, int threads) throws IOException {
+        File destination = File.createTempFile("decompiled", "");
+        if (!destination.delete() || !destination.mkdirs()) {
+            throw new IOException("Can not create " + destination);
+        }
+
+        Map<String, Object> options = new HashMap<>();
+        options.put(IFernflowerPreferences.THREAD_COUNT, String.valueOf(threads));
+        options.put(IFernflowerPreferences.LOG_LEVEL, IFernflowerLogger.Severity.ERROR.name());
+        ConsoleDecompiler decompiler = new ConsoleDecompiler(destination, options, new PrintStreamLogger(System.out));
+        decompiler.addSource(jar);
+
+        long start = System.currentTimeMillis();
+        decompiler.decompileContext();
+        long time = System.currentTimeMillis() - start;
+
+        delete(destination);
+        return Math.max(1, time);
+    }
+
+    private static int countClasses(File jar) throws IOException {
+        int count = 0;
+        ZipFile archive = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = archive.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class") && !name.contains("$")) {
+                    count++;
+                }
+            }
+        } finally {
+            archive.close();
+        }
+        return count;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
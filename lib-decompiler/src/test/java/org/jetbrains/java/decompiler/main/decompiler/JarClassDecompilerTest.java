@@ -0,0 +1,183 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.main.decompiler;
+
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JarClassDecompilerTest {
+    private static final String OUTER = JarClassDecompilerTest.class.getName().replace('.', '/');
+    private static final String NESTED = Sample.class.getName().replace('.', '/');
+    private static final String CACHED = "// cached source";
+
+    private File dir;
+    private File jar;
+    private File cacheDir;
+    private final IFernflowerLogger logger = new IFernflowerLogger() {
+        @Override
+        public void writeMessage(String message, Severity severity) {
+        }
+
+        @Override
+        public void writeMessage(String message, Severity severity, Throwable t) {
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("jar-class-decompiler", "");
+        assertTrue(dir.delete() && dir.mkdirs());
+        jar = new File(dir, "classes.jar");
+        cacheDir = new File(dir, "cache");
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void nestedClassesAreIndexedWithTheirOuterClass() throws IOException {
+        writeJar(OUTER, NESTED);
+        JarClassDecompiler decompiler = new JarClassDecompiler(jar, cacheDir, new HashMap<String, Object>(), logger);
+        assertEquals(Arrays.asList(OUTER), decompiler.getClassNames());
+        assertNull(decompiler.decompile(NESTED));
+    }
+
+    @Test
+    public void nestedClassWithoutOuterClassIsTopLevel() throws IOException {
+        writeJar(NESTED);
+        JarClassDecompiler decompiler = new JarClassDecompiler(jar, cacheDir, new HashMap<String, Object>(), logger);
+        assertEquals(Arrays.asList(NESTED), decompiler.getClassNames());
+    }
+
+    @Test
+    public void sourceIsCached() throws IOException {
+        writeJar(OUTER, NESTED);
+        JarClassDecompiler decompiler = new JarClassDecompiler(jar, cacheDir, new HashMap<String, Object>(), logger);
+        String source = decompiler.decompile(OUTER);
+        assertTrue(source, source.contains("class JarClassDecompilerTest"));
+
+        markCached(1);
+        assertEquals(CACHED, decompiler.decompile(OUTER));
+        assertEquals(CACHED, new JarClassDecompiler(jar, cacheDir, new HashMap<String, Object>(), logger).decompile(OUTER));
+    }
+
+    @Test
+    public void cacheIsNotUsedWithOtherOptions() throws IOException {
+        writeJar(OUTER, NESTED);
+        new JarClassDecompiler(jar, cacheDir, new HashMap<String, Object>(), logger).decompile(OUTER);
+        markCached(1);
+
+        Map<String, Object> options = new HashMap<>();
+        options.put(IFernflowerPreferences.DECOMPILE_GENERIC_SIGNATURES, "1");
+        String source = new JarClassDecompiler(jar, cacheDir, options, logger).decompile(OUTER);
+        assertFalse(CACHED.equals(source));
+        assertEquals(2, findCacheFiles(cacheDir, new ArrayList<File>()).size());
+    }
+
+    @Test
+    public void cacheIsNotUsedAfterTheJarChanged() throws IOException {
+        writeJar(OUTER, NESTED);
+        JarClassDecompiler decompiler = new JarClassDecompiler(jar, cacheDir, new HashMap<String, Object>(), logger);
+        decompiler.decompile(OUTER);
+        markCached(1);
+
+        writeJar(OUTER);
+        jar.setLastModified(jar.lastModified() + 10000);
+        assertFalse(CACHED.equals(decompiler.decompile(OUTER)));
+        assertEquals(Arrays.asList(OUTER), decompiler.getClassNames());
+    }
+
+    /**
+     * Replaces the cached sources, so a source which is decompiled again can be told apart
+     */
+    private void markCached(int expectedFiles) throws IOException {
+        List<File> files = findCacheFiles(cacheDir, new ArrayList<File>());
+        assertEquals(expectedFiles, files.size());
+        for (File file : files) {
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                out.write(CACHED);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static List<File> findCacheFiles(File dir, List<File> result) {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    findCacheFiles(child, result);
+                } else {
+                    result.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes a jar of classes of this test, read from the class path
+     */
+    private void writeJar(String... classNames) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (String className : classNames) {
+                out.putNextEntry(new ZipEntry(className + ".class"));
+                InputStream in = JarClassDecompilerTest.class.getResourceAsStream("/" + className + ".class");
+                try {
+                    byte[] buffer = new byte[8192];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                    }
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    static class Sample {
+        int value() {
+            return 42;
+        }
+    }
+}
@@ -25,23 +25,26 @@ import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import android.text.Editable;
 import android.text.SpannableStringBuilder;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.text.style.CharacterStyle;
-import android.text.style.ForegroundColorSpan;
+import android.view.View;
 
 import com.duy.ide.editor.editor.R;
 import com.duy.ide.editor.task.SaveTask;
+import com.duy.ide.editor.text.TextRope;
 import com.duy.ide.editor.theme.model.EditorTheme;
 import com.duy.ide.editor.view.IEditAreaView;
+import com.duy.ide.editor.view.OnScrollChangeListener;
 import com.duy.ide.file.ReadFileListener;
 import com.duy.ide.file.SaveListener;
 import com.jecelyin.common.utils.DLog;
 import com.jecelyin.common.utils.StringUtils;
 import com.jecelyin.common.utils.UIUtils;
-import com.jecelyin.editor.v2.Preferences;
 import com.jecelyin.editor.v2.highlight.Buffer;
 import com.jecelyin.editor.v2.io.FileReader;
 import com.jecelyin.editor.v2.io.LocalFileWriter;
+import com.jecelyin.editor.v2.utils.TrigramIndex;
 
 import org.gjt.sp.jedit.Catalog;
 import org.gjt.sp.jedit.LineManager;
@@ -57,10 +60,9 @@ import java.util.HashMap;
 /**
  * @author Jecelyin Peng <jecelyin@gmail.com>
  */
-public class Document implements ReadFileListener, TextWatcher {
+public class Document implements ReadFileListener, TextWatcher, OnScrollChangeListener {
     private final EditorDelegate mEditorDelegate;
     private final Context mContext;
-    private final Preferences mPreferences;
     private final Buffer mBuffer;
     @SuppressLint("UseSparseArrays")
     private final HashMap<Integer, ArrayList<? extends CharacterStyle>> mColorSpanMap = new HashMap<>();
@@ -74,16 +76,18 @@ public class Document implements ReadFileListener, TextWatcher {
     @NonNull
     private File mFile;
     private Highlighter mHighlighter;
+    private HighlightWorker mHighlightWorker;
 
 
     Document(@NonNull Context context, @NonNull EditorDelegate editorDelegate, @NonNull File currentFile) {
         mEditorDelegate = editorDelegate;
         mContext = context;
         mFile = currentFile;
-        mPreferences = Preferences.getInstance(context);
         mBuffer = new Buffer();
         mHighlighter = new Highlighter();
+        mHighlightWorker = new HighlightWorker(context, editorDelegate.getEditText());
         editorDelegate.getEditText().addTextChangedListener(this);
+        editorDelegate.getEditText().addOnScrollChangeListener(this);
     }
 
     /**
@@ -165,6 +169,7 @@ public class Document implements ReadFileListener, TextWatcher {
 
         mModeName = mode.getName();
         mBuffer.setMode(mode, mContext);
+        mHighlightWorker.setMode(mode);
 
         mLineCount = fileReader.getLineCount();
         mEncoding = fileReader.getEncoding();
@@ -201,30 +206,21 @@ public class Document implements ReadFileListener, TextWatcher {
 
     @Override
     public void onTextChanged(CharSequence s, int start, int before, int count) {
-
-        Editable editableText = mEditorDelegate.getEditableText();
-        mBuffer.setEditable(editableText);
-
+        String inserted = count > 0 ? TextUtils.substring(s, start, start + count) : "";
         if (before > 0) {
             mBuffer.remove(start, before);
         }
         if (count > 0) {
-            mBuffer.insert(start, s.subSequence(start, start + count));
+            mBuffer.insert(start, inserted);
         }
+        mHighlightWorker.onTextChanged(start, before, count, mBuffer.getText());
 
         mLineCount = mBuffer.getLineManager().getLineCount();
 
-        if (editableText.length() > mPreferences.getHighlightSizeLimit())
-            return;
-
         LineManager lineManager = mBuffer.getLineManager();
         int startLine = lineManager.getLineOfOffset(start);
-        int endLine = lineManager.getLineOfOffset(start + count);
-        int lineStartOffset = lineManager.getLineStartOffset(startLine);
-        int lineEndOffset = lineManager.getLineEndOffset(endLine);
 
-        boolean canHighlight = mBuffer.isCanHighlight();
-        if (startLine == 0 && !canHighlight) {
+        if (startLine == 0 && !mBuffer.isCanHighlight()) {
             ModeProvider modeProvider = ModeProvider.getInstance();
             String firstLine = s.subSequence(0, Math.min(80, s.length())).toString();
             Mode mode = modeProvider.getModeForFile(mFile.getPath(), mFile.getName(), firstLine);
@@ -232,19 +228,10 @@ public class Document implements ReadFileListener, TextWatcher {
                 mModeName = mode.getName();
             }
             mBuffer.setMode(mode, mContext);
+            mHighlightWorker.setMode(mode);
         }
 
-        if (!canHighlight) {
-            return;
-        }
-        {
-            ForegroundColorSpan[] spans = editableText.getSpans(lineStartOffset, lineEndOffset, ForegroundColorSpan.class);
-            for (ForegroundColorSpan span : spans) {
-                editableText.removeSpan(span);
-            }
-        }
-        EditorTheme editorTheme = mEditorDelegate.getEditText().getEditorTheme();
-        mHighlighter.highlight(mBuffer, editorTheme, mColorSpanMap, editableText, startLine, endLine);
+        highlightVisibleLines();
     }
 
     @Override
@@ -252,13 +239,27 @@ public class Document implements ReadFileListener, TextWatcher {
 
     }
 
+    @Override
+    public void onScrollChange(View v, int scrollX, int scrollY, int oldScrollX, int oldScrollY) {
+        if (scrollY != oldScrollY) {
+            highlightVisibleLines();
+        }
+    }
+
     void setMode(String name) {
         mModeName = name;
 
-        mBuffer.setMode(Catalog.getModeByName(name), mContext);
+        Mode mode = Catalog.getModeByName(name);
+        mBuffer.setMode(mode, mContext);
+        mHighlightWorker.setMode(mode);
         mEditorDelegate.getEditableText().clearSpans();
 
-        highlightSyntax(mEditorDelegate.getEditText());
+        highlightVisibleLines();
+    }
+
+    void onDestroy() {
+        mHighlightWorker.release();
+        mEditorDelegate.getEditText().removeOnScrollChangeListener(this);
     }
 
     public String getModeName() {
@@ -282,12 +283,18 @@ public class Document implements ReadFileListener, TextWatcher {
         return mEncoding;
     }
 
+    /**
+     * Writes the text of the buffer, which can be edited meanwhile, the written text is the
+     * text when this method was called
+     */
     @WorkerThread
     public void writeToFile(File file, String encoding) throws Exception {
+        TextRope text = mBuffer.getText();
         LocalFileWriter writer = new LocalFileWriter(file, encoding);
-        writer.writeToFile(mEditorDelegate.getEditableText());
+        writer.writeToFile(text);
+        TrigramIndex.getInstance(mContext).update(file);
 
-        onSaveSuccess(file, encoding);
+        onSaveSuccess(file, encoding, text);
     }
 
     /**
@@ -300,11 +307,11 @@ public class Document implements ReadFileListener, TextWatcher {
         saveTask.execute();
     }
 
-    private void onSaveSuccess(File newFile, String encoding) {
+    private void onSaveSuccess(File newFile, String encoding, TextRope savedText) {
         mFile = newFile;
         mEncoding = encoding;
-        mSourceMD5 = md5(mEditorDelegate.getText());
-        mSourceLength = mEditorDelegate.getText().length();
+        mSourceMD5 = md5(savedText);
+        mSourceLength = savedText.length();
     }
 
     public boolean isChanged() {
@@ -320,15 +327,20 @@ public class Document implements ReadFileListener, TextWatcher {
         return !StringUtils.isEqual(mSourceMD5, curMD5);
     }
 
-    private void highlightSyntax(IEditAreaView editAreaView) {
-        EditorTheme editorTheme = mEditorDelegate.getEditText().getEditorTheme();
-        Editable editableText = editAreaView.getEditableText();
-        try {
-            mHighlighter.highlight(mBuffer, editorTheme, mColorSpanMap, editableText, 0, mLineCount - 1);
-        } catch (Exception e) {
-            //should not happened
-            e.printStackTrace();
+    /**
+     * Highlights the syntax of the visible lines in background, lines are highlighted when they
+     * are scrolled into view so the size of the file is not limited
+     */
+    private void highlightVisibleLines() {
+        IEditAreaView editText = mEditorDelegate.getEditText();
+        EditorTheme editorTheme = editText.getEditorTheme();
+        if (editorTheme == null) {
+            return;
         }
+        LineManager lineManager = mBuffer.getLineManager();
+        int firstLine = lineManager.getLineOfOffset(editText.getFirstVisibleOffset());
+        int lastLine = lineManager.getLineOfOffset(editText.getLastVisibleOffset());
+        mHighlightWorker.highlight(firstLine, lastLine, editorTheme.getSyntaxStyles());
     }
 
     public void highlightWarn(int startLine, int endLine) {
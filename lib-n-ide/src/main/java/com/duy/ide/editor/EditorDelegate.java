@@ -47,7 +47,7 @@ import com.duy.ide.code.api.CodeFormatter;
 import com.duy.ide.code.api.SuggestionProvider;
 import com.duy.ide.core.api.IdeActivity;
 import com.duy.ide.editor.editor.R;
-import com.duy.ide.editor.internal.suggestion.GenerateSuggestDataTask;
+import com.duy.ide.editor.internal.suggestion.SuggestionWorker;
 import com.duy.ide.editor.model.EditorIndex;
 import com.duy.ide.editor.task.FormatSourceTask;
 import com.duy.ide.editor.text.InputMethodManagerCompat;
@@ -87,8 +87,6 @@ public class EditorDelegate implements TextWatcher, IEditorDelegate {
     private CodeFormatProvider mCodeFormatProvider;
     @Nullable
     private SuggestionProvider mSuggestionProvider;
-    @Nullable
-    private GenerateSuggestDataTask mGenerateSuggestDataTask;
     private final Runnable mGetSuggestion = new Runnable() {
         @Override
         public void run() {
@@ -202,8 +200,8 @@ public class EditorDelegate implements TextWatcher, IEditorDelegate {
     }
 
     public void onDestroy() {
-        if (mGenerateSuggestDataTask != null) {
-            mGenerateSuggestDataTask.cancel(true);
+        if (mEditText instanceof SuggestionEditor) {
+            SuggestionWorker.getInstance().cancel((SuggestionEditor) mEditText);
         }
         String fileName = mDocument.getFile().getPath().replaceAll("[^A-Za-z0-9_]", "_");
         SharedPreferences historyData = mContext.getSharedPreferences(
@@ -216,6 +214,7 @@ public class EditorDelegate implements TextWatcher, IEditorDelegate {
 
         mEditText.removeTextChangedListener(mDocument);
         mEditText.removeTextChangedListener(this);
+        mDocument.onDestroy();
     }
 
     public CharSequence getSelectedText() {
@@ -560,13 +559,10 @@ public class EditorDelegate implements TextWatcher, IEditorDelegate {
     }
 
     private void performGetSuggestion() {
-        if (mSuggestionProvider != null && mEditText != null) {
-            if (mGenerateSuggestDataTask != null) {
-                mGenerateSuggestDataTask.cancel(true);
-            }
+        if (mSuggestionProvider != null && mEditText != null && mDocument != null) {
             SuggestionEditor view = (SuggestionEditor) this.mEditText;
-            mGenerateSuggestDataTask = new GenerateSuggestDataTask(view, mSuggestionProvider);
-            mGenerateSuggestDataTask.execute();
+            SuggestionWorker.getInstance().request(view, mDocument.getBuffer().getText(),
+                    mSuggestionProvider);
         }
     }
 
@@ -0,0 +1,509 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.editor;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.Spanned;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.duy.ide.editor.text.TextRope;
+import com.duy.ide.editor.text.style.SyntaxSpan;
+import com.duy.ide.editor.theme.model.SyntaxStyle;
+import com.duy.ide.editor.view.IEditAreaView;
+import com.jecelyin.editor.v2.highlight.Buffer;
+
+import org.gjt.sp.jedit.LineManager;
+import org.gjt.sp.jedit.Mode;
+import org.gjt.sp.jedit.Segment;
+import org.gjt.sp.jedit.syntax.DummyTokenHandler;
+import org.gjt.sp.jedit.syntax.Token;
+import org.gjt.sp.jedit.syntax.TokenHandler;
+import org.gjt.sp.jedit.syntax.TokenMarker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Highlights the syntax of a document on a background thread.
+ * <p>
+ * The worker reads the snapshots of the text of the document after each edit and keeps the
+ * context of the token marker at the end of each line. After an edit, lines are tokenized again
+ * from the edited line only until the context at the end of a line is the same as before the
+ * edit. Spans are only set on the visible lines and a margin around them, so the size of the
+ * document does not matter. Results computed for an older text are dropped.
+ */
+public class HighlightWorker {
+    /**
+     * Lines highlighted above and below the visible lines
+     */
+    private static final int MARGIN_LINES = 100;
+    /**
+     * Lines tokenized before checking for newer edits, when a far line is requested
+     */
+    private static final int LINES_PER_CHUNK = 2000;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r, "highlight-worker");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Context mContext;
+    private final IEditAreaView mEditText;
+
+    private final Object mLock = new Object();
+    private List<Edit> mEdits = new ArrayList<>();
+    @Nullable
+    private Mode mMode;
+    private boolean mModeChanged = false;
+    @Nullable
+    private Request mPending;
+    private boolean mScheduled = false;
+    private boolean mReleased = false;
+    /**
+     * Incremented for each change of the text or the mode
+     */
+    private int mGeneration = 0;
+
+    /**
+     * Lines and generation of the last request, only accessed on the main thread
+     */
+    private int mRequestedFromLine = -1;
+    private int mRequestedToLine = -1;
+    private int mRequestedGeneration = -1;
+    @Nullable
+    private SyntaxStyle[] mRequestedStyles;
+    /**
+     * Offsets of the text which has syntax spans, only accessed on the main thread
+     */
+    private int mAppliedStart = 0;
+    private int mAppliedEnd = 0;
+
+    // only accessed on the worker thread
+    private TextRope mText = TextRope.EMPTY;
+    private final Buffer mBuffer = new Buffer();
+    private final Segment mSegment = new Segment();
+    private int mTextGeneration = 0;
+    /**
+     * Contexts of the lines before this line are valid
+     */
+    private int mValidLines = 0;
+    /**
+     * Contexts of the lines before this line were computed, those after mValidLines
+     * before the last edits
+     */
+    private int mKnownLines = 0;
+    /**
+     * Last line changed by the edits, the contexts of the known lines after it are valid again
+     * once a context is the same as before
+     */
+    private int mEditEndLine = 0;
+
+    public HighlightWorker(@NonNull Context context, @NonNull IEditAreaView editText) {
+        mContext = context.getApplicationContext();
+        mEditText = editText;
+    }
+
+    private static long key(int start, int end) {
+        return ((long) start << 32) | (end & 0xffffffffL);
+    }
+
+    /**
+     * Must be called for every change of the text, in order
+     *
+     * @param before number of characters replaced at start
+     * @param count  number of characters which replaced them
+     * @param text   the text after the change
+     */
+    public void onTextChanged(int start, int before, int count, @NonNull TextRope text) {
+        synchronized (mLock) {
+            mEdits.add(new Edit(start, before, count, text));
+            mGeneration++;
+        }
+        schedule();
+    }
+
+    /**
+     * Sets the mode used to tokenize the text, the spans of the old mode have to be removed
+     */
+    public void setMode(@Nullable Mode mode) {
+        synchronized (mLock) {
+            mMode = mode;
+            mModeChanged = true;
+            mGeneration++;
+        }
+        schedule();
+    }
+
+    /**
+     * Highlights the given lines and a margin around them, must be called on the main thread
+     */
+    public void highlight(int firstVisibleLine, int lastVisibleLine, @NonNull SyntaxStyle[] styles) {
+        Request request;
+        synchronized (mLock) {
+            if (mGeneration == mRequestedGeneration && styles == mRequestedStyles
+                    && (mRequestedFromLine == 0 || firstVisibleLine - MARGIN_LINES / 2 >= mRequestedFromLine)
+                    && lastVisibleLine + MARGIN_LINES / 2 <= mRequestedToLine) {
+                //the visible lines and half of the margin are already highlighted
+                return;
+            }
+            mRequestedFromLine = Math.max(0, firstVisibleLine - MARGIN_LINES);
+            mRequestedToLine = lastVisibleLine + MARGIN_LINES;
+            mRequestedGeneration = mGeneration;
+            mRequestedStyles = styles;
+            request = new Request(mRequestedFromLine, mRequestedToLine, styles, mGeneration);
+            mPending = request;
+        }
+        schedule();
+    }
+
+    /**
+     * Stops highlighting, pending results are dropped
+     */
+    public void release() {
+        synchronized (mLock) {
+            mReleased = true;
+            mPending = null;
+            mEdits.clear();
+        }
+    }
+
+    private void schedule() {
+        synchronized (mLock) {
+            if (mScheduled || mReleased) {
+                return;
+            }
+            mScheduled = true;
+        }
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+    }
+
+    private void drain() {
+        while (true) {
+            List<Edit> edits;
+            Mode mode = null;
+            boolean modeChanged;
+            Request request;
+            int generation;
+            synchronized (mLock) {
+                edits = mEdits;
+                modeChanged = mModeChanged;
+                if (modeChanged) {
+                    mode = mMode;
+                    mModeChanged = false;
+                }
+                request = mPending;
+                mPending = null;
+                generation = mGeneration;
+                if (mReleased || (edits.isEmpty() && !modeChanged && request == null)) {
+                    mScheduled = false;
+                    return;
+                }
+                mEdits = new ArrayList<>();
+            }
+
+            try {
+                if (modeChanged) {
+                    mBuffer.setMode(mode, mContext);
+                    mValidLines = mKnownLines = mEditEndLine = 0;
+                }
+                for (Edit edit : edits) {
+                    applyEdit(edit);
+                }
+                mTextGeneration = generation;
+                if (request != null && request.generation == mTextGeneration && mBuffer.isCanHighlight()) {
+                    highlight(request);
+                }
+            } catch (Exception e) {
+                //should not happened
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void applyEdit(Edit edit) {
+        LineManager lineManager = mBuffer.getLineManager();
+        int startLine = mText.getLineOfOffset(edit.start);
+        int removedLines = mText.getLineOfOffset(edit.start + edit.before) - startLine;
+        int insertedLines = edit.text.getLineOfOffset(edit.start + edit.count) - startLine;
+
+        lineManager.contentRemoved(startLine, removedLines);
+        lineManager.setText(mText.delete(edit.start, edit.start + edit.before));
+        lineManager.contentInserted(startLine, insertedLines);
+        lineManager.setText(edit.text);
+        mText = edit.text;
+
+        int delta = insertedLines - removedLines;
+        boolean stale = mValidLines < mKnownLines;
+        mKnownLines = mKnownLines > startLine + removedLines ? mKnownLines + delta : Math.min(mKnownLines, startLine);
+        if (stale) {
+            //the contexts of the lines tokenized again since the last edits do not lead to the
+            //contexts after them, which are from before these edits
+            int end = Math.max(mEditEndLine, mValidLines);
+            end = end > startLine + removedLines ? end + delta : startLine;
+            mEditEndLine = Math.max(end, startLine + insertedLines);
+        } else {
+            mEditEndLine = startLine + insertedLines;
+        }
+        mValidLines = Math.min(mValidLines, startLine);
+    }
+
+    private void highlight(Request request) {
+        LineManager lineManager = mBuffer.getLineManager();
+        int toLine = Math.min(request.toLine, lineManager.getLineCount() - 1);
+        int fromLine = Math.min(request.fromLine, toLine);
+
+        //contexts of the lines above the requested lines, the lines are not highlighted
+        while (mValidLines < fromLine) {
+            int end = Math.min(fromLine, mValidLines + LINES_PER_CHUNK);
+            while (mValidLines < end) {
+                markLine(mValidLines, DummyTokenHandler.INSTANCE);
+            }
+            synchronized (mLock) {
+                if (!mEdits.isEmpty() || mPending != null || mModeChanged) {
+                    //the requested lines changed
+                    return;
+                }
+            }
+        }
+
+        StyleRuns runs = new StyleRuns(request.styles);
+        for (int line = fromLine; line <= toLine; line++) {
+            runs.lineStart = lineManager.getLineStartOffset(line);
+            markLine(line, runs);
+        }
+
+        final Result result = new Result(request.generation,
+                lineManager.getLineStartOffset(fromLine),
+                lineManager.getLineEndOffset(toLine) - 1,
+                runs);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                apply(result);
+            }
+        });
+    }
+
+    /**
+     * Tokenizes a line, the context of the previous line must be valid
+     */
+    private void markLine(int line, TokenHandler handler) {
+        LineManager lineManager = mBuffer.getLineManager();
+        int start = lineManager.getLineStartOffset(line);
+        //the last line ends with a virtual line separator
+        int length = lineManager.getLineEndOffset(line) - 1 - start;
+        if (mSegment.array == null || mSegment.array.length < length) {
+            mSegment.array = new char[Math.max(length, 2 * (mSegment.array == null ? 64 : mSegment.array.length))];
+        }
+        mText.getChars(start, start + length, mSegment.array, 0);
+        mSegment.offset = 0;
+        mSegment.count = length;
+
+        TokenMarker.LineContext previous = line == 0 ? null : lineManager.getLineContext(line - 1);
+        TokenMarker.LineContext context = mBuffer.markTokens(mSegment, previous, handler);
+        if (line == mValidLines) {
+            boolean converged = line >= mEditEndLine && line < mKnownLines
+                    && context.equals(lineManager.getLineContext(line));
+            lineManager.setLineContext(line, context);
+            mValidLines = converged ? mKnownLines : line + 1;
+            mKnownLines = Math.max(mKnownLines, mValidLines);
+        }
+    }
+
+    /**
+     * Replaces the syntax spans of the highlighted lines, keeps the spans which did not change
+     */
+    private void apply(Result result) {
+        synchronized (mLock) {
+            if (mReleased || result.generation != mGeneration) {
+                //the text changed since, a newer request is pending
+                return;
+            }
+        }
+        Editable text = mEditText.getEditableText();
+        if (result.end > text.length()) {
+            return;
+        }
+
+        //spans outside of the highlighted lines are removed, so their number does not grow
+        //with the size of the text
+        int appliedEnd = Math.min(mAppliedEnd, text.length());
+        if (mAppliedStart < appliedEnd) {
+            for (SyntaxSpan span : text.getSpans(mAppliedStart, appliedEnd, SyntaxSpan.class)) {
+                if (text.getSpanEnd(span) <= result.start || text.getSpanStart(span) >= result.end) {
+                    text.removeSpan(span);
+                }
+            }
+        }
+        mAppliedStart = result.start;
+        mAppliedEnd = result.end;
+
+        SyntaxSpan[] spans = text.getSpans(result.start, result.end, SyntaxSpan.class);
+        HashMap<Long, SyntaxSpan> existing = new HashMap<>(spans.length * 2);
+        for (SyntaxSpan span : spans) {
+            int start = text.getSpanStart(span);
+            int end = text.getSpanEnd(span);
+            if (end <= result.start || start >= result.end) {
+                continue;
+            }
+            if (start < result.start || end > result.end) {
+                text.removeSpan(span);
+                continue;
+            }
+            SyntaxSpan duplicate = existing.put(key(start, end), span);
+            if (duplicate != null) {
+                text.removeSpan(duplicate);
+            }
+        }
+
+        StyleRuns runs = result.runs;
+        for (int i = 0; i < runs.size; i++) {
+            SyntaxSpan span = existing.remove(key(runs.starts[i], runs.ends[i]));
+            if (span != null) {
+                if (span.getStyle().equals(runs.styles[i])) {
+                    continue;
+                }
+                text.removeSpan(span);
+            }
+            text.setSpan(new SyntaxSpan(runs.styles[i]), runs.starts[i], runs.ends[i],
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        for (SyntaxSpan span : existing.values()) {
+            text.removeSpan(span);
+        }
+    }
+
+    private static class Edit {
+        final int start;
+        final int before;
+        final int count;
+        final TextRope text;
+
+        Edit(int start, int before, int count, TextRope text) {
+            this.start = start;
+            this.before = before;
+            this.count = count;
+            this.text = text;
+        }
+    }
+
+    private static class Request {
+        final int fromLine;
+        final int toLine;
+        final SyntaxStyle[] styles;
+        final int generation;
+
+        Request(int fromLine, int toLine, SyntaxStyle[] styles, int generation) {
+            this.fromLine = fromLine;
+            this.toLine = toLine;
+            this.styles = styles;
+            this.generation = generation;
+        }
+    }
+
+    private static class Result {
+        final int generation;
+        final int start;
+        final int end;
+        final StyleRuns runs;
+
+        Result(int generation, int start, int end, StyleRuns runs) {
+            this.generation = generation;
+            this.start = start;
+            this.end = end;
+            this.runs = runs;
+        }
+    }
+
+    /**
+     * Collects the tokens of lines as runs of text offsets with the same style, adjacent
+     * tokens with the same style are merged
+     */
+    private static class StyleRuns implements TokenHandler {
+        private final SyntaxStyle[] mSyntaxStyles;
+        int[] starts = new int[64];
+        int[] ends = new int[64];
+        SyntaxStyle[] styles = new SyntaxStyle[64];
+        int size;
+        /**
+         * Offset of the line being tokenized
+         */
+        int lineStart;
+
+        StyleRuns(SyntaxStyle[] syntaxStyles) {
+            mSyntaxStyles = syntaxStyles;
+        }
+
+        @Override
+        public void handleToken(Segment seg, byte id, int offset, int length,
+                                TokenMarker.LineContext context) {
+            if (id == Token.END || length == 0) {
+                return;
+            }
+            SyntaxStyle style = mSyntaxStyles[id];
+            if (style == null) {
+                return;
+            }
+            int start = lineStart + offset;
+            int end = start + length;
+            if (size > 0 && ends[size - 1] == start && styles[size - 1].equals(style)) {
+                ends[size - 1] = end;
+                return;
+            }
+            if (size == starts.length) {
+                int capacity = size * 2;
+                int[] newStarts = new int[capacity];
+                int[] newEnds = new int[capacity];
+                SyntaxStyle[] newStyles = new SyntaxStyle[capacity];
+                System.arraycopy(starts, 0, newStarts, 0, size);
+                System.arraycopy(ends, 0, newEnds, 0, size);
+                System.arraycopy(styles, 0, newStyles, 0, size);
+                starts = newStarts;
+                ends = newEnds;
+                styles = newStyles;
+            }
+            starts[size] = start;
+            ends[size] = end;
+            styles[size] = style;
+            size++;
+        }
+
+        @Override
+        public void setLineContext(TokenMarker.LineContext lineContext) {
+
+        }
+    }
+}
@@ -0,0 +1,655 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.editor.content;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * History of the edits of a text, for undo and redo.
+ * <p>
+ * An edit is stored as its offset and the replaced and inserted characters, in arrays of
+ * primitives and one pool of characters, so there is no object per edit. Characters typed or
+ * deleted one after the other are merged into one edit. When the characters in memory exceed a
+ * budget, the oldest edits are appended to a file and read again when they are undone, so the
+ * history can be deep while the memory it uses stays bounded. The file is also what is kept
+ * when the history is saved.
+ * <p>
+ * The file is a temporary file while the history is edited and is renamed when it is saved.
+ * Temporary files are left behind when the app is killed, the first history of a process
+ * deletes them because no other history can be using them yet.
+ */
+class EditHistory {
+    /**
+     * Edits closer in time than this are merged when one continues the other
+     */
+    private static final long MERGE_INTERVAL = 1000;
+    /**
+     * Characters of the edits kept in memory, older edits are written to the file
+     */
+    private static final int MAX_MEMORY_CHARS = 64 * 1024;
+    /**
+     * Size of the file, the oldest edits are forgotten above it
+     */
+    private static final long MAX_FILE_BYTES = 16 * 1024 * 1024;
+    /**
+     * Start, number of replaced and number of inserted characters of an edit in the file
+     */
+    private static final int HEADER_BYTES = 12;
+    private static final String PREFIX = "history";
+    private static final String DOT_TMP = ".tmp";
+    private static final String DOT_BIN = ".bin";
+    private static final AtomicBoolean sSwept = new AtomicBoolean();
+
+    @NonNull
+    private final File mDirectory;
+    @Nullable
+    private File mFile;
+    @Nullable
+    private RandomAccessFile mOutput;
+
+    /**
+     * Number of edits, the oldest first
+     */
+    private int mSize = 0;
+    /**
+     * Number of edits which are done, the next undo reverts the edit before this one
+     */
+    private int mPosition = 0;
+    private int mMaxSize = -1;
+    /**
+     * Time of the last added edit, 0 if the next edit must not be merged
+     */
+    private long mLastTime = 0;
+
+    /**
+     * The first edits are in the file, at these offsets
+     */
+    private int mSpilled = 0;
+    private long[] mFileOffsets = new long[16];
+    private long mFileEnd = 0;
+
+    /**
+     * The other edits are in memory, edit mSpilled + i at index i, with its replaced and then
+     * its inserted characters in mChars from mCharOffsets[i]
+     */
+    private int[] mStarts = new int[16];
+    private int[] mBeforeLengths = new int[16];
+    private int[] mAfterLengths = new int[16];
+    private int[] mCharOffsets = new int[16];
+    private char[] mChars = new char[1024];
+    private int mCharCount = 0;
+
+    EditHistory(@NonNull File directory) {
+        mDirectory = directory;
+        if (sSwept.compareAndSet(false, true)) {
+            deleteTempFiles(directory);
+        }
+    }
+
+    /**
+     * Deletes the files of histories which were never saved
+     */
+    static void deleteTempFiles(@NonNull File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(PREFIX) && name.endsWith(DOT_TMP)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private static int[] grow(int[] array, int size) {
+        if (size < array.length) {
+            return array;
+        }
+        int[] result = new int[Math.max(size + 1, array.length * 2)];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int getPosition() {
+        return mPosition;
+    }
+
+    boolean canUndo() {
+        return mPosition > 0;
+    }
+
+    boolean canRedo() {
+        return mPosition < mSize;
+    }
+
+    void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        trim();
+    }
+
+    /**
+     * Forgets all edits and deletes the file
+     */
+    void clear() {
+        mSize = 0;
+        mPosition = 0;
+        mLastTime = 0;
+        mSpilled = 0;
+        mFileEnd = 0;
+        mCharCount = 0;
+        closeFile();
+        if (mFile != null) {
+            //noinspection ResultOfMethodCallIgnored
+            mFile.delete();
+            mFile = null;
+        }
+    }
+
+    /**
+     * Records an edit, the edits which could be redone are forgotten
+     *
+     * @param before the replaced characters
+     * @param after  the inserted characters
+     */
+    void add(int start, @NonNull CharSequence before, @NonNull CharSequence after, long time) {
+        if (before.length() == 0 && after.length() == 0) {
+            return;
+        }
+        truncate(mPosition);
+        if (!merge(start, before, after, time)) {
+            int index = mSize - mSpilled;
+            mStarts = grow(mStarts, index);
+            mBeforeLengths = grow(mBeforeLengths, index);
+            mAfterLengths = grow(mAfterLengths, index);
+            mCharOffsets = grow(mCharOffsets, index);
+            mStarts[index] = start;
+            mBeforeLengths[index] = before.length();
+            mAfterLengths[index] = after.length();
+            mCharOffsets[index] = mCharCount;
+            appendChars(before);
+            appendChars(after);
+            mSize++;
+            mPosition++;
+        }
+        mLastTime = time;
+        trim();
+        spill(false);
+    }
+
+    /**
+     * Moves back one edit
+     *
+     * @return the edit to revert, null if there is none or it can not be read
+     */
+    @Nullable
+    Edit undo() {
+        if (mPosition == 0) {
+            return null;
+        }
+        Edit edit = read(mPosition - 1);
+        if (edit != null) {
+            mPosition--;
+        }
+        mLastTime = 0;
+        return edit;
+    }
+
+    /**
+     * Moves forward one edit
+     *
+     * @return the edit to do again, null if there is none or it can not be read
+     */
+    @Nullable
+    Edit redo() {
+        if (mPosition == mSize) {
+            return null;
+        }
+        Edit edit = read(mPosition);
+        if (edit != null) {
+            mPosition++;
+        }
+        mLastTime = 0;
+        return edit;
+    }
+
+    /**
+     * Writes all edits to the file and closes it
+     *
+     * @return the file, null if there are no edits or they could not be written
+     */
+    @Nullable
+    File save() {
+        if (mSize == 0) {
+            clear();
+            return null;
+        }
+        spill(true);
+        //the saved edits start at the start of the file
+        compactFile(true);
+        closeFile();
+        if (mSize == 0 || mFile == null) {
+            return null;
+        }
+        String name = mFile.getName();
+        if (name.endsWith(DOT_TMP)) {
+            File saved = new File(mDirectory, name.substring(0, name.length() - DOT_TMP.length()) + DOT_BIN);
+            if (!mFile.renameTo(saved)) {
+                clear();
+                return null;
+            }
+            mFile = saved;
+        }
+        return mFile;
+    }
+
+    /**
+     * Replaces the edits with the edits of a saved file, which is then used by this history
+     *
+     * @return false if the file does not contain these edits, the history is then empty
+     */
+    boolean load(@NonNull File file, int size, int position) {
+        clear();
+        if (size < 0 || position < 0 || position > size || !file.isFile()) {
+            return false;
+        }
+        mFile = file;
+        try {
+            RandomAccessFile output = openFile();
+            long length = output.length();
+            long offset = 0;
+            for (int i = 0; i < size; i++) {
+                if (offset + HEADER_BYTES > length) {
+                    clear();
+                    return false;
+                }
+                output.seek(offset + 4);
+                int beforeLength = output.readInt();
+                int afterLength = output.readInt();
+                if (beforeLength < 0 || afterLength < 0) {
+                    clear();
+                    return false;
+                }
+                if (i == mFileOffsets.length) {
+                    long[] offsets = new long[i * 2];
+                    System.arraycopy(mFileOffsets, 0, offsets, 0, i);
+                    mFileOffsets = offsets;
+                }
+                mFileOffsets[i] = offset;
+                offset += HEADER_BYTES + 2L * (beforeLength + afterLength);
+            }
+            if (offset > length) {
+                clear();
+                return false;
+            }
+            mFileEnd = offset;
+            mSize = mSpilled = size;
+            mPosition = position;
+            trim();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            clear();
+            return false;
+        }
+    }
+
+    /**
+     * Merges the edit into the last edit if it continues it, like typed characters
+     */
+    private boolean merge(int start, CharSequence before, CharSequence after, long time) {
+        int last = mSize - mSpilled - 1;
+        if (last < 0 || time - mLastTime > MERGE_INTERVAL) {
+            return false;
+        }
+        int lastStart = mStarts[last];
+        int lastBefore = mBeforeLengths[last];
+        int lastAfter = mAfterLengths[last];
+        if (before.length() == 0 && after.length() > 0 && lastBefore == 0
+                && start == lastStart + lastAfter) {
+            //typing, the characters of the last edit are at the end of the pool
+            appendChars(after);
+            mAfterLengths[last] += after.length();
+            return true;
+        }
+        if (after.length() == 0 && before.length() > 0 && lastAfter == 0 && lastBefore > 0) {
+            if (start == lastStart) {
+                //deleting forward
+                appendChars(before);
+                mBeforeLengths[last] += before.length();
+                return true;
+            }
+            if (start + before.length() == lastStart) {
+                //deleting backward, the deleted characters go before those of the last edit
+                int offset = mCharOffsets[last];
+                ensureChars(mCharCount + before.length());
+                System.arraycopy(mChars, offset, mChars, offset + before.length(), lastBefore);
+                for (int i = 0; i < before.length(); i++) {
+                    mChars[offset + i] = before.charAt(i);
+                }
+                mCharCount += before.length();
+                mStarts[last] = start;
+                mBeforeLengths[last] += before.length();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureChars(int capacity) {
+        if (capacity > mChars.length) {
+            char[] chars = new char[Math.max(capacity, mChars.length * 2)];
+            System.arraycopy(mChars, 0, chars, 0, mCharCount);
+            mChars = chars;
+        }
+    }
+
+    private void appendChars(CharSequence text) {
+        int length = text.length();
+        ensureChars(mCharCount + length);
+        if (text instanceof String) {
+            ((String) text).getChars(0, length, mChars, mCharCount);
+        } else {
+            for (int i = 0; i < length; i++) {
+                mChars[mCharCount + i] = text.charAt(i);
+            }
+        }
+        mCharCount += length;
+    }
+
+    /**
+     * Forgets the edits from index
+     */
+    private void truncate(int index) {
+        if (index >= mSize) {
+            return;
+        }
+        if (index < mSpilled) {
+            mSpilled = index;
+            mFileEnd = mFileOffsets[index];
+            mCharCount = 0;
+            try {
+                openFile().setLength(mFileEnd);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            mCharCount = mCharOffsets[index - mSpilled];
+        }
+        mSize = index;
+        mPosition = Math.min(mPosition, index);
+    }
+
+    /**
+     * Forgets the oldest edits above the maximum number of edits or size of the file
+     */
+    private void trim() {
+        int memorySize = mSize - mSpilled;
+        int count = 0;
+        while ((mMaxSize >= 0 && mSize - count > mMaxSize)
+                || (count < mSpilled && mFileEnd - mFileOffsets[count] > MAX_FILE_BYTES)) {
+            count++;
+        }
+        if (count == 0) {
+            return;
+        }
+        if (count > mPosition) {
+            //the edits which are left could not be redone from the current text
+            clear();
+            return;
+        }
+        int spilled = Math.min(count, mSpilled);
+        if (spilled > 0) {
+            System.arraycopy(mFileOffsets, spilled, mFileOffsets, 0, mSpilled - spilled);
+            mSpilled -= spilled;
+        }
+        removeFromMemory(count - spilled, memorySize);
+        mSize -= count;
+        mPosition -= count;
+        compactFile(false);
+    }
+
+    /**
+     * Moves the edits in the file to its start when most of the file is forgotten edits
+     *
+     * @param always true to move them even if few edits are forgotten
+     */
+    private void compactFile(boolean always) {
+        long head = mSpilled == 0 ? mFileEnd : mFileOffsets[0];
+        if (head == 0 || (!always && head < mFileEnd - head)) {
+            return;
+        }
+        try {
+            RandomAccessFile output = openFile();
+            byte[] buffer = new byte[64 * 1024];
+            for (long offset = head; offset < mFileEnd; offset += buffer.length) {
+                int length = (int) Math.min(buffer.length, mFileEnd - offset);
+                output.seek(offset);
+                output.readFully(buffer, 0, length);
+                output.seek(offset - head);
+                output.write(buffer, 0, length);
+            }
+            mFileEnd -= head;
+            output.setLength(mFileEnd);
+            for (int i = 0; i < mSpilled; i++) {
+                mFileOffsets[i] -= head;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            forgetSpilled();
+        }
+    }
+
+    /**
+     * Appends the oldest edits in memory to the file until the characters in memory fit in
+     * the budget
+     *
+     * @param all true to append all edits
+     */
+    private void spill(boolean all) {
+        int memorySize = mSize - mSpilled;
+        int count = 0;
+        while (count < memorySize && (all || mCharCount - mCharOffsets[count] > MAX_MEMORY_CHARS)) {
+            count++;
+        }
+        if (count == 0) {
+            return;
+        }
+        int spilled = mSpilled;
+        long fileEnd = mFileEnd;
+        try {
+            RandomAccessFile output = openFile();
+            output.seek(mFileEnd);
+            byte[] buffer = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int charCount = mBeforeLengths[i] + mAfterLengths[i];
+                int length = HEADER_BYTES + 2 * charCount;
+                if (buffer.length < length) {
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                }
+                writeInt(buffer, 0, mStarts[i]);
+                writeInt(buffer, 4, mBeforeLengths[i]);
+                writeInt(buffer, 8, mAfterLengths[i]);
+                int offset = mCharOffsets[i];
+                for (int j = 0; j < charCount; j++) {
+                    char c = mChars[offset + j];
+                    buffer[HEADER_BYTES + 2 * j] = (byte) (c >>> 8);
+                    buffer[HEADER_BYTES + 2 * j + 1] = (byte) c;
+                }
+                output.write(buffer, 0, length);
+
+                if (mSpilled == mFileOffsets.length) {
+                    long[] offsets = new long[mSpilled * 2];
+                    System.arraycopy(mFileOffsets, 0, offsets, 0, mSpilled);
+                    mFileOffsets = offsets;
+                }
+                mFileOffsets[mSpilled++] = mFileEnd;
+                mFileEnd += length;
+            }
+        } catch (IOException e) {
+            //the history can not be older than the edits in memory
+            e.printStackTrace();
+            mSpilled = spilled;
+            mFileEnd = fileEnd;
+            forgetSpilled();
+            mSize -= count;
+            mPosition = Math.max(0, mPosition - count);
+        }
+        removeFromMemory(count, memorySize);
+    }
+
+    private void forgetSpilled() {
+        mSize -= mSpilled;
+        mPosition = Math.max(0, mPosition - mSpilled);
+        mSpilled = 0;
+        mFileEnd = 0;
+        closeFile();
+        if (mFile != null) {
+            //noinspection ResultOfMethodCallIgnored
+            mFile.delete();
+            mFile = null;
+        }
+    }
+
+    /**
+     * Removes the oldest edits in memory, which were written to the file or are forgotten
+     *
+     * @param memorySize number of edits in memory before
+     */
+    private void removeFromMemory(int count, int memorySize) {
+        if (count == 0) {
+            return;
+        }
+        int remaining = memorySize - count;
+        int charStart = remaining == 0 ? mCharCount : mCharOffsets[count];
+        System.arraycopy(mStarts, count, mStarts, 0, remaining);
+        System.arraycopy(mBeforeLengths, count, mBeforeLengths, 0, remaining);
+        System.arraycopy(mAfterLengths, count, mAfterLengths, 0, remaining);
+        System.arraycopy(mCharOffsets, count, mCharOffsets, 0, remaining);
+        for (int i = 0; i < remaining; i++) {
+            mCharOffsets[i] -= charStart;
+        }
+        System.arraycopy(mChars, charStart, mChars, 0, mCharCount - charStart);
+        mCharCount -= charStart;
+        if (mChars.length > 4 * MAX_MEMORY_CHARS && mCharCount < MAX_MEMORY_CHARS) {
+            //do not keep the memory of a large paste
+            char[] chars = new char[2 * MAX_MEMORY_CHARS];
+            System.arraycopy(mChars, 0, chars, 0, mCharCount);
+            mChars = chars;
+        }
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    @Nullable
+    private Edit read(int index) {
+        if (index >= mSpilled) {
+            int i = index - mSpilled;
+            int offset = mCharOffsets[i];
+            return new Edit(mStarts[i],
+                    new String(mChars, offset, mBeforeLengths[i]),
+                    new String(mChars, offset + mBeforeLengths[i], mAfterLengths[i]));
+        }
+        try {
+            RandomAccessFile output = openFile();
+            output.seek(mFileOffsets[index]);
+            int start = output.readInt();
+            int beforeLength = output.readInt();
+            int afterLength = output.readInt();
+            byte[] bytes = new byte[2 * (beforeLength + afterLength)];
+            output.readFully(bytes);
+            char[] chars = new char[beforeLength + afterLength];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) (((bytes[2 * i] & 0xff) << 8) | (bytes[2 * i + 1] & 0xff));
+            }
+            return new Edit(start, new String(chars, 0, beforeLength),
+                    new String(chars, beforeLength, afterLength));
+        } catch (IOException e) {
+            e.printStackTrace();
+            clear();
+            return null;
+        }
+    }
+
+    private RandomAccessFile openFile() throws IOException {
+        if (mOutput == null) {
+            if (mFile == null) {
+                if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                    throw new IOException("Can not create " + mDirectory);
+                }
+                mFile = File.createTempFile(PREFIX, DOT_TMP, mDirectory);
+            }
+            mOutput = new RandomAccessFile(mFile, "rw");
+        }
+        return mOutput;
+    }
+
+    private void closeFile() {
+        if (mOutput != null) {
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mOutput = null;
+        }
+    }
+
+    static final class Edit {
+        final int start;
+        /**
+         * The replaced characters
+         */
+        final String before;
+        /**
+         * The inserted characters
+         */
+        final String after;
+
+        Edit(int start, String before, String after) {
+            this.start = start;
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public String toString() {
+            return "Edit{" +
+                    "start=" + start +
+                    ", before=" + before +
+                    ", after=" + after +
+                    '}';
+        }
+    }
+}
@@ -21,7 +21,7 @@ import android.content.SharedPreferences;
 import android.widget.EditText;
 
 public class UndoManager implements IUndoManager {
-    private static final int MAX_HISTORY_EDIT = 100;
+    private static final int MAX_HISTORY_EDIT = 10000;
 
     private UndoRedoHelper mUndoRedoHelper;
 
@@ -23,13 +23,14 @@ package com.duy.ide.editor.content;/*
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.text.Editable;
+import android.text.GetChars;
 import android.text.Selection;
 import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.text.style.UnderlineSpan;
 import android.widget.EditText;
 
-import java.util.LinkedList;
+import java.io.File;
 
 public class UndoRedoHelper {
     private static final String TAG = UndoRedoHelper.class.getCanonicalName();
@@ -43,10 +44,33 @@ public class UndoRedoHelper {
 
     public UndoRedoHelper(EditText textView) {
         mTextView = textView;
-        mEditHistory = new EditHistory();
+        mEditHistory = new EditHistory(new File(textView.getContext().getCacheDir(), "edit_history"));
         mChangeListener = new EditTextChangeListener();
     }
 
+    /**
+     * Same as {@link String#hashCode()}, without copying the text to a string
+     */
+    private static int hashCode(CharSequence text) {
+        int hash = 0;
+        int length = text.length();
+        if (text instanceof GetChars) {
+            char[] buffer = new char[4096];
+            for (int start = 0; start < length; start += buffer.length) {
+                int end = Math.min(length, start + buffer.length);
+                ((GetChars) text).getChars(start, end, buffer, 0);
+                for (int i = 0; i < end - start; i++) {
+                    hash = 31 * hash + buffer[i];
+                }
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+        }
+        return hash;
+    }
+
     public void attach() {
         mTextView.addTextChangedListener(mChangeListener);
     }
@@ -56,7 +80,7 @@ public class UndoRedoHelper {
     }
 
     public void setMaxHistorySize(int maxHistorySize) {
-        mEditHistory.setMaxHistorySize(maxHistorySize);
+        mEditHistory.setMaxSize(maxHistorySize);
     }
 
     public void clearHistory() {
@@ -64,46 +88,56 @@ public class UndoRedoHelper {
     }
 
     public boolean getCanUndo() {
-        return (mEditHistory.mmPosition > 0);
+        return mEditHistory.canUndo();
     }
 
     public void undo() {
-        EditItem edit = mEditHistory.getPrevious();
+        EditHistory.Edit edit = mEditHistory.undo();
         if (edit == null) {
             return;
         }
 
         Editable text = mTextView.getEditableText();
-        int start = edit.mmStart;
-        int end = start + (edit.mmAfter != null ? edit.mmAfter.length() : 0);
+        int start = edit.start;
+        int end = start + edit.after.length();
+        if (end > text.length()) {
+            //the history does not match the text
+            mEditHistory.clear();
+            return;
+        }
 
         mIsUndoOrRedo = true;
-        text.replace(start, end, edit.mmBefore);
+        text.replace(start, end, edit.before);
         mIsUndoOrRedo = false;
 
         for (Object o : text.getSpans(0, text.length(), UnderlineSpan.class)) {
             text.removeSpan(o);
         }
 
-        Selection.setSelection(text, edit.mmBefore == null ? start : (start + edit.mmBefore.length()));
+        Selection.setSelection(text, start + edit.before.length());
     }
 
     public boolean getCanRedo() {
-        return (mEditHistory.mmPosition < mEditHistory.mmHistory.size());
+        return mEditHistory.canRedo();
     }
 
     public void redo() {
-        EditItem edit = mEditHistory.getNext();
+        EditHistory.Edit edit = mEditHistory.redo();
         if (edit == null) {
             return;
         }
 
         Editable text = mTextView.getEditableText();
-        int start = edit.mmStart;
-        int end = start + (edit.mmBefore != null ? edit.mmBefore.length() : 0);
+        int start = edit.start;
+        int end = start + edit.before.length();
+        if (end > text.length()) {
+            //the history does not match the text
+            mEditHistory.clear();
+            return;
+        }
 
         mIsUndoOrRedo = true;
-        text.replace(start, end, edit.mmAfter);
+        text.replace(start, end, edit.after);
         mIsUndoOrRedo = false;
 
         // This will get rid of underlines inserted when editor tries to come
@@ -112,29 +146,27 @@ public class UndoRedoHelper {
             text.removeSpan(o);
         }
 
-        Selection.setSelection(text, edit.mmAfter == null ? start
-                : (start + edit.mmAfter.length()));
+        Selection.setSelection(text, start + edit.after.length());
     }
 
 
+    /**
+     * Stores the file of the edits and the hash code of the text, the text itself is not copied
+     */
     public void storePersistentState(Editor editor, String prefix) {
         // Store hash code of text in the editor so that we can check if the
         // editor contents has changed.
-        editor.putString(prefix + ".hash",
-                String.valueOf(mTextView.getText().toString().hashCode()));
-        editor.putInt(prefix + ".maxSize", mEditHistory.mmMaxHistorySize);
-        editor.putInt(prefix + ".position", mEditHistory.mmPosition);
-        editor.putInt(prefix + ".size", mEditHistory.mmHistory.size());
-
-        int i = 0;
-        for (EditItem ei : mEditHistory.mmHistory) {
-            String pre = prefix + "." + i;
+        CharSequence text = mTextView.getText();
+        editor.putString(prefix + ".hash", String.valueOf(hashCode(text)));
+        editor.putInt(prefix + ".length", text.length());
+        editor.putInt(prefix + ".position", mEditHistory.getPosition());
+        editor.putInt(prefix + ".size", mEditHistory.size());
 
-            editor.putInt(pre + ".start", ei.mmStart);
-            editor.putString(pre + ".before", ei.mmBefore.toString());
-            editor.putString(pre + ".after", ei.mmAfter.toString());
-
-            i++;
+        File file = mEditHistory.save();
+        if (file != null) {
+            editor.putString(prefix + ".file", file.getPath());
+        } else {
+            editor.remove(prefix + ".file");
         }
     }
 
@@ -144,6 +176,11 @@ public class UndoRedoHelper {
         boolean ok = doRestorePersistentState(sp, prefix);
         if (!ok) {
             mEditHistory.clear();
+            String path = sp.getString(prefix + ".file", null);
+            if (path != null) {
+                //noinspection ResultOfMethodCallIgnored
+                new File(path).delete();
+            }
         }
 
         return ok;
@@ -151,149 +188,37 @@ public class UndoRedoHelper {
 
     private boolean doRestorePersistentState(SharedPreferences sp, String prefix) {
         String hash = sp.getString(prefix + ".hash", null);
-        if (hash == null) {
+        String path = sp.getString(prefix + ".file", null);
+        if (hash == null || path == null) {
             // No state to be restored.
             return true;
         }
 
-        if (Integer.valueOf(hash) != mTextView.getText().toString().hashCode()) {
-            return false;
-        }
-
-        mEditHistory.clear();
-        mEditHistory.mmMaxHistorySize = sp.getInt(prefix + ".maxSize", -1);
-
-        int count = sp.getInt(prefix + ".size", -1);
-        if (count == -1) {
+        CharSequence text = mTextView.getText();
+        if (sp.getInt(prefix + ".length", -1) != text.length()
+                || Integer.valueOf(hash) != hashCode(text)) {
             return false;
         }
 
-        for (int i = 0; i < count; i++) {
-            String pre = prefix + "." + i;
-
-            int start = sp.getInt(pre + ".start", -1);
-            String before = sp.getString(pre + ".before", null);
-            String after = sp.getString(pre + ".after", null);
-
-            if (start == -1 || before == null || after == null) {
-                return false;
-            }
-            mEditHistory.add(new EditItem(start, before, after));
-        }
-
-        mEditHistory.mmPosition = sp.getInt(prefix + ".position", -1);
-        if (mEditHistory.mmPosition == -1) {
+        int size = sp.getInt(prefix + ".size", -1);
+        int position = sp.getInt(prefix + ".position", -1);
+        if (size == -1 || position == -1) {
             return false;
         }
-
-        return true;
+        return mEditHistory.load(new File(path), size, position);
     }
 
     // =================================================================== //
 
-    enum ActionType {
-        INSERT, DELETE, PASTE, NOT_DEF;
-    }
-
-    private final class EditHistory {
-        private final LinkedList<EditItem> mmHistory = new LinkedList<EditItem>();
-        private int mmPosition = 0;
-        private int mmMaxHistorySize = -1;
-
-        private void clear() {
-            mmPosition = 0;
-            mmHistory.clear();
-        }
-
-        private void add(EditItem item) {
-            while (mmHistory.size() > mmPosition) {
-                mmHistory.removeLast();
-            }
-            mmHistory.add(item);
-            mmPosition++;
-
-            if (mmMaxHistorySize >= 0) {
-                trimHistory();
-            }
-        }
-
-        private void setMaxHistorySize(int maxHistorySize) {
-            mmMaxHistorySize = maxHistorySize;
-            if (mmMaxHistorySize >= 0) {
-                trimHistory();
-            }
-        }
-
-        private void trimHistory() {
-            while (mmHistory.size() > mmMaxHistorySize) {
-                mmHistory.removeFirst();
-                mmPosition--;
-            }
-
-            if (mmPosition < 0) {
-                mmPosition = 0;
-            }
-        }
-
-        private EditItem getCurrent() {
-            if (mmPosition == 0) {
-                return null;
-            }
-            return mmHistory.get(mmPosition - 1);
-        }
-
-        private EditItem getPrevious() {
-            if (mmPosition == 0) {
-                return null;
-            }
-            mmPosition--;
-            return mmHistory.get(mmPosition);
-        }
-
-        private EditItem getNext() {
-            if (mmPosition >= mmHistory.size()) {
-                return null;
-            }
-
-            EditItem item = mmHistory.get(mmPosition);
-            mmPosition++;
-            return item;
-        }
-    }
-
-    private final class EditItem {
-        private int mmStart;
-        private CharSequence mmBefore;
-        private CharSequence mmAfter;
-
-        public EditItem(int start, CharSequence before, CharSequence after) {
-            mmStart = start;
-            mmBefore = before;
-            mmAfter = after;
-        }
-
-        @Override
-        public String toString() {
-            return "EditItem{" +
-                    "mmStart=" + mmStart +
-                    ", mmBefore=" + mmBefore +
-                    ", mmAfter=" + mmAfter +
-                    '}';
-        }
-    }
-
     private final class EditTextChangeListener implements TextWatcher {
-        private CharSequence mBeforeChange;
-        private CharSequence mAfterChange;
-        private ActionType lastActionType = ActionType.NOT_DEF;
-        private long lastActionTime = 0;
+        private String mBeforeChange;
 
         public void beforeTextChanged(CharSequence s, int start, int count, int after) {
             if (mIsUndoOrRedo) {
                 return;
             }
 
-            mBeforeChange = s.subSequence(start, start + count);
+            mBeforeChange = TextUtils.substring(s, start, start + count);
         }
 
         public void onTextChanged(CharSequence s, int start, int before, int count) {
@@ -301,40 +226,12 @@ public class UndoRedoHelper {
                 return;
             }
 
-            mAfterChange = s.subSequence(start, start + count);
-            makeBatch(start);
-        }
-
-        private void makeBatch(int start) {
-            ActionType at = getActionType();
-            EditItem editItem = mEditHistory.getCurrent();
-            if ((lastActionType != at || ActionType.PASTE == at
-                    || System.currentTimeMillis() - lastActionTime > 1000)
-                    || editItem == null) {
-                mEditHistory.add(new EditItem(start, mBeforeChange, mAfterChange));
-            } else {
-                if (at == ActionType.DELETE) {
-                    editItem.mmStart = start;
-                    editItem.mmBefore = TextUtils.concat(mBeforeChange, editItem.mmBefore);
-                } else {
-                    editItem.mmAfter = TextUtils.concat(editItem.mmAfter, mAfterChange);
-                }
-            }
-            lastActionType = at;
-            lastActionTime = System.currentTimeMillis();
-        }
-
-        private ActionType getActionType() {
-            if (!TextUtils.isEmpty(mBeforeChange) && TextUtils.isEmpty(mAfterChange)) {
-                return ActionType.DELETE;
-            } else if (TextUtils.isEmpty(mBeforeChange) && !TextUtils.isEmpty(mAfterChange)) {
-                return ActionType.INSERT;
-            } else {
-                return ActionType.PASTE;
-            }
+            String afterChange = TextUtils.substring(s, start, start + count);
+            //typing and deleting characters one after the other are merged into one edit
+            mEditHistory.add(start, mBeforeChange, afterChange, System.currentTimeMillis());
         }
 
         public void afterTextChanged(Editable s) {
         }
     }
-}
\ No newline at end of file
+}
@@ -18,16 +18,30 @@
 package com.duy.ide.editor.internal.suggestion;
 
 public class Editor {
-    private final String text;
+    /**
+     * Snapshot of the text, it must not change
+     */
+    private final CharSequence text;
     private final int cursor;
+    private String string;
+    /**
+     * Set when a newer request replaced this one, providers should stop as soon as possible
+     */
+    private volatile boolean cancelled = false;
 
-    public Editor(String text, int cursor) {
+    public Editor(CharSequence text, int cursor) {
         this.text = text;
         this.cursor = cursor;
     }
 
+    /**
+     * The string is only created when a provider needs it, on the thread of the provider
+     */
     public String getText() {
-        return text;
+        if (string == null) {
+            string = text.toString();
+        }
+        return string;
     }
 
     public int getCursor() {
@@ -38,10 +52,18 @@ public class Editor {
         return text.length();
     }
 
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     @Override
     public String toString() {
         return "Editor{" +
-                "text='" + text + '\'' +
+                "text='" + getText() + '\'' +
                 ", cursor=" + cursor +
                 '}';
     }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.editor.internal.suggestion;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples and computes percentiles of them.
+ */
+public class LatencyStats {
+    private final long[] mSamples;
+    private int mCount = 0;
+    private int mNext = 0;
+
+    public LatencyStats(int capacity) {
+        mSamples = new long[capacity];
+    }
+
+    public synchronized void record(long millis) {
+        mSamples[mNext] = millis;
+        mNext = (mNext + 1) % mSamples.length;
+        if (mCount < mSamples.length) {
+            mCount++;
+        }
+    }
+
+    /**
+     * @return number of samples are kept, at most the capacity
+     */
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @param percentile - from 0 to 100
+     * @return latency in milliseconds, 0 if there is no sample
+     */
+    public synchronized long getPercentile(int percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(mSamples, mCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * mCount) - 1;
+        return sorted[Math.max(0, Math.min(mCount - 1, index))];
+    }
+
+    public synchronized void reset() {
+        mCount = 0;
+        mNext = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "p50=" + getPercentile(50) + "ms, p95=" + getPercentile(95) + "ms, n=" + getCount();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.editor.internal.suggestion;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.duy.common.DLog;
+import com.duy.ide.code.api.SuggestItem;
+import com.duy.ide.code.api.SuggestionProvider;
+import com.duy.ide.editor.view.SuggestionEditor;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Computes suggestions on a dedicated background thread.
+ * <p>
+ * One worker serves all editors, so a provider shared by several editors is only called from
+ * one thread. Only the latest request is kept: requests arrive while the worker is busy replace
+ * each other, and the running request is cancelled so the provider can stop early. Results of
+ * a request which is no longer the latest one are dropped.
+ */
+public class SuggestionWorker {
+    private static final String TAG = "SuggestionWorker";
+    private static final int LOG_INTERVAL = 50;
+    private static SuggestionWorker sInstance;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor;
+    /**
+     * Latency from the request to the delivery of suggestions, per keystroke
+     */
+    private final LatencyStats mLatencyStats = new LatencyStats(256);
+
+    private final Object mLock = new Object();
+    @Nullable
+    private Request mPending;
+    @Nullable
+    private Request mRunning;
+    @Nullable
+    private Request mLatest;
+    private boolean mScheduled = false;
+    /**
+     * Number of delivered results, only accessed on the main thread
+     */
+    private int mDeliveredCount = 0;
+
+    private SuggestionWorker() {
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "suggestion-worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @NonNull
+    public static synchronized SuggestionWorker getInstance() {
+        if (sInstance == null) {
+            sInstance = new SuggestionWorker();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Request suggestions at the cursor of the editor, must be called on the main thread
+     *
+     * @param text snapshot of the text of the editor, which is not copied
+     */
+    public void request(@NonNull SuggestionEditor editor, @NonNull CharSequence text,
+                        @NonNull SuggestionProvider provider) {
+        Editor content = new Editor(text, editor.getSelectionStart());
+        Request request = new Request(editor, provider, content);
+        synchronized (mLock) {
+            if (mRunning != null) {
+                mRunning.content.cancel();
+            }
+            mPending = request;
+            mLatest = request;
+            if (mScheduled) {
+                return;
+            }
+            mScheduled = true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+    }
+
+    /**
+     * Run a task on the worker thread after the requests which are already running or queued.
+     * Used to change state which is read by suggestion providers without locking it.
+     */
+    public void execute(@NonNull Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * Cancel the running and pending requests of the editor, their results will not be
+     * delivered. Requests of other editors are not affected.
+     */
+    public void cancel(@NonNull SuggestionEditor editor) {
+        synchronized (mLock) {
+            if (mRunning != null && mRunning.editor == editor) {
+                mRunning.content.cancel();
+            }
+            if (mPending != null && mPending.editor == editor) {
+                mPending = null;
+            }
+            if (mLatest != null && mLatest.editor == editor) {
+                mLatest = null;
+            }
+        }
+    }
+
+    @NonNull
+    public LatencyStats getLatencyStats() {
+        return mLatencyStats;
+    }
+
+    private void drain() {
+        while (true) {
+            final Request request;
+            synchronized (mLock) {
+                request = mPending;
+                mPending = null;
+                mRunning = request;
+                if (request == null) {
+                    mScheduled = false;
+                    return;
+                }
+            }
+
+            ArrayList<SuggestItem> result = null;
+            try {
+                result = request.provider.getSuggestions(request.content);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            synchronized (mLock) {
+                mRunning = null;
+            }
+            if (request.content.isCancelled()) {
+                continue;
+            }
+
+            final ArrayList<SuggestItem> suggestions =
+                    result != null ? result : new ArrayList<SuggestItem>();
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(request, suggestions);
+                }
+            });
+        }
+    }
+
+    private void deliver(Request request, ArrayList<SuggestItem> suggestions) {
+        synchronized (mLock) {
+            if (request != mLatest) {
+                //the text changed again while the result was posted
+                return;
+            }
+            mLatest = null;
+        }
+        request.editor.setSuggestData(suggestions);
+
+        mLatencyStats.record(SystemClock.uptimeMillis() - request.time);
+        mDeliveredCount++;
+        if (DLog.DEBUG && mDeliveredCount % LOG_INTERVAL == 0) {
+            DLog.d(TAG, "suggestion latency: " + mLatencyStats);
+        }
+    }
+
+    private static class Request {
+        final SuggestionEditor editor;
+        final SuggestionProvider provider;
+        final Editor content;
+        final long time = SystemClock.uptimeMillis();
+
+        Request(SuggestionEditor editor, SuggestionProvider provider, Editor content) {
+            this.editor = editor;
+            this.provider = provider;
+            this.content = content;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.mozilla.intl.chardet.nsICharsetDetectionObserver;
 import org.mozilla.intl.chardet.nsPSMDetector;
 
 import java.io.BufferedInputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -57,6 +58,42 @@ public class CharsetDetector {
         }
         det.DataEnd();
 
+        return toEncoding(charsets);
+    }
+
+    /**
+     * Detects the charset of bytes which are already in memory, so the file is not read again
+     */
+    public static String detect(ByteBuffer bytes) {
+        nsDetector det = new nsDetector(nsPSMDetector.ALL);
+
+        final List<String> charsets = new ArrayList<>();
+        det.Init(new nsICharsetDetectionObserver() {
+            public void Notify(String charset) {
+                charsets.add(charset);
+            }
+        });
+
+        ByteBuffer input = bytes.duplicate();
+        byte[] buf = new byte[1024];
+        boolean isAscii = true;
+        while (input.hasRemaining()) {
+            int len = Math.min(buf.length, input.remaining());
+            input.get(buf, 0, len);
+
+            if (isAscii)
+                isAscii = det.isAscii(buf, len);
+
+            // nothing changes once the detector is done
+            if (!isAscii && det.DoIt(buf, len, false))
+                break;
+        }
+        det.DataEnd();
+
+        return toEncoding(charsets);
+    }
+
+    private static String toEncoding(List<String> charsets) {
         String encoding = charsets.isEmpty() ? "UTF-8" : charsets.get(0);
         if ("GB2312".equals(encoding)) {
             encoding = "GBK";
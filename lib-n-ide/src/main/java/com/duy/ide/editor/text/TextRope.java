@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.editor.text;
+
+import android.text.GetChars;
+import androidx.annotation.NonNull;
+
+/**
+ * Immutable text stored as a balanced tree of chunks of characters.
+ * <p>
+ * Every node knows the number of characters and line separators below it, so the line of an
+ * offset and the offset of a line are found in O(log n). An edit returns a new rope which shares
+ * all chunks but the edited ones with the old rope, so a rope is a snapshot which can be read on
+ * any thread while the document is edited.
+ * <p>
+ * As in {@link org.gjt.sp.jedit.LineManager}, both '\r' and '\n' end a line.
+ */
+public final class TextRope implements GetChars {
+    public static final TextRope EMPTY = new TextRope(new Leaf(new char[0]));
+
+    /**
+     * Maximum number of characters of a chunk, text is split into half full chunks so that
+     * typing in a chunk does not split it
+     */
+    private static final int MAX_LEAF = 2048;
+
+    @NonNull
+    private final Node root;
+
+    private TextRope(@NonNull Node root) {
+        this.root = root;
+    }
+
+    @NonNull
+    public static TextRope valueOf(@NonNull CharSequence text) {
+        Node node = build(text, 0, text.length());
+        return node == null ? EMPTY : new TextRope(node);
+    }
+
+    private static boolean isLineSeparator(char c) {
+        return c == '\r' || c == '\n';
+    }
+
+    private static int height(Node node) {
+        return node == null ? -1 : node.height;
+    }
+
+    /**
+     * @return a balanced tree of half full chunks, null if the text is empty
+     */
+    private static Node build(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return null;
+        }
+        if (length <= MAX_LEAF / 2) {
+            char[] chars = new char[length];
+            if (text instanceof String) {
+                ((String) text).getChars(start, end, chars, 0);
+            } else if (text instanceof TextRope) {
+                ((TextRope) text).getChars(start, end, chars, 0);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    chars[i] = text.charAt(start + i);
+                }
+            }
+            return new Leaf(chars);
+        }
+        int leaves = (length + MAX_LEAF / 2 - 1) / (MAX_LEAF / 2);
+        int middle = start + (leaves / 2) * (MAX_LEAF / 2);
+        return new Branch(build(text, start, middle), build(text, middle, end));
+    }
+
+    /**
+     * Concatenates two trees, keeping the result balanced
+     */
+    private static Node join(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left instanceof Leaf && right instanceof Leaf && left.length + right.length <= MAX_LEAF) {
+            char[] chars = new char[left.length + right.length];
+            System.arraycopy(((Leaf) left).chars, 0, chars, 0, left.length);
+            System.arraycopy(((Leaf) right).chars, 0, chars, left.length, right.length);
+            return new Leaf(chars);
+        }
+        if (left.height > right.height + 1) {
+            Branch branch = (Branch) left;
+            return balance(branch.left, join(branch.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Branch branch = (Branch) right;
+            return balance(join(left, branch.left), branch.right);
+        }
+        return new Branch(left, right);
+    }
+
+    /**
+     * Creates a branch of two balanced trees whose heights differ by up to two
+     */
+    private static Node balance(Node left, Node right) {
+        if (height(left) > height(right) + 1) {
+            Branch branch = (Branch) left;
+            if (height(branch.right) > height(branch.left)) {
+                Branch inner = (Branch) branch.right;
+                return new Branch(new Branch(branch.left, inner.left), new Branch(inner.right, right));
+            }
+            return new Branch(branch.left, new Branch(branch.right, right));
+        }
+        if (height(right) > height(left) + 1) {
+            Branch branch = (Branch) right;
+            if (height(branch.left) > height(branch.right)) {
+                Branch inner = (Branch) branch.left;
+                return new Branch(new Branch(left, inner.left), new Branch(inner.right, branch.right));
+            }
+            return new Branch(new Branch(left, branch.left), branch.right);
+        }
+        return new Branch(left, right);
+    }
+
+    /**
+     * @return the trees of the characters before and after offset, null when empty
+     */
+    private static Node[] split(Node node, int offset) {
+        if (offset == 0) {
+            return new Node[]{null, node};
+        }
+        if (offset == node.length) {
+            return new Node[]{node, null};
+        }
+        if (node instanceof Leaf) {
+            char[] chars = ((Leaf) node).chars;
+            char[] before = new char[offset];
+            char[] after = new char[chars.length - offset];
+            System.arraycopy(chars, 0, before, 0, before.length);
+            System.arraycopy(chars, offset, after, 0, after.length);
+            return new Node[]{new Leaf(before), new Leaf(after)};
+        }
+        Branch branch = (Branch) node;
+        if (offset < branch.left.length) {
+            Node[] parts = split(branch.left, offset);
+            parts[1] = join(parts[1], branch.right);
+            return parts;
+        }
+        Node[] parts = split(branch.right, offset - branch.left.length);
+        parts[0] = join(branch.left, parts[0]);
+        return parts;
+    }
+
+    /**
+     * Replaces characters inside one chunk, copying only the chunk and its parents
+     *
+     * @return null if the characters are not inside one chunk or it would become too large or empty
+     */
+    private static Node replaceInLeaf(Node node, int start, int end, CharSequence text) {
+        if (node instanceof Leaf) {
+            char[] chars = ((Leaf) node).chars;
+            int length = chars.length - (end - start) + text.length();
+            if (length > MAX_LEAF || length == 0) {
+                return null;
+            }
+            char[] result = new char[length];
+            System.arraycopy(chars, 0, result, 0, start);
+            for (int i = 0; i < text.length(); i++) {
+                result[start + i] = text.charAt(i);
+            }
+            System.arraycopy(chars, end, result, start + text.length(), chars.length - end);
+            return new Leaf(result);
+        }
+        Branch branch = (Branch) node;
+        int leftLength = branch.left.length;
+        if (end <= leftLength) {
+            Node left = replaceInLeaf(branch.left, start, end, text);
+            return left == null ? null : new Branch(left, branch.right);
+        }
+        if (start >= leftLength) {
+            Node right = replaceInLeaf(branch.right, start - leftLength, end - leftLength, text);
+            return right == null ? null : new Branch(branch.left, right);
+        }
+        return null;
+    }
+
+    @Override
+    public int length() {
+        return root.length;
+    }
+
+    /**
+     * @return number of lines, one more than the number of line separators
+     */
+    public int getLineCount() {
+        return root.lineSeparators + 1;
+    }
+
+    /**
+     * @return the line of the character at offset, offsets past the end are on the last line
+     */
+    public int getLineOfOffset(int offset) {
+        offset = Math.max(0, Math.min(offset, root.length));
+        int line = 0;
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            if (offset < branch.left.length) {
+                node = branch.left;
+            } else {
+                offset -= branch.left.length;
+                line += branch.left.lineSeparators;
+                node = branch.right;
+            }
+        }
+        //number of separators before offset
+        int[] separators = ((Leaf) node).separators;
+        int low = 0;
+        int high = separators.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (separators[middle] < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return line + low;
+    }
+
+    /**
+     * @return offset of the first character of the line
+     */
+    public int getLineStartOffset(int line) {
+        if (line < 0 || line >= getLineCount()) {
+            throw new IndexOutOfBoundsException("lineCount=" + getLineCount() + "; line=" + line);
+        }
+        if (line == 0) {
+            return 0;
+        }
+        //the start of the line follows the line-th separator
+        int offset = 0;
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            if (line <= branch.left.lineSeparators) {
+                node = branch.left;
+            } else {
+                line -= branch.left.lineSeparators;
+                offset += branch.left.length;
+                node = branch.right;
+            }
+        }
+        return offset + ((Leaf) node).separators[line - 1] + 1;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= root.length) {
+            throw new IndexOutOfBoundsException("length=" + root.length + "; index=" + index);
+        }
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            if (index < branch.left.length) {
+                node = branch.left;
+            } else {
+                index -= branch.left.length;
+                node = branch.right;
+            }
+        }
+        return ((Leaf) node).chars[index];
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dest, int destoff) {
+        if (start < 0 || end > root.length || start > end) {
+            throw new IndexOutOfBoundsException("length=" + root.length + "; start=" + start + "; end=" + end);
+        }
+        getChars(root, start, end, dest, destoff);
+    }
+
+    private static void getChars(Node node, int start, int end, char[] dest, int destoff) {
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            int leftLength = branch.left.length;
+            if (start < leftLength && end > leftLength) {
+                getChars(branch.left, start, leftLength, dest, destoff);
+                destoff += leftLength - start;
+                start = 0;
+                end -= leftLength;
+                node = branch.right;
+            } else if (end <= leftLength) {
+                node = branch.left;
+            } else {
+                start -= leftLength;
+                end -= leftLength;
+                node = branch.right;
+            }
+        }
+        System.arraycopy(((Leaf) node).chars, start, dest, destoff, end - start);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        char[] chars = new char[root.length];
+        getChars(root, 0, root.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * @return the text with the characters from start to end replaced by text
+     */
+    @NonNull
+    public TextRope replace(int start, int end, @NonNull CharSequence text) {
+        if (start < 0 || end > root.length || start > end) {
+            throw new IndexOutOfBoundsException("length=" + root.length + "; start=" + start + "; end=" + end);
+        }
+        if (start == end && text.length() == 0) {
+            return this;
+        }
+        Node node = replaceInLeaf(root, start, end, text);
+        if (node == null) {
+            Node[] before = split(root, start);
+            Node[] after = before[1] == null ? new Node[2] : split(before[1], end - start);
+            node = join(join(before[0], build(text, 0, text.length())), after[1]);
+        }
+        return node == null ? EMPTY : new TextRope(node);
+    }
+
+    @NonNull
+    public TextRope insert(int offset, @NonNull CharSequence text) {
+        return replace(offset, offset, text);
+    }
+
+    @NonNull
+    public TextRope delete(int start, int end) {
+        return replace(start, end, "");
+    }
+
+    private abstract static class Node {
+        final int length;
+        final int lineSeparators;
+        final int height;
+
+        Node(int length, int lineSeparators, int height) {
+            this.length = length;
+            this.lineSeparators = lineSeparators;
+            this.height = height;
+        }
+    }
+
+    private static final class Leaf extends Node {
+        private static final int[] NO_SEPARATORS = new int[0];
+
+        final char[] chars;
+        /**
+         * Indexes of the line separators in the chunk
+         */
+        final int[] separators;
+
+        Leaf(char[] chars) {
+            this(chars, findLineSeparators(chars));
+        }
+
+        private Leaf(char[] chars, int[] separators) {
+            super(chars.length, separators.length, 0);
+            this.chars = chars;
+            this.separators = separators;
+        }
+
+        private static int[] findLineSeparators(char[] chars) {
+            int count = 0;
+            for (char c : chars) {
+                if (isLineSeparator(c)) {
+                    count++;
+                }
+            }
+            if (count == 0) {
+                return NO_SEPARATORS;
+            }
+            int[] separators = new int[count];
+            count = 0;
+            for (int i = 0; i < chars.length; i++) {
+                if (isLineSeparator(chars[i])) {
+                    separators[count++] = i;
+                }
+            }
+            return separators;
+        }
+    }
+
+    private static final class Branch extends Node {
+        final Node left;
+        final Node right;
+
+        Branch(Node left, Node right) {
+            super(left.length + right.length, left.lineSeparators + right.lineSeparators,
+                    Math.max(left.height, right.height) + 1);
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
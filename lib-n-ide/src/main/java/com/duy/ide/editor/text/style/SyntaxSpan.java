@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.editor.text.style;
+
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.text.style.MetricAffectingSpan;
+
+import com.duy.ide.editor.theme.model.SyntaxStyle;
+
+import org.gjt.sp.jedit.awt.Font;
+
+/**
+ * Colors a token with the foreground, background and font style of its {@link SyntaxStyle},
+ * in one span instead of one span per attribute
+ */
+public class SyntaxSpan extends MetricAffectingSpan {
+    private final SyntaxStyle mStyle;
+
+    public SyntaxSpan(SyntaxStyle style) {
+        mStyle = style;
+    }
+
+    public SyntaxStyle getStyle() {
+        return mStyle;
+    }
+
+    @Override
+    public void updateDrawState(TextPaint paint) {
+        paint.setColor(mStyle.getForegroundColor());
+        if (mStyle.getBackgroundColor() != Color.TRANSPARENT) {
+            paint.bgColor = mStyle.getBackgroundColor();
+        }
+        updateMeasureState(paint);
+    }
+
+    @Override
+    public void updateMeasureState(TextPaint paint) {
+        Font font = mStyle.getFont();
+        if (font == null || font.getStyle() == Font.NORMAL) {
+            return;
+        }
+        // same as StyleSpan
+        Typeface old = paint.getTypeface();
+        int oldStyle = old == null ? Typeface.NORMAL : old.getStyle();
+        int want = oldStyle | font.getStyle();
+        Typeface typeface = old == null ? Typeface.defaultFromStyle(want) : Typeface.create(old, want);
+        int fake = want & ~typeface.getStyle();
+        if ((fake & Typeface.BOLD) != 0) {
+            paint.setFakeBoldText(true);
+        }
+        if ((fake & Typeface.ITALIC) != 0) {
+            paint.setTextSkewX(-0.25f);
+        }
+        paint.setTypeface(typeface);
+    }
+}
@@ -171,8 +171,6 @@ public class EditorThemeFragment extends Fragment {
             editorView.getEditableText().clearSpans();
             editorView.setText(sampleData);
 
-            buffer.setEditable(editorView.getText());
-
             buffer.insert(0, sampleData);
 
             int lineCount = buffer.getLineManager().getLineCount();
@@ -45,6 +45,7 @@ import com.duy.ide.editor.theme.model.EditorTheme;
 import com.jecelyin.common.utils.SysUtils;
 import com.jecelyin.editor.v2.Preferences;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public abstract class HighlightEditorView extends AppCompatEditText
@@ -74,6 +75,7 @@ public abstract class HighlightEditorView extends AppCompatEditText
     private int mTabWidth = 14;
     private boolean mIsAutoIndent = true;
     private boolean mIsAutoPair;
+    private final List<OnScrollChangeListener> mOnScrollChangeListeners = new ArrayList<>();
 
     public HighlightEditorView(Context context) {
         super(context);
@@ -320,6 +322,42 @@ public abstract class HighlightEditorView extends AppCompatEditText
 
     }
 
+    @Override
+    public void addOnScrollChangeListener(OnScrollChangeListener listener) {
+        mOnScrollChangeListeners.add(listener);
+    }
+
+    @Override
+    public void removeOnScrollChangeListener(OnScrollChangeListener listener) {
+        mOnScrollChangeListeners.remove(listener);
+    }
+
+    @Override
+    protected void onScrollChanged(int horiz, int vert, int oldHoriz, int oldVert) {
+        super.onScrollChanged(horiz, vert, oldHoriz, oldVert);
+        for (OnScrollChangeListener listener : mOnScrollChangeListeners) {
+            listener.onScrollChange(this, horiz, vert, oldHoriz, oldVert);
+        }
+    }
+
+    @Override
+    public int getFirstVisibleOffset() {
+        Layout layout = getLayout();
+        if (layout == null) {
+            return 0;
+        }
+        return layout.getLineStart(mLineManager.getFirstVisibleVirtualLine());
+    }
+
+    @Override
+    public int getLastVisibleOffset() {
+        Layout layout = getLayout();
+        if (layout == null) {
+            return 0;
+        }
+        return layout.getLineEnd(mLineManager.getLastVisibleVirtualLine());
+    }
+
     @Override
     public int getLineForOffset(int offset) {
         if (getLayout() == null) {
@@ -48,6 +48,20 @@ public interface IEditAreaView extends IEditActionSupport, IdeEditor {
 
     void removeTextChangedListener(TextWatcher textWatcher);
 
+    void addOnScrollChangeListener(OnScrollChangeListener listener);
+
+    void removeOnScrollChangeListener(OnScrollChangeListener listener);
+
+    /**
+     * @return offset of the start of the first visible line
+     */
+    int getFirstVisibleOffset();
+
+    /**
+     * @return offset of the end of the last visible line
+     */
+    int getLastVisibleOffset();
+
     boolean hasSelection();
 
     int getSelectionStart();
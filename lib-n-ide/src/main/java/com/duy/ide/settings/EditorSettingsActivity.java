@@ -110,8 +110,6 @@ public class EditorSettingsActivity extends ThemeSupportActivity {
                                     : null);
                 } else if (preference instanceof SwitchPreference) {
                     ((SwitchPreference) preference).setChecked((boolean) value);
-                } else if ("pref_highlight_file_size_limit".equals(key)) {
-                    preference.setSummary(stringValue + " KB");
                 } else {
                     // For all other preferences, set the summary to the value's
                     // simple string representation.
@@ -64,7 +64,6 @@ public class Preferences implements SharedPreferences.OnSharedPreferenceChangeLi
             , "&", "?", "!", "@", "^", "+", "*", "-", "_", "`", "\\t", "\\n"});
     public static final String KEY_AUTO_PAIR = "pref_auto_pair";
     private static final String KEY_TOUCH_TO_ADJUST_TEXT_SIZE = "pref_touch_to_adjust_text_size";
-    private static final String KEY_HIGHLIGHT_FILE_SIZE_LIMIT = "pref_highlight_file_size_limit";
     private static final String KEY_REMEMBER_LAST_OPENED_FILES = "pref_remember_last_opened_files";
     private static final String KEY_TOOLBAR_ICONS = "pref_toolbar_icons";
     private static final String KEY_LAST_OPEN_PATH = "last_open_path";
@@ -106,7 +105,6 @@ public class Preferences implements SharedPreferences.OnSharedPreferenceChangeLi
         map.put(KEY_AUTO_CAPITALIZE, false);
         map.put(context.getString(R.string.pref_volume_move), true);
 
-        map.put(KEY_HIGHLIGHT_FILE_SIZE_LIMIT, 500);
         map.put(KEY_REMEMBER_LAST_OPENED_FILES, true);
 
         map.put(KEY_SCREEN_ORIENTATION, "auto");
@@ -194,10 +192,6 @@ public class Preferences implements SharedPreferences.OnSharedPreferenceChangeLi
     }
 
 
-    public int getHighlightSizeLimit() {
-        return 1024 * (int) map.get(KEY_HIGHLIGHT_FILE_SIZE_LIMIT);
-    }
-
     //auto save is default
     public boolean isAutoSave() {
         return (boolean) map.get(context.getString(R.string.pref_auto_save));
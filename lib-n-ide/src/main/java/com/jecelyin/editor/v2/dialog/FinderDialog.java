@@ -41,6 +41,7 @@ import com.jecelyin.editor.v2.Preferences;
 import com.duy.ide.editor.EditorDelegate;
 import com.jecelyin.editor.v2.utils.ExtGrep;
 import com.jecelyin.editor.v2.utils.GrepBuilder;
+import com.jecelyin.editor.v2.utils.TrigramIndex;
 import com.jecelyin.editor.v2.utils.MatcherResult;
 
 
@@ -154,7 +155,7 @@ public class FinderDialog extends AbstractDialog  {
 
         String replaceText = holder.mReplaceCheckBox.isChecked() ? holder.mReplaceEditText.getText().toString() : null;
 
-        GrepBuilder builder = GrepBuilder.start();
+        GrepBuilder builder = GrepBuilder.start().index(TrigramIndex.getInstance(context));
         if (!holder.mCaseSensitiveCheckBox.isChecked()) {
             builder.ignoreCase();
         }
@@ -18,9 +18,8 @@ package com.jecelyin.editor.v2.highlight;
 
 
 import android.content.Context;
-import android.text.GetChars;
-import android.text.SpannableStringBuilder;
 
+import com.duy.ide.editor.text.TextRope;
 import com.jecelyin.common.utils.DLog;
 
 import org.gjt.sp.jedit.LineManager;
@@ -32,23 +31,25 @@ import org.gjt.sp.jedit.syntax.ParserRuleSet;
 import org.gjt.sp.jedit.syntax.Token;
 import org.gjt.sp.jedit.syntax.TokenHandler;
 import org.gjt.sp.jedit.syntax.TokenMarker;
-import org.gjt.sp.jedit.util.IntegerArray;
 
 
 /**
+ * The text of a document and the state of its syntax highlighting.
+ * <p>
+ * The text is kept in a {@link TextRope}, edits replace it with a new rope so
+ * {@link #getText()} is a snapshot which other threads can read while the
+ * document is edited.
+ *
  * @author Jecelyin Peng <jecelyin@gmail.com>
  */
 public class Buffer {
-    private final IntegerArray integerArray;
     private TokenMarker tokenMarker;
     private LineManager lineMgr;
-    private GetChars editable;
+    private volatile TextRope text = TextRope.EMPTY;
     private Mode mode;
 
     public Buffer() {
-        editable = new SpannableStringBuilder();
         lineMgr = new LineManager();
-        integerArray = new IntegerArray();
     }
 
     /**
@@ -79,6 +80,16 @@ public class Buffer {
 
     public void setLineManager(LineManager lineManager) {
         this.lineMgr = lineManager;
+        lineMgr.setText(text);
+    }
+
+    /**
+     * Returns the current text, it does not change with later edits.
+     * <p>
+     * This method is thread-safe.
+     */
+    public TextRope getText() {
+        return text;
     }
 
     public Mode getMode() {
@@ -95,7 +106,7 @@ public class Buffer {
     }
 
     public int getOffset() {
-        return editable.length();
+        return text.length();
     }
 
     /**
@@ -142,8 +153,8 @@ public class Buffer {
 
     public void getText(int start, int length, Segment seg) {
         if (start < 0 || length < 0
-                || start + length > editable.length())
-            throw new ArrayIndexOutOfBoundsException(start + "+" + length + " > " + editable.length());
+                || start + length > text.length())
+            throw new ArrayIndexOutOfBoundsException(start + "+" + length + " > " + text.length());
 
         getTextByContentManager(start, length, seg);
     }
@@ -162,18 +173,27 @@ public class Buffer {
      */
     private void getTextByContentManager(int start, int len, Segment seg) {
         char[] dest = new char[len];
-        editable.getChars(start, start + len, dest, 0);
+        text.getChars(start, start + len, dest, 0);
         seg.array = dest;
         seg.offset = 0;
         seg.count = len;
     }
 
 
-    protected TokenMarker.LineContext markTokens(Segment seg, TokenMarker.LineContext prevContext,
-                                                 TokenHandler _tokenHandler) {
-        TokenMarker.LineContext context;
-        context = tokenMarker.markTokens(prevContext, _tokenHandler, seg);
-        return context;
+    /**
+     * Marks the tokens of a line without reading or updating the line contexts of the line
+     * manager. The token marker of a mode is shared by all buffers, which may be highlighted
+     * on different threads, so it is used by one buffer at a time.
+     *
+     * @param seg         the text of the line
+     * @param prevContext the context at the end of the previous line, null for the first line
+     * @return the context at the end of the line
+     */
+    public TokenMarker.LineContext markTokens(Segment seg, TokenMarker.LineContext prevContext,
+                                              TokenHandler _tokenHandler) {
+        synchronized (tokenMarker) {
+            return tokenMarker.markTokens(prevContext, _tokenHandler, seg);
+        }
     }
 
     /**
@@ -248,15 +268,6 @@ public class Buffer {
         return token.rules;
     }
 
-    private void contentInserted(int offset, int length,
-                                 IntegerArray endOffsets) {
-        int startLine = lineMgr.getLineOfOffset(offset);
-        int numLines = endOffsets.getSize();
-
-        lineMgr.contentInserted(startLine, offset, numLines, length,
-                endOffsets);
-    }
-
     /**
      * Inserts a string into the buffer.
      *
@@ -273,19 +284,16 @@ public class Buffer {
         if (len == 0)
             return;
 
-        if (offset < 0 || offset > editable.length())
+        if (offset < 0 || offset > text.length())
             throw new ArrayIndexOutOfBoundsException(offset);
 
-        integerArray.clear();
-
-        char c;
-        for (int i = 0; i < len; i++) {
-            c = seq.charAt(i);
-            if (c == '\r' || c == '\n')
-                integerArray.add(i + 1);
-        }
+        TextRope newText = text.insert(offset, seq);
+        int startLine = text.getLineOfOffset(offset);
+        int numLines = newText.getLineOfOffset(offset + len) - startLine;
 
-        contentInserted(offset, len, integerArray);
+        lineMgr.contentInserted(startLine, numLines);
+        lineMgr.setText(newText);
+        text = newText;
     }
 
     /**
@@ -298,26 +306,22 @@ public class Buffer {
         if (length == 0)
             return;
 
-        int startLine = lineMgr.getLineOfOffset(offset);
-        int endLine = lineMgr.getLineOfOffset(offset + length);
+        if (offset < 0 || length < 0 || offset + length > text.length())
+            throw new ArrayIndexOutOfBoundsException(offset + "+" + length + " > " + text.length());
+
+        int startLine = text.getLineOfOffset(offset);
+        int endLine = text.getLineOfOffset(offset + length);
 
         int numLines = endLine - startLine;
 
-        lineMgr.contentRemoved(startLine, offset, numLines, length);
+        TextRope newText = text.delete(offset, offset + length);
+        lineMgr.contentRemoved(startLine, numLines);
+        lineMgr.setText(newText);
+        text = newText;
     }
 
     @Override
     public String toString() {
-        return editable.toString();
-    }
-
-    public void setEditable(GetChars editable) {
-//        if (this.editable == editable)
-//            return;
-//
-//        if (!(editable instanceof SpannableStringBuilder))
-//            throw new RuntimeException("Can't set a " + editable.getClass().getName() + " to Buffer");
-
-        this.editable = editable;
+        return text.toString();
     }
 }
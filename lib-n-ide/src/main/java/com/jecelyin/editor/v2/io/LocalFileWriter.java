@@ -19,13 +19,15 @@ package com.jecelyin.editor.v2.io;
 import androidx.annotation.NonNull;
 import android.text.GetChars;
 
-import org.apache.commons.io.IOUtils;
-
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 public class LocalFileWriter {
+    private static final int BUFFER_SIZE = 8192;
+
     @NonNull
     private final String encoding;
     @NonNull
@@ -36,9 +38,21 @@ public class LocalFileWriter {
         this.encoding = encoding;
     }
 
+    /**
+     * Writes the content in chunks, without copying it to a string first
+     */
     public void writeToFile(GetChars content) throws IOException {
-        FileOutputStream output = new FileOutputStream(file);
-        IOUtils.write(content.toString(), output, encoding);
-        output.close();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), encoding);
+        try {
+            char[] buffer = new char[BUFFER_SIZE];
+            int length = content.length();
+            for (int start = 0; start < length; start += BUFFER_SIZE) {
+                int end = Math.min(length, start + BUFFER_SIZE);
+                content.getChars(start, end, buffer, 0);
+                writer.write(buffer, 0, end - start);
+            }
+        } finally {
+            writer.close();
+        }
     }
 }
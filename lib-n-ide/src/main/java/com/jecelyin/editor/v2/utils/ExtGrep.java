@@ -16,27 +16,42 @@
 
 package com.jecelyin.editor.v2.utils;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import androidx.annotation.Nullable;
+
 import com.duy.ide.editor.editor.R;
+import com.duy.ide.editor.text.CharsetDetector;
 import com.duy.ide.editor.view.IEditAreaView;
 import com.jecelyin.common.task.JecAsyncTask;
 import com.jecelyin.common.task.TaskListener;
 import com.jecelyin.common.task.TaskResult;
 import com.jecelyin.common.utils.DLog;
 import com.jecelyin.common.utils.UIUtils;
-import com.jecelyin.editor.v2.io.FileEncodingDetector;
+
+import org.gjt.sp.jedit.Segment;
+import org.gjt.sp.jedit.util.SegmentCharSequence;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,6 +70,22 @@ public class ExtGrep implements Parcelable {
             return new ExtGrep[size];
         }
     };
+    /**
+     * Files from this size are mapped instead of read into the heap
+     */
+    private static final int MAP_SIZE = 256 * 1024;
+    /**
+     * Characters decoded at once from a mapped file
+     */
+    private static final int WINDOW_SIZE = 128 * 1024;
+    /**
+     * A window grows up to this size to hold a complete line
+     */
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    /**
+     * Lines scanned between two checks whether the search was cancelled
+     */
+    private static final int CANCEL_CHECK_LINES = 1024;
     final List<String> includeFilePatterns = new ArrayList<String>();
     final List<String> excludeDirPatterns = new ArrayList<String>();
     boolean invertMatch = false;
@@ -78,7 +109,13 @@ public class ExtGrep implements Parcelable {
     boolean useExclude = false;
     int beforeContext = 0;
     int afterContext = 0;
+    /**
+     * Narrows the files which are read by a search, not kept in the parcel
+     */
+    TrigramIndex index;
     private Pattern grepPattern;
+    private LiteralFinder literalFinder;
+    private long[] indexKeys;
     private String regex;
     private List<File> filesToProcess = new ArrayList<>();
     private boolean useRegex;
@@ -177,17 +214,6 @@ public class ExtGrep implements Parcelable {
 //        }
     }
 
-    private List<Result> grepFiles() {
-        ArrayList<Result> results = new ArrayList<Result>();
-        // at this point the list was expanded into file names
-        for (final File f : filesToProcess) {
-            if (!f.exists() || !f.canRead())
-                continue;
-            results.addAll(grepFile(f));
-        }
-        return results;
-    }
-
     void readExcludeFrom(final String vals[]) {
 
         for (String val : vals) {
@@ -229,8 +255,7 @@ public class ExtGrep implements Parcelable {
     }
 
     private Result printMatch(final File file, final String line, final int lineNumber,
-                              final int startOffset, final int endOffset, final int lineStartOffset, final List<String> beforeContextLines,
-                              final List<String> afterContextLines) {
+                              final int startOffset, final int endOffset, final int lineStartOffset) {
         int maxText = 20;
         int start = lineStartOffset - maxText < 0 ? 0 : lineStartOffset - maxText;
         int end = lineStartOffset + maxText >= line.length() ? line.length() : lineStartOffset + maxText;
@@ -443,7 +468,7 @@ public class ExtGrep implements Parcelable {
         return false;
     }
 
-    private boolean excludeDir(final File f) {
+    boolean excludeDir(final File f) {
 
 //        if( CollectionUtils.exists( excludeDirPatterns, wildcardMatcher( f ) ) ) {
 //            return true;
@@ -457,15 +482,6 @@ public class ExtGrep implements Parcelable {
         return printFilesWithoutMatch || printFileNameOnly;
     }
 
-    private Matcher matchAny(final CharSequence line) {
-        Matcher m = grepPattern.matcher(line);
-        if (m.find()) {
-            return m;
-        }
-
-        return null;
-    }
-
     public void replaceAll(IEditAreaView text, String replaceText) {
         Matcher m = grepPattern.matcher(text.getEditableText());
         ArrayList<Integer> array = new ArrayList<>();
@@ -487,82 +503,43 @@ public class ExtGrep implements Parcelable {
         UIUtils.toast(text.getContext(), text.getContext().getResources().getQuantityString(R.plurals.x_text_replaced, count, count));
     }
 
-    private List<Result> grepFile(final File file) {
-        int lineNumber = 0;
-        int count = 0;
-        int byteOffset = 0;
-        List<String> beforeContextLines = new LinkedList<String>();
-        List<String> afterContextLines = new LinkedList<String>();
-        ArrayList<Result> results = new ArrayList<>();
-        BufferedReader bfr = null;
-        try {
-            String encoding = FileEncodingDetector.detectEncoding(file);
-            bfr = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding), 16000);
-            for (String line = bfr.readLine(); line != null; line = bfr.readLine()) {
-
-                lineNumber++;
-                Matcher m = matchAny(line);
-
-                if (((m != null) && !invertMatch)) {
-                    count++;
-                    if (afterContext > 0) {
-                        afterContextLines.clear();
-                        bfr.mark(4000);
-                        for (int i = 0; i < afterContext; i++) {
-                            String s = bfr.readLine();
-                            if (s != null) {
-                                afterContextLines.add(s);
-                            } else {
-                                break;
-                            }
-                        }
-                        bfr.reset();
-                    }
-                    String match = line;
-                    if (printMatchOnly) {
-                        match = m.group();
-                    }
-//                    printMatch(file, match, lineNumber, count, (byteOffset + m.start()), beforeContextLines,
-                    results.add(printMatch(file, match, lineNumber, byteOffset + m.start(), byteOffset + m.end(), m.start(), beforeContextLines,
-                            afterContextLines));
-                    if (printFileNameOnly) {
-                        return null;
-                    }
-                    //
-                } else if ((m == null) && invertMatch) {
-                    count++;
-                    results.add(printMatch(file, line, lineNumber, byteOffset, byteOffset, byteOffset, beforeContextLines,
-                            afterContextLines));
-                    // TODO: this has a slightly different meaning
-                    if (printFileNameOnly) {
-                        return null;
-                    }
-                }
-
-                if ((maxCount != 0) && (count >= maxCount)) {
-                    break;
-                }
-
-                byteOffset += line.length();
-                byteOffset += 1; // TODO: end of line char - what about DOS/Win32?
-
-                beforeContextLines.add(line);
-                if (beforeContextLines.size() > beforeContext) {
-                    beforeContextLines.remove(0);
-                }
+    /**
+     * Scans one file and publishes its results to the search. When the pattern starts with a
+     * literal, only the lines which contain it are given to the regex.
+     * <p>
+     * Small files are decoded at once. Large files are mapped and decoded in windows of
+     * {@link #WINDOW_SIZE} characters which end at a line break, so the heap used does not
+     * depend on the size of the file.
+     */
+    void grepFile(final File file, final GrepSearch search) {
+        TrigramIndex.Entry entry = null;
+        long fileLength = 0;
+        long lastModified = 0;
+        long indexed = 0;
+        if (index != null) {
+            entry = index.get(file);
+            if (entry == null) {
+                indexed = System.currentTimeMillis();
+                fileLength = file.length();
+                lastModified = file.lastModified();
+            } else if (indexKeys != null && !entry.mayContain(indexKeys)) {
+                return;
             }
-        } catch (Exception ioe) {
-            DLog.e(ioe);
-        } finally {
-            if (bfr != null)
-                try {
-                    bfr.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
         }
 
-        if (count == 0) {
+        TrigramIndex.Trigrams trigrams = index != null && entry == null ? new TrigramIndex.Trigrams() : null;
+        FileScanner scanner = new FileScanner(file, search, trigrams);
+        try {
+            scanner.scanFile();
+        } catch (IOException e) {
+            DLog.e(e);
+            return;
+        }
+        if (trigrams != null && scanner.complete) {
+            index.put(file, fileLength, lastModified, indexed, trigrams);
+        }
+
+        if (scanner.count == 0) {
             // no matches in file
             if (printFilesWithoutMatch) {
                 printMessage(file.getName());
@@ -570,10 +547,82 @@ public class ExtGrep implements Parcelable {
         }
 
         if (printCountOnly) {
-            printMessage((file.getName() + ":" + count));
+            printMessage((file.getName() + ":" + scanner.count));
+        }
+    }
+
+    /**
+     * Creates the result of a match, only the text around the match is copied from long lines
+     *
+     * @param base offset of the first character of chars in the file
+     */
+    private Result createResult(File file, char[] chars, int base, Matcher m, int lineNumber,
+                                int lineStart, int lineEnd) {
+        if (printMatchOnly) {
+            return printMatch(file, m.group(), lineNumber, base + m.start(), base + m.end(), 0);
+        }
+        int start = Math.max(lineStart, m.start() - 20);
+        int end = Math.min(lineEnd, m.start() + 20);
+        return printMatch(file, new String(chars, start, end - start), lineNumber,
+                base + m.start(), base + m.end(), m.start() - start);
+    }
+
+    /**
+     * Creates the result of a line which does not match
+     */
+    private Result createResult(File file, char[] chars, int base, int lineNumber, int lineStart,
+                                int lineEnd) {
+        int end = Math.min(lineEnd, lineStart + 20);
+        return printMatch(file, new String(chars, lineStart, end - lineStart), lineNumber,
+                base + lineStart, base + lineStart, 0);
+    }
+
+    private static int lineEnd(char[] chars, int offset, int length) {
+        while (offset < length && chars[offset] != '\n' && chars[offset] != '\r') {
+            offset++;
         }
+        return offset;
+    }
 
-        return results;
+    private static int nextLine(char[] chars, int lineEnd, int length) {
+        if (lineEnd < length - 1 && chars[lineEnd] == '\r' && chars[lineEnd + 1] == '\n') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    /**
+     * Counts the line separators between two line starts, \r\n is one separator
+     */
+    static int countLines(char[] chars, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            char c = chars[i];
+            if (c == '\n') {
+                lines++;
+            } else if (c == '\r' && (i + 1 == to || chars[i + 1] != '\n')) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the end of the last complete line of a window. A \r at the end of the window
+     * may be followed by \n in the next one, so the line is not complete yet.
+     *
+     * @return 0 if the window does not contain a complete line
+     */
+    static int completeLinesEnd(char[] chars, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (chars[i] == '\n') {
+                return i + 1;
+            }
+            if (chars[i] == '\r' && i + 1 < length) {
+                return i + 1;
+            }
+        }
+        return 0;
     }
 
     public void grepText(final GrepDirect direct, final CharSequence line, int start, TaskListener<MatcherResult> listener) {
@@ -658,17 +707,63 @@ public class ExtGrep implements Parcelable {
         filesToProcess.add(new File(name));
     }
 
-    public void execute(TaskListener<List<Result>> listener) {
-        new JecAsyncTask<Void, Void, List<Result>>() {
-
+    /**
+     * Searches the files on a pool of threads. The listener gets the results on the main thread
+     * while the search runs.
+     */
+    public GrepSearch search(GrepSearch.Listener listener) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return search(listener, new Executor() {
             @Override
-            protected void onRun(TaskResult<List<Result>> taskResult, Void... params) throws Exception {
-                compilePattern();
-                verifyFileList();
-                List<Result> results = grepFiles();
-                taskResult.setResult(results);
+            public void execute(Runnable command) {
+                handler.post(command);
             }
-        }.setTaskListener(listener).execute();
+        });
+    }
+
+    GrepSearch search(GrepSearch.Listener listener, Executor callbackExecutor) {
+        compilePattern();
+        // every line without the literal is a result of an inverted match
+        String literal = invertMatch ? null : LiteralFinder.requiredPrefix(regex);
+        literalFinder = literal == null ? null : new LiteralFinder(literal, ignoreCase);
+        indexKeys = index == null || literal == null ? null : TrigramIndex.keys(literal);
+        GrepSearch search = new GrepSearch(this, listener, callbackExecutor,
+                Runtime.getRuntime().availableProcessors());
+        search.start(new ArrayList<>(filesToProcess));
+        return search;
+    }
+
+    /**
+     * Searches the files and delivers all results at once, sorted by file and line
+     */
+    public void execute(final TaskListener<List<Result>> listener) {
+        final List<Result> results = new ArrayList<>();
+        try {
+            search(new GrepSearch.Listener() {
+                @Override
+                public void onResults(List<Result> batch) {
+                    results.addAll(batch);
+                }
+
+                @Override
+                public void onFinished(boolean cancelled) {
+                    Collections.sort(results, new Comparator<Result>() {
+                        @Override
+                        public int compare(Result a, Result b) {
+                            int result = a.file.getPath().compareTo(b.file.getPath());
+                            return result != 0 ? result : a.lineNumber - b.lineNumber;
+                        }
+                    });
+                    listener.onCompleted();
+                    if (!cancelled) {
+                        listener.onSuccess(results);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            listener.onCompleted();
+            listener.onError(e);
+        }
     }
 
     @Override
@@ -703,6 +798,177 @@ public class ExtGrep implements Parcelable {
         dest.writeList(this.filesToProcess);
     }
 
+    /**
+     * Reads one file window after window and scans its lines. The line number and the
+     * results are kept between windows.
+     */
+    private class FileScanner {
+        private final File file;
+        private final GrepSearch search;
+        @Nullable
+        private final TrigramIndex.Trigrams trigrams;
+        /**
+         * Lines before the current window
+         */
+        private int lineNumber;
+        private int count;
+        private boolean stopped;
+        /**
+         * Whether all characters of the file were given to the trigrams
+         */
+        private boolean complete;
+
+        FileScanner(File file, GrepSearch search, @Nullable TrigramIndex.Trigrams trigrams) {
+            this.file = file;
+            this.search = search;
+            this.trigrams = trigrams;
+        }
+
+        void scanFile() throws IOException {
+            FileInputStream input = new FileInputStream(file);
+            try {
+                FileChannel channel = input.getChannel();
+                long size = channel.size();
+                ByteBuffer bytes;
+                if (size >= MAP_SIZE) {
+                    bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                } else {
+                    bytes = ByteBuffer.allocate((int) size);
+                    while (bytes.hasRemaining()) {
+                        if (channel.read(bytes) < 0) {
+                            break;
+                        }
+                    }
+                    bytes.flip();
+                }
+                CharsetDecoder decoder = Charset.forName(CharsetDetector.detect(bytes)).newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                if (size < MAP_SIZE) {
+                    // the decoder always returns a buffer backed by an array
+                    CharBuffer text = decoder.decode(bytes);
+                    scan(text.array(), text.limit(), 0);
+                    complete = true;
+                } else {
+                    scanWindows(bytes, decoder);
+                }
+            } finally {
+                input.close();
+            }
+        }
+
+        private void scanWindows(ByteBuffer bytes, CharsetDecoder decoder) throws IOException {
+            CharBuffer window = CharBuffer.allocate(WINDOW_SIZE);
+            int base = 0;
+            boolean endOfInput = false;
+            while (!stopped && !search.isCancelled()) {
+                CoderResult result = null;
+                if (!endOfInput) {
+                    result = decoder.decode(bytes, window, true);
+                    endOfInput = result.isUnderflow();
+                }
+                if (endOfInput) {
+                    result = decoder.flush(window);
+                }
+                if (result.isError()) {
+                    result.throwException();
+                }
+                char[] chars = window.array();
+                int length = window.position();
+                if (result.isUnderflow()) {
+                    // all characters are decoded, the last line does not need a line break
+                    scan(chars, length, base);
+                    complete = true;
+                    return;
+                }
+                int end = completeLinesEnd(chars, length);
+                if (end == 0) {
+                    if (window.capacity() < MAX_LINE_LENGTH) {
+                        CharBuffer grown = CharBuffer.allocate(window.capacity() * 2);
+                        window.flip();
+                        grown.put(window);
+                        window = grown;
+                        continue;
+                    }
+                    // a line this long is scanned in parts, a match across a part is missed
+                    end = length;
+                }
+                scan(chars, end, base);
+                base += end;
+                window.flip();
+                window.position(end);
+                window.compact();
+            }
+        }
+
+        /**
+         * Scans the complete lines of a window
+         *
+         * @param base offset of the window in the file
+         */
+        private void scan(char[] chars, int length, int base) {
+            if (trigrams != null) {
+                trigrams.add(chars, 0, length);
+            }
+            Matcher m = grepPattern.matcher(new SegmentCharSequence(new Segment(chars, 0, length)));
+            if (literalFinder != null) {
+                int counted = 0;
+                int from = 0;
+                while (from < length && !search.isCancelled()) {
+                    int hit = literalFinder.indexOf(chars, from, length);
+                    if (hit < 0) {
+                        break;
+                    }
+                    int lineStart = hit;
+                    while (lineStart > from && chars[lineStart - 1] != '\n' && chars[lineStart - 1] != '\r') {
+                        lineStart--;
+                    }
+                    int lineEnd = lineEnd(chars, hit, length);
+                    lineNumber += countLines(chars, counted, lineStart);
+                    counted = lineStart;
+
+                    m.region(lineStart, lineEnd);
+                    if (m.find()) {
+                        count++;
+                        search.publish(createResult(file, chars, base, m, lineNumber + 1, lineStart, lineEnd));
+                        if (printFileNameOnly || ((maxCount != 0) && (count >= maxCount))) {
+                            stopped = true;
+                            return;
+                        }
+                    }
+                    from = nextLine(chars, lineEnd, length);
+                }
+                lineNumber += countLines(chars, counted, length);
+            } else {
+                int lineStart = 0;
+                while (lineStart < length) {
+                    lineNumber++;
+                    if (lineNumber % CANCEL_CHECK_LINES == 0 && search.isCancelled()) {
+                        stopped = true;
+                        return;
+                    }
+                    int lineEnd = lineEnd(chars, lineStart, length);
+                    m.region(lineStart, lineEnd);
+                    boolean found = m.find();
+                    if (found != invertMatch) {
+                        count++;
+                        if (found) {
+                            search.publish(createResult(file, chars, base, m, lineNumber, lineStart, lineEnd));
+                        } else {
+                            search.publish(createResult(file, chars, base, lineNumber, lineStart, lineEnd));
+                        }
+                        // TODO: this has a slightly different meaning for inverted matches
+                        if (printFileNameOnly || ((maxCount != 0) && (count >= maxCount))) {
+                            stopped = true;
+                            return;
+                        }
+                    }
+                    lineStart = nextLine(chars, lineEnd, length);
+                }
+            }
+        }
+    }
+
     public enum GrepDirect {
         PREV,
         NEXT,
@@ -183,6 +183,11 @@ public class GrepBuilder {
         return this;
     }
 
+    public GrepBuilder index(final TrigramIndex index) {
+        theGrep.index = index;
+        return this;
+    }
+
     public ExtGrep build() {
         return theGrep;
     }
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2018 Mr Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jecelyin.editor.v2.utils;
+
+import com.jecelyin.common.utils.DLog;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A running search of {@link ExtGrep} in files. Directories are listed and files are scanned
+ * on a pool of threads, and the results are delivered in batches while the search runs.
+ * <p>
+ * The listener is called on the executor given to the search, in the app the main thread.
+ */
+public class GrepSearch {
+    private final ExtGrep grep;
+    private final Listener listener;
+    private final Executor callbackExecutor;
+    private final ExecutorService executor;
+    /**
+     * Number of directories and files which are submitted and not scanned yet
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ConcurrentLinkedQueue<ExtGrep.Result> results = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean deliveryPosted = new AtomicBoolean();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile boolean cancelled;
+
+    private final Runnable deliverResults = new Runnable() {
+        @Override
+        public void run() {
+            deliveryPosted.set(false);
+            deliver();
+        }
+    };
+
+    GrepSearch(ExtGrep grep, Listener listener, Executor callbackExecutor, int threads) {
+        this.grep = grep;
+        this.listener = listener;
+        this.callbackExecutor = callbackExecutor;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "grep-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    void start(final List<File> files) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                for (File file : files) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (file.isFile()) {
+                        if (grep.includeFile(file) && !grep.excludeFile(file)) {
+                            submitFile(file);
+                        }
+                    } else if (file.isDirectory() && grep.recurseDirectories) {
+                        submitDirectory(file);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the search, no results are delivered after this call. The listener is still told
+     * that the search finished.
+     */
+    public void cancel() {
+        cancelled = true;
+        executor.shutdownNow();
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                finish();
+            }
+        });
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Called by the scanning threads for each result
+     */
+    void publish(ExtGrep.Result result) {
+        results.add(result);
+        if (deliveryPosted.compareAndSet(false, true)) {
+            callbackExecutor.execute(deliverResults);
+        }
+    }
+
+    private void deliver() {
+        if (cancelled || finished.get()) {
+            results.clear();
+            return;
+        }
+        List<ExtGrep.Result> batch = new ArrayList<>();
+        for (ExtGrep.Result result = results.poll(); result != null; result = results.poll()) {
+            batch.add(result);
+        }
+        if (!batch.isEmpty()) {
+            listener.onResults(batch);
+        }
+    }
+
+    private void finish() {
+        deliver();
+        if (finished.compareAndSet(false, true)) {
+            executor.shutdown();
+            listener.onFinished(cancelled);
+        }
+    }
+
+    private void submitDirectory(final File dir) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                File[] children = dir.listFiles();
+                if (children == null) {
+                    return;
+                }
+                for (File child : children) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (child.isFile()) {
+                        if (grep.includeFile(child) && !grep.excludeFile(child)) {
+                            submitFile(child);
+                        }
+                    } else if (child.isDirectory() && !grep.excludeDir(child)) {
+                        submitDirectory(child);
+                    }
+                }
+            }
+        });
+    }
+
+    private void submitFile(final File file) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                if (!cancelled) {
+                    grep.grepFile(file, GrepSearch.this);
+                }
+            }
+        });
+    }
+
+    private void submit(final Runnable task) {
+        pending.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        DLog.e(e);
+                    } finally {
+                        taskDone();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the search was cancelled
+            taskDone();
+        }
+    }
+
+    private void taskDone() {
+        if (pending.decrementAndGet() == 0) {
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    finish();
+                }
+            });
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Results found since the last call, in no particular order
+         */
+        void onResults(List<ExtGrep.Result> results);
+
+        void onFinished(boolean cancelled);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Mr Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jecelyin.editor.v2.utils;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Finds a literal string with the Boyer-Moore-Horspool algorithm, so most characters of a
+ * text are skipped. Used to find the lines which may match a pattern before running the
+ * pattern on them.
+ * <p>
+ * Case is ignored for ASCII letters only, like {@link java.util.regex.Pattern#CASE_INSENSITIVE}.
+ */
+class LiteralFinder {
+    private static final String METACHARS = ".^$[]*+?|()\\{}";
+
+    private final char[] pattern;
+    private final boolean ignoreCase;
+    /**
+     * Shift of the window by the low byte of its last character
+     */
+    private final int[] shift = new int[256];
+
+    LiteralFinder(String literal, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        pattern = new char[literal.length()];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = ignoreCase ? fold(literal.charAt(i)) : literal.charAt(i);
+        }
+        int length = pattern.length;
+        Arrays.fill(shift, length);
+        for (int i = 0; i < length - 1; i++) {
+            char c = pattern[i];
+            shift[c & 0xff] = length - 1 - i;
+            if (ignoreCase && c >= 'a' && c <= 'z') {
+                shift[(c - 'a' + 'A') & 0xff] = length - 1 - i;
+            }
+        }
+    }
+
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c - 'A' + 'a') : c;
+    }
+
+    /**
+     * Returns the characters which every match of a regex starts with
+     *
+     * @return null if there are none or they can not be found simply, like with alternatives
+     */
+    @Nullable
+    static String requiredPrefix(String regex) {
+        if (regex.indexOf('|') >= 0) {
+            return null;
+        }
+        StringBuilder prefix = new StringBuilder();
+        int length = regex.length();
+        for (int i = 0; i < length; i++) {
+            char c = regex.charAt(i);
+            char literal;
+            if (c == '\\') {
+                if (i + 1 == length || METACHARS.indexOf(regex.charAt(i + 1)) < 0) {
+                    //a class like \w or \d, or an escape like \Q
+                    break;
+                }
+                literal = regex.charAt(++i);
+            } else if (METACHARS.indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+            }
+            if (i + 1 < length && "*?{".indexOf(regex.charAt(i + 1)) >= 0) {
+                //the character is optional
+                break;
+            }
+            prefix.append(literal);
+        }
+        return prefix.length() == 0 ? null : prefix.toString();
+    }
+
+    int length() {
+        return pattern.length;
+    }
+
+    /**
+     * @return the index of the first occurrence between from and to, or -1
+     */
+    int indexOf(char[] text, int from, int to) {
+        int length = pattern.length;
+        int last = length - 1;
+        for (int end = from + last; end < to; end += shift[text[end] & 0xff]) {
+            int i = last;
+            int j = end;
+            while (i >= 0 && (ignoreCase ? fold(text[j]) : text[j]) == pattern[i]) {
+                i--;
+                j--;
+            }
+            if (i < 0) {
+                return j + 1;
+            }
+        }
+        return -1;
+    }
+}
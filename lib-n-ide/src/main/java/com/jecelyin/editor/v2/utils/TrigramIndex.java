@@ -0,0 +1,480 @@
+/*
+ * Copyright 2018 Mr Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jecelyin.editor.v2.utils;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.duy.ide.editor.text.CharsetDetector;
+import com.jecelyin.common.utils.DLog;
+import com.jecelyin.common.utils.SysUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An index of the trigrams of files, used to skip the files which can not contain a literal
+ * without reading them. Each file has a Bloom filter of its trigrams, with ASCII letters in
+ * lower case so the same index works when case is ignored. An entry is used only while the
+ * file has the length and the modification time which were indexed, and only if the file was
+ * modified clearly before it was read: a change in the same tick of the file system clock
+ * does not change the modification time.
+ * <p>
+ * The index is kept in the cache directory. It is filled by the searches of {@link ExtGrep}
+ * and updated when a document is saved: a file which was just written is always in the tick
+ * of its modification, so it is indexed again from the disk on a background thread once the
+ * tick has passed. The entries which were not used for the longest time are dropped when the
+ * index grows beyond {@link #MAX_ENTRIES}.
+ */
+public class TrigramIndex {
+    private static final int VERSION = 2;
+    private static final int BITS_PER_TRIGRAM = 10;
+    private static final int HASHES = 3;
+    /**
+     * Files with more distinct trigrams, mostly binary or minified files, are not filtered
+     */
+    private static final int MAX_TRIGRAMS = 1 << 16;
+    /**
+     * About 1.3 KB each for source files
+     */
+    private static final int MAX_ENTRIES = 4096;
+    /**
+     * Resolution of the modification time, 2 s on FAT file systems of SD cards
+     */
+    private static final long MODIFIED_TIME_RESOLUTION_MS = 2000;
+    /**
+     * Delay of writing the index after a change, a search changes many entries at once
+     */
+    private static final long SAVE_DELAY_MS = 2000;
+    /**
+     * Larger saved files are indexed by the next search, which does not read them at once
+     */
+    private static final int MAX_UPDATE_SIZE = 1024 * 1024;
+
+    private static TrigramIndex instance;
+
+    private final File file;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean savePending = new AtomicBoolean();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "trigram-index");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private volatile boolean loaded;
+
+    private final Runnable saveTask = new Runnable() {
+        @Override
+        public void run() {
+            savePending.set(false);
+            save();
+        }
+    };
+
+    TrigramIndex(File file) {
+        this.file = file;
+    }
+
+    public static synchronized TrigramIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new TrigramIndex(new File(SysUtils.getCacheDir(context), "trigram_index"));
+        }
+        return instance;
+    }
+
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c - 'A' + 'a') : c;
+    }
+
+    private static long key(char c0, char c1, char c2) {
+        // the marker bit keeps every key from being 0, which is an empty slot of the set
+        return 1L << 48 | (long) c0 << 32 | (long) c1 << 16 | c2;
+    }
+
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Returns the trigrams of a literal which a file must contain
+     *
+     * @return null if the literal is too short to use the index
+     */
+    @Nullable
+    static long[] keys(String literal) {
+        if (literal.length() < 3) {
+            return null;
+        }
+        long[] keys = new long[literal.length() - 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key(fold(literal.charAt(i)), fold(literal.charAt(i + 1)), fold(literal.charAt(i + 2)));
+        }
+        return keys;
+    }
+
+    /**
+     * @return the entry of a file, or null if the file is not indexed or may have changed since
+     */
+    @Nullable
+    Entry get(File file) {
+        ensureLoaded();
+        Entry entry = entries.get(file.getPath());
+        if (entry == null || entry.length != file.length() || entry.lastModified != file.lastModified()) {
+            return null;
+        }
+        if (entry.lastModified > entry.indexed - MODIFIED_TIME_RESOLUTION_MS) {
+            // the file may have been changed again after it was read without a new time,
+            // it is read by this search and indexed with a later time
+            return null;
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        return entry;
+    }
+
+    /**
+     * Indexes the text of a file
+     *
+     * @param length       length of the file before it was read
+     * @param lastModified modification time of the file before it was read
+     * @param indexed      the time when the length and the modification time were taken
+     */
+    void put(File file, long length, long lastModified, long indexed, Trigrams trigrams) {
+        entries.put(file.getPath(), new Entry(length, lastModified, indexed, indexed, trigrams.toFilter()));
+        if (savePending.compareAndSet(false, true)) {
+            writer.schedule(saveTask, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Indexes a file which was just written, once its modification time can be trusted
+     */
+    public void update(final File file) {
+        writer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                reindex(file);
+            }
+        }, MODIFIED_TIME_RESOLUTION_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads and indexes a file, or schedules it again while it is in the tick of its
+     * modification
+     */
+    void reindex(final File file) {
+        long indexed = System.currentTimeMillis();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        if (!file.isFile() || length > MAX_UPDATE_SIZE) {
+            return;
+        }
+        if (lastModified > indexed - MODIFIED_TIME_RESOLUTION_MS) {
+            // written again meanwhile
+            update(file);
+            return;
+        }
+        ensureLoaded();
+        Entry entry = entries.get(file.getPath());
+        if (entry != null && entry.length == length && entry.lastModified == lastModified
+                && entry.lastModified <= entry.indexed - MODIFIED_TIME_RESOLUTION_MS) {
+            // a search indexed it already
+            return;
+        }
+        try {
+            byte[] bytes = new byte[(int) length];
+            DataInputStream input = new DataInputStream(new FileInputStream(file));
+            try {
+                input.readFully(bytes);
+            } finally {
+                input.close();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            CharBuffer text = Charset.forName(CharsetDetector.detect(buffer)).newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(buffer);
+            Trigrams trigrams = new Trigrams();
+            trigrams.add(text.array(), 0, text.limit());
+            put(file, length, lastModified, indexed, trigrams);
+        } catch (IOException e) {
+            DLog.e(e);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                load();
+                loaded = true;
+            }
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != VERSION) {
+                throw new IOException("Unknown version of trigram index");
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = input.readUTF();
+                long length = input.readLong();
+                long lastModified = input.readLong();
+                long indexed = input.readLong();
+                long lastUsed = input.readLong();
+                int size = input.readInt();
+                long[] bits = null;
+                if (size >= 0) {
+                    bits = new long[size];
+                    for (int j = 0; j < size; j++) {
+                        bits[j] = input.readLong();
+                    }
+                }
+                // files which were deleted are dropped from the index
+                if (new File(path).isFile()) {
+                    entries.put(path, new Entry(length, lastModified, indexed, lastUsed, bits));
+                }
+            }
+        } catch (IOException e) {
+            DLog.e(e);
+            entries.clear();
+            file.delete();
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    DLog.e(e);
+                }
+            }
+        }
+    }
+
+    private void save() {
+        ArrayList<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+        if (snapshot.size() > MAX_ENTRIES) {
+            Collections.sort(snapshot, new Comparator<Map.Entry<String, Entry>>() {
+                @Override
+                public int compare(Map.Entry<String, Entry> a, Map.Entry<String, Entry> b) {
+                    return Long.compare(b.getValue().lastUsed, a.getValue().lastUsed);
+                }
+            });
+            List<Map.Entry<String, Entry>> evicted = snapshot.subList(MAX_ENTRIES, snapshot.size());
+            for (Map.Entry<String, Entry> item : evicted) {
+                entries.remove(item.getKey(), item.getValue());
+            }
+            evicted.clear();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            output.writeInt(VERSION);
+            output.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> item : snapshot) {
+                Entry entry = item.getValue();
+                output.writeUTF(item.getKey());
+                output.writeLong(entry.length);
+                output.writeLong(entry.lastModified);
+                output.writeLong(entry.indexed);
+                output.writeLong(entry.lastUsed);
+                if (entry.bits == null) {
+                    output.writeInt(-1);
+                } else {
+                    output.writeInt(entry.bits.length);
+                    for (long word : entry.bits) {
+                        output.writeLong(word);
+                    }
+                }
+            }
+            output.close();
+            output = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("Can not rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            DLog.e(e);
+            temp.delete();
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    DLog.e(e);
+                }
+            }
+        }
+    }
+
+    static class Entry {
+        private final long length;
+        private final long lastModified;
+        private final long indexed;
+        /**
+         * The last time the entry was used by a search, the oldest entries are evicted
+         */
+        private volatile long lastUsed;
+        /**
+         * The Bloom filter, null if the file has too many trigrams to be filtered
+         */
+        @Nullable
+        private final long[] bits;
+
+        Entry(long length, long lastModified, long indexed, long lastUsed, @Nullable long[] bits) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.indexed = indexed;
+            this.lastUsed = lastUsed;
+            this.bits = bits;
+        }
+
+        /**
+         * @return false if the file does not contain all of the trigrams
+         */
+        boolean mayContain(long[] keys) {
+            if (bits == null) {
+                return true;
+            }
+            int mask = bits.length * 64 - 1;
+            for (long key : keys) {
+                long hash = hash(key);
+                int h1 = (int) hash;
+                int h2 = (int) (hash >>> 32) | 1;
+                for (int i = 0; i < HASHES; i++) {
+                    int bit = (h1 + i * h2) & mask;
+                    if ((bits[bit >>> 6] & 1L << bit) == 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The distinct trigrams of a text which is added in chunks
+     */
+    static class Trigrams {
+        private long[] table = new long[1024];
+        private int size;
+        private boolean overflow;
+        private char c0;
+        private char c1;
+        private int count;
+
+        void add(char[] chars, int start, int end) {
+            for (int i = start; i < end && !overflow; i++) {
+                char c = fold(chars[i]);
+                if (count >= 2) {
+                    insert(key(c0, c1, c));
+                }
+                c0 = c1;
+                c1 = c;
+                count++;
+            }
+        }
+
+        private void insert(long key) {
+            int mask = table.length - 1;
+            int slot = (int) hash(key) & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == key) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+            size++;
+            if (size > MAX_TRIGRAMS) {
+                overflow = true;
+            } else if (size * 2 > table.length) {
+                long[] old = table;
+                table = new long[old.length * 2];
+                size = 0;
+                for (long k : old) {
+                    if (k != 0) {
+                        insert(k);
+                    }
+                }
+            }
+        }
+
+        @Nullable
+        long[] toFilter() {
+            if (overflow) {
+                return null;
+            }
+            int bitCount = 64;
+            while (bitCount < size * BITS_PER_TRIGRAM) {
+                bitCount <<= 1;
+            }
+            long[] bits = new long[bitCount / 64];
+            int mask = bitCount - 1;
+            for (long key : table) {
+                if (key == 0) {
+                    continue;
+                }
+                long hash = hash(key);
+                int h1 = (int) hash;
+                int h2 = (int) (hash >>> 32) | 1;
+                for (int i = 0; i < HASHES; i++) {
+                    int bit = (h1 + i * h2) & mask;
+                    bits[bit >>> 6] |= 1L << bit;
+                }
+            }
+            return bits;
+        }
+    }
+}
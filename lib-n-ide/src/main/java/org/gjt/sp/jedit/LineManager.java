@@ -16,8 +16,9 @@
 
 package org.gjt.sp.jedit;
 
+import com.duy.ide.editor.text.TextRope;
+
 import org.gjt.sp.jedit.syntax.TokenMarker;
-import org.gjt.sp.jedit.util.IntegerArray;
 
 /**
  * A class internal to jEdit's document model. You should not use it
@@ -25,6 +26,9 @@ import org.gjt.sp.jedit.util.IntegerArray;
  * check for out of bounds access, nor are they thread-safe. The
  * <code>Buffer</code> class, through which these methods must be
  * called through, implements such protection.
+ * <p>
+ * Line offsets are looked up in the {@link TextRope} of the buffer, this
+ * class only keeps the contexts and fold levels of the lines.
  *
  * @author Slava Pestov
  * @version $Id: LineManager.java 23220 2013-09-29 19:19:24Z shlomy $
@@ -32,17 +36,9 @@ import org.gjt.sp.jedit.util.IntegerArray;
  */
 public class LineManager {
 
-    private int[] endOffsets;
+    private TextRope text = TextRope.EMPTY;
     private short[] foldLevels;
     private TokenMarker.LineContext[] lineContext;
-    private int lineCount;
-    /**
-     * If -1, then there is no gap.
-     * Otherwise, all lines from this line onwards need to have gapWidth
-     * added to their end offsets.
-     */
-    private int gapLine;
-    private int gapWidth;
     /**
      * If -1, all contexts are valid. Otherwise, all lines after this have
      * an invalid context.
@@ -53,88 +49,50 @@ public class LineManager {
      * have an invalid fold level.
      */
     private int firstInvalidFoldLevel;
-    /**
-     * Performance helper for {@link #getLineOfOffset}.
-     */
-    private int getLineOfOffsetLine = -1;
 
 
     public LineManager() {
-        endOffsets = new int[1];
-        endOffsets[0] = 1;
         foldLevels = new short[1];
         lineContext = new TokenMarker.LineContext[1];
-        lineCount = 1;
+    }
+
+
+    /**
+     * Sets the text after an edit, {@link #contentRemoved} or
+     * {@link #contentInserted} must be called before for the lines of
+     * the edit
+     */
+    public void setText(TextRope text) {
+        this.text = text;
     }
 
 
     public final int getLineCount() {
-        return lineCount;
+        return text.getLineCount();
     }
 
 
     public int getLineOfOffset(int offset) {
-        /*
-         * Performance optimization: assumption is that this method
-		 * is called many times for the same line.
-		 * Not optimizing the first line is intentional,
-		 * profiling proves this is the right approach (#3528212).
-		 */
-        if (getLineOfOffsetLine > 0 && getLineOfOffsetLine < lineCount) {
-            int s = getLineEndOffset(getLineOfOffsetLine - 1);
-            int e = getLineEndOffset(getLineOfOffsetLine);
-            if (offset >= s && offset < e)
-                return getLineOfOffsetLine;
-        }
-
-        int start = 0;
-        int end = lineCount - 1;
-
-        for (; ; ) {
-            switch (end - start) {
-                case 0:
-                    if (getLineEndOffset(start) <= offset)
-                        getLineOfOffsetLine = start + 1;
-                    else
-                        getLineOfOffsetLine = start;
-                    return getLineOfOffsetLine;
-                case 1:
-                    if (getLineEndOffset(start) <= offset) {
-                        if (getLineEndOffset(end) <= offset)
-                            getLineOfOffsetLine = end + 1;
-                        else
-                            getLineOfOffsetLine = end;
-                    } else
-                        getLineOfOffsetLine = start;
-                    return getLineOfOffsetLine;
-                default:
-                    int pivot = (end + start) / 2;
-                    int value = getLineEndOffset(pivot);
-                    if (value == offset) {
-                        getLineOfOffsetLine = pivot + 1;
-                        return getLineOfOffsetLine;
-                    } else if (value < offset)
-                        start = pivot + 1;
-                    else
-                        end = pivot - 1;
-                    break;
-            }
-        }
+        return text.getLineOfOffset(offset);
     }
 
     public final int getLineStartOffset(int line) {
-        int prevLine = line - 1;
-        if (prevLine < 0)
+        if (line <= 0)
             return 0;
-        return getLineEndOffset(prevLine);
+        return text.getLineStartOffset(line);
     }
 
 
+    /**
+     * @return the offset after the line separator of the line, the last
+     * line ends with a virtual separator
+     */
     public final int getLineEndOffset(int line) {
-        if (gapLine != -1 && line >= gapLine)
-            return endOffsets[line] + gapWidth;
-        else
-            return endOffsets[line];
+        if (line < 0)
+            return 0;
+        if (line == text.getLineCount() - 1)
+            return text.length() + 1;
+        return text.getLineStartOffset(line + 1);
     }
 
 
@@ -184,152 +142,72 @@ public class LineManager {
     }
 
 
-    public void _contentInserted(IntegerArray endOffsets) {
-        gapLine = -1;
-        gapWidth = 0;
-        firstInvalidLineContext = firstInvalidFoldLevel = 0;
-        lineCount = endOffsets.getSize();
-        this.endOffsets = endOffsets.getArray();
-        foldLevels = new short[lineCount];
-
-        lineContext = new TokenMarker.LineContext[lineCount];
-    }
-
-
-    public void contentInserted(int startLine, int offset,
-                                int numLines, int length, IntegerArray endOffsets) {
+    /**
+     * Inserts the contexts and fold levels of new lines after the line
+     * startLine, must be called before the text is set
+     */
+    public void contentInserted(int startLine, int numLines) {
         int endLine = startLine + numLines;
 
-
         if (numLines > 0) {
-            //moveGap(-1,0,"contentInserted");
-
-            lineCount += numLines;
-
-            if (this.endOffsets.length <= lineCount) {
-                int[] endOffsetsN = new int[(lineCount + 1) * 2];
-                System.arraycopy(this.endOffsets, 0, endOffsetsN, 0,
-                        this.endOffsets.length);
-                this.endOffsets = endOffsetsN;
-            }
+            int newLineCount = text.getLineCount() + numLines;
 
-            if (foldLevels.length <= lineCount) {
-                short[] foldLevelsN = new short[(lineCount + 1) * 2];
+            if (foldLevels.length <= newLineCount) {
+                short[] foldLevelsN = new short[(newLineCount + 1) * 2];
                 System.arraycopy(foldLevels, 0, foldLevelsN, 0,
                         foldLevels.length);
                 foldLevels = foldLevelsN;
             }
 
-            if (lineContext.length <= lineCount) {
+            if (lineContext.length <= newLineCount) {
                 TokenMarker.LineContext[] lineContextN
-                        = new TokenMarker.LineContext[(lineCount + 1) * 2];
+                        = new TokenMarker.LineContext[(newLineCount + 1) * 2];
                 System.arraycopy(lineContext, 0, lineContextN, 0,
                         lineContext.length);
                 lineContext = lineContextN;
             }
 
-            System.arraycopy(this.endOffsets, startLine,
-                    this.endOffsets, endLine, lineCount - endLine);
             System.arraycopy(foldLevels, startLine, foldLevels,
-                    endLine, lineCount - endLine);
+                    endLine, newLineCount - endLine);
             System.arraycopy(lineContext, startLine, lineContext,
-                    endLine, lineCount - endLine);
-
-            if (startLine <= gapLine)
-                gapLine += numLines;
-            else if (gapLine != -1)
-                offset -= gapWidth;
+                    endLine, newLineCount - endLine);
 
             if (startLine < firstInvalidLineContext)
                 firstInvalidLineContext += numLines;
 
             for (int i = 0; i < numLines; i++) {
-                this.endOffsets[startLine + i] = (offset + endOffsets.get(i));
                 foldLevels[startLine + i] = 0;
             }
         }
 
         if (firstInvalidFoldLevel == -1 || firstInvalidFoldLevel > startLine)
             firstInvalidFoldLevel = startLine;
-        moveGap(endLine, length, "contentInserted");
     }
 
 
-    public void contentRemoved(int startLine, int offset,
-                               int numLines, int length) {
+    /**
+     * Removes the contexts and fold levels of the lines after the line
+     * startLine, must be called before the text is set
+     */
+    public void contentRemoved(int startLine, int numLines) {
         int endLine = startLine + numLines;
 
-
         if (numLines > 0) {
-            //moveGap(-1,0,"contentRemoved");
-
-            if (startLine + numLines < gapLine)
-                gapLine -= numLines;
-            else if (startLine < gapLine)
-                gapLine = startLine;
-
             if (startLine + numLines < firstInvalidLineContext)
                 firstInvalidLineContext -= numLines;
             else if (startLine < firstInvalidLineContext)
                 firstInvalidLineContext = startLine - 1;
 
-            lineCount -= numLines;
+            int newLineCount = text.getLineCount() - numLines;
 
-            System.arraycopy(endOffsets, endLine, endOffsets,
-                    startLine, lineCount - startLine);
             System.arraycopy(foldLevels, endLine, foldLevels,
-                    startLine, lineCount - startLine);
+                    startLine, newLineCount - startLine);
             System.arraycopy(lineContext, endLine, lineContext,
-                    startLine, lineCount - startLine);
+                    startLine, newLineCount - startLine);
         }
 
         if (firstInvalidFoldLevel == -1 || firstInvalidFoldLevel > startLine)
             firstInvalidFoldLevel = startLine;
-        moveGap(startLine, -length, "contentRemoved");
-    }
-
-
-    private void setLineEndOffset(int line, int end) {
-        endOffsets[line] = end;
-    }
-
-
-    private void moveGap(int newGapLine, int newGapWidth, String method) {
-        if (gapLine == -1)
-            gapWidth = newGapWidth;
-        else if (newGapLine == -1) {
-            if (gapWidth != 0) {
-//				if(Debug.OFFSET_DEBUG && gapLine != lineCount)
-//					Log.log(Log.DEBUG, this, method + ": update from " + gapLine + " to " + lineCount + " width " + gapWidth);
-                for (int i = gapLine; i < lineCount; i++)
-                    setLineEndOffset(i, getLineEndOffset(i));
-            }
-
-            gapWidth = newGapWidth;
-        } else if (newGapLine < gapLine) {
-            if (gapWidth != 0) {
-//				if(Debug.OFFSET_DEBUG && newGapLine != gapLine)
-//					Log.log(Log.DEBUG,this,method + ": update from " + newGapLine + " to " + gapLine + " width " + gapWidth);
-                for (int i = newGapLine; i < gapLine; i++)
-                    setLineEndOffset(i, getLineEndOffset(i) - gapWidth);
-            }
-            gapWidth += newGapWidth;
-        } else //if(newGapLine >= gapLine)
-        {
-            if (gapWidth != 0) {
-//				if(Debug.OFFSET_DEBUG && gapLine != newGapLine)
-//					Log.log(Log.DEBUG,this,method + ": update from " + gapLine + " to " + newGapLine + " width " + gapWidth);
-                for (int i = gapLine; i < newGapLine; i++)
-                    setLineEndOffset(i, getLineEndOffset(i));
-            }
-
-            gapWidth += newGapWidth;
-        }
-
-        if (newGapLine == lineCount)
-            gapLine = -1;
-        else
-            gapLine = newGapLine;
     }
 
 
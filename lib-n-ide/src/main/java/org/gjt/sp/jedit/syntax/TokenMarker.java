@@ -823,15 +823,18 @@ public class TokenMarker {
 
 
         public LineContext intern() {
-            WeakReference<LineContext> ref = intern.get(this);
-            if (ref != null) {
-                LineContext obj = ref.get();
-                if (obj != null) {
-                    return obj;
+            // token markers of different modes may run on different threads
+            synchronized (intern) {
+                WeakReference<LineContext> ref = intern.get(this);
+                if (ref != null) {
+                    LineContext obj = ref.get();
+                    if (obj != null) {
+                        return obj;
+                    }
                 }
+                intern.put(this, new WeakReference<LineContext>(this));
+                return this;
             }
-            intern.put(this, new WeakReference<LineContext>(this));
-            return this;
         }
 
 
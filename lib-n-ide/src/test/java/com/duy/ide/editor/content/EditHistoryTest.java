@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.duy.ide.editor.content;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class EditHistoryTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("edit_history", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void savedHistoryIsLoaded() {
+        EditHistory history = new EditHistory(directory);
+        addLargeEdits(history, 3);
+        File file = history.save();
+        assertNotNull(file);
+        assertTrue(file.getName().endsWith(".bin"));
+
+        EditHistory loaded = new EditHistory(directory);
+        assertTrue(loaded.load(file, 3, 3));
+        EditHistory.Edit edit = loaded.undo();
+        assertNotNull(edit);
+        assertEquals(2 * 40000, edit.start);
+        assertEquals(40000, edit.after.length());
+    }
+
+    @Test
+    public void unsavedHistoryFilesAreDeleted() {
+        EditHistory saved = new EditHistory(directory);
+        addLargeEdits(saved, 3);
+        File savedFile = saved.save();
+        //a history which was being edited when the app was killed
+        EditHistory unsaved = new EditHistory(directory);
+        addLargeEdits(unsaved, 3);
+        assertEquals(2, directory.listFiles().length);
+
+        EditHistory.deleteTempFiles(directory);
+        assertEquals(Arrays.asList(savedFile), Arrays.asList(directory.listFiles()));
+    }
+
+    @Test
+    public void clearDeletesFile() {
+        EditHistory history = new EditHistory(directory);
+        addLargeEdits(history, 3);
+        assertEquals(1, directory.listFiles().length);
+        history.clear();
+        assertFalse(history.canUndo());
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    /**
+     * Adds edits larger than the memory budget and too far apart in time to be merged, so the
+     * oldest are written to the file
+     */
+    private static void addLargeEdits(EditHistory history, int count) {
+        char[] chars = new char[40000];
+        Arrays.fill(chars, 'a');
+        String text = new String(chars);
+        for (int i = 0; i < count; i++) {
+            history.add(i * text.length(), "", text, (i + 1) * 10000L);
+        }
+    }
+}
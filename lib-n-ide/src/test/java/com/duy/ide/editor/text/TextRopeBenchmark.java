@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.duy.ide.editor.text;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares {@link TextRope} with the previous model of the buffer, a string builder with an
+ * array of line end offsets, on a text of 5 MB: random inserts, random deletes, line lookups
+ * and taking a snapshot of the text for another thread.
+ */
+public class TextRopeBenchmark {
+
+    private static final int TEXT_LENGTH = 5 * 1024 * 1024;
+    private static final int EDITS = 20000;
+    private static final int LOOKUPS = 1000000;
+    private static final int SNAPSHOTS = 100;
+    private static final int RUNS = 3;
+
+    // keeps the results from being optimized away
+    private static volatile long sink;
+
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public static void main(String[] args) {
+        String text = createText(args.length > 0 ? Integer.parseInt(args[0]) : TEXT_LENGTH);
+        System.out.println(String.format(Locale.US, "%d chars, %d lines", text.length(),
+                TextRope.valueOf(text).getLineCount()));
+
+        long[] array = new long[4];
+        long[] rope = new long[4];
+        for (int i = 0; i < 4; i++) {
+            array[i] = rope[i] = Long.MAX_VALUE;
+        }
+        for (int run = 0; run < RUNS; run++) {
+            ArrayModel arrayModel = new ArrayModel(text);
+            RopeModel ropeModel = new RopeModel(text);
+            measure(arrayModel, array);
+            measure(ropeModel, rope);
+            if (!arrayModel.text.toString().equals(ropeModel.text.toString())) {
+                throw new IllegalStateException("Texts differ after the same edits");
+            }
+        }
+
+        String[] names = {"insert", "delete", "line lookup", "snapshot"};
+        int[] counts = {EDITS, EDITS, LOOKUPS, SNAPSHOTS};
+        for (int i = 0; i < names.length; i++) {
+            System.out.println(String.format(Locale.US, "%-12s %10.0f ns/op before, %10.0f ns/op after (%.1fx)",
+                    names[i], (double) array[i] / counts[i], (double) rope[i] / counts[i],
+                    (double) array[i] / rope[i]));
+        }
+    }
+
+    private static String createText(int length) {
+        StringBuilder text = new StringBuilder(length);
+        Random random = new Random(0);
+        while (text.length() < length) {
+            int indent = random.nextInt(4) * 4;
+            for (int i = 0; i < indent; i++) {
+                text.append(' ');
+            }
+            text.append("int value").append(random.nextInt(1000)).append(" = compute(")
+                    .append(random.nextInt()).append(");\n");
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+    /**
+     * Stores the best time of each operation in nanoseconds
+     */
+    private static void measure(Model model, long[] best) {
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        for (int i = 0; i < EDITS; i++) {
+            model.insert(random.nextInt(model.length() + 1), i % 10 == 0 ? "\n" : "x");
+        }
+        best[0] = Math.min(best[0], System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < EDITS; i++) {
+            int offset = random.nextInt(model.length());
+            model.delete(offset, Math.min(model.length(), offset + 1 + random.nextInt(2)));
+        }
+        best[1] = Math.min(best[1], System.nanoTime() - start);
+
+        start = System.nanoTime();
+        long sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            int line = model.getLineOfOffset(random.nextInt(model.length()));
+            sum += model.getLineStartOffset(line);
+        }
+        best[2] = Math.min(best[2], System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            sum += model.snapshot().length();
+        }
+        best[3] = Math.min(best[3], System.nanoTime() - start);
+        sink += sum;
+    }
+
+    private interface Model {
+        int length();
+
+        void insert(int offset, String text);
+
+        void delete(int start, int end);
+
+        int getLineOfOffset(int offset);
+
+        int getLineStartOffset(int line);
+
+        CharSequence snapshot();
+    }
+
+    private static class RopeModel implements Model {
+        TextRope text;
+
+        RopeModel(String text) {
+            this.text = TextRope.valueOf(text);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public void insert(int offset, String text) {
+            this.text = this.text.insert(offset, text);
+        }
+
+        @Override
+        public void delete(int start, int end) {
+            text = text.delete(start, end);
+        }
+
+        @Override
+        public int getLineOfOffset(int offset) {
+            return text.getLineOfOffset(offset);
+        }
+
+        @Override
+        public int getLineStartOffset(int line) {
+            return text.getLineStartOffset(line);
+        }
+
+        @Override
+        public CharSequence snapshot() {
+            return text;
+        }
+    }
+
+    /**
+     * The text in a string builder and the offsets after each line separator in an array, which
+     * is shifted by each edit and searched with a binary search
+     */
+    private static class ArrayModel implements Model {
+        final StringBuilder text;
+        int[] lineStarts = new int[16];
+        int lineCount = 1;
+
+        ArrayModel(String text) {
+            this.text = new StringBuilder(text);
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\r' || c == '\n') {
+                    addLineStart(lineCount, i + 1);
+                }
+            }
+        }
+
+        private void addLineStart(int index, int offset) {
+            if (lineCount == lineStarts.length) {
+                int[] newLineStarts = new int[lineCount * 2];
+                System.arraycopy(lineStarts, 0, newLineStarts, 0, lineCount);
+                lineStarts = newLineStarts;
+            }
+            System.arraycopy(lineStarts, index, lineStarts, index + 1, lineCount - index);
+            lineStarts[index] = offset;
+            lineCount++;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public void insert(int offset, String inserted) {
+            text.insert(offset, inserted);
+            int line = getLineOfOffset(offset);
+            for (int i = line + 1; i < lineCount; i++) {
+                lineStarts[i] += inserted.length();
+            }
+            for (int i = 0; i < inserted.length(); i++) {
+                char c = inserted.charAt(i);
+                if (c == '\r' || c == '\n') {
+                    line++;
+                    addLineStart(line, offset + i + 1);
+                }
+            }
+        }
+
+        @Override
+        public void delete(int start, int end) {
+            int startLine = getLineOfOffset(start);
+            int endLine = getLineOfOffset(end);
+            text.delete(start, end);
+            System.arraycopy(lineStarts, endLine + 1, lineStarts, startLine + 1, lineCount - endLine - 1);
+            lineCount -= endLine - startLine;
+            for (int i = startLine + 1; i < lineCount; i++) {
+                lineStarts[i] -= end - start;
+            }
+        }
+
+        @Override
+        public int getLineOfOffset(int offset) {
+            int low = 0;
+            int high = lineCount - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (lineStarts[middle] <= offset) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public int getLineStartOffset(int line) {
+            return lineStarts[line];
+        }
+
+        @Override
+        public CharSequence snapshot() {
+            return text.toString();
+        }
+    }
+}
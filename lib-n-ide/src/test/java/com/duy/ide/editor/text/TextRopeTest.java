@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 Tran Le Duy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.duy.ide.editor.text;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TextRopeTest {
+
+    /**
+     * Checks the line lookups of the rope against the lines of the text found one character
+     * after the other, both '\r' and '\n' end a line
+     */
+    private static void assertLines(String text, TextRope rope) {
+        assertEquals(text.length(), rope.length());
+        int line = 0;
+        assertEquals(0, rope.getLineStartOffset(0));
+        for (int i = 0; i < text.length(); i++) {
+            assertEquals("offset " + i, line, rope.getLineOfOffset(i));
+            char c = text.charAt(i);
+            if (c == '\r' || c == '\n') {
+                line++;
+                assertEquals("line " + line, i + 1, rope.getLineStartOffset(line));
+            }
+        }
+        assertEquals(line + 1, rope.getLineCount());
+        assertEquals(line, rope.getLineOfOffset(text.length()));
+    }
+
+    private static String createText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            int r = random.nextInt(40);
+            text.append(r == 0 ? '\n' : r == 1 ? '\r' : (char) ('a' + r));
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void empty() {
+        TextRope rope = TextRope.valueOf("");
+        assertSame(TextRope.EMPTY, rope);
+        assertEquals(0, rope.length());
+        assertEquals(1, rope.getLineCount());
+        assertEquals(0, rope.getLineOfOffset(0));
+        assertEquals(0, rope.getLineStartOffset(0));
+    }
+
+    @Test
+    public void lineSeparators() {
+        String text = "a\r\nb\n\nc\rd";
+        TextRope rope = TextRope.valueOf(text);
+        assertEquals(text, rope.toString());
+        assertEquals(6, rope.getLineCount());
+        assertLines(text, rope);
+    }
+
+    @Test
+    public void insert() {
+        TextRope rope = TextRope.valueOf("hello world");
+        TextRope inserted = rope.insert(5, ",\nnew");
+        assertEquals("hello,\nnew world", inserted.toString());
+        assertEquals(2, inserted.getLineCount());
+        assertEquals(7, inserted.getLineStartOffset(1));
+        // the old rope is a snapshot which is not changed by the edit
+        assertEquals("hello world", rope.toString());
+        assertEquals(1, rope.getLineCount());
+    }
+
+    @Test
+    public void delete() {
+        TextRope rope = TextRope.valueOf("one\ntwo\nthree");
+        TextRope deleted = rope.delete(2, 6);
+        assertEquals("ono\nthree", deleted.toString());
+        assertEquals(2, deleted.getLineCount());
+        assertSame(TextRope.EMPTY, deleted.delete(0, deleted.length()));
+        assertEquals(3, rope.getLineCount());
+    }
+
+    @Test
+    public void largeText() {
+        Random random = new Random(1);
+        String text = createText(random, 100000);
+        TextRope rope = TextRope.valueOf(text);
+        assertEquals(text, rope.toString());
+        assertEquals(text.substring(4000, 9000), rope.subSequence(4000, 9000).toString());
+        assertLines(text, rope);
+    }
+
+    @Test
+    public void randomEdits() {
+        Random random = new Random(2);
+        StringBuilder expected = new StringBuilder(createText(random, 20000));
+        TextRope rope = TextRope.valueOf(expected);
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(expected.length() + 1);
+            int end = Math.min(expected.length(), start + random.nextInt(i % 100 == 0 ? 5000 : 20));
+            String text = createText(random, random.nextInt(i % 100 == 1 ? 5000 : 20));
+            expected.replace(start, end, text);
+            rope = rope.replace(start, end, text);
+            assertEquals(expected.length(), rope.length());
+            if (i % 100 == 0) {
+                assertEquals(expected.toString(), rope.toString());
+                assertLines(expected.toString(), rope);
+            }
+        }
+        assertEquals(expected.toString(), rope.toString());
+        assertLines(expected.toString(), rope);
+    }
+}
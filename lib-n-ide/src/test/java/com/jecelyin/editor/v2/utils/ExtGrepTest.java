@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 Mr Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jecelyin.editor.v2.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExtGrepTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("grep", null);
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void linesAndOffsetsWithMixedLineBreaks() throws Exception {
+        String text = "foo bar\r\nbaz\r\n\r\nfoo\rqux foo\nend foo";
+        File file = write("mixed.txt", text);
+        // "foo" is found by the literal finder first, "[f]oo" runs the regex on every line
+        for (String regex : new String[]{"foo", "[f]oo"}) {
+            List<ExtGrep.Result> results = grep(file, regex);
+            assertEquals(4, results.size());
+            assertResult(results.get(0), 1, 0);
+            assertResult(results.get(1), 4, 16);
+            assertResult(results.get(2), 5, 24);
+            assertResult(results.get(3), 6, 32);
+            assertEquals("qux foo", results.get(2).line);
+        }
+    }
+
+    @Test
+    public void largeFileIsScannedInWindows() throws Exception {
+        String[] breaks = {"\n", "\r\n", "\r"};
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 1024 * 1024) {
+            int length = random.nextInt(200);
+            for (int i = 0; i < length; i++) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+            if (random.nextInt(10) == 0) {
+                text.insert(text.length() - random.nextInt(length + 1), "needle");
+            }
+            text.append(breaks[random.nextInt(breaks.length)]);
+        }
+        text.append("last needle");
+        File file = write("large.txt", text.toString());
+
+        for (String regex : new String[]{"needle", "[n]eedle"}) {
+            assertSameResults(text.toString(), regex, grep(file, regex));
+        }
+    }
+
+    @Test
+    public void lineLongerThanWindow() throws Exception {
+        StringBuilder text = new StringBuilder("first needle\r\n");
+        for (int i = 0; i < 300 * 1024; i++) {
+            text.append('x');
+        }
+        text.append("needle\r\nafter needle\r\n");
+        File file = write("long.txt", text.toString());
+        List<ExtGrep.Result> results = grep(file, "needle");
+        assertEquals(3, results.size());
+        assertResult(results.get(0), 1, 6);
+        assertResult(results.get(1), 2, 14 + 300 * 1024);
+        assertResult(results.get(2), 3, 14 + 300 * 1024 + 8 + 6);
+    }
+
+    private static void assertResult(ExtGrep.Result result, int lineNumber, int startOffset) {
+        assertEquals("line number", lineNumber, result.lineNumber);
+        assertEquals("offset", startOffset, result.startOffset);
+    }
+
+    /**
+     * Compares the results with a search which splits the text into lines first
+     */
+    private static void assertSameResults(String text, String regex, List<ExtGrep.Result> results) {
+        Matcher lineBreak = Pattern.compile("\r\n|\r|\n").matcher(text);
+        Pattern pattern = Pattern.compile(regex);
+        List<int[]> expected = new ArrayList<>();
+        int lineNumber = 1;
+        int lineStart = 0;
+        while (true) {
+            boolean more = lineBreak.find();
+            int lineEnd = more ? lineBreak.start() : text.length();
+            Matcher m = pattern.matcher(text.substring(lineStart, lineEnd));
+            if (m.find()) {
+                expected.add(new int[]{lineNumber, lineStart + m.start(), lineStart + m.end()});
+            }
+            if (!more) {
+                break;
+            }
+            lineNumber++;
+            lineStart = lineBreak.end();
+        }
+        assertEquals(expected.size(), results.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ExtGrep.Result result = results.get(i);
+            assertResult(result, expected.get(i)[0], expected.get(i)[1]);
+            assertEquals("end offset", expected.get(i)[2], result.endOffset);
+        }
+    }
+
+    private File write(String name, String text) throws IOException {
+        File file = new File(dir, name);
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(text.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    private static List<ExtGrep.Result> grep(File file, String regex) throws InterruptedException {
+        final List<ExtGrep.Result> results = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        GrepBuilder.start().setRegex(regex, true).addFile(file.getPath()).build()
+                .search(new GrepSearch.Listener() {
+                    @Override
+                    public void onResults(List<ExtGrep.Result> batch) {
+                        synchronized (results) {
+                            results.addAll(batch);
+                        }
+                    }
+
+                    @Override
+                    public void onFinished(boolean cancelled) {
+                        done.countDown();
+                    }
+                }, new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
+        done.await();
+        Collections.sort(results, new Comparator<ExtGrep.Result>() {
+            @Override
+            public int compare(ExtGrep.Result a, ExtGrep.Result b) {
+                return Integer.compare(a.startOffset, b.startOffset);
+            }
+        });
+        return results;
+    }
+}
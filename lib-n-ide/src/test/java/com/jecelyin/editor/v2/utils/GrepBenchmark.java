@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Mr Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jecelyin.editor.v2.utils;
+
+import com.jecelyin.editor.v2.io.FileEncodingDetector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the search of {@link ExtGrep} in a directory with the previous implementation,
+ * which read the files one after another with {@link BufferedReader#readLine()} and ran the
+ * regex on every line. The search is also measured with a {@link TrigramIndex}, once while the
+ * index is built and then with the complete index.
+ * <p>
+ * Arguments: directory, pattern, and -i to ignore case
+ */
+public class GrepBenchmark {
+    private static final int RUNS = 5;
+
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args.length > 0 ? args[0] : ".");
+        String regex = args.length > 1 ? args[1] : "Override";
+        boolean ignoreCase = args.length > 2 && args[2].equals("-i");
+
+        long before = Long.MAX_VALUE;
+        long after = Long.MAX_VALUE;
+        long indexed = Long.MAX_VALUE;
+        int beforeCount = 0;
+        int afterCount = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            beforeCount = searchSequential(dir,
+                    Pattern.compile(regex, ignoreCase ? Pattern.CASE_INSENSITIVE : 0));
+            before = Math.min(before, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            afterCount = searchParallel(dir, regex, ignoreCase, null);
+            after = Math.min(after, System.nanoTime() - start);
+        }
+
+        File indexFile = File.createTempFile("trigram_index", null);
+        indexFile.delete();
+        TrigramIndex index = new TrigramIndex(indexFile);
+        long start = System.nanoTime();
+        int indexedCount = searchParallel(dir, regex, ignoreCase, index);
+        long building = System.nanoTime() - start;
+        for (int run = 0; run < RUNS; run++) {
+            start = System.nanoTime();
+            indexedCount = searchParallel(dir, regex, ignoreCase, index);
+            indexed = Math.min(indexed, System.nanoTime() - start);
+        }
+        indexFile.delete();
+
+        if (beforeCount != afterCount || beforeCount != indexedCount) {
+            throw new IllegalStateException("Found " + beforeCount + " results before, "
+                    + afterCount + " after and " + indexedCount + " with the index");
+        }
+        System.out.println(String.format(Locale.US, "%d results, %.1f ms before, %.1f ms after (%.1fx)",
+                afterCount, before / 1e6, after / 1e6, (double) before / after));
+        System.out.println(String.format(Locale.US, "with index: %.1f ms while building, %.1f ms after (%.1fx)",
+                building / 1e6, indexed / 1e6, (double) before / indexed));
+    }
+
+    private static int searchParallel(File dir, String regex, boolean ignoreCase, TrigramIndex index)
+            throws InterruptedException {
+        GrepBuilder builder = GrepBuilder.start().setRegex(regex, true).recurseDirectories()
+                .addFile(dir.getPath()).index(index);
+        if (ignoreCase) {
+            builder.ignoreCase();
+        }
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        builder.build().search(new GrepSearch.Listener() {
+            @Override
+            public void onResults(List<ExtGrep.Result> results) {
+                count.addAndGet(results.size());
+            }
+
+            @Override
+            public void onFinished(boolean cancelled) {
+                done.countDown();
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        done.await();
+        return count.get();
+    }
+
+    private static int searchSequential(File dir, Pattern pattern) throws IOException {
+        int count = 0;
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return 0;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                count += searchSequential(child, pattern);
+            } else if (child.isFile() && child.canRead()) {
+                count += grepFile(child, pattern);
+            }
+        }
+        return count;
+    }
+
+    private static int grepFile(File file, Pattern pattern) throws IOException {
+        int count = 0;
+        String encoding = FileEncodingDetector.detectEncoding(file);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding), 16000);
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                Matcher m = pattern.matcher(line);
+                if (m.find()) {
+                    count++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+}
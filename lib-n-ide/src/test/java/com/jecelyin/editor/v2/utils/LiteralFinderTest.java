@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Mr Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jecelyin.editor.v2.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LiteralFinderTest {
+
+    @Test
+    public void requiredPrefix() {
+        assertEquals("foo", LiteralFinder.requiredPrefix("foo"));
+        assertEquals("foo", LiteralFinder.requiredPrefix("foo.*bar"));
+        assertEquals("fo", LiteralFinder.requiredPrefix("fo+"));
+        assertEquals("fo", LiteralFinder.requiredPrefix("foo?"));
+        assertEquals("fo", LiteralFinder.requiredPrefix("foo*"));
+        assertEquals("a", LiteralFinder.requiredPrefix("ab{2}"));
+        assertEquals(".java", LiteralFinder.requiredPrefix("\\.java"));
+        assertEquals("a(b", LiteralFinder.requiredPrefix("a\\(b"));
+    }
+
+    @Test
+    public void noRequiredPrefix() {
+        assertNull(LiteralFinder.requiredPrefix(""));
+        assertNull(LiteralFinder.requiredPrefix("foo|bar"));
+        assertNull(LiteralFinder.requiredPrefix("get(Name|Id)"));
+        assertNull(LiteralFinder.requiredPrefix("\\w+"));
+        assertNull(LiteralFinder.requiredPrefix("\\Qfoo\\E"));
+        assertNull(LiteralFinder.requiredPrefix("[abc]"));
+        assertNull(LiteralFinder.requiredPrefix(".foo"));
+        assertNull(LiteralFinder.requiredPrefix("^foo"));
+        assertNull(LiteralFinder.requiredPrefix("a?b"));
+        assertNull(LiteralFinder.requiredPrefix("\\"));
+    }
+
+    @Test
+    public void indexOf() {
+        char[] text = "one two three two".toCharArray();
+        LiteralFinder finder = new LiteralFinder("two", false);
+        assertEquals(4, finder.indexOf(text, 0, text.length));
+        assertEquals(14, finder.indexOf(text, 5, text.length));
+        assertEquals(-1, finder.indexOf(text, 15, text.length));
+        // the match must end before the end of the range
+        assertEquals(-1, finder.indexOf(text, 0, 6));
+        assertEquals(4, finder.indexOf(text, 0, 7));
+        assertEquals(-1, new LiteralFinder("TWO", false).indexOf(text, 0, text.length));
+    }
+
+    @Test
+    public void indexOfIgnoreCase() {
+        char[] text = "Hello WORLD, hello world".toCharArray();
+        LiteralFinder finder = new LiteralFinder("World", true);
+        assertEquals(6, finder.indexOf(text, 0, text.length));
+        assertEquals(19, finder.indexOf(text, 7, text.length));
+    }
+}
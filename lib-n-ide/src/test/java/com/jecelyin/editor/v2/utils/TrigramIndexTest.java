@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Mr Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jecelyin.editor.v2.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TrigramIndexTest {
+    private File indexFile;
+    private File file;
+    private TrigramIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        indexFile = File.createTempFile("trigram_index", null);
+        indexFile.delete();
+        file = File.createTempFile("text", ".txt");
+        FileOutputStream output = new FileOutputStream(file);
+        output.write("hello world".getBytes("UTF-8"));
+        output.close();
+        index = new TrigramIndex(indexFile);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        indexFile.delete();
+    }
+
+    @Test
+    public void entryOfUnchangedFile() {
+        put(file.lastModified() + 10000);
+        TrigramIndex.Entry entry = index.get(file);
+        assertNotNull(entry);
+        assertTrue(entry.mayContain(TrigramIndex.keys("World")));
+        assertFalse(entry.mayContain(TrigramIndex.keys("xyz")));
+    }
+
+    @Test
+    public void fileReadInTheTickOfItsModificationIsNotTrusted() {
+        put(file.lastModified() + 500);
+        assertNull(index.get(file));
+    }
+
+    @Test
+    public void changedFileIsNotTrusted() {
+        put(file.lastModified() + 10000);
+        file.setLastModified(file.lastModified() - 60000);
+        assertNull(index.get(file));
+    }
+
+    @Test
+    public void savedFileIsIndexedOnceItsTickHasPassed() {
+        file.setLastModified(System.currentTimeMillis() - 10000);
+        index.reindex(file);
+        TrigramIndex.Entry entry = index.get(file);
+        assertNotNull(entry);
+        assertTrue(entry.mayContain(TrigramIndex.keys("hello")));
+        assertFalse(entry.mayContain(TrigramIndex.keys("xyz")));
+    }
+
+    @Test
+    public void savedFileIsNotIndexedInTheTickOfItsModification() {
+        file.setLastModified(System.currentTimeMillis());
+        index.reindex(file);
+        assertNull(index.get(file));
+    }
+
+    private void put(long indexed) {
+        TrigramIndex.Trigrams trigrams = new TrigramIndex.Trigrams();
+        char[] chars = "hello world".toCharArray();
+        trigrams.add(chars, 0, chars.length);
+        index.put(file, file.length(), file.lastModified(), indexed, trigrams);
+    }
+}